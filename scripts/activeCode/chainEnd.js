@@ -0,0 +1,15 @@
+/**
+ * Reading nextGuid returns the guid at the end of the chain instead of the
+ * next one, which it only gets if the code of every guid down the chain ran.
+ */
+
+function run(value, field, querier){
+    if(field == "nextGuid") {
+        var nextGuid = value.get("nextGuid");
+        if(nextGuid != "") {
+            var end = querier.readGuid(nextGuid, "nextGuid").get("nextGuid");
+            value.put("nextGuid", end != "" ? end : nextGuid);
+        }
+    }
+    return value;
+}
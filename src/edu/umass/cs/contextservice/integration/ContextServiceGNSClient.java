@@ -10,6 +10,7 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCom
 import edu.umass.cs.gnsserver.main.GNSConfig;
 
 import java.util.logging.Level;
+import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnscommon.GNSProtocol;
 
 /**
@@ -62,7 +63,7 @@ public class ContextServiceGNSClient implements ContextServiceGNSInterface {
       // writer might be unspecified so we use the guid
       String writer = jsonFormattedCommand.optString(GNSProtocol.WRITER.toString(), guid);
       String signature = jsonFormattedCommand.optString(GNSProtocol.SIGNATURE.toString(), null);
-      String message = jsonFormattedCommand.optString(GNSProtocol.SIGNATUREFULLMESSAGE.toString(), null);
+      String message = PacketUtils.getSignedMessage(jsonFormattedCommand);
 
       if (writer.equals(
     		  GNSConfig.getInternalOpSecret()
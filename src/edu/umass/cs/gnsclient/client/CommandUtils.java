@@ -27,6 +27,7 @@ import edu.umass.cs.gnscommon.exceptions.client.FieldNotFoundException;
 import edu.umass.cs.gnscommon.exceptions.client.InvalidFieldException;
 import edu.umass.cs.gnscommon.exceptions.client.InvalidGuidException;
 import edu.umass.cs.gnscommon.exceptions.client.VerificationException;
+import edu.umass.cs.gnscommon.packets.BinaryCommand;
 import edu.umass.cs.gnscommon.packets.CommandPacket;
 import edu.umass.cs.gnscommon.packets.ResponsePacket;
 import edu.umass.cs.gnscommon.utils.ByteUtils;
@@ -515,13 +516,20 @@ public class CommandUtils {
           throws ClientException {
     try {
       JSONObject result = createCommandWithTimestampAndNonce(commandType, keysAndValues);
-      String canonicalJSON = CanonicalJSON.getCanonicalForm(result);
+      String message;
+      if (Config.getGlobalBoolean(GNSCC.SIGN_BINARY_COMMAND)) {
+        // the server verifies this against the bytes it receives
+        result.put(GNSProtocol.SIGNED_BINARY.toString(), true);
+        message = BinaryCommand.getSignedMessage(result);
+      } else {
+        message = CanonicalJSON.getCanonicalForm(result);
+      }
       String signatureString = null;
       long t = System.nanoTime();
       if (Config.getGlobalBoolean(GNSCC.ENABLE_SECRET_KEY)) {
-        signatureString = signDigestOfMessage(privateKey, publicKey, canonicalJSON);
+        signatureString = signDigestOfMessage(privateKey, publicKey, message);
       } else {
-        signatureString = signDigestOfMessage(privateKey, canonicalJSON);
+        signatureString = signDigestOfMessage(privateKey, message);
       }
       result.put(GNSProtocol.SIGNATURE.toString(), signatureString);
       if (edu.umass.cs.utils.Util.oneIn(10)) {
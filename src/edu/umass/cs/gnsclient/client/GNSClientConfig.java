@@ -74,9 +74,18 @@ public class GNSClientConfig {
     VERIFICATION_SECRET("EXPOSED_SECRET"),
     /**
      * Byteification mode for "important" packets like CommandPacket,
-     * CommandValueReturnPacket, etc.
+     * CommandValueReturnPacket, etc. 0 is org.json, 1 homebrew, 2 jackson,
+     * 3 msgpack, 4 strings only and 5 the binary format in BinaryCommand
+     * that servers decode lazily.
      */
     BYTE_MODE(0),
+    /**
+     * If true, commands are signed over their binary encoding (see BinaryCommand)
+     * instead of their canonical JSON form so that servers can verify
+     * the signature against the received bytes. Needs servers that understand
+     * GNSProtocol.SIGNED_BINARY.
+     */
+    SIGN_BINARY_COMMAND(false),
     /**
      * If set to true, the client uses java preferences to store keys rather than DerbyDB.
      * Specifically, KeyPairUtils class uses JavaPreferences instead of DerbyDB.
@@ -24,6 +24,7 @@ import edu.umass.cs.gnsclient.client.GNSClientConfig;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
@@ -1801,8 +1802,14 @@ public class HttpClient {
 
       connection.connect();
 
-      // read the result from the server
-      BufferedReader inputStream = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+      // read the result from the server, errors come back with a 4xx or 5xx
+      // status and the error response in the body
+      InputStream resultStream = connection.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST
+              ? connection.getErrorStream() : connection.getInputStream();
+      if (resultStream == null) {
+        throw new IOException("HTTP status " + connection.getResponseCode() + " to command: " + queryString);
+      }
+      BufferedReader inputStream = new BufferedReader(new InputStreamReader(resultStream));
 
       String response = null;
       int cnt = readRetries;
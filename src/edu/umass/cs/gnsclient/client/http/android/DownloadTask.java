@@ -73,7 +73,11 @@ public class DownloadTask extends AsyncTask<String, String, Object> {
       conn.connect();
       int response = conn.getResponseCode();
       Log.v(LOG_TAG, "HTTP response code: " + response);
-      is = conn.getInputStream();
+      // Errors have a 4xx or 5xx status and the error response in the body
+      is = response >= HttpURLConnection.HTTP_BAD_REQUEST ? conn.getErrorStream() : conn.getInputStream();
+      if (is == null) {
+        throw new IOException("HTTP status " + response);
+      }
 
       // Convert the InputStream into a string
       String contentAsString = readIt(is);
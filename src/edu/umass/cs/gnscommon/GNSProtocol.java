@@ -343,6 +343,11 @@ public enum GNSProtocol {
    * The message that was signed field in a command packet.
    */
   SIGNATUREFULLMESSAGE("_signatureFullMessage_"),
+  /**
+   * Set to true in a command whose signature is over the binary encoding of the
+   * command without the signature (see BinaryCommand) rather than its canonical JSON.
+   */
+  SIGNED_BINARY("_signedBinary_"),
   // Special fields for ACL
   /**
    *
@@ -0,0 +1,391 @@
+/* Copyright (c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * Initial developer(s): Westy */
+package edu.umass.cs.gnscommon.packets;
+
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.utils.TaggedValues;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A compact binary form of the JSON command inside a {@link CommandPacket}.
+ *
+ * The layout is the command type integer followed by the number of entries and
+ * then the entries sorted by key. Each entry is a key id (an index into {@link #KEYS}
+ * or -1 followed by the key itself), a one byte tag and the value. Strings are
+ * UTF-8 with a length prefix, nested JSON objects and arrays are their string form.
+ * Because the entries are sorted, nested values are in canonical form and numbers
+ * are sent as the type they would have after being written as JSON text and parsed
+ * again (so 1.0 is sent as the int 1), the same command always encodes to the same
+ * bytes, even after a trip through JSON. That makes the encoding usable as the
+ * message that is signed, see {@link #getSignedMessage(JSONObject)}.
+ *
+ * A BinaryCommand wraps received bytes without copying them. Only the offsets of
+ * the entries are found up front and values are decoded when asked for, so the
+ * service name and command type can be read without building a JSONObject.
+ *
+ * @author westy
+ */
+public class BinaryCommand {
+
+  /**
+   * Keys that are sent as a two byte id. Append only, the position is the id on the wire.
+   */
+  private static final String[] KEYS = {
+    GNSProtocol.GUID.toString(),
+    GNSProtocol.NAME.toString(),
+    GNSProtocol.FIELD.toString(),
+    GNSProtocol.FIELDS.toString(),
+    GNSProtocol.VALUE.toString(),
+    GNSProtocol.OLD_VALUE.toString(),
+    GNSProtocol.USER_JSON.toString(),
+    GNSProtocol.READER.toString(),
+    GNSProtocol.WRITER.toString(),
+    GNSProtocol.ACCESSER.toString(),
+    GNSProtocol.TIMESTAMP.toString(),
+    GNSProtocol.NONCE.toString(),
+    GNSProtocol.SIGNATURE.toString(),
+    GNSProtocol.SIGNATUREFULLMESSAGE.toString(),
+    GNSProtocol.N.toString(),
+    GNSProtocol.ARGUMENT.toString(),
+    GNSProtocol.MEMBER.toString(),
+    GNSProtocol.MEMBERS.toString(),
+    GNSProtocol.ACL_TYPE.toString(),
+    GNSProtocol.PUBLIC_KEY.toString(),
+    GNSProtocol.PASSWORD.toString(),
+    GNSProtocol.QUERY.toString(),
+    GNSProtocol.INTERVAL.toString(),
+    GNSProtocol.ORIGINATING_GUID.toString(),
+    GNSProtocol.ORIGINATING_QID.toString(),
+    GNSProtocol.REQUEST_TTL.toString(),
+    GNSProtocol.COMMANDNAME.toString(),
+    GNSProtocol.ACCOUNT_GUID.toString(),
+    GNSProtocol.AC_CODE.toString(),
+    GNSProtocol.AC_ACTION.toString(),
+    GNSProtocol.SIGNED_BINARY.toString()
+  };
+
+  private static final Map<String, Short> KEY_IDS = new HashMap<>();
+
+  static {
+    for (short i = 0; i < KEYS.length; i++) {
+      KEY_IDS.put(KEYS[i], i);
+    }
+  }
+
+  private static final short UNKNOWN_KEY = -1;
+  private static final String COMMAND_INT = GNSProtocol.COMMAND_INT.toString();
+  private static final String SIGNATURE = GNSProtocol.SIGNATURE.toString();
+  private static final Charset SIGNED_MESSAGE_CHARSET = Charset.forName("ISO-8859-1");
+
+  /**
+   * Encodes a command.
+   *
+   * @param command
+   * @return the bytes
+   * @throws JSONException
+   */
+  public static byte[] encode(JSONObject command) throws JSONException {
+    return encode(command, null);
+  }
+
+  /**
+   * Encodes a command leaving out one key, e.g., the signature when encoding
+   * the bytes that get signed.
+   *
+   * @param command
+   * @param skipKey the key to leave out or null
+   * @return the bytes
+   * @throws JSONException
+   */
+  public static byte[] encode(JSONObject command, String skipKey) throws JSONException {
+    int commandInt = -1;
+    TreeMap<String, Object> sorted = new TreeMap<>();
+    @SuppressWarnings("unchecked")
+    Iterator<String> keys = command.keys();
+    while (keys.hasNext()) {
+      String key = keys.next();
+      Object value = command.get(key);
+      if (key.equals(COMMAND_INT) && value instanceof Integer) {
+        commandInt = (Integer) value;
+      } else if (!key.equals(skipKey)) {
+        sorted.put(key, value);
+      }
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(commandInt);
+      out.writeShort(sorted.size());
+      for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+        Short id = KEY_IDS.get(entry.getKey());
+        if (id != null) {
+          out.writeShort(id);
+        } else {
+          out.writeShort(UNKNOWN_KEY);
+          TaggedValues.writeString(out, entry.getKey());
+        }
+        TaggedValues.writeValue(out, entry.getValue(), true);
+      }
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      // can't happen writing to memory
+      throw new JSONException(e);
+    }
+  }
+
+  /**
+   * Returns the message that is signed for a command with
+   * {@link GNSProtocol#SIGNED_BINARY} set: the encoding of the command without its
+   * signature, one char per byte, so the existing string based signing and
+   * verification code can be used unchanged.
+   *
+   * @param command
+   * @return the message
+   * @throws JSONException
+   */
+  public static String getSignedMessage(JSONObject command) throws JSONException {
+    return new String(encode(command, SIGNATURE), SIGNED_MESSAGE_CHARSET);
+  }
+
+  private final ByteBuffer buf;
+  private final int commandInt;
+  private final int[] entryOffsets;
+  private final short[] keyIds;
+  private final String[] otherKeys;
+  private final int[] valueOffsets;
+
+  /**
+   * Wraps the encoded command that starts at the buffer's position and ends
+   * at its limit. The bytes are not copied so the buffer must not change.
+   *
+   * @param buf
+   * @throws JSONException if the bytes are not an encoded command
+   */
+  public BinaryCommand(ByteBuffer buf) throws JSONException {
+    this.buf = buf.slice();
+    try {
+      this.commandInt = this.buf.getInt(0);
+      int position = Integer.BYTES;
+      int count = this.buf.getShort(position);
+      position += Short.BYTES;
+      this.entryOffsets = new int[count];
+      this.keyIds = new short[count];
+      this.otherKeys = new String[count];
+      this.valueOffsets = new int[count];
+      for (int i = 0; i < count; i++) {
+        entryOffsets[i] = position;
+        keyIds[i] = this.buf.getShort(position);
+        position += Short.BYTES;
+        if (keyIds[i] == UNKNOWN_KEY) {
+          ByteBuffer key = at(position);
+          otherKeys[i] = TaggedValues.readString(key);
+          position = key.position();
+        } else if (keyIds[i] < 0 || keyIds[i] >= KEYS.length) {
+          throw new JSONException("Unknown key id " + keyIds[i] + " in binary command");
+        }
+        valueOffsets[i] = position;
+        ByteBuffer value = at(position);
+        TaggedValues.skipValue(value);
+        position = value.position();
+      }
+      if (position != this.buf.limit()) {
+        throw new JSONException("Binary command length mismatch");
+      }
+    } catch (IndexOutOfBoundsException | IllegalArgumentException | BufferUnderflowException e) {
+      throw new JSONException("Truncated binary command: " + e);
+    }
+  }
+
+  /**
+   * Returns the command type integer or -1 if the command doesn't have one.
+   *
+   * @return the command type integer
+   */
+  public int getCommandInt() {
+    return commandInt;
+  }
+
+  /**
+   * Returns the encoded command.
+   *
+   * @return a read only view of the bytes
+   */
+  public ByteBuffer getBytes() {
+    return buf.asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns the length of the encoded command in bytes.
+   *
+   * @return the length
+   */
+  public int length() {
+    return buf.limit();
+  }
+
+  /**
+   * Returns the message that was signed if the sender set {@link GNSProtocol#SIGNED_BINARY}.
+   * This is the received bytes without the signature entry, so nothing is decoded
+   * or re-encoded.
+   *
+   * @return the message
+   */
+  public String getSignedMessage() {
+    int i = find(SIGNATURE);
+    byte[] message;
+    if (i == -1) {
+      message = new byte[buf.limit()];
+      buf.duplicate().get(message);
+    } else {
+      int end = i + 1 < entryOffsets.length ? entryOffsets[i + 1] : buf.limit();
+      message = new byte[buf.limit() - (end - entryOffsets[i])];
+      ByteBuffer before = buf.duplicate();
+      before.limit(entryOffsets[i]);
+      ByteBuffer after = buf.duplicate();
+      after.position(end);
+      ByteBuffer.wrap(message).put(before).put(after)
+              // one entry fewer
+              .putShort(Integer.BYTES, (short) (keyIds.length - 1));
+    }
+    return new String(message, SIGNED_MESSAGE_CHARSET);
+  }
+
+  // a view of the bytes with its position at position, for TaggedValues to read from
+  private ByteBuffer at(int position) {
+    ByteBuffer duplicate = buf.duplicate();
+    duplicate.position(position);
+    return duplicate;
+  }
+
+  private Object readValue(int position) throws JSONException {
+    return TaggedValues.readValue(at(position));
+  }
+
+  private int find(String key) {
+    Short id = KEY_IDS.get(key);
+    for (int i = 0; i < keyIds.length; i++) {
+      if (id != null ? keyIds[i] == id : key.equals(otherKeys[i])) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private String keyAt(int i) {
+    return keyIds[i] == UNKNOWN_KEY ? otherKeys[i] : KEYS[keyIds[i]];
+  }
+
+  /**
+   * Returns true if the command has the key.
+   *
+   * @param key
+   * @return true if the command has the key
+   */
+  public boolean has(String key) {
+    return key.equals(COMMAND_INT) ? commandInt != -1 : find(key) != -1;
+  }
+
+  /**
+   * Returns the value of key or null if the command doesn't have it.
+   *
+   * @param key
+   * @return the value or null
+   * @throws JSONException
+   */
+  public Object get(String key) throws JSONException {
+    if (key.equals(COMMAND_INT)) {
+      return commandInt != -1 ? commandInt : null;
+    }
+    int i = find(key);
+    return i != -1 ? readValue(valueOffsets[i]) : null;
+  }
+
+  /**
+   * Returns the value of key as a string or null if the command doesn't have it.
+   *
+   * @param key
+   * @return the value or null
+   */
+  public String getString(String key) {
+    int i = find(key);
+    if (i == -1) {
+      return null;
+    }
+    int position = valueOffsets[i];
+    if (buf.get(position) == TaggedValues.STRING) {
+      return TaggedValues.readString(at(position + 1));
+    }
+    try {
+      return readValue(position).toString();
+    } catch (JSONException e) {
+      return null;
+    }
+  }
+
+  /**
+   * A command decoded from a BinaryCommand. It remembers the bytes it came from
+   * so the signed message can be cut out of them instead of being put into
+   * the command or encoded again.
+   */
+  public static class DecodedCommand extends JSONObject {
+
+    private final BinaryCommand binaryCommand;
+
+    private DecodedCommand(BinaryCommand binaryCommand) {
+      this.binaryCommand = binaryCommand;
+    }
+
+    /**
+     * Returns the message that was signed, see {@link BinaryCommand#getSignedMessage()}.
+     *
+     * @return the message
+     */
+    public String getSignedMessage() {
+      return binaryCommand.getSignedMessage();
+    }
+  }
+
+  /**
+   * Decodes the whole command.
+   *
+   * @return the command as a JSONObject
+   * @throws JSONException
+   */
+  public JSONObject toJSONObject() throws JSONException {
+    JSONObject json = new DecodedCommand(this);
+    if (commandInt != -1) {
+      json.put(COMMAND_INT, commandInt);
+    }
+    for (int i = 0; i < keyIds.length; i++) {
+      json.put(keyAt(i), readValue(valueOffsets[i]));
+    }
+    return json;
+  }
+}
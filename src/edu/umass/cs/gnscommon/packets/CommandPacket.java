@@ -78,7 +78,15 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
    * The JSON form of the command. Always includes a GNSProtocol.COMMANDNAME.toString() field. Almost
  always has a GNSProtocol.GUID.toString() field or GNSProtocol.NAME.toString() (for HRN records) field. Serialized.
    */
-  private final JSONObject command;
+  private JSONObject command;
+
+  /**
+   * The received bytes of the command if it was sent in {@link ByteMode#BINARY}.
+   * {@link #command} is decoded from these only when something asks for it,
+   * after which this is dropped so that nothing reads stale values from it
+   * once the command has been changed.
+   */
+  private volatile BinaryCommand binaryCommand;
 
   /**
    * True means that this request should be forcibly coordinated.
@@ -98,6 +106,7 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
     this.setType(Packet.PacketType.COMMAND);
     this.clientRequestId = requestId;
     this.command = command;
+    this.binaryCommand = null;
     validateCommandType();
 
   }
@@ -110,6 +119,7 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
    */
   public CommandPacket(JSONObject json) throws JSONException {
     this.type = Packet.getPacketType(json);
+    this.binaryCommand = null;
 
     if (!SUPPORT_OLD_PROTOCOL) {
       this.clientRequestId = json.getLong(QID);
@@ -164,7 +174,17 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
     ByteMode mode = ByteMode.byteModeMap.get(
             (int) buf.get());
     // JSON command
-    this.command = getJSONObject(buf, mode);
+    if (mode == ByteMode.BINARY) {
+      try {
+        this.binaryCommand = new BinaryCommand(buf);
+      } catch (JSONException e) {
+        throw new RequestParseException(e);
+      }
+      this.command = null;
+    } else {
+      this.binaryCommand = null;
+      this.command = getJSONObject(buf, mode);
+    }
 
     validateCommandType();
   }
@@ -226,8 +246,12 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
     }
   }
 
-  private static enum ByteMode {
-    ORG_JSON(0), HOMEBREW(1), JACKSON(2), MSGPACK(3), STRING_WING(4);
+  static enum ByteMode {
+    ORG_JSON(0), HOMEBREW(1), JACKSON(2), MSGPACK(3), STRING_WING(4),
+    /**
+     * {@link BinaryCommand}, decoded lazily by the receiver.
+     */
+    BINARY(5);
 
     private final int val;
 
@@ -255,8 +279,18 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
    * @return Refer {@link Byteable#toBytes()}
    */
   public final byte[] toBytes() {
+    return toBytes(byteMode);
+  }
+
+  /**
+   * Converts the CommandPacket to bytes using the given mode.
+   *
+   * @param mode
+   * @return the bytes
+   */
+  final byte[] toBytes(ByteMode mode) {
     try {
-      switch (byteMode) {
+      switch (mode) {
         /* There is little point in using JSON just for this.command instead
 >>>>>>> 1a70f0e3c9f5685a37f51cdc7c44879293ead6aa
 			 * of the default toJSONObject() method, so we just do that. */
@@ -265,20 +299,24 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
                   .getBytes(MessageNIOTransport.NIO_CHARSET_ENCODING);
         case HOMEBREW:
           return this.appendByteifiedInnerJSONCommand(
-                  this.toByteBufferWithOuterFields(),
-                  JSONByteConverter.toBytesHardcoded(this.command));
+                  this.toByteBufferWithOuterFields(mode),
+                  JSONByteConverter.toBytesHardcoded(this.getCommand()));
         case JACKSON:
           return this.appendByteifiedInnerJSONCommand(
-                  this.toByteBufferWithOuterFields(),
-                  JSONByteConverter.toBytesJackson(this.command));
+                  this.toByteBufferWithOuterFields(mode),
+                  JSONByteConverter.toBytesJackson(this.getCommand()));
         case MSGPACK:
           return this.appendByteifiedInnerJSONCommand(
-                  this.toByteBufferWithOuterFields(),
-                  JSONByteConverter.toBytesMsgpack(this.command));
+                  this.toByteBufferWithOuterFields(mode),
+                  JSONByteConverter.toBytesMsgpack(this.getCommand()));
         case STRING_WING:
           // different from above three
           return this.toBytesWingItAsString(
-                  toByteBufferWithOuterFields(), this.command);
+                  toByteBufferWithOuterFields(mode), this.getCommand());
+        case BINARY:
+          return this.appendByteifiedInnerJSONCommand(
+                  this.toByteBufferWithOuterFields(mode),
+                  this.getBinaryCommandBytes());
         default:
           throw new RuntimeException("Unrecognized byteification mode");
       }
@@ -288,8 +326,8 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
     }
   }
 
-  private ByteBuffer toByteBufferWithOuterFields() {
-    synchronized (command) {
+  private ByteBuffer toByteBufferWithOuterFields(ByteMode mode) {
+    synchronized (this) {
       return ByteBuffer.allocate(512).putInt(
               // packet type
               this.getType().getInt())
@@ -298,11 +336,22 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
               // forceCoordination
               .put(this.forceCoordination ? (byte) 1 : (byte) 0)
               // ByteMode
-              .put((byte) byteMode.val);
+              .put((byte) mode.val);
       // JSON command coming next
     }
   }
 
+  // forwards the received bytes unchanged unless the command has been decoded since
+  private synchronized byte[] getBinaryCommandBytes() throws JSONException {
+    if (this.command == null) {
+      ByteBuffer bytes = this.binaryCommand.getBytes();
+      byte[] inner = new byte[bytes.remaining()];
+      bytes.get(inner);
+      return inner;
+    }
+    return BinaryCommand.encode(this.command);
+  }
+
   private byte[] appendByteifiedInnerJSONCommand(ByteBuffer bbuf, byte[] inner) {
     return bbuf.remaining() >= inner.length ? Arrays.copyOfRange(
             bbuf.put(inner).array(), 0, bbuf.position()) : ByteBuffer
@@ -317,7 +366,7 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
 	 * purposes. */
   private byte[] toBytesWingItAsString(ByteBuffer buf, JSONObject json) {
     // can we still get integer-less packets from iOS devices?
-    Integer commandType = (Integer) command
+    Integer commandType = (Integer) json
             .remove(GNSProtocol.COMMAND_INT.toString());
     assert (commandType != null);
 
@@ -326,7 +375,7 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
 
     // We assume all remaining keys and values are strings.
     @SuppressWarnings("unchecked")
-    Iterator<String> keys = command.keys();
+    Iterator<String> keys = json.keys();
     Object objVal = null;
     String key = null;
     try {
@@ -334,7 +383,7 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
         key = keys.next();
         byte[] keyBytes = key
                 .getBytes(MessageNIOTransport.NIO_CHARSET_ENCODING);
-        objVal = command.get(key);
+        objVal = json.get(key);
         /* We rely on the assumption that if it's not a String, it will
 				 * throw a ClassCastException */
         byte[] valueBytes = ((String) objVal)
@@ -378,7 +427,7 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
 
   private void putBackRemoved(Integer commandType) throws JSONException {
     if (commandType != null) {
-      this.command.put(GNSProtocol.COMMAND_INT.toString(), commandType);
+      this.getCommand().put(GNSProtocol.COMMAND_INT.toString(), commandType);
     }
     ;
   }
@@ -391,7 +440,7 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
     }
     // production => try slow path
     try {
-      this.command.put(GNSProtocol.COMMAND_INT.toString(), commandType);
+      this.getCommand().put(GNSProtocol.COMMAND_INT.toString(), commandType);
     } catch (JSONException e1) {
       throw new RuntimeException(e1);
 
@@ -419,7 +468,7 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
     JSONObject json = new JSONObject();
     Packet.putPacketType(json, getType());
     json.put(QID, this.clientRequestId);
-    json.put(COMMAND, this.command);
+    json.put(COMMAND, this.getCommand());
     if (this.forceCoordination) {
       json.put(GNSProtocol.FORCE_COORDINATE_READS.toString(), this.forceCoordination);
     }
@@ -451,10 +500,33 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
    *
    * @return the command
    */
-  protected JSONObject getCommand() {
+  protected synchronized JSONObject getCommand() {
+    if (command == null && binaryCommand != null) {
+      try {
+        command = binaryCommand.toJSONObject();
+      } catch (JSONException e) {
+        // the layout was checked when the packet was created so this is a bad value
+        throw new RuntimeException(e);
+      }
+      // the decoded command keeps the bytes it needs for the signed message
+      binaryCommand = null;
+    }
     return command;
   }
 
+  /**
+   * Returns the message that was signed, see {@link PacketUtils#getSignedMessage(JSONObject)}.
+   * If the command arrived in binary form and hasn't been decoded this is
+   * taken from the received bytes.
+   *
+   * @return the message
+   * @throws JSONException
+   */
+  synchronized String getSignedMessage() throws JSONException {
+    return binaryCommand != null ? binaryCommand.getSignedMessage()
+            : PacketUtils.getSignedMessage(getCommand());
+  }
+
   /**
    * The service name is the name of the GNSProtocol.GUID.toString()/HRN that is being written to or
  read.
@@ -463,6 +535,14 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
    */
   @Override
   public String getServiceName() {
+    BinaryCommand binary = binaryCommand;
+    if (binary != null) {
+      String name = binary.getString(GNSProtocol.GUID.toString());
+      if (name == null) {
+        name = binary.getString(GNSProtocol.NAME.toString());
+      }
+      return name != null ? name : BOGUS_SERVICE_NAME;
+    }
     try {
       if (command != null) {
         if (command.has(GNSProtocol.GUID.toString())) {
@@ -482,6 +562,10 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
    * @return CommandType as Integer.
    */
   public int getCommandInteger() {
+    BinaryCommand binary = binaryCommand;
+    if (binary != null) {
+      return binary.getCommandInt();
+    }
     try {
       if (command != null) {
         if (command.has(GNSProtocol.COMMAND_INT.toString())) {
@@ -506,7 +590,15 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
    * @return CommandType
    */
   public CommandType getCommandType() {
-    return getJSONCommandType(command);
+    BinaryCommand binary = binaryCommand;
+    if (binary != null && binary.getCommandInt() != -1) {
+      try {
+        return CommandType.getCommandType(binary.getCommandInt());
+      } catch (IllegalArgumentException e) {
+        return CommandType.Unknown;
+      }
+    }
+    return getJSONCommandType(getCommand());
   }
 
   /**
@@ -761,6 +853,14 @@ public class CommandPacket extends BasicPacketWithClientAddress implements
     return this.result != null;
   }
 
+  /**
+   * @return The response code of executing this command or null if it
+   * doesn't have a result yet.
+   */
+  public ResponseCode getResultCode() {
+    return this.result != null ? ((ResponsePacket) this.result).getErrorCode() : null;
+  }
+
   /* ********************** End of result-related methods **************** */
   /**
    *
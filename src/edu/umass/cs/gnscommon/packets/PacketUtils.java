@@ -30,6 +30,41 @@ public class PacketUtils {
 		return command.getCommand();
 	}
 
+	/**
+	 * @param command
+	 * @return The message signed by a client that set
+	 *         {@link GNSProtocol#SIGNED_BINARY} in {@code command}.
+	 * @throws JSONException
+	 */
+	public static String getSignedMessage(CommandPacket command)
+			throws JSONException {
+		return command.getSignedMessage();
+	}
+
+	/**
+	 * @param command
+	 * @return The message the signature in {@code command} is over or null
+	 *         if it isn't signed. For a client that set
+	 *         {@link GNSProtocol#SIGNED_BINARY} this is cut out of the
+	 *         received bytes if the command was decoded from them and
+	 *         encoded otherwise, for older clients it is the
+	 *         {@link GNSProtocol#SIGNATUREFULLMESSAGE} the server added.
+	 * @throws JSONException
+	 */
+	public static String getSignedMessage(JSONObject command)
+			throws JSONException {
+		if (!command.has(GNSProtocol.SIGNATURE.toString())) {
+			return null;
+		}
+		if (command.optBoolean(GNSProtocol.SIGNED_BINARY.toString(), false)) {
+			return command instanceof BinaryCommand.DecodedCommand ? ((BinaryCommand.DecodedCommand) command)
+					.getSignedMessage() : BinaryCommand
+					.getSignedMessage(command);
+		}
+		return command.optString(
+				GNSProtocol.SIGNATUREFULLMESSAGE.toString(), null);
+	}
+
 	/**
 	 * @param commandPacket
 	 * @return The originatingGUID for {@code CommandPacket}.
@@ -46,6 +46,16 @@ public class CanonicalJSON {
     return renderSimpleCanonicalJSON(json);
   }
 
+  /**
+   * Generates the canonical string for any JSON value, e.g., a JSONArray.
+   *
+   * @param value
+   * @return a string
+   */
+  public static String getCanonicalFormOfValue(Object value) {
+    return renderSimpleCanonicalJSON(value);
+  }
+
   /**
    * Helper function to generate canonical strings for JSON strings.
    *
@@ -0,0 +1,185 @@
+/* Copyright (1c) 2015 University of Massachusetts
+ * 
+ * Licensed under the Apache License, Version 2.0 (1the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * Initial developer(s): Westy */
+package edu.umass.cs.gnscommon.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A field name in dot notation that has been split into its parts once.
+ *
+ * The paths are interned so each distinct field name is only parsed the
+ * first time it is seen. Looking up, inserting and removing walk the
+ * parts without building substrings and report a missing field with null
+ * or false instead of throwing.
+ *
+ * Lookup and remove work on {@link JSONObject}s and on {@link Map}s, which
+ * covers the BasicDBObjects returned by mongo.
+ *
+ * @author westy
+ */
+public final class FieldPath {
+
+  // Field names come from clients so don't let the interned set grow forever.
+  private static final int MAX_INTERNED = 10000;
+  private static final ConcurrentHashMap<String, FieldPath> INTERNED = new ConcurrentHashMap<>();
+
+  private final String name;
+  private final String[] parts;
+
+  private FieldPath(String name) {
+    this.name = name;
+    this.parts = split(name);
+  }
+
+  /**
+   * Returns the path for the field name.
+   *
+   * @param name
+   * @return the path
+   */
+  public static FieldPath get(String name) {
+    FieldPath path = INTERNED.get(name);
+    if (path == null) {
+      path = new FieldPath(name);
+      if (INTERNED.size() < MAX_INTERNED) {
+        FieldPath previous = INTERNED.putIfAbsent(name, path);
+        if (previous != null) {
+          path = previous;
+        }
+      }
+    }
+    return path;
+  }
+
+  private static String[] split(String name) {
+    int count = 1;
+    for (int i = 0; i < name.length(); i++) {
+      if (name.charAt(i) == '.') {
+        count++;
+      }
+    }
+    String[] result = new String[count];
+    int start = 0;
+    for (int i = 0; i < count - 1; i++) {
+      int dot = name.indexOf('.', start);
+      result[i] = name.substring(start, dot);
+      start = dot + 1;
+    }
+    result[count - 1] = name.substring(start);
+    return result;
+  }
+
+  /**
+   * @return the field name this path was made from
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return true if the field name contains a dot
+   */
+  public boolean isNested() {
+    return parts.length > 1;
+  }
+
+  private static Object child(Object json, String key) {
+    if (json instanceof JSONObject) {
+      return ((JSONObject) json).opt(key);
+    } else if (json instanceof Map) {
+      return ((Map<?, ?>) json).get(key);
+    }
+    return null;
+  }
+
+  // the object holding the last part or null if there isn't one
+  private Object parent(Object json) {
+    Object current = json;
+    for (int i = 0; i < parts.length - 1 && current != null; i++) {
+      current = child(current, parts[i]);
+    }
+    return current;
+  }
+
+  /**
+   * Returns the value of this field in json.
+   *
+   * @param json a JSONObject or a Map
+   * @return the value or null if the field is not there
+   */
+  public Object get(Object json) {
+    Object parent = parent(json);
+    return parent != null ? child(parent, parts[parts.length - 1]) : null;
+  }
+
+  /**
+   * @param json a JSONObject or a Map
+   * @return true if the field is in json
+   */
+  public boolean isIn(Object json) {
+    return get(json) != null;
+  }
+
+  /**
+   * Puts the value of this field into destination creating any missing
+   * intermediate objects.
+   *
+   * @param destination
+   * @param value
+   * @return false if an intermediate value is there but is not a JSONObject
+   * @throws JSONException if the value is not a valid JSON value
+   */
+  public boolean put(JSONObject destination, Object value) throws JSONException {
+    JSONObject current = destination;
+    for (int i = 0; i < parts.length - 1; i++) {
+      Object next = current.opt(parts[i]);
+      if (next == null) {
+        next = new JSONObject();
+        current.put(parts[i], next);
+        // FIXME: could also allow JSONArray here if the subkey is in integer
+      } else if (!(next instanceof JSONObject)) {
+        return false;
+      }
+      current = (JSONObject) next;
+    }
+    current.put(parts[parts.length - 1], value);
+    return true;
+  }
+
+  /**
+   * Removes this field from json.
+   *
+   * @param json a JSONObject or a Map
+   * @return the value that was removed or null if the field is not there
+   */
+  public Object remove(Object json) {
+    Object parent = parent(json);
+    if (parent instanceof JSONObject) {
+      return ((JSONObject) parent).remove(parts[parts.length - 1]);
+    } else if (parent instanceof Map) {
+      return ((Map<?, ?>) parent).remove(parts[parts.length - 1]);
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,326 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnscommon.utils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Writes and reads JSON values in binary. Every value is a one byte tag followed
+ * by the value. Strings are length prefixed UTF-8.
+ *
+ * In canonical form nested objects and arrays are written as their canonical JSON
+ * text, and numbers are written as the type they would have after being written
+ * as JSON text and parsed again, so equal values always give the same bytes.
+ * Otherwise nested objects and arrays are written as the number of entries
+ * followed by the entries, so reading them back doesn't tokenize any text,
+ * and numbers keep their type.
+ *
+ * Used by edu.umass.cs.gnscommon.packets.BinaryCommand (canonical form) and
+ * the active code workers (binary form).
+ *
+ * @author westy
+ */
+public class TaggedValues {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * JSONObject.NULL
+   */
+  public static final byte NULL = 0;
+  /**
+   * A string
+   */
+  public static final byte STRING = 1;
+  /**
+   * An int
+   */
+  public static final byte INT = 2;
+  /**
+   * A long
+   */
+  public static final byte LONG = 3;
+  /**
+   * A double
+   */
+  public static final byte DOUBLE = 4;
+  /**
+   * A boolean, one byte that is 0 for false
+   */
+  public static final byte BOOLEAN = 5;
+  /**
+   * A JSONObject as its canonical string
+   */
+  public static final byte OBJECT_TEXT = 6;
+  /**
+   * A JSONArray as its canonical string
+   */
+  public static final byte ARRAY_TEXT = 7;
+  /**
+   * Any other number as its string
+   */
+  public static final byte NUMBER = 8;
+  /**
+   * A JSONObject as its number of entries followed by key strings and values
+   */
+  public static final byte OBJECT = 9;
+  /**
+   * A JSONArray as its number of entries followed by the values
+   */
+  public static final byte ARRAY = 10;
+
+  /**
+   * Writes a length prefixed UTF-8 string.
+   *
+   * @param out
+   * @param string
+   * @throws IOException
+   */
+  public static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(UTF8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Writes a tagged value.
+   *
+   * @param out
+   * @param value
+   * @param canonical true to write the canonical form
+   * @throws IOException
+   * @throws JSONException
+   */
+  public static void writeValue(DataOutputStream out, Object value, boolean canonical)
+          throws IOException, JSONException {
+    if (value == null || value == JSONObject.NULL) {
+      out.writeByte(NULL);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(INT);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Number) {
+      writeNumber(out, (Number) value, canonical);
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      out.writeByte((Boolean) value ? 1 : 0);
+    } else if (value instanceof JSONObject) {
+      if (canonical) {
+        out.writeByte(OBJECT_TEXT);
+        writeString(out, CanonicalJSON.getCanonicalForm((JSONObject) value));
+      } else {
+        out.writeByte(OBJECT);
+        writeObject(out, (JSONObject) value);
+      }
+    } else if (value instanceof JSONArray) {
+      if (canonical) {
+        out.writeByte(ARRAY_TEXT);
+        writeString(out, CanonicalJSON.getCanonicalFormOfValue(value));
+      } else {
+        JSONArray array = (JSONArray) value;
+        out.writeByte(ARRAY);
+        out.writeInt(array.length());
+        for (int i = 0; i < array.length(); i++) {
+          writeValue(out, array.get(i), false);
+        }
+      }
+    } else {
+      out.writeByte(STRING);
+      writeString(out, value.toString());
+    }
+  }
+
+  private static void writeObject(DataOutputStream out, JSONObject json) throws IOException, JSONException {
+    out.writeInt(json.length());
+    Iterator<?> keys = json.keys();
+    while (keys.hasNext()) {
+      String key = (String) keys.next();
+      writeString(out, key);
+      writeValue(out, json.get(key), false);
+    }
+  }
+
+  // In canonical form the number is written as whatever JSON text would turn it into,
+  // e.g., a Long that fits in an int or the Double 1.0 both come back from JSON as an Integer.
+  private static void writeNumber(DataOutputStream out, Number value, boolean canonical)
+          throws IOException, JSONException {
+    Object number = canonical ? JSONObject.stringToValue(JSONObject.numberToString(value))
+            : value instanceof Short || value instanceof Byte ? (Object) value.intValue()
+                    : value instanceof Float ? (Object) value.doubleValue() : value;
+    if (number instanceof Integer) {
+      out.writeByte(INT);
+      out.writeInt((Integer) number);
+    } else if (number instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) number);
+    } else if (number instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) number);
+    } else {
+      // read back with stringToValue so it encodes the same way again
+      out.writeByte(NUMBER);
+      writeString(out, JSONObject.numberToString(value));
+    }
+  }
+
+  /**
+   * Reads a length prefixed UTF-8 string at the buffer's position.
+   *
+   * @param buf
+   * @return the string
+   */
+  public static String readString(ByteBuffer buf) {
+    int length = buf.getInt();
+    if (length < 0) {
+      throw new IllegalArgumentException("negative length");
+    }
+    String string;
+    if (buf.hasArray()) {
+      string = new String(buf.array(), buf.arrayOffset() + buf.position(), length, UTF8);
+    } else {
+      byte[] bytes = new byte[length];
+      buf.duplicate().get(bytes);
+      string = new String(bytes, UTF8);
+    }
+    buf.position(buf.position() + length);
+    return string;
+  }
+
+  /**
+   * Reads the tagged value at the buffer's position.
+   *
+   * @param buf
+   * @return the value
+   * @throws JSONException
+   */
+  public static Object readValue(ByteBuffer buf) throws JSONException {
+    byte tag = buf.get();
+    switch (tag) {
+      case NULL:
+        return JSONObject.NULL;
+      case STRING:
+        return readString(buf);
+      case INT:
+        return buf.getInt();
+      case LONG:
+        return buf.getLong();
+      case DOUBLE:
+        return buf.getDouble();
+      case BOOLEAN:
+        return buf.get() != 0;
+      case OBJECT_TEXT:
+        return new JSONObject(readString(buf));
+      case ARRAY_TEXT:
+        return new JSONArray(readString(buf));
+      case NUMBER:
+        return JSONObject.stringToValue(readString(buf));
+      case OBJECT:
+        JSONObject json = new JSONObject();
+        readObject(buf, json);
+        return json;
+      case ARRAY:
+        int length = buf.getInt();
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < length; i++) {
+          array.put(readValue(buf));
+        }
+        return array;
+      default:
+        throw new JSONException("Unknown tag " + tag);
+    }
+  }
+
+  /**
+   * Reads the entries of an object written in binary form, the buffer's
+   * position is just after its tag.
+   *
+   * @param buf
+   * @param target the object the entries are put in
+   * @throws JSONException
+   */
+  public static void readObject(ByteBuffer buf, JSONObject target) throws JSONException {
+    int size = buf.getInt();
+    for (int i = 0; i < size; i++) {
+      String key = readString(buf);
+      target.put(key, readValue(buf));
+    }
+  }
+
+  /**
+   * Moves the buffer's position past the tagged value at it without decoding it.
+   *
+   * @param buf
+   * @throws JSONException if the tag is unknown
+   */
+  public static void skipValue(ByteBuffer buf) throws JSONException {
+    byte tag = buf.get();
+    switch (tag) {
+      case NULL:
+        return;
+      case INT:
+        buf.position(buf.position() + Integer.BYTES);
+        return;
+      case LONG:
+        buf.position(buf.position() + Long.BYTES);
+        return;
+      case DOUBLE:
+        buf.position(buf.position() + Double.BYTES);
+        return;
+      case BOOLEAN:
+        buf.position(buf.position() + 1);
+        return;
+      case STRING:
+      case OBJECT_TEXT:
+      case ARRAY_TEXT:
+      case NUMBER:
+        int length = buf.getInt();
+        if (length < 0) {
+          throw new IllegalArgumentException("negative length");
+        }
+        buf.position(buf.position() + length);
+        return;
+      case OBJECT:
+        int size = buf.getInt();
+        for (int i = 0; i < size; i++) {
+          buf.position(buf.position() + Integer.BYTES + buf.getInt(buf.position()));
+          skipValue(buf);
+        }
+        return;
+      case ARRAY:
+        int count = buf.getInt();
+        for (int i = 0; i < count; i++) {
+          skipValue(buf);
+        }
+        return;
+      default:
+        throw new JSONException("Unknown tag " + tag);
+    }
+  }
+}
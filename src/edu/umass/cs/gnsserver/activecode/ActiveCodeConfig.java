@@ -51,6 +51,23 @@ public class ActiveCodeConfig {
 	   */
 	  public static boolean activeCodeEnableDebugging = false;
 	  
+	  /**
+	   * Number of distinct pieces of code each worker keeps compiled.
+	   */
+	  public static int activeCodeCacheSize = 1000;
+	  
+	  /**
+	   * Number of guids each worker thread keeps a script context for.
+	   * The context of the least recently used guid is dropped first.
+	   */
+	  public static int activeGuidContextCacheSize = 10000;
+	  
+	  /**
+	   * True if the workers are reached through memory mapped files instead
+	   * of named pipes.
+	   */
+	  public static boolean activeCodeMappedChannel = false;
+	  
 	  
 	  private static final String ACTIVE_CODE_WORKER_COUNT = "ACTIVE_CODE_WORKER_COUNT";
 	  
@@ -62,6 +79,12 @@ public class ActiveCodeConfig {
 	  
 	  private static final String ACTIVE_CODE_ENABLE_DEBUGGING = "ACTIVE_CODE_ENABLE_DEBUGGING";
 	  
+	  private static final String ACTIVE_CODE_CACHE_SIZE = "ACTIVE_CODE_CACHE_SIZE";
+	  
+	  private static final String ACTIVE_GUID_CONTEXT_CACHE_SIZE = "ACTIVE_GUID_CONTEXT_CACHE_SIZE";
+	  
+	  private static final String ACTIVE_CODE_MAPPED_CHANNEL = "ACTIVE_CODE_MAPPED_CHANNEL";
+	  
 	  
 	/**
 	 * @param allValues
@@ -86,6 +109,18 @@ public class ActiveCodeConfig {
 		    if (allValues.containsKey(ACTIVE_CODE_ENABLE_DEBUGGING)) {
 		    	activeCodeEnableDebugging = Boolean.parseBoolean(allValues.getProperty(ACTIVE_CODE_ENABLE_DEBUGGING));
 		    }
+		    
+		    if (allValues.containsKey(ACTIVE_CODE_CACHE_SIZE)) {
+		    	activeCodeCacheSize = Integer.parseInt(allValues.getProperty(ACTIVE_CODE_CACHE_SIZE));
+		    }
+		    
+		    if (allValues.containsKey(ACTIVE_GUID_CONTEXT_CACHE_SIZE)) {
+		    	activeGuidContextCacheSize = Integer.parseInt(allValues.getProperty(ACTIVE_GUID_CONTEXT_CACHE_SIZE));
+		    }
+		    
+		    if (allValues.containsKey(ACTIVE_CODE_MAPPED_CHANNEL)) {
+		    	activeCodeMappedChannel = Boolean.parseBoolean(allValues.getProperty(ACTIVE_CODE_MAPPED_CHANNEL));
+		    }
 	  }
 	 
 	/**
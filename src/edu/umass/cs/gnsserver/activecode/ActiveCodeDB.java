@@ -3,49 +3,109 @@ package edu.umass.cs.gnsserver.activecode;
 import java.io.IOException;
 import java.util.ArrayList;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import edu.umass.cs.gnsclient.client.CommandUtils;
 import edu.umass.cs.gnscommon.exceptions.client.ClientException;
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
+import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gnscommon.packets.ResponsePacket;
+import edu.umass.cs.gnsserver.gnsapp.GNSApp;
+import edu.umass.cs.gnsserver.gnsapp.GNSCommandInternal;
 import edu.umass.cs.gnsserver.gnsapp.activegns.ActiveGNSClient;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.CommandHandler;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.interfaces.ActiveDBInterface;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 
 /**
+ * Reads and writes issued by active code. A read of a guid whose record
+ * is on this server is executed right here with
+ * {@link CommandHandler#executeInternalCommandLocally}, which does the same
+ * TTL and ACL checks as a read received from another server. Everything else,
+ * including all writes as they have to be coordinated, goes through
+ * the {@link ActiveGNSClient}.
  *
  * @author westy
  */
 public class ActiveCodeDB implements ActiveDBInterface {
-	
+
 	private ActiveGNSClient client;
 
+	private final GNSApp app;
+
 	/**
 	 * Create the active code.
 	 */
 	public ActiveCodeDB(){
+		this(null);
+	}
+
+	/**
+	 * @param app the app to execute reads of local guids with, or null to send all requests
+	 */
+	public ActiveCodeDB(GNSApp app){
+		this.app = app;
 		try {
 			this.client = new ActiveGNSClient();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
-	
+
 	@Override
-	public JSONObject read(InternalRequestHeader header, String targetGUID, String field) 
+	public JSONObject read(InternalRequestHeader header, String targetGUID, String field)
 			throws InternalRequestException, ClientException {
+		if(isLocal(targetGUID)){
+			try {
+				return executeLocally(GNSCommandInternal.fieldRead(targetGUID, field, header));
+			} catch (JSONException e) {
+				throw new ClientException(e);
+			}
+		}
 		JSONObject obj = client.read(header, targetGUID, field);
 		return obj;
 	}
 
 	@Override
-	public JSONObject read(InternalRequestHeader header, String targetGUID, ArrayList<String> fields) 
+	public JSONObject read(InternalRequestHeader header, String targetGUID, ArrayList<String> fields)
 			throws InternalRequestException, ClientException{
+		if(isLocal(targetGUID)){
+			try {
+				return executeLocally(GNSCommandInternal.fieldRead(targetGUID, fields, header));
+			} catch (JSONException e) {
+				throw new ClientException(e);
+			}
+		}
 		return client.read(header, targetGUID, fields);
 	}
 
 	@Override
-	public void write(InternalRequestHeader header, String targetGUID, String field, JSONObject valuesMap) 
+	public void write(InternalRequestHeader header, String targetGUID, String field, JSONObject valuesMap)
 			throws InternalRequestException, ClientException{
-			client.write(header, targetGUID, field, valuesMap);		
+			client.write(header, targetGUID, field, valuesMap);
+	}
+
+	/**
+	 * A read can only be done here if it would not have been coordinated
+	 * and this server has the record.
+	 */
+	private boolean isLocal(String targetGUID){
+		if(app == null || client == null || client.isForceCoordinatedReads()){
+			return false;
+		}
+		try {
+			return NameRecord.containsRecord(app.getDB(), targetGUID);
+		} catch (FailedDBOperationException e) {
+			return false;
+		}
+	}
+
+	private JSONObject executeLocally(CommandPacket command) throws ClientException, JSONException {
+		ResponsePacket response = CommandUtils.checkResponse(
+				CommandHandler.executeInternalCommandLocally(command, app), command);
+		return response == null ? null : new JSONObject(response.getReturnValue());
 	}
 }
@@ -29,7 +29,6 @@ import java.util.logging.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import edu.umass.cs.gnscommon.utils.Base64;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveHandler;
 import edu.umass.cs.gnsserver.gnsapp.GNSApp;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode;
@@ -60,6 +59,16 @@ public class ActiveCodeHandler {
 	 * Initializes an ActiveCodeHandler
 	 */
 	public ActiveCodeHandler() {
+		this(null);
+	}
+	
+	/**
+	 * Initializes an ActiveCodeHandler that reads guids on this server
+	 * without going through the network.
+	 * 
+	 * @param app
+	 */
+	public ActiveCodeHandler(GNSApp app) {
 		String configFile = System.getProperty("activeFile");
 		if(configFile != null){
 			try {
@@ -69,7 +78,7 @@ public class ActiveCodeHandler {
 			}
 		}
 		
-		handler = new ActiveHandler(new ActiveCodeDB(), ActiveCodeConfig.activeCodeWorkerCount, ActiveCodeConfig.activeWorkerThreads);
+		handler = new ActiveHandler(new ActiveCodeDB(app), ActiveCodeConfig.activeCodeWorkerCount, ActiveCodeConfig.activeWorkerThreads);
 	}
 	
 	
@@ -133,14 +142,14 @@ public class ActiveCodeHandler {
 		final String field1 = "testGuid";
 		final String read_action = "read";
 		
+		// the workers run the code as it is given, so send the script itself
 		String noop_code = new String(Files.readAllBytes(Paths.get("./scripts/activeCode/noop.js"))); 
-		String noop_code64 = Base64.encodeToString(noop_code.getBytes("utf-8"), true);
-		ActiveCodeHandler.runCode(null, noop_code64, guid1, field1, read_action, valuesMap, 100);
+		ActiveCodeHandler.runCode(null, noop_code, guid1, field1, read_action, valuesMap, 100);
 		
 		int n = 1000000;
 		long t = System.currentTimeMillis();
 		for(int i=0; i<n; i++){
-			ActiveCodeHandler.runCode(null, noop_code64, guid1, field1, read_action, valuesMap, 100);
+			ActiveCodeHandler.runCode(null, noop_code, guid1, field1, read_action, valuesMap, 100);
 		}
 		long elapsed = System.currentTimeMillis() - t;
 		System.out.println(String.format("it takes %d ms, avg_latency = %f us", elapsed, elapsed*1000.0/n));
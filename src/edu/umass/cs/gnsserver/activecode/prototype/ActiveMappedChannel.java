@@ -0,0 +1,98 @@
+package edu.umass.cs.gnsserver.activecode.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONException;
+
+import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
+import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Message;
+import edu.umass.cs.gnsserver.activecode.prototype.utils.MappedRing;
+
+/**
+ * This is a Channel over a pair of memory mapped ring buffers, one for
+ * each direction, see {@link MappedRing}. Messages are copied into the
+ * ring and read back from it without any system call while the other side
+ * is busy, and the ValuesMaps of ActiveMessages are sent in the binary
+ * encoding instead of as JSON text.
+ *
+ * <p>Like a named pipe, receiving returns null once the other side
+ * is gone, so a crashed worker is noticed and restarted.
+ *
+ * @author gaozy
+ *
+ */
+public class ActiveMappedChannel implements Channel {
+
+	private static final Logger LOGGER = Logger.getLogger(ActiveMappedChannel.class.getName());
+
+	private final MappedRing in;
+	private final MappedRing out;
+	private final String ifile;
+	private final String ofile;
+	private final boolean create;
+
+	/**
+	 * The side that creates the files, the GNS, must do it before
+	 * starting the worker that opens them.
+	 *
+	 * @param ifile the file of the ring to receive from
+	 * @param ofile the file of the ring to send to
+	 * @param create true to create both files
+	 * @throws IOException
+	 */
+	public ActiveMappedChannel(String ifile, String ofile, boolean create) throws IOException{
+		this.ifile = ifile;
+		this.ofile = ofile;
+		this.create = create;
+		in = new MappedRing(ifile, MappedRing.DEFAULT_CAPACITY, create);
+		out = new MappedRing(ofile, MappedRing.DEFAULT_CAPACITY, create);
+		in.openForReading();
+	}
+
+	@Override
+	public void sendMessage(Message msg) throws IOException {
+		byte[] buf = (msg instanceof ActiveMessage)?((ActiveMessage) msg).toBytes(true):msg.toBytes();
+		out.write(buf);
+	}
+
+	@Override
+	public Message receiveMessage() throws IOException {
+		int idle = 0;
+		ByteBuffer record;
+		while((record = in.poll()) == null){
+			if(in.isClosed()){
+				throw new IOException("Channel is closed");
+			}
+			if(Thread.currentThread().isInterrupted()){
+				throw new InterruptedIOException();
+			}
+			idle = MappedRing.idle(idle);
+			// the other side reads from the out ring
+			if(idle > MappedRing.BUSY_WAITS && !out.isPeerAlive()){
+				return null;
+			}
+		}
+		try {
+			return new ActiveMessage(record);
+		} catch (JSONException e) {
+			LOGGER.log(Level.WARNING, "Unable to decode a message from "+ifile, e);
+			return null;
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		in.close();
+		out.close();
+		if(create){
+			new File(ifile).delete();
+			new File(ofile).delete();
+		}
+	}
+
+}
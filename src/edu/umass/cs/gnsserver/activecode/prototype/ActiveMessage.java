@@ -5,12 +5,15 @@ import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Message;
+import edu.umass.cs.gnsserver.activecode.prototype.utils.BinaryJSON;
 import edu.umass.cs.gnsserver.utils.ValuesMap;
 import edu.umass.cs.utils.DelayProfiler;
 
@@ -23,6 +26,18 @@ public class ActiveMessage implements Message{
 	private final static String CHARSET = "ISO-8859-1";
 	private final static AtomicLong counter = new AtomicLong();
 	
+	/**
+	 * The error a worker sends back if a request refers to code by its hash
+	 * and the worker doesn't have the code. The request must be resent with the code.
+	 */
+	public final static String CODE_NOT_FOUND = "CODE_NOT_FOUND";
+	
+	/**
+	 * Set in the serialized type if the ValuesMap is encoded with {@link BinaryJSON}
+	 * instead of as JSON text.
+	 */
+	private final static int BINARY_VALUES = 1 << 16;
+	
 	/**
 	 * Message type
 	 */
@@ -33,6 +48,7 @@ public class ActiveMessage implements Message{
 	private String guid;
 	private String field;
 	private String code;
+	private String codeHash;
 	private ValuesMap value;
 	private String targetGuid;
 	private String error;
@@ -95,13 +111,32 @@ public class ActiveMessage implements Message{
 	 * @param error 
 	 */
 	public ActiveMessage(Type type, long id, int ttl, long budget, String guid, String field, String code, ValuesMap value, String targetGuid, String error){
+		this(type, id, ttl, budget, guid, field, code, null, value, targetGuid, error);
+	}
+	
+	/**
+	 * @param type 
+	 * @param id 
+	 * @param guid
+	 * @param field
+	 * @param code
+	 * @param codeHash 
+	 * @param ttl
+	 * @param budget 
+	 * @param value  
+	 * @param targetGuid 
+	 * @param error 
+	 */
+	public ActiveMessage(Type type, long id, int ttl, long budget, String guid, String field, String code, String codeHash, 
+			ValuesMap value, String targetGuid, String error){
 		this.type = type;
 		this.id = id;
 		this.ttl = ttl;
 		this.budget = budget;
 		this.guid = guid;
 		this.field = field;
-		this.code = code;		
+		this.code = code;
+		this.codeHash = codeHash;
 		this.value = value;
 		this.targetGuid = targetGuid;
 		this.error = error;
@@ -120,6 +155,21 @@ public class ActiveMessage implements Message{
 		this(Type.REQUEST, counter.getAndIncrement(), ttl, budget, guid, field, code, value, null, null);
 	}
 	
+	/**
+	 * This is a REQUEST message that refers to its code by hash.
+	 * The code can be null if the worker is known to have it already.
+	 * @param guid
+	 * @param field
+	 * @param code
+	 * @param codeHash 
+	 * @param value
+	 * @param ttl
+	 * @param budget 
+	 */
+	public ActiveMessage(String guid, String field, String code, String codeHash, ValuesMap value, int ttl, long budget){
+		this(Type.REQUEST, counter.getAndIncrement(), ttl, budget, guid, field, code, codeHash, value, null, null);
+	}
+	
 	/**
 	 * This is a READ_QUERY message
 	 * @param ttl
@@ -191,6 +241,40 @@ public class ActiveMessage implements Message{
 		return code;
 	}
 
+	/**
+	 * @return the hash of the code, or null if the request doesn't have one
+	 */
+	public String getCodeHash() {
+		return codeHash;
+	}
+	
+	/**
+	 * @return true if this is a response saying the worker doesn't have the code
+	 */
+	public boolean isCodeNotFound() {
+		return type == Type.RESPONSE && CODE_NOT_FOUND.equals(error);
+	}
+	
+	/**
+	 * Returns the hash used to refer to a piece of code.
+	 * 
+	 * @param code
+	 * @return the SHA-1 hash of the code as a hex string
+	 */
+	public static String computeCodeHash(String code) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(code.getBytes(CHARSET));
+			StringBuilder sb = new StringBuilder(2*digest.length);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+			// every JVM has both
+			throw new RuntimeException(e);
+		}
+	}
+	
 	/**
 	 * @return value
 	 */
@@ -223,11 +307,12 @@ public class ActiveMessage implements Message{
 		int length = 0;
 		switch(type){
 		case REQUEST:
-			length = 6*Integer.BYTES // type, ttl, guid length, field length, code length, valuesMap size 
+			length = 7*Integer.BYTES // type, ttl, guid length, field length, code hash length, code length, valuesMap size 
 			+ 2*Long.BYTES // id, budget
 			+ guid.length() // guid
 			+ (field!=null?field.length():0) // field
-			+ code.length();
+			+ (codeHash!=null?codeHash.length():0) // code hash
+			+ (code!=null?code.length():0);
 			break;
 			
 		case RESPONSE:
@@ -266,17 +351,41 @@ public class ActiveMessage implements Message{
 	 */
 	@Override
 	public byte[] toBytes() throws UnsupportedEncodingException{
+		return toBytes(false);
+	}
+	
+	/**
+	 * Serializes the message, with the ValuesMap in the binary encoding of 
+	 * {@link BinaryJSON} if binaryValues is true. Either way the message
+	 * is read back by {@link #ActiveMessage(ByteBuffer)}.
+	 * 
+	 * @param binaryValues
+	 * @return the byte array being serialized
+	 * @throws UnsupportedEncodingException
+	 */
+	public byte[] toBytes(boolean binaryValues) throws UnsupportedEncodingException{
 		long t = System.nanoTime();
 		
-		// First convert ValuesMap to String, as it is costly
-		String valuesMapString = (value == null)?null:value.toString();
+		// First convert ValuesMap to bytes, as it is costly
+		byte[] valuesMapBytes = null;
+		if(value != null && binaryValues){
+			try {
+				valuesMapBytes = BinaryJSON.encode(value);
+			} catch (JSONException e) {
+				// send it as text instead
+				binaryValues = false;
+			}
+		}
+		if(value != null && !binaryValues){
+			valuesMapBytes = value.toString().getBytes(CHARSET);
+		}
 		
-		byte[] buffer = new byte[this.getEstimatedLengthExceptForValuesMap()+( (valuesMapString==null)?0:valuesMapString.length() )];
+		byte[] buffer = new byte[this.getEstimatedLengthExceptForValuesMap()+( (valuesMapBytes==null)?0:valuesMapBytes.length )];
 		ByteBuffer bbuf = ByteBuffer.wrap(buffer);
-		byte[] guidBytes,fieldBytes,codeBytes,valuesMapBytes,targetGuidBytes;
+		byte[] guidBytes,fieldBytes,codeHashBytes,codeBytes,targetGuidBytes;
 		
 		// put type and request id
-		bbuf.putInt(type.getType());
+		bbuf.putInt(binaryValues?(type.getType() | BINARY_VALUES):type.getType());
 		int exactLength = Integer.BYTES;
 		bbuf.putLong(id);
 		exactLength += Long.BYTES;
@@ -304,16 +413,21 @@ public class ActiveMessage implements Message{
 			bbuf.put(fieldBytes);
 			exactLength += (Integer.BYTES + fieldBytes.length);
 			
-			// put code, can be null
-			assert(code != null):"code can't be null for active request";
-			codeBytes = code.getBytes(CHARSET);
-			bbuf.putInt( codeBytes.length );
+			// put code hash, can be null
+			codeHashBytes = (codeHash!=null)?codeHash.getBytes(CHARSET):new byte[0];
+			bbuf.putInt(codeHashBytes.length);
+			bbuf.put(codeHashBytes);
+			exactLength += (Integer.BYTES + codeHashBytes.length);
+			
+			// put code, can be null if the code hash is set, -1 means null
+			assert(code != null || codeHash != null):"code and code hash can't both be null for active request";
+			codeBytes = (code!=null)?code.getBytes(CHARSET):new byte[0];
+			bbuf.putInt( (code!=null)?codeBytes.length:-1 );
 			bbuf.put(codeBytes);
 			exactLength += (Integer.BYTES + codeBytes.length);
 			
-			// put valuesMapString, can be null
-			assert(valuesMapString != null):"valuesMapString can't be null for active request";
-			valuesMapBytes = valuesMapString.getBytes(CHARSET);
+			// put valuesMap, can't be null
+			assert(valuesMapBytes != null):"valuesMap can't be null for active request";
 			bbuf.putInt( valuesMapBytes.length );
 			bbuf.put(valuesMapBytes);
 			exactLength += (Integer.BYTES + valuesMapBytes.length);
@@ -373,18 +487,19 @@ public class ActiveMessage implements Message{
 			exactLength += (Integer.BYTES + targetGuidBytes.length);
 			
 			// put value
-			assert(valuesMapString != null);
-			valuesMapBytes = valuesMapString.getBytes(CHARSET);
+			assert(valuesMapBytes != null);
 			bbuf.putInt(valuesMapBytes.length);
 			bbuf.put(valuesMapBytes);
 			exactLength += (Integer.BYTES + valuesMapBytes.length);
 			break;
 			
 		case RESPONSE:
-			valuesMapBytes = (valuesMapString==null)?new byte[0]:valuesMapString.getBytes(CHARSET);
-			bbuf.putInt((valuesMapString==null)?0:valuesMapBytes.length);
-			bbuf.put(valuesMapBytes);
-			exactLength += (Integer.BYTES + valuesMapBytes.length);
+			bbuf.putInt((valuesMapBytes==null)?0:valuesMapBytes.length);
+			if(valuesMapBytes != null){
+				bbuf.put(valuesMapBytes);
+				exactLength += valuesMapBytes.length;
+			}
+			exactLength += Integer.BYTES;
 			
 			byte[] errorBytes = (error==null)? new byte[0]:error.getBytes(CHARSET);
 			bbuf.putInt( (error==null)?0:errorBytes.length );
@@ -421,10 +536,12 @@ public class ActiveMessage implements Message{
 	public ActiveMessage(ByteBuffer bbuf) throws UnsupportedEncodingException, JSONException {
 		long t = System.nanoTime();
 		
-		this.type = Type.values()[bbuf.getInt()];	
+		int serializedType = bbuf.getInt();
+		boolean binaryValues = (serializedType & BINARY_VALUES) != 0;
+		this.type = Type.values()[serializedType & ~BINARY_VALUES];	
 		this.id = bbuf.getLong();
 		int length = 0;
-		byte[] guidBytes,fieldBytes,codeBytes,targetGuidBytes,valueBytes,errorBytes;
+		byte[] guidBytes,fieldBytes,codeHashBytes,codeBytes,targetGuidBytes,errorBytes;
 		
 		switch(type){
 		case REQUEST:
@@ -445,17 +562,25 @@ public class ActiveMessage implements Message{
 				field = new String(fieldBytes, CHARSET);
 			}
 			
+			// get code hash
+			length = bbuf.getInt();
+			if(length>0){
+				codeHashBytes = new byte[length];
+				bbuf.get(codeHashBytes);
+				codeHash = new String(codeHashBytes, CHARSET);
+			}
+			
 			// get code
 			length = bbuf.getInt();
-			codeBytes = new byte[length];
-			bbuf.get(codeBytes);
-			code = new String(codeBytes, CHARSET);
+			if(length>=0){
+				codeBytes = new byte[length];
+				bbuf.get(codeBytes);
+				code = new String(codeBytes, CHARSET);
+			}
 						
 			// get valuesMap
 			length = bbuf.getInt();
-			valueBytes = new byte[length];
-			bbuf.get(valueBytes);
-			value = new ValuesMap(new JSONObject(new String(valueBytes, CHARSET)));
+			value = readValuesMap(bbuf, length, binaryValues);
 			break;
 		case READ_QUERY:
 			ttl = bbuf.getInt();
@@ -500,18 +625,14 @@ public class ActiveMessage implements Message{
 			
 			// get valuesMap
 			length = bbuf.getInt();
-			valueBytes = new byte[length];
-			bbuf.get(valueBytes);
-			value = new ValuesMap(new JSONObject(new String(valueBytes, CHARSET)));
+			value = readValuesMap(bbuf, length, binaryValues);
 			break;
 			
 		case RESPONSE:
 			// get valuesMap
 			length = bbuf.getInt();
 			if(length>0){
-				valueBytes = new byte[length];
-				bbuf.get(valueBytes);
-				value = new ValuesMap(new JSONObject(new String(valueBytes, CHARSET)));
+				value = readValuesMap(bbuf, length, binaryValues);
 			}
 			
 			length = bbuf.getInt();
@@ -528,6 +649,19 @@ public class ActiveMessage implements Message{
 		DelayProfiler.updateDelayNano("activeFromByte", t);
 	}
 	
+	private static ValuesMap readValuesMap(ByteBuffer bbuf, int length, boolean binaryValues) 
+			throws UnsupportedEncodingException, JSONException {
+		if(binaryValues){
+			ByteBuffer slice = bbuf.slice();
+			slice.limit(length);
+			bbuf.position(bbuf.position()+length);
+			return BinaryJSON.decode(slice, new ValuesMap());
+		}
+		byte[] valueBytes = new byte[length];
+		bbuf.get(valueBytes);
+		return new ValuesMap(new JSONObject(new String(valueBytes, CHARSET)));
+	}
+	
 	@Override
 	public String toString(){
 		
@@ -12,6 +12,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.json.JSONException;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import edu.umass.cs.gnsserver.activecode.ActiveCodeConfig;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage.Type;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Client;
@@ -47,9 +51,17 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	
 	private ConcurrentHashMap<Long, Monitor> tasks = new ConcurrentHashMap<Long, Monitor>();
 	
+	// the hash of each piece of code so it isn't hashed on every request
+	private final Cache<String, String> codeHashes = CacheBuilder.newBuilder()
+			.maximumSize(ActiveCodeConfig.activeCodeCacheSize).build();
+	// the hashes of the code the worker already has, requests for this code are sent without it
+	private final Cache<String, Boolean> workerCode = CacheBuilder.newBuilder()
+			.maximumSize(ActiveCodeConfig.activeCodeCacheSize).build();
+	
 	private Process workerProc;
 	final private int id;
 	final private boolean pipeEnable;
+	final private boolean mappedEnable;
 	
 	private final int heapSize;
 	
@@ -83,10 +95,25 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	 * @param heapSize 
 	 */
 	public ActiveNonBlockingClient(ActiveDBInterface app, String ifile, String ofile, int id, int workerNumThread, int heapSize){
+		this(app, ifile, ofile, id, workerNumThread, heapSize, ActiveCodeConfig.activeCodeMappedChannel);
+	}
+	
+	/**
+	 * @param app 
+	 * @param ifile
+	 * @param ofile
+	 * @param id 
+	 * @param workerNumThread 
+	 * @param heapSize 
+	 * @param mapped true to talk to the worker through memory mapped files
+	 * instead of named pipes
+	 */
+	public ActiveNonBlockingClient(ActiveDBInterface app, String ifile, String ofile, int id, int workerNumThread, int heapSize, boolean mapped){
 		this.id = id;
 		this.ifile = ifile;
 		this.ofile = ofile;
 		this.pipeEnable = true;
+		this.mappedEnable = mapped;
 		this.workerNumThread = workerNumThread;
 		this.heapSize = heapSize;
 		
@@ -108,6 +135,16 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	}
 	
 	private void initializeChannelAndStartWorker(){
+		if(mappedEnable){
+			// the files must be there before the worker opens them
+			try {
+				channel = new ActiveMappedChannel(ifile, ofile, true);
+				workerProc = startWorker(ofile, ifile, id);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
 		Runtime runtime = Runtime.getRuntime();
 		try {
 			runtime.exec("mkfifo "+ifile);
@@ -133,6 +170,7 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	 */
 	public ActiveNonBlockingClient(ActiveDBInterface app, int port, int serverPort, int id, int workerNumThread){
 		this.pipeEnable = false;
+		this.mappedEnable = false;
 		this.id = id;
 		this.workerNumThread = workerNumThread;
 		this.ifile = null;
@@ -180,12 +218,14 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 					long id = response.getId();
 					Monitor monitor = tasks.get(id);
 					assert(monitor != null):"the corresponding monitor is null!";
-					monitor.setResult(response, response.type == Type.RESPONSE);
+					monitor.setResult(response, response.type == Type.RESPONSE && !response.isCodeNotFound());
 				} else {
 					if(!isRestarting.getAndSet(true)){
 						// restart the worker
 						this.shutdown();
 						this.initializeChannelAndStartWorker();
+						// the new worker doesn't have any code yet
+						workerCode.invalidateAll();
 						// resend all the requests that failed
 						for(Monitor monitor:this.tasks.values()){
 							monitor.setResult(null, false);
@@ -220,7 +260,7 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	}
 	
 	/**
-	 * Create a worker with named pipe
+	 * Create a worker with named pipe or memory mapped files
 	 * @param ifile
 	 * @param ofile
 	 * @param id
@@ -242,6 +282,9 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	    command.add(""+id);
 	    command.add(""+workerNumThread);
 	    command.add(Boolean.toString(pipeEnable));
+	    command.add(""+ActiveCodeConfig.activeCodeCacheSize);
+	    command.add(""+ActiveCodeConfig.activeGuidContextCacheSize);
+	    command.add(Boolean.toString(mappedEnable));
 	    
 	    ProcessBuilder builder = new ProcessBuilder(command);
 		builder.directory(new File(System.getProperty("user.dir")));
@@ -276,6 +319,9 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	    command.add(""+id);
 	    command.add(""+workerNumThread);
 		command.add(Boolean.toString(pipeEnable));
+		command.add(""+ActiveCodeConfig.activeCodeCacheSize);
+		command.add(""+ActiveCodeConfig.activeGuidContextCacheSize);
+		command.add(Boolean.toString(mappedEnable));
 		
 	    ProcessBuilder builder = new ProcessBuilder(command);
 		builder.directory(new File(System.getProperty("user.dir")));
@@ -321,7 +367,10 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	
 	/**
 	 * This runCode method sends the request to worker, and
-	 * wait for worker to finish the request. If the worker
+	 * wait for worker to finish the request. The code is only sent
+	 * the first time, after that the request refers to it by its hash.
+	 * If the worker doesn't have the code any more it asks for it and
+	 * the request is resent with the code. If the worker
 	 * crashed during the request execution, this method
 	 * will resend the request to a new created worker, and
 	 * the new worker will execute this request again. 
@@ -344,7 +393,13 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 			String code, ValuesMap valuesMap, int ttl, long budget) throws ActiveException {
 		
 		long t1 = System.nanoTime();
-		ActiveMessage msg = new ActiveMessage(guid, field, code, valuesMap, ttl, budget);
+		String codeHash = codeHashes.getIfPresent(code);
+		if(codeHash == null){
+			codeHash = ActiveMessage.computeCodeHash(code);
+			codeHashes.put(code, codeHash);
+		}
+		boolean workerHasCode = workerCode.getIfPresent(codeHash) != null;
+		ActiveMessage msg = new ActiveMessage(guid, field, workerHasCode?null:code, codeHash, valuesMap, ttl, budget);
 		Monitor monitor = new Monitor();
 		tasks.put(msg.getId(), monitor);
 		
@@ -371,6 +426,11 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 					 *  It would work even for the query.
 					 */
 					sendMessage(msg);
+				} else if (response.isCodeNotFound()){
+					// the worker dropped the code, resend the request with it
+					workerCode.invalidate(codeHash);
+					msg = new ActiveMessage(Type.REQUEST, msg.getId(), ttl, budget, guid, field, code, codeHash, valuesMap, null, null);
+					sendMessage(msg);
 				} else if (response.type != Type.RESPONSE){
 					ActiveMessage result = queryHandler.handleQuery(response, header);
 					sendMessage(result);
@@ -382,6 +442,7 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 		if(response.getError() != null){
 			throw new ActiveException();
 		}
+		workerCode.put(codeHash, true);
 		counter.getAndIncrement();
 		tasks.remove(response.getId());		
 		DelayProfiler.updateDelayNano("activeGetResult", t2);
@@ -4,7 +4,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -12,6 +13,8 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
@@ -21,6 +24,10 @@ import javax.script.SimpleScriptContext;
 
 import org.json.JSONException;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import edu.umass.cs.gnsserver.activecode.ActiveCodeConfig;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
 import edu.umass.cs.gnsserver.utils.ValuesMap;
 
@@ -30,11 +37,58 @@ import edu.umass.cs.gnsserver.utils.ValuesMap;
  */
 public class ActiveRunner {
 	
+	/**
+	 * Thrown if a request refers to code by hash and this worker doesn't have the code.
+	 */
+	public static class CodeNotFoundException extends ScriptException {
+		private static final long serialVersionUID = 1L;
+		
+		CodeNotFoundException(String codeHash){
+			super("No code for hash "+codeHash);
+		}
+	}
+	
+	/**
+	 * The code this worker has received keyed by hash. It is shared by all the runners
+	 * in the worker because the next request for the same code can go to any of them.
+	 */
+	private static final Cache<String, String> code = CacheBuilder.newBuilder()
+			.maximumSize(ActiveCodeConfig.activeCodeCacheSize).build();
+	
+	/**
+	 * Code that starts with this directive, e.g. {@code "use serial";}, keeps state
+	 * in its globals between requests. Its requests for a guid run one at a time
+	 * and always on the same runner, so they all see the same context.
+	 */
+	public static final String SERIAL_DIRECTIVE = "use serial";
+	
 	private ScriptEngine engine;
 	private Invocable invocable;
+	private Compilable compilable;
 	
-	private final HashMap<String, ScriptContext> contexts = new HashMap<String, ScriptContext>();
-	private final HashMap<String, Integer> codeHashes = new HashMap<String, Integer>();
+	private final LinkedHashMap<String, CompiledScript> compiledScripts = new LinkedHashMap<String, CompiledScript>(16, 0.75f, true){
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+			return size() > ActiveCodeConfig.activeCodeCacheSize;
+		}
+	};
+	
+	private final LinkedHashMap<String, GuidContext> contexts = new LinkedHashMap<String, GuidContext>(16, 0.75f, true){
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, GuidContext> eldest) {
+			return size() > ActiveCodeConfig.activeGuidContextCacheSize;
+		}
+	};
+	
+	private static class GuidContext {
+		final ScriptContext context = new SimpleScriptContext();
+		// the hash of the code that was last evaluated in the context
+		String codeHash;
+	}
 	
 	private ActiveQuerier querier;
 	
@@ -47,27 +101,80 @@ public class ActiveRunner {
 		engine = new ScriptEngineManager().getEngineByName("nashorn");
 		
 		invocable = (Invocable) engine;
+		
+		compilable = (Compilable) engine;
 	}
 	
-	private void updateCache(String codeId, String code) throws ScriptException {
-	    if (!contexts.containsKey(codeId)) {
-	      // Create a context if one does not yet exist and eval the code
-	      ScriptContext sc = new SimpleScriptContext();
-	      contexts.put(codeId, sc);
-	      codeHashes.put(codeId, code.hashCode());
-	      engine.eval(code, sc);
-	    } else if ( codeHashes.get(codeId) != code.hashCode()) {
-	      // The context exists, but we need to eval the new code
-	      ScriptContext sc = contexts.get(codeId);
-	      codeHashes.put(codeId, code.hashCode());
-	      engine.eval(code, sc);
-	    }
+	/**
+	 * @param code the code, or null if the request only has its hash
+	 * @param codeHash
+	 * @return true if the code starts with {@link #SERIAL_DIRECTIVE}
+	 */
+	static boolean isSerial(String code, String codeHash){
+		if (code == null && codeHash != null){
+			code = ActiveRunner.code.getIfPresent(codeHash);
+		}
+		if (code == null){
+			return false;
+		}
+		String start = code.trim();
+		return start.startsWith("\""+SERIAL_DIRECTIVE+"\"") || start.startsWith("'"+SERIAL_DIRECTIVE+"'");
+	}
+	
+	private void updateCache(String guid, String code, String codeHash) throws ScriptException {
+		GuidContext gc = contexts.get(guid);
+		if (gc == null) {
+			// Create a context if one does not yet exist
+			gc = new GuidContext();
+			contexts.put(guid, gc);
+		}
+		if (!codeHash.equals(gc.codeHash)) {
+			// eval the new code in the context
+			getCompiledScript(code, codeHash).eval(gc.context);
+			gc.codeHash = codeHash;
+		}
+	}
+	
+	private CompiledScript getCompiledScript(String code, String codeHash) throws ScriptException {
+		CompiledScript compiled = compiledScripts.get(codeHash);
+		if (compiled == null) {
+			if (code == null) {
+				code = ActiveRunner.code.getIfPresent(codeHash);
+			}
+			if (code == null) {
+				throw new CodeNotFoundException(codeHash);
+			}
+			compiled = compilable.compile(code);
+			compiledScripts.put(codeHash, compiled);
+		}
+		return compiled;
+	}
+	
+	/**
+	 * @param guid
+	 * @param field
+	 * @param code
+	 * @param value
+	 * @param ttl
+	 * @param id 
+	 * @return ValuesMap result 
+	 * @throws ScriptException
+	 * @throws NoSuchMethodException
+	 */
+	public ValuesMap runCode(String guid, String field, String code, ValuesMap value, int ttl, long id) throws ScriptException, NoSuchMethodException {
+		return runCode(guid, field, code, null, value, ttl, id);
 	}
 	
 	/**
+	 * Runs the code identified by codeHash. The code can be null if it was
+	 * sent to this worker before, if this worker doesn't have it a 
+	 * {@link CodeNotFoundException} is thrown. If codeHash is null it is
+	 * computed from the code.
+	 * 
 	 * @param guid
 	 * @param field
 	 * @param code
+	 * @param codeHash
 	 * @param value
 	 * @param ttl
 	 * @param id 
@@ -75,9 +182,15 @@ public class ActiveRunner {
 	 * @throws ScriptException
 	 * @throws NoSuchMethodException
 	 */
-	public synchronized ValuesMap runCode(String guid, String field, String code, ValuesMap value, int ttl, long id) throws ScriptException, NoSuchMethodException {		
-		updateCache(guid, code);
-		engine.setContext(contexts.get(guid));
+	public synchronized ValuesMap runCode(String guid, String field, String code, String codeHash, ValuesMap value, int ttl, long id) throws ScriptException, NoSuchMethodException {
+		if (codeHash == null) {
+			codeHash = ActiveMessage.computeCodeHash(code);
+		}
+		if (code != null) {
+			ActiveRunner.code.put(codeHash, code);
+		}
+		updateCache(guid, code, codeHash);
+		engine.setContext(contexts.get(guid).context);
 		if(querier != null) querier.resetQuerier(guid, ttl, id);
 		ValuesMap valuesMap;
 		
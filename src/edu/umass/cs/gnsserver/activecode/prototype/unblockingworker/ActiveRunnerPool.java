@@ -0,0 +1,139 @@
+package edu.umass.cs.gnsserver.activecode.prototype.unblockingworker;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * The runners of a worker. Each runner has its own script engine and querier
+ * and runs one request at a time, so a request takes a runner out of the pool
+ * for as long as its code runs and the runners run in parallel.
+ *
+ * A request prefers the runner picked by the hash of its guid and takes any
+ * idle one if that runner is busy, instead of waiting behind it. Each runner
+ * keeps its own script context for a guid, so a guid that ran on more than one
+ * runner has more than one context and the globals its code sets in one of them
+ * are not seen in the others.
+ *
+ * Code that keeps state in its globals starts with {@link ActiveRunner#SERIAL_DIRECTIVE}.
+ * Its requests for a guid run one at a time on the runner picked by the hash of
+ * the guid: the pool queues the requests for a guid that is running, without
+ * holding a thread for them, and hands the guid to the next queued request when
+ * the running one is done with it.
+ *
+ * @author gaozy
+ *
+ */
+public class ActiveRunnerPool {
+
+	private final ActiveRunner[] runners;
+	private final boolean[] busy;
+	// guid -> the requests waiting for the running request of the guid, guarded by this like busy
+	private final HashMap<String, ArrayDeque<Runnable>> serialGuids = new HashMap<String, ArrayDeque<Runnable>>();
+
+	/**
+	 * @param runners
+	 */
+	public ActiveRunnerPool(ActiveRunner[] runners){
+		this.runners = runners;
+		busy = new boolean[runners.length];
+	}
+
+	/**
+	 * Takes a runner out of the pool, waits until deadline if the runners it can
+	 * take are busy. A serial request only takes the runner picked by the hash of
+	 * its guid.
+	 *
+	 * @param guid
+	 * @param serial
+	 * @param deadline in milliseconds since the epoch
+	 * @return the index of the runner, it must be given back with {@link #release(int)},
+	 * or -1 if the deadline passed first
+	 * @throws InterruptedException
+	 */
+	public synchronized int acquire(String guid, boolean serial, long deadline) throws InterruptedException {
+		int start = guid == null ? 0 : (guid.hashCode() & Integer.MAX_VALUE) % runners.length;
+		while (true){
+			for (int i=0; i < (serial ? 1 : runners.length); i++){
+				int index = (start+i)%runners.length;
+				if (!busy[index]){
+					busy[index] = true;
+					return index;
+				}
+			}
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0){
+				return -1;
+			}
+			wait(wait);
+		}
+	}
+
+	/**
+	 * @param index
+	 * @return the runner
+	 */
+	public ActiveRunner get(int index){
+		return runners[index];
+	}
+
+	/**
+	 * Gives a runner back to the pool.
+	 * @param index
+	 */
+	public synchronized void release(int index){
+		busy[index] = false;
+		notifyAll();
+	}
+
+	/**
+	 * Starts a serial request for guid if no other one is running,
+	 * queues it otherwise.
+	 *
+	 * @param guid
+	 * @param request run when the request is handed the guid
+	 * @return true if the request can run now, false if it was queued
+	 */
+	public synchronized boolean startSerial(String guid, Runnable request){
+		ArrayDeque<Runnable> waiting = serialGuids.get(guid);
+		if (waiting == null){
+			serialGuids.put(guid, new ArrayDeque<Runnable>());
+			return true;
+		}
+		waiting.add(request);
+		return false;
+	}
+
+	/**
+	 * Removes a queued serial request, e.g., because its budget ran out.
+	 *
+	 * @param guid
+	 * @param request
+	 * @return true if the request was still queued
+	 */
+	public synchronized boolean cancelSerial(String guid, Runnable request){
+		ArrayDeque<Runnable> waiting = serialGuids.get(guid);
+		return waiting != null && waiting.remove(request);
+	}
+
+	/**
+	 * Called by the running serial request of guid when it is done.
+	 *
+	 * @param guid
+	 * @return the queued request that now has the guid and has to be run, or null
+	 */
+	public synchronized Runnable finishSerial(String guid){
+		ArrayDeque<Runnable> waiting = serialGuids.get(guid);
+		Runnable next = waiting == null ? null : waiting.poll();
+		if (next == null){
+			serialGuids.remove(guid);
+		}
+		return next;
+	}
+
+	/**
+	 * @return the number of runners
+	 */
+	public int size(){
+		return runners.length;
+	}
+}
@@ -2,13 +2,17 @@ package edu.umass.cs.gnsserver.activecode.prototype.unblockingworker;
 
 import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.json.JSONException;
 
+import edu.umass.cs.gnsserver.activecode.ActiveCodeConfig;
+import edu.umass.cs.gnsserver.activecode.prototype.ActiveDatagramChannel;
+import edu.umass.cs.gnsserver.activecode.prototype.ActiveMappedChannel;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveNamedPipe;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage.Type;
@@ -21,16 +25,16 @@ import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
 public class ActiveWorker {
 	
 	
-	private final ActiveRunner[] runners;
+	private final ActiveRunnerPool runners;
 	
 	private final Channel channel;
 	private final int id;
-	private final int numThread;
 	
 	private final ThreadPoolExecutor executor;
 	private final ThreadPoolExecutor taskExecutor;
+	// fails the serial requests that are still queued when their budget runs out
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
 	private final ConcurrentHashMap<Long, ActiveRunner> map = new ConcurrentHashMap<Long, ActiveRunner>();
-	private final AtomicInteger counter = new AtomicInteger(0);	
 	
 	
 	
@@ -42,20 +46,29 @@ public class ActiveWorker {
 	 * @param numThread
 	 */
 	protected ActiveWorker(String ifile, String ofile, int id, int numThread) {
+		this(new ActiveNamedPipe(ifile, ofile), id, numThread);
+	}
+	
+	/**
+	 * Initialize a worker with a channel
+	 * @param channel
+	 * @param id 
+	 * @param numThread
+	 */
+	protected ActiveWorker(Channel channel, int id, int numThread) {
 		this.id = id;
-		this.numThread = numThread;
 		
 		executor = new ThreadPoolExecutor(numThread, numThread, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
 		executor.prestartAllCoreThreads();
 		taskExecutor = new ThreadPoolExecutor(numThread, numThread, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
 		taskExecutor.prestartAllCoreThreads();
 		
-		channel = new ActiveNamedPipe(ifile, ofile);
-		runners = new ActiveRunner[numThread];
-		
+		this.channel = channel;
+		ActiveRunner[] engines = new ActiveRunner[numThread];
 		for (int i=0; i<numThread; i++){
-			runners[i] = new ActiveRunner(new ActiveQuerier(channel));
-		}		
+			engines[i] = new ActiveRunner(new ActiveQuerier(channel));
+		}
+		runners = new ActiveRunnerPool(engines);
 
 		try {
 			runWorker();
@@ -63,6 +76,7 @@ public class ActiveWorker {
 			e.printStackTrace();
 			// close the channel and exit
 		}finally{
+			timer.shutdownNow();
 			channel.shutdown();
 		}
 		
@@ -70,16 +84,14 @@ public class ActiveWorker {
 
 	
 	private void runWorker() throws JSONException, IOException {	
-		while(!((ActiveNamedPipe) channel).getReady())
+		while(channel instanceof ActiveNamedPipe && !((ActiveNamedPipe) channel).getReady())
 			;
 		
 		ActiveMessage msg = null;
 		while(!Thread.currentThread().isInterrupted()){
 			if((msg = (ActiveMessage) channel.receiveMessage()) != null){
 				if(msg.type == Type.REQUEST){
-					ActiveRunner runner = runners[counter.getAndIncrement()%numThread];
-					map.put(msg.getId(), runner);
-					taskExecutor.submit(new ActiveWorkerSubmittedTask(executor, runner, msg, channel, map));
+					taskExecutor.submit(new ActiveWorkerSubmittedTask(taskExecutor, executor, timer, runners, msg, channel, map));
 					
 				} else if (msg.type == Type.RESPONSE ){
 					map.get(msg.getId()).release(msg);
@@ -102,13 +114,26 @@ public class ActiveWorker {
 	 */
 	public static void main(String[] args){
 		boolean pipeEnable = Boolean.parseBoolean(args[4]);
-		if(pipeEnable){
+		if(args.length > 6){
+			ActiveCodeConfig.activeCodeCacheSize = Integer.parseInt(args[5]);
+			ActiveCodeConfig.activeGuidContextCacheSize = Integer.parseInt(args[6]);
+		}
+		boolean mappedEnable = args.length > 7 && Boolean.parseBoolean(args[7]);
+		int id = Integer.parseInt(args[2]);
+		int numThread = Integer.parseInt(args[3]);
+		if(mappedEnable){
+			try {
+				new ActiveWorker(new ActiveMappedChannel(args[0], args[1], false), id, numThread);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		} else if(pipeEnable){
 			String cfile = args[0];
 			String sfile = args[1];
-			int id = Integer.parseInt(args[2]);
-			int numThread = Integer.parseInt(args[3]);
 			
 			new ActiveWorker(cfile, sfile, id, numThread);
+		} else {
+			new ActiveWorker(new ActiveDatagramChannel(Integer.parseInt(args[0]), Integer.parseInt(args[1])), id, numThread);
 		}
 	}
 }
@@ -4,55 +4,123 @@ import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
+import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 
 /**
+ * Runs a request on a runner of the pool and sends its response. The request's
+ * budget starts when the worker receives it, so the time it waits for its guid
+ * or for a runner is part of the budget.
+ *
  * @author gaozy
  *
  */
 public class ActiveWorkerSubmittedTask implements Runnable {
-	
+
+	final ThreadPoolExecutor taskExecutor;
 	final ThreadPoolExecutor executor;
-	final ActiveRunner runner;
+	final ScheduledExecutorService timer;
+	final ActiveRunnerPool runners;
 	final ActiveMessage request;
 	final Channel channel;
 	final ConcurrentHashMap<Long, ActiveRunner> map;
-	
-	ActiveWorkerSubmittedTask(ThreadPoolExecutor executor, ActiveRunner runner, ActiveMessage request, 
-			Channel channel, ConcurrentHashMap<Long, ActiveRunner> map){
+
+	final long deadline;
+	final boolean serial;
+	// true once this request has been handed its guid by the pool
+	private volatile boolean started = false;
+
+	ActiveWorkerSubmittedTask(ThreadPoolExecutor taskExecutor, ThreadPoolExecutor executor, ScheduledExecutorService timer,
+			ActiveRunnerPool runners, ActiveMessage request, Channel channel, ConcurrentHashMap<Long, ActiveRunner> map){
+		this.taskExecutor = taskExecutor;
 		this.executor = executor;
-		this.runner = runner;
+		this.timer = timer;
+		this.runners = runners;
 		this.request = request;
 		this.channel = channel;
 		this.map = map;
+		deadline = System.currentTimeMillis() + request.getBudget();
+		/*
+		 * A request with less than the default ttl was sent by code that is waiting for it,
+		 * maybe code of the same guid, so it doesn't wait for its guid or for that code's runner.
+		 */
+		serial = request.getGuid() != null && request.getTtl() >= InternalRequestHeader.DEFAULT_TTL
+				&& ActiveRunner.isSerial(request.getCode(), request.getCodeHash());
 	}
-	
+
 	@Override
 	public void run() {
+		if (serial && !started){
+			if (!runners.startSerial(request.getGuid(), this)){
+				// queued, the pool hands the guid over when the running request is done
+				timer.schedule(new Runnable(){
+					@Override
+					public void run() {
+						if (runners.cancelSerial(request.getGuid(), ActiveWorkerSubmittedTask.this)){
+							sendResponse(new ActiveMessage(request.getId(), null, "Budget ran out waiting for guid "+request.getGuid()));
+						}
+					}
+				}, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				return;
+			}
+			started = true;
+		}
+		try {
+			runCode();
+		} finally {
+			if (serial){
+				Runnable next = runners.finishSerial(request.getGuid());
+				if (next != null){
+					((ActiveWorkerSubmittedTask) next).started = true;
+					taskExecutor.submit(next);
+				}
+			}
+		}
+	}
+
+	private void runCode() {
 		ActiveMessage response = null;
-		long timeout = request.getBudget();
-		
-		Future<ActiveMessage> future = executor.submit(new ActiveWorkerTask(runner, request));
-		
+
+		int index;
 		try {
-			response = future.get(timeout, TimeUnit.MILLISECONDS);
+			index = runners.acquire(request.getGuid(), serial, deadline);
+		} catch (InterruptedException e) {
+			return;
+		}
+		if (index == -1){
+			sendResponse(new ActiveMessage(request.getId(), null, "Budget ran out waiting for a runner"));
+			return;
+		}
+		ActiveRunner runner = runners.get(index);
+		// responses to the queries sent by the code go to the runner's querier
+		map.put(request.getId(), runner);
+		// the runner goes back to the pool when its code is done, not when it times out
+		Future<ActiveMessage> future = executor.submit(new ActiveWorkerTask(runners, index, request));
+
+		try {
+			response = future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
 		} catch (InterruptedException | ExecutionException | TimeoutException e) {
 			// return an error
 			runner.release(null);
-			response = new ActiveMessage(request.getId(), null, e.getMessage());			
+			response = new ActiveMessage(request.getId(), null, e.getMessage());
 		}
-		
+
+		sendResponse(response);
+		map.remove(request.getId());
+	}
+
+	private void sendResponse(ActiveMessage response) {
 		try {
 			channel.sendMessage(response);
 		} catch (IOException e) {
 			throw new RuntimeException();
 		}
-		map.remove(request.getId());		
 	}
 
 }
@@ -15,11 +15,13 @@ import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
  */
 public class ActiveWorkerTask implements Callable<ActiveMessage>  {
 	
-	final ActiveRunner runner;
+	final ActiveRunnerPool runners;
+	final int index;
 	final ActiveMessage request;
 	
-	ActiveWorkerTask(ActiveRunner runner, ActiveMessage request){
-		this.runner = runner;
+	ActiveWorkerTask(ActiveRunnerPool runners, int index, ActiveMessage request){
+		this.runners = runners;
+		this.index = index;
 		this.request = request;
 	}
 		
@@ -28,10 +30,16 @@ public class ActiveWorkerTask implements Callable<ActiveMessage>  {
 		ActiveMessage response = null;
 		try {
 			response = new ActiveMessage(request.getId(), 
-					runner.runCode(request.getGuid(), request.getField(), request.getCode(), request.getValue(), request.getTtl(), request.getId()),
+					runners.get(index).runCode(request.getGuid(), request.getField(), request.getCode(), request.getCodeHash(), 
+							request.getValue(), request.getTtl(), request.getId()),
 					null);
+		} catch (ActiveRunner.CodeNotFoundException e) {
+			// ask the client to send the code
+			response = new ActiveMessage(request.getId(), null, ActiveMessage.CODE_NOT_FOUND);
 		} catch (NoSuchMethodException | ScriptException e) {
 			response = new ActiveMessage(request.getId(), null, e.getMessage());
+		} finally {
+			runners.release(index);
 		}
 
 		return response;
@@ -0,0 +1,58 @@
+package edu.umass.cs.gnsserver.activecode.prototype.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gnscommon.utils.TaggedValues;
+
+/**
+ * A binary encoding of JSON values for sending ValuesMaps to and from
+ * the workers, the binary form of {@link TaggedValues}. Objects and arrays
+ * are prefixed with their number of entries so reading it back doesn't need
+ * to tokenize any text, which is where most of the time of
+ * {@code new JSONObject(String)} goes.
+ *
+ * @author gaozy
+ *
+ */
+public class BinaryJSON {
+
+	/**
+	 * @param json
+	 * @return the encoded object
+	 * @throws JSONException
+	 */
+	public static byte[] encode(JSONObject json) throws JSONException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			TaggedValues.writeValue(out, json, false);
+			out.flush();
+		} catch (IOException e) {
+			// a ByteArrayOutputStream doesn't throw
+			throw new JSONException(e.getMessage());
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads an object written by {@link #encode(JSONObject)} into target.
+	 *
+	 * @param bbuf
+	 * @param target
+	 * @return target
+	 * @throws JSONException
+	 */
+	public static <T extends JSONObject> T decode(ByteBuffer bbuf, T target) throws JSONException {
+		if(bbuf.get() != TaggedValues.OBJECT){
+			throw new JSONException("Not an encoded JSONObject");
+		}
+		TaggedValues.readObject(bbuf, target);
+		return target;
+	}
+}
@@ -0,0 +1,298 @@
+package edu.umass.cs.gnsserver.activecode.prototype.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A ring buffer in a memory mapped file, written by one process and read by another.
+ *
+ * <p>The file starts with a header holding the number of bytes written so far
+ * (the tail), the number of bytes read so far (the head) and a few flags,
+ * each on its own cache line. Records follow the header, each one is its length
+ * and its bytes padded to 4 bytes. If a record doesn't fit before the end of
+ * the file a length of -1 tells the reader to go back to the start.
+ *
+ * <p>The reader and the writer don't signal each other. Waiting for a record
+ * or for room spins for a bit, then yields, then sleeps for a little longer each
+ * time up to {@link #MAX_PARK_NANOS}, so a busy ring is drained without any
+ * system call and one wakeup of an idle reader picks up everything written
+ * while it slept. A writer waits while the ring is full, so a slow reader
+ * slows the writer down instead of the ring growing.
+ *
+ * <p>The reader holds a lock on one byte of the header while it is open. If it
+ * had opened the ring and the lock can be taken, the reader process is gone.
+ *
+ * @author gaozy
+ *
+ */
+public class MappedRing {
+
+	/**
+	 * The default size of the ring, not counting the header.
+	 */
+	public final static int DEFAULT_CAPACITY = 4*1024*1024;
+
+	/**
+	 * The longest a waiting reader or writer sleeps before checking again.
+	 */
+	public final static long MAX_PARK_NANOS = 1000000;
+
+	private final static int TAIL = 0;
+	private final static int HEAD = 64;
+	private final static int CONNECTED = 128;
+	private final static int CLOSED = 132;
+	private final static int LOCK = 136;
+	private final static int HEADER_LENGTH = 192;
+
+	private static final Logger LOGGER = Logger.getLogger(MappedRing.class.getName());
+
+	private final static int WRAP = -1;
+	private final static int SPINS = 1000;
+	private final static int YIELDS = 100;
+	
+	/**
+	 * The number of calls to {@link #idle(int)} before it starts to sleep.
+	 */
+	public final static int BUSY_WAITS = SPINS + YIELDS;
+
+	private final RandomAccessFile file;
+	private final FileChannel fileChannel;
+	private final MappedByteBuffer ring;
+	private final int capacity;
+	private FileLock readerLock;
+
+	/*
+	 * The mapped buffer is read and written with plain loads and stores, in native
+	 * byte order so that an aligned position is a single load or store. Nothing in
+	 * this Java version gives acquire or release accesses to mapped memory, so the
+	 * positions are fenced with a volatile store followed by a volatile load of
+	 * fence: no load or store before that pair can be done after it and none after
+	 * it before it. A position is published after such a fence and read before one,
+	 * so a side that sees a position also sees the records before it.
+	 */
+	private volatile int fence;
+
+	// only used by the writer, under the monitor of this object
+	private long tail;
+	// only used by the reader
+	private long head;
+	private long publishedHead;
+
+	/**
+	 * Opens the ring in the given file. The side that creates the file must do it
+	 * before the other side opens it.
+	 *
+	 * @param path
+	 * @param capacity the size of the ring, a multiple of 4, ignored unless create is true
+	 * @param create true to create the file or clear an existing one
+	 * @throws IOException
+	 */
+	public MappedRing(String path, int capacity, boolean create) throws IOException {
+		File f = new File(path);
+		if(create){
+			f.delete();
+		}
+		file = new RandomAccessFile(f, "rw");
+		if(create){
+			file.setLength(HEADER_LENGTH + (capacity & ~3));
+		}
+		fileChannel = file.getChannel();
+		this.capacity = (int) (fileChannel.size() - HEADER_LENGTH);
+		if(this.capacity <= 0){
+			file.close();
+			throw new IOException("Ring "+path+" has not been created");
+		}
+		ring = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileChannel.size());
+		ring.order(ByteOrder.nativeOrder());
+		tail = readPosition(TAIL);
+		head = readPosition(HEAD);
+		publishedHead = head;
+	}
+
+	/**
+	 * Called by the side that reads from this ring, so the writer can tell if
+	 * the reader goes away.
+	 *
+	 * @throws IOException
+	 */
+	public void openForReading() throws IOException {
+		readerLock = fileChannel.lock(LOCK, 1, false);
+		ring.putInt(CONNECTED, 1);
+		fence();
+	}
+
+	/**
+	 * A record can take up to half the ring, so a record that has to skip
+	 * the end of the ring still fits once the ring is empty.
+	 * 
+	 * @return the size of the largest record that fits in this ring
+	 */
+	public int maxRecordSize(){
+		return (capacity/2 & ~3) - Integer.BYTES;
+	}
+
+	/**
+	 * Writes a record, waiting while the ring doesn't have room for it.
+	 *
+	 * @param data
+	 * @throws IOException if the ring is closed, the reader is gone,
+	 * or the record doesn't fit in the ring
+	 */
+	public synchronized void write(byte[] data) throws IOException {
+		if(data.length > maxRecordSize()){
+			throw new IOException("Record of "+data.length+" bytes is too large for a ring of "+capacity);
+		}
+		int length = align(Integer.BYTES + data.length);
+		int pos = (int) (tail % capacity);
+		int skip = capacity - pos < length ? capacity - pos : 0;
+
+		int idle = 0;
+		while(tail + skip + length - readPosition(HEAD) > capacity){
+			if(isClosed()){
+				throw new IOException("Ring is closed");
+			}
+			idle = idle(idle);
+			if(idle > BUSY_WAITS && !isPeerAlive()){
+				throw new IOException("Reader is gone");
+			}
+		}
+		if(skip > 0){
+			ring.putInt(HEADER_LENGTH + pos, WRAP);
+			pos = 0;
+		}
+		ring.putInt(HEADER_LENGTH + pos, data.length);
+		ByteBuffer view = ring.duplicate();
+		view.position(HEADER_LENGTH + pos + Integer.BYTES);
+		view.put(data);
+		tail += skip + length;
+		publish(TAIL, tail);
+	}
+
+	/**
+	 * Takes the next record if there is one. Only one thread may read a ring.
+	 * The returned buffer is a view of the ring and must be used before
+	 * the next poll.
+	 *
+	 * @return the record, or null if the ring is empty
+	 */
+	public ByteBuffer poll() {
+		// give back the room of the previous record
+		if(head != publishedHead){
+			publish(HEAD, head);
+			publishedHead = head;
+		}
+		while(readPosition(TAIL) != head){
+			int pos = (int) (head % capacity);
+			int length = ring.getInt(HEADER_LENGTH + pos);
+			if(length == WRAP){
+				head += capacity - pos;
+				continue;
+			}
+			ByteBuffer record = ring.duplicate();
+			record.position(HEADER_LENGTH + pos + Integer.BYTES);
+			record.limit(HEADER_LENGTH + pos + Integer.BYTES + length);
+			head += align(Integer.BYTES + length);
+			return record.slice();
+		}
+		return null;
+	}
+
+	/**
+	 * Checks whether the reader of this ring is still there. A reader can check on
+	 * its writer with the ring going the other way.
+	 *
+	 * @return false if the reader of this ring opened it and has gone away since
+	 */
+	public boolean isPeerAlive(){
+		if(ring.getInt(CONNECTED) == 0){
+			return true;
+		}
+		try {
+			FileLock lock = fileChannel.tryLock(LOCK, 1, false);
+			if(lock == null){
+				return true;
+			}
+			lock.release();
+			return false;
+		} catch (OverlappingFileLockException e) {
+			// the reader is in this process
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return true if either side closed the ring
+	 */
+	public boolean isClosed(){
+		return ring.getInt(CLOSED) != 0;
+	}
+
+	/**
+	 * Closes the ring for both sides and the file, the file itself is not deleted.
+	 */
+	public void close(){
+		ring.putInt(CLOSED, 1);
+		fence();
+		try {
+			if(readerLock != null){
+				readerLock.release();
+			}
+			file.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Unable to close ring", e);
+		}
+	}
+
+	private long readPosition(int offset){
+		long position = ring.getLong(offset);
+		// the loads of the records after this can't be done before the load of the position
+		fence();
+		return position;
+	}
+
+	private void publish(int offset, long position){
+		// the stores of the records before this can't be done after the store of the position
+		fence();
+		ring.putLong(offset, position);
+	}
+
+	private void fence(){
+		fence = 0;
+		@SuppressWarnings("unused")
+		int f = fence;
+	}
+
+	private static int align(int length){
+		return (length + 3) & ~3;
+	}
+
+	/**
+	 * Waits a little while for the other side, longer the more times it has
+	 * been called in a row.
+	 * 
+	 * @param idle the number of times it was called since the last record
+	 * @return idle + 1
+	 */
+	public static int idle(int idle){
+		if(idle < SPINS){
+			// spin
+		} else if(idle < SPINS + YIELDS){
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(10, idle - SPINS - YIELDS)));
+		}
+		return idle + 1;
+	}
+}
@@ -34,6 +34,7 @@ import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.utils.ValuesMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -310,6 +311,11 @@ public class CassandraRecords implements NoSQLRecords {
     throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
   }
 
+  @Override
+  public Map<String, HashMap<ColumnField, Object>> lookupSomeFieldsMultiple(String collectionName, Collection<String> guids, ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys) throws FailedDBOperationException {
+    throw new UnsupportedOperationException("Not supported yet.");
+  }
+
   @Override
   public void updateEntireRecord(String collection, String name, ValuesMap valuesMap) {
     throw new UnsupportedOperationException("Not supported yet.");
@@ -331,22 +337,26 @@ public class CassandraRecords implements NoSQLRecords {
   }
 
   @Override
-  public AbstractRecordCursor selectRecords(String collectionName, ColumnField valuesMapField, String key, Object value) {
+  public AbstractRecordCursor selectRecords(String collectionName, ColumnField valuesMapField, String key, Object value,
+          ArrayList<ColumnField> fields) {
     throw new UnsupportedOperationException("Not supported yet.");
   }
 
   @Override
-  public AbstractRecordCursor selectRecordsWithin(String collectionName, ColumnField valuesMapField, String key, String value) {
+  public AbstractRecordCursor selectRecordsWithin(String collectionName, ColumnField valuesMapField, String key, String value,
+          ArrayList<ColumnField> fields) {
     throw new UnsupportedOperationException("Not supported yet.");
   }
 
   @Override
-  public AbstractRecordCursor selectRecordsNear(String collectionName, ColumnField valuesMapField, String key, String value, Double maxDistance) {
+  public AbstractRecordCursor selectRecordsNear(String collectionName, ColumnField valuesMapField, String key, String value, Double maxDistance,
+          ArrayList<ColumnField> fields) {
     throw new UnsupportedOperationException("Not supported yet.");
   }
 
   @Override
-  public AbstractRecordCursor selectRecordsQuery(String collectionName, ColumnField valuesMapField, String query) {
+  public AbstractRecordCursor selectRecordsQuery(String collectionName, ColumnField valuesMapField, String query,
+          ArrayList<ColumnField> fields) {
     throw new UnsupportedOperationException("Not supported yet.");
   }
 
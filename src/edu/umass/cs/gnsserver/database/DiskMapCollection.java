@@ -16,12 +16,20 @@ import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DiskMap;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.logging.Level;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.google.common.util.concurrent.Striped;
+
 /**
  * Implements a "collection" (in the sense of mongo) of records whose
  * primary database is a DiskMap with Mongo as the backup for when we
@@ -34,8 +42,32 @@ import org.json.JSONObject;
  */
 public class DiskMapCollection {
 
+  /**
+   * Marks a record that has been removed from the map but whose removal
+   * has not been committed to mongo yet.
+   */
+  static final Object REMOVED = new Object();
+
+  private static final int LOCK_STRIPES = 1024;
+
+  private static final class Write {
+
+    // the record or REMOVED
+    private final Object value;
+
+    private Write(Object value) {
+      this.value = value;
+    }
+  }
+
   private DiskMap<String, JSONObject> map;
   private MongoRecords mongoRecords;
+  // Records that have been written to the map but not yet committed to mongo.
+  // Each write gets its own Write so that a commit can clear exactly the write
+  // it saw, even though records are changed in place.
+  private final ConcurrentHashMap<String, Write> dirty = new ConcurrentHashMap<>();
+  // Guards in place changes to records, see getLock.
+  private final Striped<ReadWriteLock> locks = Striped.readWriteLock(LOCK_STRIPES);
 
   /**
    * Create a DiskMapCollection name collection on a given nodeID.
@@ -64,12 +96,33 @@ public class DiskMapCollection {
     	Long.MAX_VALUE) {
       @Override
       public Set<String> commit(Map<String, JSONObject> toCommit) throws IOException {
+        // Records can be changed in place while we write them so write copies.
+        // Records that are being changed right now are left for the next commit,
+        // never wait for a lock here because the map can commit from inside a put.
+        // Use DiskMapCollection.commit() to commit everything.
+        Map<String, JSONObject> snapshot = new HashMap<>();
+        Map<String, Write> writes = new HashMap<>();
+        for (Map.Entry<String, JSONObject> entry : toCommit.entrySet()) {
+          Lock lock = getLock(entry.getKey()).readLock();
+          if (!lock.tryLock()) {
+            continue;
+          }
+          try {
+            snapshot.put(entry.getKey(), entry.getValue() != null
+                    ? DiskMapRecords.recursiveCopyJSONObject(entry.getValue()) : null);
+            writes.put(entry.getKey(), dirty.get(entry.getKey()));
+          } catch (JSONException e) {
+            throw new IOException(e);
+          } finally {
+            lock.unlock();
+          }
+        }
         try {
-        	mongoRecords.bulkUpdate(DBNAMERECORD, toCommit);
+          write(snapshot, writes);
         } catch (FailedDBOperationException | RecordExistsException e) {
           throw new IOException(e);
         }
-        return toCommit.keySet();
+        return snapshot.keySet();
       }
 
       @Override
@@ -88,6 +141,54 @@ public class DiskMapCollection {
     };
   }
 
+  /**
+   * Writes every record that hasn't been committed to mongo yet, waiting for
+   * the ones that are being changed. Commits the map starts itself skip those
+   * instead, so call this when mongo has to have all the records, e.g., before
+   * a query that only mongo can answer.
+   */
+  public void commit() {
+    Map<String, JSONObject> snapshot = new HashMap<>();
+    Map<String, Write> writes = new HashMap<>();
+    for (String name : dirty.keySet()) {
+      Lock lock = getLock(name).readLock();
+      lock.lock();
+      try {
+        Write write = dirty.get(name);
+        if (write == null) {
+          continue;
+        }
+        snapshot.put(name, write.value instanceof JSONObject
+                ? DiskMapRecords.recursiveCopyJSONObject((JSONObject) write.value) : null);
+        writes.put(name, write);
+      } catch (JSONException e) {
+        GNSConfig.getLogger().log(Level.SEVERE, "Unable to copy {0} for commit: {1}",
+                new Object[]{name, e});
+      } finally {
+        lock.unlock();
+      }
+    }
+    if (snapshot.isEmpty()) {
+      return;
+    }
+    try {
+      write(snapshot, writes);
+    } catch (FailedDBOperationException | RecordExistsException e) {
+      GNSConfig.getLogger().log(Level.SEVERE, "Unable to commit to mongo: {0}", e);
+    }
+  }
+
+  private void write(Map<String, JSONObject> snapshot, Map<String, Write> writes)
+          throws FailedDBOperationException, RecordExistsException {
+    mongoRecords.bulkUpdate(DBNAMERECORD, snapshot);
+    // only forget records that haven't been written again since the copy was made
+    for (Map.Entry<String, Write> entry : writes.entrySet()) {
+      if (entry.getValue() != null) {
+        dirty.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
   /**
    * 
    * @return the diskmap
@@ -104,4 +205,65 @@ public class DiskMapCollection {
     return mongoRecords;
   }
 
+  /**
+   * Returns the lock that guards the named record. Records in the map are
+   * modified in place so hold the read lock while reading a record from the
+   * map and the write lock while changing one.
+   *
+   * @param name
+   * @return the lock for the record
+   */
+  public ReadWriteLock getLock(String name) {
+    return locks.get(name);
+  }
+
+  /**
+   * Puts the value in the map and remembers it as not yet committed.
+   * Also call this after changing a record in place so that it gets committed.
+   *
+   * @param name
+   * @param value
+   */
+  public void put(String name, JSONObject value) {
+    Lock lock = getLock(name).writeLock();
+    lock.lock();
+    try {
+      // mark first so a commit that races with the put can't clear this write
+      dirty.put(name, new Write(value));
+      map.put(name, value);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes the value from the map and remembers the removal as not yet committed.
+   *
+   * @param name
+   */
+  public void remove(String name) {
+    Lock lock = getLock(name).writeLock();
+    lock.lock();
+    try {
+      dirty.put(name, new Write(REMOVED));
+      map.remove(name);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns a snapshot of the records that are in the map but not yet in mongo.
+   * Values are either the record or {@link #REMOVED}.
+   *
+   * @return a map of names to uncommitted values
+   */
+  public Map<String, Object> getUncommitted() {
+    Map<String, Object> uncommitted = new HashMap<>();
+    for (Map.Entry<String, Write> entry : dirty.entrySet()) {
+      uncommitted.put(entry.getKey(), entry.getValue().value);
+    }
+    return uncommitted;
+  }
+
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2016
+ * University of Massachusetts
+ * All Rights Reserved
+ *
+ * Initial developer(s): Westy.
+ */
+package edu.umass.cs.gnsserver.database;
+
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A cursor that merges the results of a mongo query over the committed
+ * records of a {@link DiskMapCollection} with the uncommitted records
+ * that are still only in the DiskMap.
+ *
+ * Mongo rows whose name is uncommitted are skipped because the copy in mongo
+ * is stale (or deleted). The uncommitted records are then checked against
+ * the same query using a {@link RecordFilter} and returned if they match.
+ * For queries that mongo returns in order, like $near, the filter is an
+ * {@link OrderedRecordFilter} and the uncommitted records that match are merged
+ * into the mongo rows in that order.
+ *
+ * @author westy
+ */
+public class DiskMapRecordCursor extends AbstractRecordCursor {
+
+  /**
+   * Evaluates a select query against a single in-memory record.
+   */
+  public interface RecordFilter {
+
+    /**
+     * Returns true if the record would be returned by the corresponding mongo query.
+     *
+     * @param record
+     * @return true if the record matches
+     */
+    public boolean matches(JSONObject record);
+  }
+
+  /**
+   * A {@link RecordFilter} for a query whose results mongo returns in order.
+   */
+  public interface OrderedRecordFilter extends RecordFilter {
+
+    /**
+     * Returns the value the query orders records by, smallest first. The mongo
+     * rows must include the fields this needs.
+     *
+     * @param record
+     * @return the value
+     */
+    public double orderOf(JSONObject record);
+  }
+
+  private static class OrderedRecord {
+
+    private final JSONObject record;
+    private final double order;
+
+    OrderedRecord(JSONObject record, double order) {
+      this.record = record;
+      this.order = order;
+    }
+  }
+
+  private final AbstractRecordCursor mongoCursor;
+  private final Map<String, Object> uncommitted;
+  private final Iterator<Map.Entry<String, Object>> uncommittedIterator;
+  private final RecordFilter filter;
+  private final OrderedRecordFilter order;
+  private final DiskMapCollection collection;
+  private final ArrayList<ColumnField> fields;
+  private JSONObject next = null;
+  // only used when the filter is ordered
+  private ArrayDeque<OrderedRecord> orderedMatches = null;
+  private OrderedRecord committedNext = null;
+
+  /**
+   * @param mongoCursor a cursor over the committed records
+   * @param uncommitted a snapshot of the uncommitted records
+   * @param filter the query evaluated against the uncommitted records
+   * @param collection the collection the uncommitted records live in; records are updated
+   * in place so each one is read under the collection's lock for that name
+   * @param fields the fields returned for each record, or null for all of them;
+   * should be the same fields the mongo cursor was projected on, except that
+   * the mongo rows of an ordered query also have what the filter orders by
+   */
+  public DiskMapRecordCursor(AbstractRecordCursor mongoCursor, Map<String, Object> uncommitted,
+          RecordFilter filter, DiskMapCollection collection, ArrayList<ColumnField> fields) {
+    this.mongoCursor = mongoCursor;
+    this.uncommitted = uncommitted;
+    this.uncommittedIterator = uncommitted.entrySet().iterator();
+    this.filter = filter;
+    this.order = filter instanceof OrderedRecordFilter ? (OrderedRecordFilter) filter : null;
+    this.collection = collection;
+    this.fields = fields;
+  }
+
+  @Override
+  public boolean hasNext() throws FailedDBOperationException {
+    return next != null || (next = advance()) != null;
+  }
+
+  @Override
+  public JSONObject nextJSONObject() throws FailedDBOperationException {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    JSONObject result = next;
+    next = null;
+    return result;
+  }
+
+  private JSONObject advance() throws FailedDBOperationException {
+    if (order != null) {
+      return advanceInOrder();
+    }
+    JSONObject record = nextCommitted();
+    if (record != null) {
+      return record;
+    }
+    OrderedRecord match = nextUncommittedMatch();
+    return match != null ? match.record : null;
+  }
+
+  // merges the mongo rows, which are already in order, with the sorted uncommitted matches
+  private JSONObject advanceInOrder() throws FailedDBOperationException {
+    if (orderedMatches == null) {
+      List<OrderedRecord> matches = new ArrayList<>();
+      OrderedRecord match;
+      while ((match = nextUncommittedMatch()) != null) {
+        matches.add(match);
+      }
+      Collections.sort(matches, new Comparator<OrderedRecord>() {
+        @Override
+        public int compare(OrderedRecord first, OrderedRecord second) {
+          return Double.compare(first.order, second.order);
+        }
+      });
+      orderedMatches = new ArrayDeque<>(matches);
+    }
+    if (committedNext == null) {
+      JSONObject record = nextCommitted();
+      if (record != null) {
+        try {
+          committedNext = new OrderedRecord(fields == null ? record : project(record), order.orderOf(record));
+        } catch (JSONException e) {
+          throw new FailedDBOperationException(null, null, "Unable to project json record");
+        }
+      }
+    }
+    OrderedRecord match = orderedMatches.peek();
+    if (committedNext != null && (match == null || committedNext.order <= match.order)) {
+      JSONObject record = committedNext.record;
+      committedNext = null;
+      return record;
+    }
+    return match != null ? orderedMatches.poll().record : null;
+  }
+
+  private JSONObject nextCommitted() throws FailedDBOperationException {
+    while (mongoCursor.hasNext()) {
+      JSONObject record = mongoCursor.nextJSONObject();
+      if (!uncommitted.containsKey(record.optString(NameRecord.NAME.getName(), null))) {
+        return record;
+      }
+    }
+    return null;
+  }
+
+  private OrderedRecord nextUncommittedMatch() throws FailedDBOperationException {
+    while (uncommittedIterator.hasNext()) {
+      Map.Entry<String, Object> entry = uncommittedIterator.next();
+      if (entry.getValue() != DiskMapCollection.REMOVED) {
+        OrderedRecord match = matchAndCopy(entry.getKey(), (JSONObject) entry.getValue());
+        if (match != null) {
+          return match;
+        }
+      }
+    }
+    return null;
+  }
+
+  private OrderedRecord matchAndCopy(String name, JSONObject value) throws FailedDBOperationException {
+    Lock lock = collection != null ? collection.getLock(name).readLock() : null;
+    if (lock != null) {
+      lock.lock();
+    }
+    try {
+      if (filter.matches(value)) {
+        // don't hand out the instance that is in the map
+        return new OrderedRecord(DiskMapRecords.recursiveCopyJSONObject(fields == null ? value : project(value)),
+                order != null ? order.orderOf(value) : 0);
+      }
+      return null;
+    } catch (JSONException e) {
+      throw new FailedDBOperationException(null, null, "Unable to copy json record");
+    } finally {
+      if (lock != null) {
+        lock.unlock();
+      }
+    }
+  }
+
+  private JSONObject project(JSONObject value) throws JSONException {
+    JSONObject projected = new JSONObject();
+    for (ColumnField field : fields) {
+      Object fieldValue = value.opt(field.getName());
+      if (fieldValue != null) {
+        projected.put(field.getName(), fieldValue);
+      }
+    }
+    return projected;
+  }
+}
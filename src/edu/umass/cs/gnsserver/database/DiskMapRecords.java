@@ -12,18 +12,22 @@ import com.mongodb.util.JSON;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
-import edu.umass.cs.gnscommon.utils.JSONDotNotation;
+import edu.umass.cs.gnscommon.utils.FieldPath;
 import static edu.umass.cs.gnsserver.database.MongoRecords.DBNAMERECORD;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnsserver.utils.JSONUtils;
 import edu.umass.cs.gnsserver.utils.ValuesMap;
+import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DiskMap;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 
 import java.util.logging.Logger;
@@ -96,21 +100,25 @@ public class DiskMapRecords implements NoSQLRecords {
   @Override
   public void insert(String collection, String name, JSONObject value)
           throws FailedDBOperationException, RecordExistsException {
-    getMap(collection).put(name, value);
+    getCollection(collection).put(name, value);
   }
 
   @Override
   public JSONObject lookupEntireRecord(String collection, String name)
           throws FailedDBOperationException, RecordNotFoundException {
-    JSONObject record;
-    if ((record = getMap(collection).get(name)) == null) {
-      throw new RecordNotFoundException(name);
-    }
+    Lock lock = getCollection(collection).getLock(name).readLock();
+    lock.lock();
     try {
+      JSONObject record;
+      if ((record = getMap(collection).get(name)) == null) {
+        throw new RecordNotFoundException(name);
+      }
       // Make a new object to make sure there aren't any DBObjects lurking in here
       return recursiveCopyJSONObject(record); //copyJsonObject(record);
     } catch (JSONException e) {
       throw new FailedDBOperationException(collection, name, "Unable to parse json record");
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -198,34 +206,67 @@ public class DiskMapRecords implements NoSQLRecords {
           ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys)
           throws RecordNotFoundException, FailedDBOperationException {
 
-    JSONObject record = lookupEntireRecord(collection, name);
-//    LOGGER.log(Level.FINE, "Full record " + record.toString());
+    // Don't copy the entire record, only the subtrees of the keys that were asked for.
+    // Records are changed in place so hold the read lock while we look.
+    Lock lock = getCollection(collection).getLock(name).readLock();
+    lock.lock();
+    try {
+      return projectFields(getMap(collection).get(name), name, nameField, valuesMapField, valuesMapKeys);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Map<String, HashMap<ColumnField, Object>> lookupSomeFieldsMultiple(String collection,
+          Collection<String> names, ColumnField nameField, ColumnField valuesMapField,
+          ArrayList<ColumnField> valuesMapKeys) throws FailedDBOperationException {
+    // Nothing to batch here, the records are in memory or one disk read away.
+    Map<String, HashMap<ColumnField, Object>> result = new HashMap<>();
+    for (String name : names) {
+      try {
+        result.put(name, lookupSomeFields(collection, name, nameField, valuesMapField, valuesMapKeys));
+      } catch (RecordNotFoundException e) {
+        // left out of the result
+      }
+    }
+    return result;
+  }
+
+  private HashMap<ColumnField, Object> projectFields(JSONObject record, String name,
+          ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys)
+          throws RecordNotFoundException {
+    if (record == null) {
+      throw new RecordNotFoundException(name);
+    }
     HashMap<ColumnField, Object> hashMap = new HashMap<>();
     hashMap.put(nameField, name);
     if (valuesMapField != null && valuesMapKeys != null) {
       try {
-        JSONObject readValuesMap = record.getJSONObject(valuesMapField.getName());
-//        LOGGER.log(Level.FINE, "Read valuesMap " + readValuesMap.toString());
+        Object readValuesMap = getRawPathValue(record, valuesMapField.getName());
+        if (readValuesMap == null) {
+          throw new JSONException(valuesMapField.getName() + " not found");
+        }
         ValuesMap valuesMapOut = new ValuesMap();
         for (int i = 0; i < valuesMapKeys.size(); i++) {
           String userKey = valuesMapKeys.get(i).getName();
-          if (JSONDotNotation.containsFieldDotNotation(userKey, readValuesMap) == false) {
+          Object value = getRawPathValue(readValuesMap, userKey);
+          if (value == null) {
 //            LOGGER.fine("valuesMap doesn't contain " + userKey);
             continue;
           }
           try {
             switch (valuesMapKeys.get(i).type()) {
               case USER_JSON:
-                Object value = JSONDotNotation.getWithDotNotation(userKey, readValuesMap);
+                value = recursiveCopyObject(value);
                 LOGGER.log(Level.FINE,
-                        "Object is {0}", new Object[]{value.toString()});
+                        "Object is {0}", new Object[]{value});
                 valuesMapOut.put(userKey, value);
                 break;
               case LIST_STRING:
                 valuesMapOut.putAsArray(userKey,
                         JSONUtils.JSONArrayToResultValue(
-                                new JSONArray(JSONDotNotation.getWithDotNotation(userKey,
-                                        readValuesMap).toString())));
+                                new JSONArray(recursiveCopyObject(value).toString())));
                 break;
               default:
                 LOGGER.log(Level.SEVERE,
@@ -253,7 +294,7 @@ public class DiskMapRecords implements NoSQLRecords {
   @Override
   public void removeEntireRecord(String collection, String name) throws FailedDBOperationException {
     LOGGER.log(Level.FINE, "Remove: {0}", name);
-    getMap(collection).remove(name);
+    getCollection(collection).remove(name);
   }
 
   @Override
@@ -263,7 +304,7 @@ public class DiskMapRecords implements NoSQLRecords {
     try {
       json.put(NameRecord.NAME.getName(), name);
       json.put(NameRecord.VALUES_MAP.getName(), valuesMap);
-      getMap(collection).put(name, json);
+      getCollection(collection).put(name, json);
     } catch (JSONException e) {
 
     }
@@ -274,48 +315,68 @@ public class DiskMapRecords implements NoSQLRecords {
           ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys,
           ArrayList<Object> valuesMapValues) throws FailedDBOperationException {
     LOGGER.log(Level.FINE, "Update fields {0}/{1}", new Object[]{name, valuesMapKeys});
-    JSONObject record;
+    // The fields are changed in the record that is in the map, nothing else is copied
+    DiskMapCollection diskMapCollection = getCollection(collection);
+    Lock lock = diskMapCollection.getLock(name).writeLock();
+    lock.lock();
     try {
-      record = lookupEntireRecord(collection, name);
-    } catch (RecordNotFoundException e) {
-      throw new FailedDBOperationException(collection, name, "Record not found.");
-    }
-    LOGGER.log(Level.FINE, "Record before:{0}", record);
-    if (record == null) {
-      throw new FailedDBOperationException(collection, name);
-    }
-    if (valuesMapField != null && valuesMapKeys != null) {
-      try {
-        JSONObject json = record.getJSONObject(valuesMapField.getName());
-        for (int i = 0; i < valuesMapKeys.size(); i++) {
-          String fieldName = valuesMapKeys.get(i).getName();
-          switch (valuesMapKeys.get(i).type()) {
-            case LIST_STRING:
-              JSONDotNotation.putWithDotNotation(json, fieldName, valuesMapValues.get(i));
-              //json.put(fieldName, valuesMapValues.get(i));
-              break;
-            case USER_JSON:
-              JSONDotNotation.putWithDotNotation(json, fieldName, JSONParse(valuesMapValues.get(i)));
-              //json.put(fieldName, JSONParse(valuesMapValues.get(i)));
-              break;
-            default:
-              LOGGER.log(Level.WARNING,
-                      "Ignoring unknown format: {0}", valuesMapKeys.get(i).type());
-              break;
+      JSONObject record = diskMapCollection.getMap().get(name);
+      if (record == null) {
+        throw new FailedDBOperationException(collection, name, "Record not found.");
+      }
+      if (valuesMapField != null && valuesMapKeys != null) {
+        try {
+          JSONObject json = record.getJSONObject(valuesMapField.getName());
+          for (int i = 0; i < valuesMapKeys.size(); i++) {
+            String fieldName = valuesMapKeys.get(i).getName();
+            switch (valuesMapKeys.get(i).type()) {
+              case LIST_STRING:
+                FieldPath.get(fieldName).put(json, valuesMapValues.get(i));
+                //json.put(fieldName, valuesMapValues.get(i));
+                break;
+              case USER_JSON:
+                FieldPath.get(fieldName).put(json, toStoredValue(valuesMapValues.get(i)));
+                //json.put(fieldName, JSONParse(valuesMapValues.get(i)));
+                break;
+              default:
+                LOGGER.log(Level.WARNING,
+                        "Ignoring unknown format: {0}", valuesMapKeys.get(i).type());
+                break;
+            }
           }
+          LOGGER.log(Level.FINE, "Json after:{0}", json);
+        } catch (JSONException e) {
+          LOGGER.log(Level.SEVERE,
+                  "Problem updating json: {0}", e.getMessage());
         }
-        LOGGER.log(Level.FINE, "Json after:{0}", json);
-        record.put(valuesMapField.getName(), json);
-        LOGGER.log(Level.FINE, "Record after:{0}", record);
-      } catch (JSONException e) {
-        LOGGER.log(Level.SEVERE,
-                "Problem updating json: {0}", e.getMessage());
       }
+      // so that the change gets committed
+      diskMapCollection.put(name, record);
+    } finally {
+      lock.unlock();
     }
-    getMap(collection).put(name, record);
   }
-  // not sure why the JSON.parse doesn't handle things this way but it doesn't
 
+  /**
+   * Converts a USER_JSON value into what we keep in the record. JSON values are
+   * copied directly instead of going through a string so the record never shares
+   * objects with the caller and never contains DBObjects.
+   */
+  private Object toStoredValue(Object object) throws JSONException {
+    if (object == JSONObject.NULL) {
+      // same as what JSON.parse did with it
+      return null;
+    } else if (object instanceof String || object instanceof Number || object instanceof Boolean) {
+      return object;
+    } else if (object instanceof JSONObject || object instanceof JSONArray
+            || object instanceof Map || object instanceof Collection) {
+      return recursiveCopyObject(object);
+    } else {
+      return JSONParse(object);
+    }
+  }
+
+  // not sure why the JSON.parse doesn't handle things this way but it doesn't
   private Object JSONParse(Object object) {
     if (object instanceof String || object instanceof Number) {
       return object;
@@ -328,75 +389,288 @@ public class DiskMapRecords implements NoSQLRecords {
   public void removeMapKeys(String collection, String name,
           ColumnField mapField, ArrayList<ColumnField> mapKeys)
           throws FailedDBOperationException {
-    JSONObject record = null;
+    DiskMapCollection diskMapCollection = getCollection(collection);
+    Lock lock = diskMapCollection.getLock(name).writeLock();
+    lock.lock();
     try {
-      record = lookupEntireRecord(collection, name);
-    } catch (RecordNotFoundException e) {
-    }
-    LOGGER.log(Level.FINE, "Record before:{0}", record);
-    if (record == null) {
-      throw new FailedDBOperationException(collection, name, "Record not found.");
-    }
-    if (mapField != null && mapKeys != null) {
-      try {
-        JSONObject json = record.getJSONObject(mapField.getName());
-        LOGGER.log(Level.FINE, "Json before:{0}", json);
-        for (int i = 0; i < mapKeys.size(); i++) {
-          String fieldName = mapKeys.get(i).getName();
-          LOGGER.log(Level.FINE, "Removing: {0}", fieldName);
-          JSONDotNotation.removeWithDotNotation(fieldName, json);
-          //json.remove(fieldName);
+      JSONObject record = diskMapCollection.getMap().get(name);
+      if (record == null) {
+        throw new FailedDBOperationException(collection, name, "Record not found.");
+      }
+      if (mapField != null && mapKeys != null) {
+        try {
+          JSONObject json = record.getJSONObject(mapField.getName());
+          for (int i = 0; i < mapKeys.size(); i++) {
+            String fieldName = mapKeys.get(i).getName();
+            LOGGER.log(Level.FINE, "Removing: {0}", fieldName);
+            FieldPath.get(fieldName).remove(json);
+            //json.remove(fieldName);
+          }
+          LOGGER.log(Level.FINE, "Json after:{0}", json);
+        } catch (JSONException e) {
+          LOGGER.log(Level.SEVERE,
+                  "Problem updating json: {0}", e.getMessage());
         }
-        LOGGER.log(Level.FINE, "Json after:{0}", json);
-        record.put(mapField.getName(), json);
-        LOGGER.log(Level.FINE, "Record after:{0}", record);
-      } catch (JSONException e) {
-        LOGGER.log(Level.SEVERE,
-                "Problem updating json: {0}", e.getMessage());
       }
+      diskMapCollection.put(name, record);
+    } finally {
+      lock.unlock();
     }
-    getMap(collection).put(name, record);
   }
 
   @Override
   public AbstractRecordCursor getAllRowsIterator(String collection) throws FailedDBOperationException {
-    getMap(collection).commit();
-    return getMongoRecords(collection).getAllRowsIterator(DBNAMERECORD);
+    Map<String, Object> uncommitted = getUncommitted(collection);
+    AbstractRecordCursor cursor = getMongoRecords(collection).getAllRowsIterator(DBNAMERECORD);
+    return uncommitted == null ? cursor
+            : new DiskMapRecordCursor(cursor, uncommitted, ALL_RECORDS,
+                    getCollection(collection), null);
   }
 
   @Override
-  public AbstractRecordCursor selectRecords(String collection, ColumnField valuesMapField, String key, Object value) throws FailedDBOperationException {
-    getMap(collection).commit();
-    return getMongoRecords(collection).selectRecords(DBNAMERECORD, valuesMapField, key, value);
+  public AbstractRecordCursor selectRecords(String collection, ColumnField valuesMapField, String key, Object value,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    Map<String, Object> uncommitted = getUncommitted(collection);
+    AbstractRecordCursor cursor = getMongoRecords(collection).selectRecords(DBNAMERECORD, valuesMapField, key, value, fields);
+    return uncommitted == null ? cursor
+            : new DiskMapRecordCursor(cursor, uncommitted, new EqualsFilter(valuesMapField, key, value),
+                    getCollection(collection), fields);
   }
 
   @Override
-  public AbstractRecordCursor selectRecordsWithin(String collection, ColumnField valuesMapField, String key, String value) throws FailedDBOperationException {
-    getMap(collection).commit();
-    return getMongoRecords(collection).selectRecordsWithin(DBNAMERECORD, valuesMapField, key, value);
+  public AbstractRecordCursor selectRecordsWithin(String collection, ColumnField valuesMapField, String key, String value,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    Map<String, Object> uncommitted = getUncommitted(collection);
+    AbstractRecordCursor cursor = getMongoRecords(collection).selectRecordsWithin(DBNAMERECORD, valuesMapField, key, value, fields);
+    return uncommitted == null ? cursor
+            : new DiskMapRecordCursor(cursor, uncommitted, new WithinFilter(valuesMapField, key, value),
+                    getCollection(collection), fields);
   }
 
   @Override
-  public AbstractRecordCursor selectRecordsNear(String collection, ColumnField valuesMapField, String key, String value, Double maxDistance) throws FailedDBOperationException {
-    getMap(collection).commit();
-    return getMongoRecords(collection).selectRecordsNear(DBNAMERECORD, valuesMapField, key, value, maxDistance);
+  public AbstractRecordCursor selectRecordsNear(String collection, ColumnField valuesMapField, String key, String value, Double maxDistance,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    Map<String, Object> uncommitted = getUncommitted(collection);
+    if (uncommitted == null) {
+      return getMongoRecords(collection).selectRecordsNear(DBNAMERECORD, valuesMapField, key, value, maxDistance, fields);
+    }
+    // mongo returns the closest records first; the uncommitted ones are merged
+    // in by distance so the mongo rows need the location too
+    AbstractRecordCursor cursor = getMongoRecords(collection).selectRecordsNear(DBNAMERECORD, valuesMapField, key, value,
+            maxDistance, withField(fields, valuesMapField, key));
+    return new DiskMapRecordCursor(cursor, uncommitted, new NearFilter(valuesMapField, key, value, maxDistance),
+            getCollection(collection), fields);
+  }
+
+  // Adds the user field key to the fields unless they already include it.
+  private static ArrayList<ColumnField> withField(ArrayList<ColumnField> fields, ColumnField valuesMapField, String key) {
+    if (fields == null) {
+      return null;
+    }
+    String path = valuesMapField.getName() + "." + key;
+    for (ColumnField field : fields) {
+      if (field.getName().equals(valuesMapField.getName()) || field.getName().equals(path)) {
+        return fields;
+      }
+    }
+    ArrayList<ColumnField> result = new ArrayList<>(fields);
+    result.add(new ColumnField(path, ColumnFieldType.USER_JSON));
+    return result;
   }
 
   @Override
-  public AbstractRecordCursor selectRecordsQuery(String collection, ColumnField valuesMapField, String query) throws FailedDBOperationException {
-    getMap(collection).commit();
-    return getMongoRecords(collection).selectRecordsQuery(DBNAMERECORD, valuesMapField, query);
+  public AbstractRecordCursor selectRecordsQuery(String collection, ColumnField valuesMapField, String query,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    // Arbitrary mongo queries can't be evaluated against the in-memory records
+    // so the uncommitted records have to go to mongo first.
+    if (!Config.getGlobalBoolean(GNSConfig.GNSC.DISKMAP_MERGED_SELECT)
+            || !getCollection(collection).getUncommitted().isEmpty()) {
+      getCollection(collection).commit();
+    }
+    return getMongoRecords(collection).selectRecordsQuery(DBNAMERECORD, valuesMapField, query, fields);
   }
 
   @Override
   public void createIndex(String collection, String field, String index) {
-    getMap(collection).commit();
+    if (!Config.getGlobalBoolean(GNSConfig.GNSC.DISKMAP_MERGED_SELECT)) {
+      getCollection(collection).commit();
+    }
     getMongoRecords(collection).createIndex(DBNAMERECORD, field, index);
   }
 
   @Override
   public void printAllEntries(String collection) throws FailedDBOperationException {
-    getMap(collection).commit();
-    getMongoRecords(collection).printAllEntries(DBNAMERECORD);
+    AbstractRecordCursor cursor = getAllRowsIterator(collection);
+    while (cursor.hasNext()) {
+      System.out.println(cursor.nextJSONObject());
+    }
+  }
+
+  /**
+   * Returns the records that haven't been committed to mongo or null if the
+   * select should go straight to mongo. In the latter case the map has already
+   * been committed if that was needed.
+   */
+  private Map<String, Object> getUncommitted(String collection) {
+    if (!Config.getGlobalBoolean(GNSConfig.GNSC.DISKMAP_MERGED_SELECT)) {
+      getCollection(collection).commit();
+      return null;
+    }
+    Map<String, Object> uncommitted = getCollection(collection).getUncommitted();
+    return uncommitted.isEmpty() ? null : uncommitted;
+  }
+
+  //
+  // The filters below evaluate the mongo select queries against the uncommitted
+  // in-memory records. They need to match what MongoRecords does.
+  //
+  private static final DiskMapRecordCursor.RecordFilter ALL_RECORDS
+          = new DiskMapRecordCursor.RecordFilter() {
+    @Override
+    public boolean matches(JSONObject record) {
+      return true;
+    }
+  };
+
+  /**
+   * Mongo equality semantics: the field equals the value or is an array that
+   * contains the value.
+   */
+  private static class EqualsFilter implements DiskMapRecordCursor.RecordFilter {
+
+    private final String path;
+    private final Object value;
+
+    EqualsFilter(ColumnField valuesMapField, String key, Object value) {
+      this.path = valuesMapField.getName() + "." + key;
+      this.value = value;
+    }
+
+    @Override
+    public boolean matches(JSONObject record) {
+      Object field = getPathValue(record, path);
+      if (field == null) {
+        return false;
+      }
+      if (valueEquals(field, value)) {
+        return true;
+      }
+      for (Object element : asList(field)) {
+        if (valueEquals(element, value)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Mongo $geoWithin $box semantics for a legacy [x, y] point.
+   */
+  private static class WithinFilter implements DiskMapRecordCursor.RecordFilter {
+
+    private final String path;
+    private double[] box;
+
+    WithinFilter(ColumnField valuesMapField, String key, String value) {
+      this.path = valuesMapField.getName() + "." + key;
+      try {
+        JSONArray json = new JSONArray(value);
+        this.box = new double[]{json.getJSONArray(0).getDouble(0), json.getJSONArray(0).getDouble(1),
+          json.getJSONArray(1).getDouble(0), json.getJSONArray(1).getDouble(1)};
+      } catch (JSONException e) {
+        LOGGER.log(Level.SEVERE, "Unable to parse JSON: {0}", e);
+      }
+    }
+
+    @Override
+    public boolean matches(JSONObject record) {
+      double[] point = getPoint(getPathValue(record, path));
+      return box != null && point != null
+              && point[0] >= Math.min(box[0], box[2]) && point[0] <= Math.max(box[0], box[2])
+              && point[1] >= Math.min(box[1], box[3]) && point[1] <= Math.max(box[1], box[3]);
+    }
+  }
+
+  /**
+   * Mongo $near semantics for a legacy [x, y] point. Uses the same conversion
+   * of maxDistance as MongoRecords. Records are ordered by their distance from
+   * the point like mongo orders them.
+   */
+  private static class NearFilter implements DiskMapRecordCursor.OrderedRecordFilter {
+
+    private final static double METERS_PER_DEGREE = 111.12 * 1000; // at the equator
+    private final String path;
+    private final double maxDistance;
+    private double[] center;
+
+    NearFilter(ColumnField valuesMapField, String key, String value, Double maxDistance) {
+      this.path = valuesMapField.getName() + "." + key;
+      this.maxDistance = maxDistance / METERS_PER_DEGREE;
+      try {
+        JSONArray json = new JSONArray(value);
+        this.center = new double[]{json.getDouble(0), json.getDouble(1)};
+      } catch (JSONException e) {
+        LOGGER.log(Level.SEVERE, "Unable to parse JSON: {0}", e);
+      }
+    }
+
+    @Override
+    public boolean matches(JSONObject record) {
+      return orderOf(record) <= maxDistance;
+    }
+
+    @Override
+    public double orderOf(JSONObject record) {
+      double[] point = getPoint(getPathValue(record, path));
+      return center != null && point != null
+              ? Math.hypot(point[0] - center[0], point[1] - center[1]) : Double.POSITIVE_INFINITY;
+    }
+  }
+
+  // Follows a dotted path through the JSONObjects and Maps that make up a record.
+  private static Object getPathValue(JSONObject record, String path) {
+    Object value = getRawPathValue(record, path);
+    return value == JSONObject.NULL ? null : value;
+  }
+
+  // Same as getPathValue but returns JSONObject.NULL values as they are. Nothing is copied.
+  private static Object getRawPathValue(Object record, String path) {
+    return FieldPath.get(path).get(record);
+  }
+
+  private static List<Object> asList(Object value) {
+    List<Object> list = new ArrayList<>();
+    if (value instanceof JSONArray) {
+      JSONArray array = (JSONArray) value;
+      for (int i = 0; i < array.length(); i++) {
+        list.add(array.opt(i));
+      }
+    } else if (value instanceof Collection) {
+      list.addAll((Collection<?>) value);
+    }
+    return list;
+  }
+
+  private static boolean valueEquals(Object stored, Object value) {
+    if (stored instanceof Number && value instanceof Number) {
+      return ((Number) stored).doubleValue() == ((Number) value).doubleValue();
+    } else if (stored instanceof String || stored instanceof Boolean) {
+      return stored.equals(value);
+    } else if (stored == null || value == null) {
+      return false;
+    }
+    // structured values compare by their JSON form
+    return stored.toString().equals(value.toString());
+  }
+
+  private static double[] getPoint(Object value) {
+    List<Object> coordinates = asList(value);
+    if (coordinates.size() == 2 && coordinates.get(0) instanceof Number
+            && coordinates.get(1) instanceof Number) {
+      return new double[]{((Number) coordinates.get(0)).doubleValue(),
+        ((Number) coordinates.get(1)).doubleValue()};
+    }
+    return null;
   }
 }
@@ -37,6 +37,7 @@ import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnscommon.utils.FieldPath;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnsserver.utils.JSONUtils;
@@ -51,6 +52,7 @@ import org.json.JSONObject;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -255,50 +257,7 @@ public class MongoRecords implements NoSQLRecords {
       if (dbObject == null) {
         throw new RecordNotFoundException(guid);
       }
-      HashMap<ColumnField, Object> hashMap = new HashMap<>();
-      hashMap.put(nameField, guid);// put the name in the hashmap!! very important!!
-      if (valuesMapField != null && valuesMapKeys != null) {
-        // first we pull all the user values from the dbObject and put in a bson object
-        // FIXME: Why not convert this to a JSONObject right now? We know that's what it is.
-        BasicDBObject bson = (BasicDBObject) dbObject.get(valuesMapField.getName());
-        DatabaseConfig.getLogger().log(Level.FINER, "@@@@@@@@ {0}", new Object[]{bson});
-        // then we run thru each userkey in the valuesMapKeys and pull the
-        // value put stuffing it into the values map
-        ValuesMap valuesMap = new ValuesMap();
-        for (int i = 0; i < valuesMapKeys.size(); i++) {
-          String userKey = valuesMapKeys.get(i).getName();
-          if (containsFieldDotNotation(userKey, bson) == false) {
-            DatabaseConfig.getLogger().log(Level.FINE,
-                    "DBObject doesn't contain {0}", new Object[]{userKey});
-
-            continue;
-          }
-          try {
-            switch (valuesMapKeys.get(i).type()) {
-              case USER_JSON:
-                Object value = getWithDotNotation(userKey, bson);
-                DatabaseConfig.getLogger().log(Level.FINE,
-                        "Object is {0}", new Object[]{value.toString()});
-                valuesMap.put(userKey, value);
-                break;
-              case LIST_STRING:
-                valuesMap.putAsArray(userKey,
-                        JSONUtils.JSONArrayToResultValue(new JSONArray(getWithDotNotation(userKey, bson).toString())));
-                break;
-              default:
-                DatabaseConfig.getLogger().log(Level.SEVERE,
-                        "ERROR: Error: User keys field {0} is not a known type:{1}",
-                        new Object[]{userKey, valuesMapKeys.get(i).type()});
-                break;
-            }
-          } catch (JSONException e) {
-            DatabaseConfig.getLogger().log(Level.SEVERE, "Error parsing json: {0}", e);
-            e.printStackTrace();
-          }
-        }
-        hashMap.put(valuesMapField, valuesMap);
-      }
-      return hashMap;
+      return projectFields(dbObject, guid, nameField, valuesMapField, valuesMapKeys);
     } catch (MongoException e) {
       throw new FailedDBOperationException(collectionName, guid);
     } finally {
@@ -306,31 +265,95 @@ public class MongoRecords implements NoSQLRecords {
     }
   }
 
-  private Object getWithDotNotation(String key, BasicDBObject bson) throws JSONException {
-    if (key.contains(".")) {
-      int indexOfDot = key.indexOf(".");
-      String subKey = key.substring(0, indexOfDot);
-      BasicDBObject subBson = (BasicDBObject) bson.get(subKey);
-      if (subBson == null) {
-        throw new JSONException(subKey + " is null");
+  @Override
+  public Map<String, HashMap<ColumnField, Object>> lookupSomeFieldsMultiple(String collectionName,
+          Collection<String> guids, ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys)
+          throws FailedDBOperationException {
+    Map<String, HashMap<ColumnField, Object>> result = new HashMap<>();
+    if (guids.isEmpty()) {
+      return result;
+    }
+    db.requestStart();
+    try {
+      String primaryKey = mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey().getName();
+      db.requestEnsureConnection();
+
+      DBCollection collection = db.getCollection(collectionName);
+      // One round trip for all of them
+      BasicDBObject query = new BasicDBObject(primaryKey,
+              new BasicDBObject("$in", new ArrayList<>(guids)));
+      BasicDBObject projection = new BasicDBObject().append("_id", 0).append(primaryKey, 1);
+
+      if (valuesMapField != null && valuesMapKeys != null) {
+        for (int i = 0; i < valuesMapKeys.size(); i++) {
+          String fieldName = valuesMapField.getName() + "." + valuesMapKeys.get(i).getName();
+          projection.append(fieldName, 1);
+        }
       }
+      DBCursor cursor = collection.find(query, projection);
       try {
-        return getWithDotNotation(key.substring(indexOfDot + 1), subBson);
-      } catch (JSONException e) {
-        throw new JSONException(subKey + "." + e.getMessage());
+        while (cursor.hasNext()) {
+          DBObject dbObject = cursor.next();
+          String guid = (String) dbObject.get(primaryKey);
+          result.put(guid, projectFields(dbObject, guid, nameField, valuesMapField, valuesMapKeys));
+        }
+      } finally {
+        cursor.close();
       }
-    } else {
-      Object result = bson.get(key);
       return result;
+    } catch (MongoException e) {
+      throw new FailedDBOperationException(collectionName, guids.toString());
+    } finally {
+      db.requestDone();
     }
   }
 
-  private boolean containsFieldDotNotation(String key, BasicDBObject bson) {
-    try {
-      return getWithDotNotation(key, bson) != null;
-    } catch (JSONException e) {
-      return false;
+  private HashMap<ColumnField, Object> projectFields(DBObject dbObject, String guid,
+          ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys) {
+    HashMap<ColumnField, Object> hashMap = new HashMap<>();
+    hashMap.put(nameField, guid);// put the name in the hashmap!! very important!!
+    if (valuesMapField != null && valuesMapKeys != null) {
+      // first we pull all the user values from the dbObject and put in a bson object
+      // FIXME: Why not convert this to a JSONObject right now? We know that's what it is.
+      BasicDBObject bson = (BasicDBObject) dbObject.get(valuesMapField.getName());
+      DatabaseConfig.getLogger().log(Level.FINER, "@@@@@@@@ {0}", new Object[]{bson});
+      // then we run thru each userkey in the valuesMapKeys and pull the
+      // value put stuffing it into the values map
+      ValuesMap valuesMap = new ValuesMap();
+      for (int i = 0; i < valuesMapKeys.size(); i++) {
+        String userKey = valuesMapKeys.get(i).getName();
+        Object value = bson != null ? FieldPath.get(userKey).get(bson) : null;
+        if (value == null) {
+          DatabaseConfig.getLogger().log(Level.FINE,
+                  "DBObject doesn't contain {0}", new Object[]{userKey});
+
+          continue;
+        }
+        try {
+          switch (valuesMapKeys.get(i).type()) {
+            case USER_JSON:
+              DatabaseConfig.getLogger().log(Level.FINE,
+                      "Object is {0}", new Object[]{value.toString()});
+              valuesMap.put(userKey, value);
+              break;
+            case LIST_STRING:
+              valuesMap.putAsArray(userKey,
+                      JSONUtils.JSONArrayToResultValue(new JSONArray(value.toString())));
+              break;
+            default:
+              DatabaseConfig.getLogger().log(Level.SEVERE,
+                      "ERROR: Error: User keys field {0} is not a known type:{1}",
+                      new Object[]{userKey, valuesMapKeys.get(i).type()});
+              break;
+          }
+        } catch (JSONException e) {
+          DatabaseConfig.getLogger().log(Level.SEVERE, "Error parsing json: {0}", e);
+          e.printStackTrace();
+        }
+      }
+      hashMap.put(valuesMapField, valuesMap);
     }
+    return hashMap;
   }
 
   @Override
@@ -496,18 +519,19 @@ public class MongoRecords implements NoSQLRecords {
    * @param collectionName
    * @param key
    * @param value
+   * @param fields the fields returned for each record, or null for all of them
    * // * @param explain
    * @return a MongoRecordCursor
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
    */
   @Override
-  public MongoRecordCursor selectRecords(String collectionName, ColumnField valuesMapField, String key, Object value)
-          throws FailedDBOperationException {
-    return selectRecords(collectionName, valuesMapField, key, value, false);
+  public MongoRecordCursor selectRecords(String collectionName, ColumnField valuesMapField, String key, Object value,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    return selectRecords(collectionName, valuesMapField, key, value, fields, false);
   }
 
   private MongoRecordCursor selectRecords(String collectionName, ColumnField valuesMapField, String key, Object value,
-          boolean explain) throws FailedDBOperationException {
+          ArrayList<ColumnField> fields, boolean explain) throws FailedDBOperationException {
     db.requestEnsureConnection();
     DBCollection collection = db.getCollection(collectionName);
     // note that if the value of the key in the database is a list (which it is) this
@@ -525,7 +549,7 @@ public class MongoRecords implements NoSQLRecords {
     //System.out.println("***GNSProtocol.QUERY.toString()***: " + query.toString());
     DBCursor cursor = null;
     try {
-      cursor = collection.find(query);
+      cursor = collection.find(query, projection(fields));
     } catch (MongoException e) {
       throw new FailedDBOperationException(collectionName, fieldName);
     }
@@ -536,13 +560,13 @@ public class MongoRecords implements NoSQLRecords {
   }
 
   @Override
-  public MongoRecordCursor selectRecordsWithin(String collectionName, ColumnField valuesMapField, String key, String value)
-          throws FailedDBOperationException {
-    return selectRecordsWithin(collectionName, valuesMapField, key, value, false);
+  public MongoRecordCursor selectRecordsWithin(String collectionName, ColumnField valuesMapField, String key, String value,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    return selectRecordsWithin(collectionName, valuesMapField, key, value, fields, false);
   }
 
-  private MongoRecordCursor selectRecordsWithin(String collectionName, ColumnField valuesMapField, String key, String value, boolean explain)
-          throws FailedDBOperationException {
+  private MongoRecordCursor selectRecordsWithin(String collectionName, ColumnField valuesMapField, String key, String value,
+          ArrayList<ColumnField> fields, boolean explain) throws FailedDBOperationException {
     db.requestEnsureConnection();
     DBCollection collection = db.getCollection(collectionName);
 
@@ -553,7 +577,7 @@ public class MongoRecords implements NoSQLRecords {
     BasicDBObject query = new BasicDBObject(fieldName, withinClause);
     DBCursor cursor = null;
     try {
-      cursor = collection.find(query);
+      cursor = collection.find(query, projection(fields));
     } catch (MongoException e) {
       throw new FailedDBOperationException(collectionName, fieldName);
     }
@@ -585,12 +609,12 @@ public class MongoRecords implements NoSQLRecords {
 
   @Override
   public MongoRecordCursor selectRecordsNear(String collectionName, ColumnField valuesMapField, String key, String value,
-          Double maxDistance) throws FailedDBOperationException {
-    return selectRecordsNear(collectionName, valuesMapField, key, value, maxDistance, false);
+          Double maxDistance, ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    return selectRecordsNear(collectionName, valuesMapField, key, value, maxDistance, fields, false);
   }
 
   private MongoRecordCursor selectRecordsNear(String collectionName, ColumnField valuesMapField, String key, String value,
-          Double maxDistance, boolean explain) throws FailedDBOperationException {
+          Double maxDistance, ArrayList<ColumnField> fields, boolean explain) throws FailedDBOperationException {
     db.requestEnsureConnection();
     DBCollection collection = db.getCollection(collectionName);
 
@@ -608,7 +632,7 @@ public class MongoRecords implements NoSQLRecords {
     BasicDBObject query = new BasicDBObject(fieldName, nearClause);
     DBCursor cursor = null;
     try {
-      cursor = collection.find(query);
+      cursor = collection.find(query, projection(fields));
     } catch (MongoException e) {
       throw new FailedDBOperationException(collectionName, fieldName);
     }
@@ -619,16 +643,18 @@ public class MongoRecords implements NoSQLRecords {
   }
 
   @Override
-  public MongoRecordCursor selectRecordsQuery(String collectionName, ColumnField valuesMapField, String query) throws FailedDBOperationException {
-    return selectRecordsQuery(collectionName, valuesMapField, query, false);
+  public MongoRecordCursor selectRecordsQuery(String collectionName, ColumnField valuesMapField, String query,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    return selectRecordsQuery(collectionName, valuesMapField, query, fields, false);
   }
 
-  private MongoRecordCursor selectRecordsQuery(String collectionName, ColumnField valuesMapField, String query, boolean explain) throws FailedDBOperationException {
+  private MongoRecordCursor selectRecordsQuery(String collectionName, ColumnField valuesMapField, String query,
+          ArrayList<ColumnField> fields, boolean explain) throws FailedDBOperationException {
     db.requestEnsureConnection();
     DBCollection collection = db.getCollection(collectionName);
     DBCursor cursor = null;
     try {
-      cursor = collection.find(parseMongoQuery(query, valuesMapField));
+      cursor = collection.find(parseMongoQuery(query, valuesMapField), projection(fields));
     } catch (Exception e) {
       throw new FailedDBOperationException(collectionName, query);
     }
@@ -638,6 +664,18 @@ public class MongoRecords implements NoSQLRecords {
     return new MongoRecordCursor(cursor, mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey());
   }
 
+  // Returns the projection for the select methods, null means return all the fields.
+  private static DBObject projection(ArrayList<ColumnField> fields) {
+    if (fields == null) {
+      return null;
+    }
+    BasicDBObject projection = new BasicDBObject().append("_id", 0);
+    for (ColumnField field : fields) {
+      projection.append(field.getName(), 1);
+    }
+    return projection;
+  }
+
   private DBObject parseMongoQuery(String query, ColumnField valuesMapField) {
     // convert something like this: ~fred : ($gt: 0) into the queryable 
     // format, namely this: {~nr_valuesMap.fred : ($gt: 0)}
@@ -25,7 +25,9 @@ import edu.umass.cs.gnsserver.utils.ValuesMap;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Provides an interface for insert, update, remove and lookup 
@@ -70,6 +72,8 @@ public interface NoSQLRecords {
   /**
    * For record with given name, return the values of given fields and from the values map field of the record,
    * return the values of given keys as a HashMap.
+   * Implementations should only read and copy the requested keys, not the entire record,
+   * so the cost of the lookup depends on the size of those keys.
    *
    * @param collectionName
    * @param guid
@@ -85,6 +89,22 @@ public interface NoSQLRecords {
           String guid, ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys)
           throws RecordNotFoundException, FailedDBOperationException;
 
+  /**
+   * Does a {@link #lookupSomeFields} for several records at once.
+   * Records that don't exist are left out of the result.
+   *
+   * @param collectionName
+   * @param guids
+   * @param nameField
+   * @param valuesMapField
+   * @param valuesMapKeys
+   * @return a map from the name of each record found to what lookupSomeFields returns for it
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public Map<String, HashMap<ColumnField, Object>> lookupSomeFieldsMultiple(String collectionName,
+          Collection<String> guids, ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys)
+          throws FailedDBOperationException;
+
   /**
    * Returns true if a record with the given name exists, false otherwise.
    *
@@ -162,10 +182,12 @@ public interface NoSQLRecords {
    * @param valuesMapField
    * @param key
    * @param value
+   * @param fields the fields returned for each record, or null for all of them
    * @return AbstractRecordCursor
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
    */
-  public AbstractRecordCursor selectRecords(String collectionName, ColumnField valuesMapField, String key, Object value)
+  public AbstractRecordCursor selectRecords(String collectionName, ColumnField valuesMapField, String key, Object value,
+          ArrayList<ColumnField> fields)
           throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 
   /**
@@ -176,10 +198,12 @@ public interface NoSQLRecords {
    * @param valuesMapField
    * @param key
    * @param value
+   * @param fields the fields returned for each record, or null for all of them
    * @return AbstractRecordCursor
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
    */
-  public AbstractRecordCursor selectRecordsWithin(String collectionName, ColumnField valuesMapField, String key, String value)
+  public AbstractRecordCursor selectRecordsWithin(String collectionName, ColumnField valuesMapField, String key, String value,
+          ArrayList<ColumnField> fields)
           throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 
   /**
@@ -191,10 +215,12 @@ public interface NoSQLRecords {
    * @param key
    * @param value
    * @param maxDistance
+   * @param fields the fields returned for each record, or null for all of them
    * @return an AbstractRecordCursor
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
    */
-  public AbstractRecordCursor selectRecordsNear(String collectionName, ColumnField valuesMapField, String key, String value, Double maxDistance)
+  public AbstractRecordCursor selectRecordsNear(String collectionName, ColumnField valuesMapField, String key, String value, Double maxDistance,
+          ArrayList<ColumnField> fields)
           throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 
   /**
@@ -204,10 +230,12 @@ public interface NoSQLRecords {
    * @param collection the name of the collection
    * @param valuesMapField the field that contains the ValuesMap
    * @param query the query to execute
+   * @param fields the fields returned for each record, or null for all of them
    * @return an AbstractRecordCursor
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
    */
-  public AbstractRecordCursor selectRecordsQuery(String collection, ColumnField valuesMapField, String query)
+  public AbstractRecordCursor selectRecordsQuery(String collection, ColumnField valuesMapField, String query,
+          ArrayList<ColumnField> fields)
           throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 
   /**
@@ -36,10 +36,13 @@ import org.json.JSONObject;
 
 /**
  * Ascertains the maximum throughput of reads on the mongo database.
+ * If a fourth argument of "update" is given the throughput of single field
+ * updates on a record with a large other field is measured instead.
  *
  * Typical incantation:
 
  java -cp jars/GNS.jar edu.umass.cs.gnsserver.database.NoSQLRecordsThroughputTest frank_ActiveReplica CAB372BF40B3DB576786E5CC6AB05B63CC680F4D environment
+ java -cp jars/GNS.jar edu.umass.cs.gnsserver.database.NoSQLRecordsThroughputTest frank_ActiveReplica CAB372BF40B3DB576786E5CC6AB05B63CC680F4D environment update
  *
  * @author westy
  */
@@ -56,7 +59,15 @@ public class NoSQLRecordsThroughputTest {
    * @throws RecordNotFoundException
    */
   public static void main(String[] args) throws Exception, RecordNotFoundException {
-    if (args.length == 3) {
+    if (args.length == 4 && "update".equals(args[3])) {
+      for (int i = 0; i < EXECUTOR.getCorePoolSize(); i++) {
+        EXECUTOR.submit(new Runnable() {
+          public void run() {
+            testUpdateSingleField(args[0], args[1], args[2]);
+          }
+        });
+      }
+    } else if (args.length == 3) {
       for (int i = 0; i < EXECUTOR.getCorePoolSize(); i++) {
         EXECUTOR.submit(new Runnable() {
           public void run() {
@@ -66,7 +77,7 @@ public class NoSQLRecordsThroughputTest {
         });
       }
     } else {
-      System.out.println("Usage: edu.umass.cs.gnsserver.test.MongoRecordsThroughputTest <node> <guid> <field>");
+      System.out.println("Usage: edu.umass.cs.gnsserver.test.MongoRecordsThroughputTest <node> <guid> <field> [update]");
     }
     // important to include this!!
     //System.exit(0);
@@ -136,4 +147,57 @@ public class NoSQLRecordsThroughputTest {
       System.out.println("Lookup failed: " + e);
     }
   }
+
+  // size of the other field in the record for the update test
+  private static final int BULK_SIZE = 256 * 1024;
+
+  private static void testUpdateSingleField(String node, String guid, String field) {
+    NoSQLRecords instance = new DiskMapRecords(node);
+    GNSRecordMap<String> recordMap = new GNSRecordMap<String>(instance, COLLECTION_NAME);
+    JSONObject json = new JSONObject();
+    try {
+      json.put(field, "some value");
+      StringBuilder bulk = new StringBuilder();
+      for (int i = 0; i < BULK_SIZE; i++) {
+        bulk.append('x');
+      }
+      json.put("bulk", bulk.toString());
+    } catch (JSONException e) {
+      System.out.println("Problem creating json " + e);
+    }
+    ValuesMap valuesMap = new ValuesMap(json);
+    NameRecord nameRecord = new NameRecord(recordMap, guid, valuesMap);
+    try {
+      instance.insert(COLLECTION_NAME, guid, nameRecord.toJSONObject());
+    } catch (JSONException e) {
+      System.out.println("Problem writing json " + e);
+    } catch (FailedDBOperationException e) {
+      System.out.println("Problem adding " + json.toString() + " as value of " + guid + ": " + e);
+    } catch (RecordExistsException e) {
+      System.out.println(guid + " record already exists in database. Try something else." + e);
+    }
+
+    // and try to update it as fast as possible
+    try {
+      ArrayList<ColumnField> userFields = new ArrayList<>(Arrays.asList(new ColumnField(field,
+              ColumnFieldType.USER_JSON)));
+      int frequency = 10000;
+      reset();
+      do {
+        int current = incrCount();
+        instance.updateIndividualFields(COLLECTION_NAME, guid, NameRecord.VALUES_MAP,
+                userFields, new ArrayList<Object>(Arrays.asList("value " + current)));
+        if (current % frequency == 0) {
+          System.out.println(DelayProfiler.getStats());
+          System.out.println("update op/s = " + Format.formatTime(getCount() * 1000.0 / (System.currentTimeMillis() - initTime)));
+          if (getCount() > frequency * 20) {
+            System.out.println("**********************resetting************************");
+            reset();
+          }
+        }
+      } while (true);
+    } catch (FailedDBOperationException e) {
+      System.out.println("Update failed: " + e);
+    }
+  }
 }
@@ -0,0 +1,148 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.utils.Config;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Header;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+/**
+ * Caches the responses of {@link NameResolution#lookupGnsServer} keyed by the
+ * name and type of the question.
+ *
+ * Only responses that {@link NameResolution#isReasonableResponse} are cached and
+ * they time out after {@link GNSConfig.GNSC#DNS_ANSWER_CACHE_TTL} which matches
+ * the TTL of the records in them, so a resolver downstream of us would have
+ * kept the answer for just as long.
+ *
+ * @author westy
+ */
+class GnsAnswerCache {
+
+  private final Cache<String, Message> answers;
+
+  /**
+   * Creates a cache sized from the GNS config.
+   */
+  GnsAnswerCache() {
+    this(Config.getGlobalInt(GNSConfig.GNSC.DNS_ANSWER_CACHE_SIZE),
+            Config.getGlobalInt(GNSConfig.GNSC.DNS_ANSWER_CACHE_TTL));
+  }
+
+  /**
+   * @param size the maximum number of answers
+   * @param ttl how long in milliseconds an answer is kept
+   */
+  GnsAnswerCache(int size, long ttl) {
+    this.answers = CacheBuilder.newBuilder()
+            .maximumSize(size)
+            .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+            .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+            .build();
+  }
+
+  /**
+   * Looks the query up in the GNS unless we already have an answer for it.
+   *
+   * @param query
+   * @param handler
+   * @return a message with either a good response or an error
+   */
+  Message lookup(Message query, ClientRequestHandlerInterface handler) {
+    Record question = query.getQuestion();
+    String key = question != null ? getKey(question) : null;
+    if (key != null) {
+      Message cached = answers.getIfPresent(key);
+      if (cached != null) {
+        NameResolution.getLogger().log(Level.FINE, "GNS answer for {0} from cache", key);
+        return forQuery(cached, query);
+      }
+    }
+    Message response = NameResolution.lookupGnsServer(query, handler);
+    if (key != null && NameResolution.isReasonableResponse(response)) {
+      answers.put(key, (Message) response.clone());
+    }
+    return response;
+  }
+
+  /**
+   * Removes all cached answers.
+   */
+  void invalidateAll() {
+    answers.invalidateAll();
+  }
+
+  /**
+   * @return the number of cached answers
+   */
+  long size() {
+    return answers.size();
+  }
+
+  private static String getKey(Record question) {
+    return question.getName().toString().toLowerCase(Locale.ROOT) + " "
+            + Type.string(question.getType());
+  }
+
+  /**
+   * Copies a cached response and fixes up the parts that depend on the query.
+   * The key ignores case but the response has to spell the name the way the
+   * query did, resolvers that randomize the case of names (DNS 0x20) drop it
+   * otherwise. So the question is the query's and records owned by the name
+   * get the query's spelling.
+   */
+  private static Message forQuery(Message cached, Message query) {
+    Message response = (Message) cached.clone();
+    Name name = query.getQuestion().getName();
+    response.removeAllRecords(Section.QUESTION);
+    response.addRecord(query.getQuestion(), Section.QUESTION);
+    for (int section : new int[]{Section.ANSWER, Section.AUTHORITY, Section.ADDITIONAL}) {
+      Record[] records = response.getSectionArray(section);
+      response.removeAllRecords(section);
+      for (Record record : records) {
+        // Name.equals ignores case
+        response.addRecord(record.getName().equals(name) ? record.withName(name) : record, section);
+      }
+    }
+    Header header = response.getHeader();
+    header.setID(query.getHeader().getID());
+    if (query.getHeader().getFlag(Flags.RD)) {
+      header.setFlag(Flags.RA);
+    } else {
+      header.unsetFlag(Flags.RA);
+    }
+    return response;
+  }
+}
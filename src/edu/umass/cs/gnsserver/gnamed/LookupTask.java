@@ -37,17 +37,20 @@ public class LookupTask implements Callable<Message> {
   private final Message query;
   private Message response;
   private final SimpleResolver nameServer; // It is used for both dnsServer and gnsServer
+  private final GnsAnswerCache answerCache; // only used for GNSLOCAL, might be null
   private final ClientRequestHandlerInterface handler;
 
   /**
    * Creates a worker task that handles a query using the GNS.
    * 
    * @param query 
+   * @param answerCache (might be null meaning GNS answers are not cached)
    */
-  LookupTask(Message query, ClientRequestHandlerInterface handler) {
+  LookupTask(Message query, GnsAnswerCache answerCache, ClientRequestHandlerInterface handler) {
     this.workerClass = WorkerClass.GNSLOCAL;
     this.query = query;
     this.nameServer = null;
+    this.answerCache = answerCache;
     this.handler = handler;
   }
   
@@ -61,6 +64,7 @@ public class LookupTask implements Callable<Message> {
     this.workerClass = WorkerClass.DNS;
     this.query = query;
     this.nameServer = dnsServer;
+    this.answerCache = null;
     this.handler = handler;
   }
 
@@ -78,6 +82,7 @@ public class LookupTask implements Callable<Message> {
     }
     this.query = query;
     this.nameServer = nameServer;
+    this.answerCache = null;
     this.handler = handler;
   }
 
@@ -91,7 +96,8 @@ public class LookupTask implements Callable<Message> {
         response = NameResolution.forwardToGnsServer(nameServer, query);
         break;
       case GNSLOCAL:
-        response = NameResolution.lookupGnsServer(query, handler);
+        response = answerCache != null ? answerCache.lookup(query, handler)
+                : NameResolution.lookupGnsServer(query, handler);
         break;
     }
     return response;
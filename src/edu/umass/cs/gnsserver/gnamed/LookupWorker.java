@@ -23,16 +23,14 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandler
 import edu.umass.cs.utils.DelayProfiler;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 
@@ -54,39 +52,37 @@ import org.xbill.DNS.Credibility;
  * When using DNS as a fallback we send out parallel requests and whichever returns
  * first is returned to the client as the answer.
  *
+ * Workers are created per query by the {@link UdpChannelLoop} and share its
+ * resolver pool and caches.
+ *
  * @author westy
  * @version 1.0
  */
 public class LookupWorker implements Runnable {
 
+  private final UdpChannelLoop loop;
+  private final SocketAddress client;
+  private final ByteBuffer incomingBuffer;
   private final SimpleResolver dnsServer;
   private final SimpleResolver gnsServer;
   private final Cache dnsCache;
-  private final DatagramSocket socket;
-  private final DatagramPacket incomingPacket;
-  private final byte[] incomingData;
   private final ClientRequestHandlerInterface handler;
 
   /**
    * Creates a new <code>LookupWorker</code> object which handles the parallel GNS and DNS requesting.
    *
-   * @param socket
-   * @param incomingPacket
-   * @param incomingData
-   * @param dnsServer (might be null meaning don't send requests to a DNS server)
-   * @param gnsServer (might be null gns requests are resolved locally)
-   * @param dnsCache (might be null meaning DNS responses are not cached)
-   * @param handler
+   * @param loop the server the query came from
+   * @param client the address the query came from
+   * @param incomingBuffer a pooled buffer holding the query which is returned to the loop once read
    */
-  public LookupWorker(DatagramSocket socket, DatagramPacket incomingPacket, byte[] incomingData, SimpleResolver gnsServer,
-          SimpleResolver dnsServer, Cache dnsCache, ClientRequestHandlerInterface handler) {
-    this.socket = socket;
-    this.incomingPacket = incomingPacket;
-    this.incomingData = incomingData;
-    this.dnsServer = dnsServer;
-    this.dnsCache = dnsCache;
-    this.gnsServer = gnsServer;
-    this.handler = handler;
+  LookupWorker(UdpChannelLoop loop, SocketAddress client, ByteBuffer incomingBuffer) {
+    this.loop = loop;
+    this.client = client;
+    this.incomingBuffer = incomingBuffer;
+    this.dnsServer = loop.getDnsServer();
+    this.dnsCache = loop.getDnsCache();
+    this.gnsServer = loop.getGnsServer();
+    this.handler = loop.getHandler();
   }
 
   /**
@@ -99,12 +95,20 @@ public class LookupWorker implements Runnable {
     Message response;
     int maxLength;
 
+    // Copy the query out so the buffer can go right back to the pool
+    byte[] incomingData = new byte[incomingBuffer.remaining()];
+    incomingBuffer.get(incomingData);
+    loop.releaseBuffer(incomingBuffer);
     // create a Message from the query data;
     try {
       query = new Message(incomingData);
     } catch (IOException e) {
       // Send out an error response.
-      sendResponse(NameResolution.formErrorMessage(incomingData).toWire());
+      Message errorMessage = NameResolution.formErrorMessage(incomingData);
+      // too short to even have a header, nothing to answer
+      if (errorMessage != null) {
+        sendResponse(errorMessage.toWire());
+      }
       return;
     }
     // THE MEAT IS IN HERE. Try to get a response from the GNS or DNS servers.
@@ -126,6 +130,9 @@ public class LookupWorker implements Runnable {
     sendResponse(response.toWire(maxLength));
     DelayProfiler.updateDelay("LookupWorker.sendResponse", sendStart);
     DelayProfiler.updateDelay("LookupWorker", startTime);
+    if (NameResolution.getLogger().isLoggable(Level.FINE)) {
+      NameResolution.getLogger().fine(DelayProfiler.getStats());
+    }
   }
 
   /**
@@ -153,7 +160,7 @@ public class LookupWorker implements Runnable {
 
     // If we're not consulting the DNS server as well just send the query to GNS.
     if (dnsServer == null) {
-      Message result = NameResolution.lookupGnsServer(query, handler);
+      Message result = loop.getAnswerCache().lookup(query, handler);
       DelayProfiler.updateDelay("generateReply", startTime);
       return result;
     }
@@ -176,7 +183,7 @@ public class LookupWorker implements Runnable {
       // We make two tasks to check the DNS and GNS in parallel
       tasks = Arrays.asList(
               // Create GNS lookup task
-              new LookupTask(query, handler),
+              new LookupTask(query, loop.getAnswerCache(), handler),
               // Create DNS lookup task
               new LookupTask(dnsQuery, dnsServer, handler));
     } else {
@@ -189,8 +196,8 @@ public class LookupWorker implements Runnable {
 
     // A little bit of overkill for two tasks, but it's really not that much longer (if any) than
     // the altenative. Plus it's cool and trendy to use futures.
-    ExecutorService executor = Executors.newFixedThreadPool(2);
-    ExecutorCompletionService<Message> completionService = new ExecutorCompletionService<>(executor);
+    ExecutorCompletionService<Message> completionService
+            = new ExecutorCompletionService<>(loop.getResolvers());
     List<Future<Message>> futures = new ArrayList<>(2);
     for (Callable<Message> task : tasks) {
       futures.add(completionService.submit(task));
@@ -214,8 +221,10 @@ public class LookupWorker implements Runnable {
         NameResolution.getLogger().log(Level.WARNING, "Lookup task interrupted: {0}", e);
       }
     }
-    // Shutdown the executor threadpool
-    executor.shutdown();
+    // Don't let a loser that hasn't started yet hold up the shared pool
+    for (Future<Message> future : futures) {
+      future.cancel(false);
+    }
     if (successResponse != null) {
       // Cache the successful response
       try {
@@ -252,15 +261,7 @@ public class LookupWorker implements Runnable {
    * @param responseBytes
    */
   private void sendResponse(byte[] responseBytes) {
-    DatagramPacket outgoingPacket = new DatagramPacket(responseBytes, responseBytes.length, incomingPacket.getAddress(), incomingPacket.getPort());
-    try {
-      socket.send(outgoingPacket);
-      NameResolution.getLogger().log(Level.FINE,
-              "Response sent to {0} {1}", new Object[]{incomingPacket.getAddress().toString(),
-                incomingPacket.getPort()});
-    } catch (IOException e) {
-      NameResolution.getLogger().log(Level.SEVERE, "Failed to send response{0}", e);
-    }
+    loop.send(client, responseBytes);
   }
 
   private int getCred(int section, boolean isAuth) {
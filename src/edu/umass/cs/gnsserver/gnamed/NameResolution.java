@@ -24,9 +24,11 @@ import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
 import static edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess.HRN_GUID;
-import edu.umass.cs.gnsserver.gnsapp.GNSApp;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.BasicRecordMap;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DelayProfiler;
 
 import java.io.IOException;
@@ -34,7 +36,12 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -69,6 +76,14 @@ public class NameResolution {
 
   private static final Logger LOG = Logger.getLogger(NameResolution.class.getName());
 
+  /**
+   * The fields we read from a guid to answer a query.
+   */
+  private static final String[] DNS_FIELDS = {"A", "NS", "CNAME", "SOA", "PTR", "MX"};
+
+  // Guards against CNAME loops
+  private static final int MAX_CNAME_HOPS = 8;
+
   /**
    * @return Logger used by most of the client support package.
    */
@@ -137,6 +152,23 @@ public class NameResolution {
    * @return A message with either a good response or an error.
    */
   public static Message lookupGnsServer(Message query, ClientRequestHandlerInterface handler) {
+    return lookupGnsServer(query, handler.getApp().getDB(),
+            Config.getGlobalBoolean(GNSConfig.GNSC.DNS_BATCHED_RESOLUTION));
+  }
+
+  /**
+   * Lookup the query in the given database.
+   *
+   * If batched is true the CNAME chain and the NS and MX targets are fetched
+   * together by {@link #lookupRecordSets}, otherwise each name costs its own
+   * lookups one after the other.
+   *
+   * @param query
+   * @param db
+   * @param batched
+   * @return A message with either a good response or an error.
+   */
+  public static Message lookupGnsServer(Message query, BasicRecordMap db, boolean batched) {
     // check for queries we can't handle
     int type = query.getQuestion().getType();
     // Was the query legitimate or implemented?
@@ -145,7 +177,6 @@ public class NameResolution {
     }
 
     // extract the domain (guid) and field from the query
-    final String fieldName = Type.string(query.getQuestion().getType());
     final Name requestedName = query.getQuestion().getName();
     final byte[] rawName = requestedName.toWire();
     final String domainName = querytoStringForGNS(rawName);
@@ -161,14 +192,18 @@ public class NameResolution {
     response.addRecord(query.getQuestion(), Section.QUESTION);
     response.getHeader().setFlag(Flags.AA);
 
+    if (batched) {
+      return resolveBatched(query, domainName, response, db);
+    }
+
     /* Request DNS fields of an alias and prepare a DNS response message */
-    ArrayList<String> fieldNames = new ArrayList<>(Arrays.asList("A", "NS", "CNAME", "SOA", "PTR", "MX"));
+    ArrayList<String> fieldNames = new ArrayList<>(Arrays.asList(DNS_FIELDS));
     Boolean nameResolved = false;
     String nameToResolve = domainName;
 
     while (!nameResolved) {
       long resolveStart = System.currentTimeMillis();
-      JSONObject fieldResponseJson = lookupGuidField(nameToResolve, null, fieldNames, handler);
+      JSONObject fieldResponseJson = lookupGuidFieldInDB(nameToResolve, null, fieldNames, db);
       if (fieldResponseJson == null) {
         NameResolution.getLogger().log(Level.FINE, "GNS lookup for domain {0} failed.", domainName);
         return errorMessage(query, Rcode.NXDOMAIN);
@@ -188,11 +223,11 @@ public class NameResolution {
           response.addRecord(nsRecord, Section.AUTHORITY);
 
           /* Resolve NS Record name to an IP address and add it to ADDITIONAL section */
-          JSONObject nsResponseJson = lookupGuidField(ns, fieldName, null, handler);
+          JSONObject nsResponseJson = lookupGuidFieldInDB(ns, "A", null, db);
           //CommandResponse nsResponse = lookupGuidGnsServer(ns, fieldName, null, handler);
-          if (nsResponseJson != null) {
+          if (nsResponseJson != null && nsResponseJson.has("A")) {
             //if (nsResponse != null && !nsResponse.isError()) {
-            String address = nsResponseJson.getString(ns);
+            String address = nsResponseJson.getString("A");
             //String address = (new JSONArray(nsResponse.getReturnValue())).get(0).toString();
             NameResolution.getLogger().log(Level.FINE, "single field {0}", address);
             ARecord nsARecord = new ARecord(new Name(ns), DClass.IN, 60, InetAddress.getByName(address));
@@ -205,11 +240,11 @@ public class NameResolution {
           response.addRecord(mxRecord, Section.AUTHORITY);
 
           /* Resolve MX Record name to an IP address and add it to ADDITIONAL section */
-          JSONObject mxResponseJson = lookupGuidField(mxname, fieldName, null, handler);
+          JSONObject mxResponseJson = lookupGuidFieldInDB(mxname, "A", null, db);
           //CommandResponse mxResponse = lookupGuidGnsServer(mxname, fieldName, null, handler);
-          if (mxResponseJson != null) {
+          if (mxResponseJson != null && mxResponseJson.has("A")) {
             //if (mxResponse != null && !mxResponse.isError()) {
-            String address = mxResponseJson.getString(mxname);
+            String address = mxResponseJson.getString("A");
             //String address = (new JSONArray(mxResponse.getReturnValue())).get(0).toString();
             NameResolution.getLogger().log(Level.FINER, "single field {0}", address);
             ARecord mxARecord = new ARecord(new Name(mxname), DClass.IN, 60, InetAddress.getByName(address));
@@ -232,10 +267,12 @@ public class NameResolution {
           break;
         }
       } catch (JSONException e) {
-        e.printStackTrace();
+        NameResolution.getLogger().log(Level.WARNING,
+                "Problem parsing fields of {0}: {1}", new Object[]{nameToResolve, e});
         return errorMessage(query, Rcode.NXDOMAIN);
       } catch (TextParseException | UnknownHostException e) {
-        e.printStackTrace();
+        NameResolution.getLogger().log(Level.WARNING,
+                "Problem building response for {0}: {1}", new Object[]{nameToResolve, e});
       }
 
     }
@@ -243,6 +280,157 @@ public class NameResolution {
     return response;
   }
 
+  /**
+   * Resolves domainName by fetching its CNAME chain level by level with
+   * {@link #lookupRecordSets}. Each level also fetches the addresses of the NS and
+   * MX targets found at the level before, so those don't cost round trips of
+   * their own. The response is then assembled from the record sets. Answers are
+   * cached by {@link GnsAnswerCache}, not here, so there is one TTL to expire.
+   */
+  private static Message resolveBatched(Message query, String domainName, Message response,
+          BasicRecordMap db) {
+    long resolveStart = System.currentTimeMillis();
+    Map<String, JSONObject> recordSets = new HashMap<>();
+    Set<String> chain = new HashSet<>();
+    Set<String> toFetch = new HashSet<>();
+    String next = domainName;
+    while (next != null) {
+      if (!recordSets.containsKey(next)) {
+        toFetch.add(next);
+      }
+      if (!toFetch.isEmpty()) {
+        recordSets.putAll(lookupRecordSets(toFetch, db));
+        toFetch = new HashSet<>();
+      }
+      JSONObject fields = recordSets.get(next);
+      if (fields == null) {
+        // the chain is broken, the response will say so
+        break;
+      }
+      chain.add(next);
+      for (String target : new String[]{fields.optString("NS", null), fields.optString("MX", null)}) {
+        if (target != null && !recordSets.containsKey(target)) {
+          toFetch.add(target);
+        }
+      }
+      String cname = fields.optString("CNAME", null);
+      if (cname != null && !chain.contains(cname) && chain.size() < MAX_CNAME_HOPS) {
+        next = cname;
+      } else {
+        next = null;
+      }
+    }
+    if (!toFetch.isEmpty()) {
+      recordSets.putAll(lookupRecordSets(toFetch, db));
+    }
+
+    // Build the response the same way the loop in lookupGnsServer does
+    String nameToResolve = domainName;
+    Set<String> visited = new HashSet<>();
+    try {
+      while (nameToResolve != null && visited.add(nameToResolve)) {
+        JSONObject fields = recordSets.get(nameToResolve);
+        if (fields == null) {
+          NameResolution.getLogger().log(Level.FINE, "GNS lookup for domain {0} failed.", domainName);
+          return errorMessage(query, Rcode.NXDOMAIN);
+        }
+        if (fields.has("A")) {
+          response.addRecord(new ARecord(new Name(nameToResolve), DClass.IN, 60,
+                  InetAddress.getByName(fields.getString("A"))), Section.ANSWER);
+        }
+        if (fields.has("NS")) {
+          String ns = fields.getString("NS");
+          response.addRecord(new NSRecord(new Name(nameToResolve), DClass.IN, 120, new Name(ns)),
+                  Section.AUTHORITY);
+          addTargetAddress(response, ns, recordSets.get(ns));
+        }
+        if (fields.has("MX")) {
+          String mxname = fields.getString("MX");
+          response.addRecord(new MXRecord(new Name(nameToResolve), DClass.IN, 120, 100, new Name(mxname)),
+                  Section.AUTHORITY);
+          addTargetAddress(response, mxname, recordSets.get(mxname));
+        }
+        if (fields.has("CNAME") && visited.size() < MAX_CNAME_HOPS) {
+          String cname = fields.getString("CNAME");
+          response.addRecord(new CNAMERecord(new Name(nameToResolve), DClass.IN, 60, new Name(cname)),
+                  Section.ANSWER);
+          nameToResolve = cname;
+        } else {
+          nameToResolve = null;
+        }
+      }
+    } catch (JSONException e) {
+      NameResolution.getLogger().log(Level.WARNING,
+              "Problem parsing record sets for {0}: {1}", new Object[]{domainName, e});
+      return errorMessage(query, Rcode.NXDOMAIN);
+    } catch (TextParseException | UnknownHostException e) {
+      NameResolution.getLogger().log(Level.WARNING,
+              "Problem building response for {0}: {1}", new Object[]{domainName, e});
+    }
+    DelayProfiler.updateDelay("ResolveNameBatched", resolveStart);
+    NameResolution.getLogger().log(Level.FINER, "Outgoing response from GNS: {0}", response.toString());
+    return response;
+  }
+
+  // Adds the address of an NS or MX target to the ADDITIONAL section if we know it
+  private static void addTargetAddress(Message response, String target, JSONObject targetFields)
+          throws TextParseException, UnknownHostException {
+    if (targetFields != null && targetFields.has("A")) {
+      String address = targetFields.optString("A");
+      NameResolution.getLogger().log(Level.FINE, "single field {0}", address);
+      response.addRecord(new ARecord(new Name(target), DClass.IN, 60, InetAddress.getByName(address)),
+              Section.ADDITIONAL);
+    }
+  }
+
+  /**
+   * Looks up the DNS fields of several names. The guids of all the names are
+   * read in one multi-record database read and then the fields of all those
+   * guids in one more.
+   *
+   * @param names - the HRNs of the guids
+   * @param db
+   * @return a map from each name that exists to a JSONObject with its DNS fields
+   */
+  public static Map<String, JSONObject> lookupRecordSets(Collection<String> names, BasicRecordMap db) {
+    Map<String, JSONObject> result = new HashMap<>();
+    if (names.isEmpty()) {
+      return result;
+    }
+    long startTime = System.currentTimeMillis();
+    try {
+      Map<String, String> guids = new HashMap<>();
+      for (Map.Entry<String, NameRecord> entry : NameRecord.getNameRecordsMultiUserFields(db, names,
+              ColumnFieldType.USER_JSON, HRN_GUID).entrySet()) {
+        try {
+          guids.put(entry.getKey(), entry.getValue().getValuesMap().getString(HRN_GUID));
+        } catch (JSONException | FieldNotFoundException e) {
+          // not a name we can resolve
+        }
+      }
+      if (guids.isEmpty()) {
+        return result;
+      }
+      Map<String, NameRecord> guidRecords = NameRecord.getNameRecordsMultiUserFields(db,
+              new HashSet<>(guids.values()), ColumnFieldType.USER_JSON, DNS_FIELDS);
+      for (Map.Entry<String, String> entry : guids.entrySet()) {
+        NameRecord guidRecord = guidRecords.get(entry.getValue());
+        if (guidRecord != null) {
+          try {
+            result.put(entry.getKey(), guidRecord.getValuesMap());
+          } catch (FieldNotFoundException e) {
+            // not a name we can resolve
+          }
+        }
+      }
+    } catch (FailedDBOperationException e) {
+      NameResolution.getLogger().log(Level.SEVERE,
+              "Problem getting record sets for {0}: {1}", new Object[]{names, e});
+    }
+    DelayProfiler.updateDelay("lookupRecordSets", startTime);
+    return result;
+  }
+
   /**
    * Lookup the field or fields in the guid.
    * Returns a JSONObject containing the fields and values
@@ -255,6 +443,21 @@ public class NameResolution {
    * @return a JSONObject containing the fields and values or null
    */
   public static JSONObject lookupGuidField(String domainName, String fieldName, ArrayList<String> fieldNames, ClientRequestHandlerInterface handler) {
+    return lookupGuidFieldInDB(domainName, fieldName, fieldNames, handler.getApp().getDB());
+  }
+
+  /**
+   * Lookup the field or fields in the guid using the given database.
+   * Returns a JSONObject containing the fields and values
+   * or null if the domainName doesn't exist.
+   *
+   * @param domainName - the HRN of the guid
+   * @param fieldName - the field to lookup (mutually exclusive with fieldNames)
+   * @param fieldNames - the fields to lookup (mutually exclusive with fieldNames)
+   * @param db
+   * @return a JSONObject containing the fields and values or null
+   */
+  public static JSONObject lookupGuidFieldInDB(String domainName, String fieldName, ArrayList<String> fieldNames, BasicRecordMap db) {
     long startTime = System.currentTimeMillis();
     // Make an array of field names to fetch from fieldName or FieldNames
     String[] fieldArray = null;
@@ -266,10 +469,9 @@ public class NameResolution {
       fieldArray = fieldNames.toArray(fieldArray);
     }
     // First we lookup the guid from the HRN
-    GNSApp app = handler.getApp();
     NameRecord hrnNameRecord = null;
     try {
-      hrnNameRecord = NameRecord.getNameRecordMultiUserFields(app.getDB(), domainName,
+      hrnNameRecord = NameRecord.getNameRecordMultiUserFields(db, domainName,
               ColumnFieldType.USER_JSON, HRN_GUID);
     } catch (RecordNotFoundException e) {
       // Normal result when the record doesn't exist
@@ -289,7 +491,7 @@ public class NameResolution {
       }
       if (guid != null) {
         try {
-          guidNameRecord = NameRecord.getNameRecordMultiUserFields(app.getDB(), guid,
+          guidNameRecord = NameRecord.getNameRecordMultiUserFields(db, guid,
                   ColumnFieldType.USER_JSON, fieldArray);
         } catch (RecordNotFoundException e) {
           // Normal result
@@ -0,0 +1,332 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.gnsserver.utils.Shutdownable;
+import edu.umass.cs.gnscommon.utils.ThreadUtils;
+import edu.umass.cs.utils.Config;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.xbill.DNS.Cache;
+import org.xbill.DNS.SimpleResolver;
+
+/**
+ * The UDP serving path shared by {@link UdpDnsServer} and {@link DnsTranslator}.
+ *
+ * One thread runs a selector over a non-blocking {@link DatagramChannel}. It reads
+ * each query into a pooled buffer and hands it to a bounded pool of
+ * {@link LookupWorker}s. When the worker pool is backed up the query is dropped
+ * and left for the client to retry, which is what an overloaded DNS server is
+ * expected to do anyway.
+ *
+ * Workers send their responses straight from their own thread. Only when the
+ * socket's send buffer is full is a response queued for the selector thread,
+ * which sends it once the channel is writable again.
+ *
+ * The resolver pool which races the GNS and DNS lookups of a query and the
+ * cache of GNS answers live as long as the server.
+ *
+ * @author westy
+ */
+class UdpChannelLoop implements Shutdownable {
+
+  /**
+   * The largest query we accept. Same as the old 512 byte receive array.
+   */
+  static final int UDP_LENGTH = 512;
+
+  // bounds the number of packets we read before looking at pending responses again
+  private static final int MAX_READS_PER_SELECT = 64;
+
+  private final DatagramChannel channel;
+  private final Selector selector;
+  private final SelectionKey key;
+  private final ExecutorService workers;
+  private final ExecutorService resolvers;
+  private final BlockingQueue<ByteBuffer> buffers;
+  private final Queue<PendingResponse> pending = new ConcurrentLinkedQueue<>();
+  private final SimpleResolver gnsServer;
+  private final SimpleResolver dnsServer;
+  private final Cache dnsCache;
+  private final GnsAnswerCache answerCache;
+  private final ClientRequestHandlerInterface handler;
+  private volatile boolean running = true;
+
+  private static class PendingResponse {
+
+    private final SocketAddress client;
+    private final ByteBuffer data;
+
+    private PendingResponse(SocketAddress client, ByteBuffer data) {
+      this.client = client;
+      this.data = data;
+    }
+  }
+
+  /**
+   * Binds a non-blocking channel to the given IP/port.
+   *
+   * @param addr IP to bind (0.0.0.0 is acceptable)
+   * @param port port to bind (0 picks a free port)
+   * @param gnsServer (might be null gns requests are resolved locally)
+   * @param dnsServer (might be null meaning don't send requests to a DNS server)
+   * @param dnsCache (might be null meaning DNS responses are not cached)
+   * @param handler
+   * @throws SocketException
+   */
+  UdpChannelLoop(InetAddress addr, int port, SimpleResolver gnsServer, SimpleResolver dnsServer,
+          Cache dnsCache, ClientRequestHandlerInterface handler) throws SocketException {
+    this.gnsServer = gnsServer;
+    this.dnsServer = dnsServer;
+    this.dnsCache = dnsCache;
+    this.handler = handler;
+    this.answerCache = new GnsAnswerCache();
+    int poolSize = Config.getGlobalInt(GNSConfig.GNSC.DNS_BUFFER_POOL_SIZE);
+    this.buffers = new ArrayBlockingQueue<>(poolSize);
+    int workerThreads = Config.getGlobalInt(GNSConfig.GNSC.DNS_WORKER_THREADS);
+    this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(poolSize));
+    this.resolvers = Executors.newFixedThreadPool(Config.getGlobalInt(GNSConfig.GNSC.DNS_RESOLVER_THREADS));
+    DatagramChannel openedChannel = null;
+    try {
+      openedChannel = DatagramChannel.open();
+      openedChannel.configureBlocking(false);
+      openedChannel.bind(new InetSocketAddress(addr, port));
+      this.selector = Selector.open();
+      this.key = openedChannel.register(selector, SelectionKey.OP_READ);
+      this.channel = openedChannel;
+    } catch (IOException e) {
+      workers.shutdown();
+      resolvers.shutdown();
+      if (openedChannel != null) {
+        try {
+          openedChannel.close();
+        } catch (IOException f) {
+          // nothing more we can do
+        }
+      }
+      if (e instanceof SocketException) {
+        throw (SocketException) e;
+      }
+      SocketException socketException = new SocketException(e.getMessage());
+      socketException.initCause(e);
+      throw socketException;
+    }
+  }
+
+  /**
+   * Runs the selector loop until {@link #shutdown} is called.
+   */
+  void run() {
+    while (running) {
+      try {
+        selector.select();
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+          SelectionKey selected = iterator.next();
+          iterator.remove();
+          if (selected.isValid() && selected.isReadable()) {
+            receive();
+          }
+        }
+        sendPending();
+      } catch (ClosedChannelException | ClosedSelectorException e) {
+        break;
+      } catch (IOException e) {
+        if (!running) {
+          break;
+        }
+        NameResolution.getLogger().log(Level.SEVERE,
+                "Error in UDP Server (will sleep for 3 seconds and try again): {0}", e);
+        ThreadUtils.sleep(3000);
+      }
+    }
+  }
+
+  private void receive() throws IOException {
+    for (int i = 0; i < MAX_READS_PER_SELECT; i++) {
+      ByteBuffer buffer = acquireBuffer();
+      SocketAddress client = channel.receive(buffer);
+      if (client == null) {
+        releaseBuffer(buffer);
+        return;
+      }
+      buffer.flip();
+      try {
+        workers.execute(new LookupWorker(this, client, buffer));
+      } catch (RejectedExecutionException e) {
+        releaseBuffer(buffer);
+        NameResolution.getLogger().log(Level.FINE,
+                "Dropping query from {0} because all workers are busy", client);
+      }
+    }
+  }
+
+  /**
+   * Sends a response to a client. Called by the workers.
+   *
+   * @param client
+   * @param response
+   */
+  void send(SocketAddress client, byte[] response) {
+    ByteBuffer data = ByteBuffer.wrap(response);
+    if (pending.isEmpty()) {
+      try {
+        if (channel.send(data, client) > 0) {
+          NameResolution.getLogger().log(Level.FINE, "Response sent to {0}", client);
+          return;
+        }
+      } catch (IOException e) {
+        NameResolution.getLogger().log(Level.SEVERE, "Failed to send response{0}", e);
+        return;
+      }
+    }
+    pending.add(new PendingResponse(client, data));
+    selector.wakeup();
+  }
+
+  /**
+   * Sends queued responses until the channel fills up again.
+   * Only called from the selector thread.
+   */
+  private void sendPending() throws ClosedChannelException {
+    PendingResponse response;
+    while ((response = pending.peek()) != null) {
+      try {
+        if (channel.send(response.data, response.client) == 0) {
+          key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+          return;
+        }
+      } catch (ClosedChannelException e) {
+        throw e;
+      } catch (IOException e) {
+        NameResolution.getLogger().log(Level.SEVERE, "Failed to send response{0}", e);
+      }
+      pending.poll();
+    }
+    if (key.interestOps() != SelectionKey.OP_READ) {
+      key.interestOps(SelectionKey.OP_READ);
+    }
+  }
+
+  /**
+   * @return a cleared receive buffer
+   */
+  ByteBuffer acquireBuffer() {
+    ByteBuffer buffer = buffers.poll();
+    return buffer != null ? buffer : ByteBuffer.allocate(UDP_LENGTH);
+  }
+
+  /**
+   * Returns a buffer to the pool.
+   *
+   * @param buffer
+   */
+  void releaseBuffer(ByteBuffer buffer) {
+    buffer.clear();
+    buffers.offer(buffer);
+  }
+
+  /**
+   * @return the executor shared by the GNS and DNS lookups of all queries
+   */
+  ExecutorService getResolvers() {
+    return resolvers;
+  }
+
+  /**
+   * @return the GNS server to forward GNS requests to or null
+   */
+  SimpleResolver getGnsServer() {
+    return gnsServer;
+  }
+
+  /**
+   * @return the DNS server to forward DNS requests to or null
+   */
+  SimpleResolver getDnsServer() {
+    return dnsServer;
+  }
+
+  /**
+   * @return the cache of DNS responses or null
+   */
+  Cache getDnsCache() {
+    return dnsCache;
+  }
+
+  /**
+   * @return the cache of GNS answers
+   */
+  GnsAnswerCache getAnswerCache() {
+    return answerCache;
+  }
+
+  /**
+   * @return the handler
+   */
+  ClientRequestHandlerInterface getHandler() {
+    return handler;
+  }
+
+  /**
+   * @return the port we are bound to
+   */
+  int getLocalPort() {
+    return channel.socket().getLocalPort();
+  }
+
+  @Override
+  public void shutdown() {
+    running = false;
+    workers.shutdown();
+    resolvers.shutdown();
+    try {
+      selector.close();
+      channel.close();
+    } catch (IOException e) {
+      NameResolution.getLogger().log(Level.WARNING, "Problem closing DNS channel: {0}", e);
+    }
+  }
+}
@@ -21,17 +21,10 @@ package edu.umass.cs.gnsserver.gnamed;
 
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
 import edu.umass.cs.gnsserver.utils.Shutdownable;
-import edu.umass.cs.gnscommon.utils.ThreadUtils;
 
-import java.io.IOException;
-import java.io.InterruptedIOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.Level;
 
 import org.xbill.DNS.SimpleResolver;
@@ -45,19 +38,16 @@ import org.xbill.DNS.Cache;
  * When using DNS as a fallback we send out parallel requests and whichever returns
  * first is returned to the client as the answer.
  *
+ * Packets are read and answered by a {@link UdpChannelLoop} running on this thread.
+ *
  * @author Westy
  * @version 1.0
  */
 public class UdpDnsServer extends Thread implements Shutdownable {
 
-  private final SimpleResolver dnsServer;
-  private final SimpleResolver gnsServer;
-  private final Cache dnsCache;
-  private final DatagramSocket sock;
-  private ExecutorService executor = null;
+  private final UdpChannelLoop loop;
   private final String dnsServerIP; // just stored for informational purposes
   private final String gnsServerIP; // just stored for informational purposes
-  private final ClientRequestHandlerInterface handler;
 
   /**
    * Creates a new <code>UDPServer</code> object bound to the given IP/port
@@ -76,49 +66,33 @@ public class UdpDnsServer extends Thread implements Shutdownable {
    */
   public UdpDnsServer(InetAddress addr, int port, String dnsServerIP, String gnsServerIP,
           ClientRequestHandlerInterface handler) throws SecurityException, SocketException, UnknownHostException {
-    this.dnsServer = dnsServerIP != null ? new SimpleResolver(dnsServerIP) : null;
-    this.gnsServer = gnsServerIP != null ? new SimpleResolver(gnsServerIP) : null;
-    this.dnsCache = dnsServerIP != null ? new Cache() : null;
     this.dnsServerIP = dnsServerIP;
     this.gnsServerIP = gnsServerIP;
-    this.sock = new DatagramSocket(port, addr);
-    this.executor = Executors.newFixedThreadPool(5);
-    this.handler = handler;
+    this.loop = new UdpChannelLoop(addr, port,
+            gnsServerIP != null ? new SimpleResolver(gnsServerIP) : null,
+            dnsServerIP != null ? new SimpleResolver(dnsServerIP) : null,
+            dnsServerIP != null ? new Cache() : null,
+            handler);
   }
 
   @Override
   public void run() {
     NameResolution.getLogger().log(Level.INFO,
             "Starting local DNS Server on port {0}{1}fallback DNS server at {2}",
-            new Object[]{sock.getLocalPort(),
+            new Object[]{loop.getLocalPort(),
               gnsServerIP != null ? (" with GNS server at " + gnsServerIP + " and ") : " with ", dnsServerIP});
-    while (true) {
-      try {
-        final short udpLength = 512;
-        while (true) {
-          byte[] incomingData = new byte[udpLength];
-          DatagramPacket incomingPacket = new DatagramPacket(incomingData, incomingData.length);
-          // Read the incoming request
-          incomingPacket.setLength(incomingData.length);
-          try {
-            sock.receive(incomingPacket);
-          } catch (InterruptedIOException e) {
-            continue;
-          }
-          executor.execute(new LookupWorker(sock, incomingPacket, incomingData, gnsServer, dnsServer, dnsCache, handler));
-        }
-      } catch (IOException e) {
-        NameResolution.getLogger().log(Level.SEVERE, 
-                "Error in UDP Server (will sleep for 3 seconds and try again): {0}", e);
-        ThreadUtils.sleep(3000);
-      }
-    }
+    loop.run();
+  }
+
+  /**
+   * @return the port this server is bound to
+   */
+  public int getLocalPort() {
+    return loop.getLocalPort();
   }
 
   @Override
   public void shutdown() {
-    if (executor != null) {
-      executor.shutdown();
-    }
+    loop.shutdown();
   }
 }
@@ -57,6 +57,8 @@ import edu.umass.cs.gnsserver.gnsapp.packet.BasicPacketWithClientAddress;
 import edu.umass.cs.gnsserver.gnamed.DnsTranslator;
 import edu.umass.cs.gnsserver.gnamed.UdpDnsServer;
 import edu.umass.cs.gnsserver.gnsapp.packet.InternalCommandPacket;
+import edu.umass.cs.gnsserver.gnsapp.packet.LNSCacheSubscribePacket;
+import edu.umass.cs.gnsserver.gnsapp.packet.LNSProbePacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.Packet;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectResponsePacket;
@@ -202,7 +204,8 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
 
   private static PacketType[] types = {PacketType.COMMAND,
     PacketType.SELECT_REQUEST, PacketType.SELECT_RESPONSE,
-    PacketType.ADMIN_REQUEST, PacketType.INTERNAL_COMMAND};
+    PacketType.ADMIN_REQUEST, PacketType.INTERNAL_COMMAND,
+    PacketType.LNS_CACHE_SUBSCRIBE, PacketType.LNS_PROBE};
 
   private static PacketType[] mutualAuthTypes = {PacketType.ADMIN_COMMAND};
 
@@ -301,6 +304,12 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
         case COMMAND:
             CommandHandler.handleCommandPacket((CommandPacket) request, doNotReplyToClient, this);
           break;
+        case LNS_CACHE_SUBSCRIBE:
+          LNSCacheSubscriptions.handleSubscribe((LNSCacheSubscribePacket) request);
+          break;
+        case LNS_PROBE:
+          handleProbe((LNSProbePacket) request);
+          break;
         case ADMIN_COMMAND:
           CommandHandler.handleCommandPacket((AdminCommandPacket) request, doNotReplyToClient, this);
           break;
@@ -395,7 +404,8 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
       GNSConfig.getLogger().warning("Problem creating noSqlRecords from config:" + e);
       noSqlRecords = new MongoRecords(nodeID, Config.getGlobalInt(GNSConfig.GNSC.MONGO_PORT));
     }
-    this.nameRecordDB = new GNSRecordMap<>(noSqlRecords, MongoRecords.DBNAMERECORD);
+    GNSRecordMap<String> recordMap = new GNSRecordMap<>(noSqlRecords, MongoRecords.DBNAMERECORD);
+    this.nameRecordDB = recordMap;
     GNSConfig.getLogger().log(Level.FINE, "App {0} created {1}",
             new Object[]{nodeID, nameRecordDB});
     this.messenger = messenger;
@@ -426,7 +436,12 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
             || Config.getGlobalString(GNSConfig.GNSC.DNS_SERVER_NODES).contains(nodeID)) {
       startDNS();
     }
-    this.activeCodeHandler = OldHackyConstants.enableActiveCode ? new ActiveCodeHandler() : null;
+    if (OldHackyConstants.enableActiveCode) {
+      this.activeCodeHandler = new ActiveCodeHandler(this);
+      recordMap.startActiveCodeIndex();
+    } else {
+      this.activeCodeHandler = null;
+    }
 
     // context service init
     if (Config.getGlobalBoolean(GNSConfig.GNSC.ENABLE_CNS)) {
@@ -498,7 +513,12 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
         request = (Request) Packet.createInstance(json, unstringer);
       } else {
         // parse non-JSON byteified form
-        return fromBytes(msgBytes);
+        request = fromBytes(msgBytes);
+        if (request instanceof BasicPacketWithClientAddress && header != null) {
+          // needed to reply to requests that complete after execute returns
+          ((BasicPacketWithClientAddress) request).setClientAddress(header.sndr);
+        }
+        return request;
       }
       if (Util.oneIn(100)) {
         DelayProfiler.updateDelayNano(
@@ -632,6 +652,7 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
         // the record. If the record does not exists this is just a
         // noop.
         NameRecord.removeNameRecord(nameRecordDB, name);
+        LNSCacheSubscriptions.recordUpdated(name, null, this);
       } else // state does not equal null so we either create a new record
       // or update the existing one
        if (!NameRecord.containsRecord(nameRecordDB, name)) {
@@ -651,6 +672,7 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
                     nameRecordDB, name);
             nameRecord
                     .updateState(new ValuesMap(new JSONObject(state)));
+            LNSCacheSubscriptions.recordUpdated(name, null, this);
           } catch (JSONException | FieldNotFoundException | RecordNotFoundException | FailedDBOperationException e) {
             GNSConfig.getLogger().log(Level.SEVERE,
                     "Problem updating state: {0}", e.getMessage());
@@ -782,6 +804,40 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
     } // else
   }
 
+  /**
+   * Sends a response for a request that completes after {@link #execute}
+   * has already returned, e.g., a select that runs asynchronously. Such
+   * responses can't go through {@link #sendToClient} because gigapaxos
+   * is done with the request, so they are sent straight to the client.
+   *
+   * @param clientAddress
+   * @param response
+   * @throws IOException
+   * @throws JSONException
+   */
+  public void sendToClientAddress(InetSocketAddress clientAddress, ResponsePacket response)
+          throws IOException, JSONException {
+    messenger.sendToAddress(clientAddress, response.toJSONObject());
+  }
+
+  @Override
+  public void sendToAddress(InetSocketAddress address, JSONObject msg) throws IOException {
+    messenger.sendToAddress(address, msg);
+  }
+
+  // an LNS measuring how long it takes to get to us and back
+  private void handleProbe(LNSProbePacket probe) {
+    if (probe.getSenderAddress() == null) {
+      return;
+    }
+    try {
+      sendToAddress(probe.getSenderAddress(), probe.makeResponse().toJSONObject());
+    } catch (JSONException | IOException e) {
+      GNSConfig.getLogger().log(Level.FINE, "Unable to answer probe {0}: {1}",
+              new Object[]{probe.getSummary(), e});
+    }
+  }
+
   @Override
   public String toString() {
     return this.getClass().getSimpleName() + ":" + this.nodeID;
@@ -0,0 +1,137 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp;
+
+import edu.umass.cs.gnsserver.gnsapp.deprecated.GNSApplicationInterface;
+import edu.umass.cs.gnsserver.gnsapp.packet.LNSCacheInvalidatePacket;
+import edu.umass.cs.gnsserver.gnsapp.packet.LNSCacheSubscribePacket;
+import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.utils.Config;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Keeps track of the LocalNameServers that cache fields of guids that this
+ * active replica stores and tells them when those guids are updated.
+ *
+ * An LNS subscribes to a guid (see {@link LNSCacheSubscribePacket}) when it starts
+ * caching its fields and again every half LNS_CACHE_SUBSCRIPTION_TTL while it keeps
+ * caching them. Subscriptions that aren't renewed are forgotten.
+ *
+ * @author westy
+ */
+public class LNSCacheSubscriptions {
+
+  private static final Logger LOG = Logger.getLogger(LNSCacheSubscriptions.class.getName());
+
+  /**
+   * @return Logger used by this class.
+   */
+  public static final Logger getLogger() {
+    return LOG;
+  }
+
+  private static final int MAX_SUBSCRIBED_GUIDS = 100000;
+
+  // guid -> the LNSs that want to hear about updates to it
+  private static final Cache<String, Set<InetSocketAddress>> SUBSCRIBERS = CacheBuilder.newBuilder()
+          .concurrencyLevel(5)
+          .maximumSize(MAX_SUBSCRIBED_GUIDS)
+          .expireAfterWrite(Config.getGlobalInt(GNSConfig.GNSC.LNS_CACHE_SUBSCRIPTION_TTL), TimeUnit.MILLISECONDS)
+          .build();
+
+  /**
+   * Handles a subscription from an LNS.
+   *
+   * @param packet
+   */
+  public static void handleSubscribe(LNSCacheSubscribePacket packet) {
+    // never an address named in the packet, or anyone could have us send invalidations anywhere
+    InetSocketAddress lns = packet.getSenderAddress();
+    if (lns == null) {
+      LOG.log(Level.WARNING, "Ignoring subscription to {0} with no sender address", packet.getGuid());
+      return;
+    }
+    LOG.log(Level.FINE, "LNS {0} subscribed to {1}",
+            new Object[]{lns, packet.getGuid()});
+    try {
+      Set<InetSocketAddress> subscribers = SUBSCRIBERS.get(packet.getGuid(),
+              new Callable<Set<InetSocketAddress>>() {
+        @Override
+        public Set<InetSocketAddress> call() {
+          return Collections.newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+        }
+      });
+      subscribers.add(lns);
+      // put it back so that the subscription lasts another TTL
+      SUBSCRIBERS.put(packet.getGuid(), subscribers);
+    } catch (ExecutionException e) {
+      LOG.log(Level.WARNING, "Unable to add subscription for {0}: {1}",
+              new Object[]{packet.getGuid(), e});
+    }
+  }
+
+  /**
+   * Tells the LNSs that subscribed to guid that it was updated.
+   *
+   * @param guid
+   * @param fields the fields that changed or null if the whole record changed
+   * @param app
+   */
+  public static void recordUpdated(String guid, Collection<String> fields,
+          GNSApplicationInterface<String> app) {
+    Set<InetSocketAddress> subscribers = SUBSCRIBERS.getIfPresent(guid);
+    if (subscribers == null || subscribers.isEmpty()) {
+      return;
+    }
+    JSONObject json;
+    try {
+      json = new LNSCacheInvalidatePacket(guid, fields, System.currentTimeMillis()).toJSONObject();
+    } catch (JSONException e) {
+      LOG.log(Level.WARNING, "Unable to create invalidation for {0}: {1}", new Object[]{guid, e});
+      return;
+    }
+    for (InetSocketAddress lns : subscribers) {
+      try {
+        app.sendToAddress(lns, json);
+      } catch (IOException e) {
+        // the LNS will find out when the value times out
+        LOG.log(Level.FINE, "Unable to send invalidation for {0} to {1}: {2}",
+                new Object[]{guid, lns, e});
+      }
+    }
+  }
+}
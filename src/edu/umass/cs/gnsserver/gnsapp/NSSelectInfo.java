@@ -22,12 +22,14 @@ package edu.umass.cs.gnsserver.gnsapp;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectGroupBehavior;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectOperation;
 
-import org.json.JSONObject;
-
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class represents a data structure to store information
@@ -37,12 +39,16 @@ import java.util.concurrent.ConcurrentHashMap;
 public class NSSelectInfo<NodeIDType> {
   private final int id;
   private final Set<NodeIDType> serversToBeProcessed; // the list of servers that have yet to be processed
-  private final ConcurrentHashMap<String, JSONObject> responses;
+  private final Set<String> guids; // the guids seen so far
+  private final Map<NodeIDType, int[]> chunksReceived; // chunks seen and expected per server
   private final SelectOperation selectOperation;
   private final SelectGroupBehavior groupBehavior;
   private final String guid; // the group GUID we are maintaining or null for simple select
   private final String query; // The string used to set up the query if applicable
   private final int minRefreshInterval; // in seconds
+  private final SelectCallback callback; // called once when the query is done, can be null
+  private final AtomicBoolean done = new AtomicBoolean(false);
+  private ScheduledFuture<?> timeout;
   /**
    * 
    * @param id
@@ -54,15 +60,33 @@ public class NSSelectInfo<NodeIDType> {
    * @param guid 
    */
   public NSSelectInfo(int id, Set<NodeIDType> serverIds, SelectOperation selectOperation, SelectGroupBehavior groupBehavior, String query, int minRefreshInterval, String guid) {
+    this(id, serverIds, selectOperation, groupBehavior, query, minRefreshInterval, guid, null);
+  }
+
+  /**
+   * 
+   * @param id
+   * @param serverIds 
+   * @param selectOperation 
+   * @param groupBehavior 
+   * @param query 
+   * @param minRefreshInterval 
+   * @param guid 
+   * @param callback 
+   */
+  public NSSelectInfo(int id, Set<NodeIDType> serverIds, SelectOperation selectOperation, SelectGroupBehavior groupBehavior, String query, int minRefreshInterval, String guid,
+          SelectCallback callback) {
     this.id = id;
     this.serversToBeProcessed = Collections.newSetFromMap(new ConcurrentHashMap<NodeIDType, Boolean>());
     this.serversToBeProcessed.addAll(serverIds);
-    this.responses = new ConcurrentHashMap<>(10, 0.75f, 3);
+    this.guids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(10, 0.75f, 3));
+    this.chunksReceived = new HashMap<>();
     this.selectOperation = selectOperation;
     this.groupBehavior = groupBehavior;
     this.query = query;
     this.guid = guid;
     this.minRefreshInterval = minRefreshInterval;
+    this.callback = callback;
   }
 
   /**
@@ -97,28 +121,44 @@ public class NSSelectInfo<NodeIDType> {
   }
 
   /**
-   * Adds the result of a query for a particular guid if the guid has not been seen yet.
-   * 
-   * @param name
-   * @param json
-   * @return true if the response was not seen yet, false otherwise
+   * Adds a guid if it has not been seen yet.
+   *
+   * @param guid
+   * @return true if the guid was not seen yet, false otherwise
    */
-  public boolean addResponseIfNotSeenYet(String name, JSONObject json) {
-    if (!responses.containsKey(name)) {
-      responses.put(name, json);
-      return true;
-    } else {
-      return false;
-    }
+  public boolean addGuidIfNotSeenYet(String guid) {
+    return guids.add(guid);
   }
 
   /**
-   * Returns that responses that have been see for this query.
-   * 
-   * @return a set of JSONObjects
+   * Returns the guids that have been seen for this query.
+   *
+   * @return a set of guids
    */
-  public Set<JSONObject> getResponsesAsSet() {
-    return new HashSet<>(responses.values());
+  public Set<String> getGuids() {
+    return new HashSet<>(guids);
+  }
+
+  /**
+   * Records that a chunk of the response from a server was received.
+   * Chunks can arrive in any order so a server is only done once all of the
+   * chunks it announced in its last one have been seen.
+   *
+   * @param serverId
+   * @param chunks the total number of chunks from the last chunk or -1 if it isn't the last
+   * @return true if all chunks from this server have been received
+   */
+  public synchronized boolean chunkReceived(NodeIDType serverId, int chunks) {
+    int[] counts = chunksReceived.get(serverId);
+    if (counts == null) {
+      counts = new int[]{0, -1};
+      chunksReceived.put(serverId, counts);
+    }
+    counts[0]++;
+    if (chunks >= 0) {
+      counts[1] = chunks;
+    }
+    return counts[0] == counts[1];
   }
 
   /**
@@ -166,4 +206,53 @@ public class NSSelectInfo<NodeIDType> {
     return minRefreshInterval;
   }
   
+  /**
+   * Return the callback.
+   * 
+   * @return the callback or null
+   */
+  public SelectCallback getCallback() {
+    return callback;
+  }
+
+  /**
+   * Marks the query as done. Only the first caller gets true so the
+   * response is produced exactly once even if the last response races
+   * with the timeout.
+   * 
+   * @return true if this call completed the query
+   */
+  public boolean markDone() {
+    if (done.compareAndSet(false, true)) {
+      synchronized (this) {
+        if (timeout != null) {
+          timeout.cancel(false);
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the query is done.
+   * 
+   * @return true if the query is done
+   */
+  public boolean isDone() {
+    return done.get();
+  }
+
+  /**
+   * Sets the task that times out this query.
+   * 
+   * @param timeout
+   */
+  public synchronized void setTimeout(ScheduledFuture<?> timeout) {
+    this.timeout = timeout;
+    if (done.get()) {
+      timeout.cancel(false);
+    }
+  }
+  
 }
@@ -26,6 +26,7 @@ package edu.umass.cs.gnsserver.gnsapp;
  */
 import edu.umass.cs.gnscommon.exceptions.client.ClientException;
 import edu.umass.cs.gnsserver.database.AbstractRecordCursor;
+import edu.umass.cs.gnsserver.database.ColumnField;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 
 import org.json.JSONArray;
@@ -34,10 +35,17 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSGroupAccess;
@@ -54,7 +62,6 @@ import edu.umass.cs.utils.Util;
 
 import java.net.InetSocketAddress;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.logging.Logger;
 
 /**
@@ -66,10 +73,10 @@ import java.util.logging.Logger;
  * LNS). This NS handles the broadcast to all of the NSs and the collection of results.
  *
  * For all select operations the NS which receive the broadcasted select packet execute the
- * appropriate query to collect all the guids that satisfy it. They then send the full records
- * from all these queries back to the collecting NS. The collecting NS then extracts the GUIDS
- * from all the results removing duplicates and then sends back JUST THE GUIDs, not the full
- * records.
+ * appropriate query to collect all the guids that satisfy it. They then send just the guids
+ * from these queries back to the collecting NS in chunks of at most SELECT_RESPONSE_CHUNK_SIZE.
+ * The collecting NS then combines the guids from all the chunks removing duplicates and sends
+ * them back.
  *
  * Here's the special handling the NS does for guid GROUPs:
  *
@@ -107,8 +114,6 @@ public class Select {
   private static final Random RANDOM_ID = new Random();
   private static final ConcurrentMap<Integer, NSSelectInfo<String>> QUERIES_IN_PROGRESS
           = new ConcurrentHashMap<>(10, 0.75f, 3);
-  private static final ConcurrentMap<Integer, SelectResponsePacket<String>> QUERY_RESULT
-          = new ConcurrentHashMap<>(10, 0.75f, 3);
 
   /**
    * Handles a select request that was received from a client.
@@ -138,6 +143,9 @@ public class Select {
    * Handle a select request from a client.
    * This node is the broadcaster and selector.
    *
+   * Blocks the calling thread until the query is done. Only this query's
+   * own completion object is waited on so concurrent selects don't contend.
+   *
    * @param packet
    * @param app
    * @return a select response packet
@@ -145,9 +153,56 @@ public class Select {
    * @throws UnknownHostException
    * @throws FailedDBOperationException
    */
-  @SuppressWarnings("unchecked")
   public static SelectResponsePacket<String> handleSelectRequestFromClient(SelectRequestPacket<String> packet,
           GNSApplicationInterface<String> app) throws JSONException, UnknownHostException, FailedDBOperationException {
+    final SelectResponsePacket<String>[] result = newResponseHolder();
+    handleSelectRequestFromClient(packet, app, new SelectCallback() {
+      @Override
+      public void handleSelectResponse(SelectResponsePacket<String> response) {
+        synchronized (result) {
+          result[0] = response;
+          result.notify();
+        }
+      }
+    });
+    synchronized (result) {
+      while (result[0] == null) {
+        try {
+          result.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+      }
+      return result[0];
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static SelectResponsePacket<String>[] newResponseHolder() {
+    return new SelectResponsePacket[1];
+  }
+
+  /**
+   * Handle a select request from a client without blocking.
+   * This node is the broadcaster and selector.
+   *
+   * Returns as soon as the request has been sent to all the servers.
+   * The callback is invoked exactly once, either by the thread that handles
+   * the last {@link SelectResponsePacket} or by the timer when
+   * SELECT_REQUEST_TIMEOUT passes, in which case the response contains
+   * whatever records were received so far.
+   *
+   * @param packet
+   * @param app
+   * @param callback
+   * @throws JSONException
+   * @throws UnknownHostException
+   * @throws FailedDBOperationException
+   */
+  @SuppressWarnings("unchecked")
+  public static void handleSelectRequestFromClient(SelectRequestPacket<String> packet,
+          GNSApplicationInterface<String> app, SelectCallback callback) throws JSONException, UnknownHostException, FailedDBOperationException {
     // special case handling of the GROUP_LOOK operation
     // If sufficient time hasn't passed we just send the current value back
     if (packet.getGroupBehavior().equals(SelectGroupBehavior.GROUP_LOOKUP)) {
@@ -164,7 +219,8 @@ public class Select {
                   "GROUP_LOOKUP Request: Time has not elapsed. Returning current group value for {0}", packet.getGuid());
           ResultValue result = NSGroupAccess.lookupMembers(packet.getGuid(), true, app.getRequestHandler());
           //sendReponsePacketToCaller(packet.getId(), packet.getClientAddress(), result.toStringSet(), app);
-          return createReponsePacket(packet.getId(), packet.getClientAddress(), result.toStringSet(), app);
+          callback.handleSelectResponse(createReponsePacket(packet.getId(), packet.getClientAddress(), result.toStringSet(), app));
+          return;
         }
       } else {
         getLogger().fine("GROUP_LOOKUP Request: No Last Update Info ");
@@ -181,8 +237,9 @@ public class Select {
     // and send the request out to all the servers. We'll receive a response sent on the flipside.
     Set<String> serverIds = app.getGNSNodeConfig().getActiveReplicas();
     // store the info for later
-    int queryId = addQueryInfo(serverIds, packet.getSelectOperation(), packet.getGroupBehavior(),
-            packet.getQuery(), packet.getMinRefreshInterval(), packet.getGuid());
+    final NSSelectInfo<String> info = addQueryInfo(serverIds, packet.getSelectOperation(), packet.getGroupBehavior(),
+            packet.getQuery(), packet.getMinRefreshInterval(), packet.getGuid(), callback);
+    final int queryId = info.getId();
     if (packet.getGroupBehavior().equals(SelectGroupBehavior.GROUP_LOOKUP)) {
       // the query string is supplied with a lookup so we stuff in it there. It was saved from the SETUP operation.
       packet.setQuery(NSGroupAccess.getQueryString(packet.getGuid(), app.getRequestHandler()));
@@ -193,6 +250,15 @@ public class Select {
     getLogger().log(Level.FINE, "NS {0} sending select {1} to {2}",
             new Object[]{app.getNodeID(), packet.getSummary(),
               Util.getOtherThan(serverIds, app.getNodeID())});
+    final long requestId = packet.getId();
+    final InetSocketAddress returnAddress = packet.getClientAddress();
+    final GNSApplicationInterface<String> replica = app;
+    info.setTimeout(TIMER.schedule(new Runnable() {
+      @Override
+      public void run() {
+        handleSelectTimeout(info, requestId, returnAddress, replica);
+      }
+    }, SELECT_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS));
     try {
       // forward to all but self because...
       for (String serverId : (Set<String>) Util.getOtherThan(serverIds, app.getNodeID())) {
@@ -200,52 +266,109 @@ public class Select {
       }
 
       // We handle our self by locally getting self-select records
-      handleSelectResponse(getMySelectedRecords(packet, app), app);
-      // Wait for responses, otherwise you are violating Replicable.execute(.)'s semantics.
-      synchronized (QUERIES_IN_PROGRESS) {
-        while (QUERIES_IN_PROGRESS.containsKey(queryId)) {
-          try {
-            QUERIES_IN_PROGRESS.wait(SELECT_REQUEST_TIMEOUT);
-          } catch (InterruptedException e) {
-            e.printStackTrace();
-          }
+      handleSelectRequestLocally(packet, app);
+    } catch (IOException | ClientException e) {
+      getLogger().log(Level.SEVERE, "Exception while sending select request: {0}", e);
+    }
+  }
+
+  // The timer only decides that a query is done, it never touches the database
+  private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, Select.class.getSimpleName() + "Timer");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private static void handleSelectTimeout(NSSelectInfo<String> info, long requestId,
+          InetSocketAddress returnAddress, GNSApplicationInterface<String> replica) {
+    if (!info.markDone()) {
+      return;
+    }
+    QUERIES_IN_PROGRESS.remove(info.getId());
+    getLogger().log(Level.WARNING,
+            "NS {0} select {1} timed out waiting for {2}; returning partial result",
+            new Object[]{replica.getNodeID(), info.getId(), info.serversYetToRespond()});
+    try {
+      finishQuery(info, requestId, returnAddress, replica);
+    } catch (JSONException e) {
+      getLogger().log(Level.SEVERE, "Unable to create select response: {0}", e);
+    }
+  }
+
+  // Group bookkeeping does remote queries so it is done here instead of on the
+  // thread that finishes the select. One thread keeps the updates to a group in order.
+  private static final ExecutorService GROUP_UPDATER = Executors.newSingleThreadExecutor(
+          new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, Select.class.getSimpleName() + "GroupUpdater");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /**
+   * Sends the response for a query that is done, either because all the servers
+   * responded or because it timed out, and then updates any group guid stuff.
+   */
+  private static void finishQuery(final NSSelectInfo<String> info, long requestId,
+          final InetSocketAddress returnAddress, final GNSApplicationInterface<String> replica)
+          throws JSONException {
+    final Set<String> guids = info.getGuids();
+    // Pull the records out of the info structure
+    SelectResponsePacket<String> response = createReponsePacket(requestId, returnAddress, guids, replica);
+    // and let whoever started the query know the value is there
+    if (info.getCallback() != null) {
+      info.getCallback().handleSelectResponse(response);
+    }
+    if (!info.getGroupBehavior().equals(SelectGroupBehavior.GROUP_SETUP)
+            && !info.getGroupBehavior().equals(SelectGroupBehavior.GROUP_LOOKUP)) {
+      return;
+    }
+    GROUP_UPDATER.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          updateGroup(info, guids, returnAddress, replica);
+        } catch (ClientException | IOException | JSONException e) {
+          getLogger().log(Level.SEVERE, "NS {0} unable to update group {1}: {2}",
+                  new Object[]{replica.getNodeID(), info.getGuid(), e});
         }
       }
-      if (QUERY_RESULT.containsKey(queryId)) {
-        return QUERY_RESULT.remove(queryId);
-      }
+    });
+  }
 
-    } catch (IOException | ClientException e) {
-      getLogger().log(Level.SEVERE, "Exception while sending select request: {0}", e);
+  private static void updateGroup(NSSelectInfo<String> info, Set<String> guids,
+          InetSocketAddress returnAddress, GNSApplicationInterface<String> replica)
+          throws ClientException, IOException, JSONException {
+    if (info.getGroupBehavior().equals(SelectGroupBehavior.GROUP_SETUP)) {
+      getLogger().log(Level.FINE,
+              "NS{0} storing query string and other info", replica.getNodeID());
+      // for setup we need to squirrel away the query for later lookups
+      NSGroupAccess.updateQueryString(info.getGuid(), info.getQuery(), replica.getRequestHandler());
+      NSGroupAccess.updateMinRefresh(info.getGuid(), info.getMinRefreshInterval(), replica.getRequestHandler());
     }
-    return null;
+    String guid = info.getGuid();
+    getLogger().log(Level.FINE, "NS{0} updating group members", replica.getNodeID());
+    NSGroupAccess.updateMembers(guid, guids, replica.getRequestHandler(), returnAddress);
+    //NSGroupAccess.updateRecords(guid, processResponsesIntoJSONArray(info.getResponsesAsMap()), replica); 
+    NSGroupAccess.updateLastUpdate(guid, new Date(), replica.getRequestHandler());
   }
 
-  @SuppressWarnings("unchecked")
-  private static SelectResponsePacket<String> getMySelectedRecords(
-          SelectRequestPacket<String> request,
-          GNSApplicationInterface<String> app) {
-    SelectResponsePacket<String> response = null;
+  private static void handleSelectRequestLocally(SelectRequestPacket<String> request,
+          GNSApplicationInterface<String> app) throws JSONException, ClientException, IOException {
     try {
-      // grab the records
-      JSONArray jsonRecords = getJSONRecordsForSelect(request, app);
-      response = SelectResponsePacket.makeSuccessPacketForRecordsOnly(
-              request.getId(), request.getClientAddress(),
-              request.getCcpQueryId(), request.getNsQueryId(),
-              app.getNodeID(), jsonRecords);
-      getLogger().log(
-              Level.FINE,
-              "NS {0} sending back {1} record(s) in response to self-select request {2}",
-              new Object[]{app.getNodeID(), jsonRecords.length(),
-                request.getSummary()});
+      sendSelectedGuids(request, app, true);
     } catch (FailedDBOperationException e) {
       getLogger().log(Level.SEVERE, "Exception while handling self-select request: {0}",
               e.getMessage());
-      //e.printStackTrace();
-      response = SelectResponsePacket.makeFailPacket(request.getId(), request.getClientAddress(),
-              request.getNsQueryId(), app.getNodeID(), e.getMessage());
+      handleSelectResponse(SelectResponsePacket.makeFailPacket(request.getId(), request.getClientAddress(),
+              request.getNsQueryId(), app.getNodeID(), e.getMessage()), app);
     }
-    return response;
   }
 
   /**
@@ -267,18 +390,9 @@ public class Select {
               app.getNodeID(), request.getSummary()});
     // SelectRequestPacket<String> request = new SelectRequestPacket<String>(incomingJSON, app.getGNSNodeConfig());
     try {
-      // grab the records
-      JSONArray jsonRecords = getJSONRecordsForSelect(request, app);
-      @SuppressWarnings("unchecked")
-      SelectResponsePacket<String> response = SelectResponsePacket.makeSuccessPacketForRecordsOnly(request.getId(),
-              request.getClientAddress(),
-              request.getCcpQueryId(), request.getNsQueryId(), app.getNodeID(), jsonRecords);
-      getLogger().log(Level.FINE,
-              "NS {0} sending back {1} record(s) in response to {2}",
-              new Object[]{app.getNodeID(), jsonRecords.length(), request.getSummary()});
-      // and send them back to the originating NS
-      app.sendToID(request.getNameServerID(), response.toJSONObject());
-    } catch (FailedDBOperationException | JSONException | IOException e) {
+      // grab the guids and send them back to the originating NS
+      sendSelectedGuids(request, app, false);
+    } catch (FailedDBOperationException | JSONException | IOException | ClientException e) {
       getLogger().log(Level.SEVERE, "Exception while handling select request: {0}", e);
       e.printStackTrace();
       SelectResponsePacket<String> failResponse = SelectResponsePacket.makeFailPacket(request.getId(),
@@ -315,23 +429,32 @@ public class Select {
               new Object[]{replica.getNodeID(), packet.getNsQueryId()});
       return;
     }
+    boolean serverDone;
     // if there is no error update our results list
     if (SelectResponsePacket.ResponseCode.NOERROR.equals(packet.getResponseCode())) {
-      // stuff all the unique records into the info structure
-      processJSONRecords(packet.getRecords(), info, replica);
+      // stuff all the unique guids into the info structure
+      if (packet.getGuids() != null) {
+        processGuids(packet.getGuids(), info, replica);
+      } else if (packet.getRecords() != null) {
+        // older servers send full records
+        processJSONRecords(packet.getRecords(), info, replica);
+      }
+      serverDone = info.chunkReceived(packet.getNameServerID(), packet.getChunks());
     } else {
       // error response
       getLogger().log(Level.FINE,
               "NS {0} processing error response: {1}",
               new Object[]{replica.getNodeID(), packet.getErrorMessage()});
+      serverDone = true;
     }
-    // Remove the NS ID from the list to keep track of who has responded
     boolean allServersResponded = false;
     /* synchronization needed, otherwise assertion in app.sendToClient
      * implying that an outstanding request is always found gets violated. */
     synchronized (info) {
       // Remove the NS ID from the list to keep track of who has responded
-      info.removeServerID(packet.getNameServerID());
+      if (serverDone) {
+        info.removeServerID(packet.getNameServerID());
+      }
       allServersResponded = info.allServersResponded();
     }
     if (allServersResponded) {
@@ -352,84 +475,102 @@ public class Select {
 
   private static void handledAllServersResponded(SelectResponsePacket<String> packet, NSSelectInfo<String> info,
           GNSApplicationInterface<String> replica) throws JSONException, ClientException, IOException {
-    // If all the servers have sent us a response we're done.
-    Set<String> guids = extractGuidsFromRecords(info.getResponsesAsSet());
-
-    // must be done before the notify below
+    // the timeout might have beaten us to it
+    if (!info.markDone()) {
+      return;
+    }
     // we're done processing this select query
     QUERIES_IN_PROGRESS.remove(packet.getNsQueryId());
-
-    // Pull the records out of the info structure
-    SelectResponsePacket<String> response = createReponsePacket(packet.getId(), packet.getReturnAddress(), guids, replica);
-    // and put the result where the coordinator can see it.
-    QUERY_RESULT.put(packet.getNsQueryId(), response);
-    // and let the coordinator know the value is there
-    if (GNSApp.DELEGATE_CLIENT_MESSAGING) {
-      synchronized (QUERIES_IN_PROGRESS) {
-        QUERIES_IN_PROGRESS.notify();
-      }
-    }
     //sendReponsePacketToCaller(packet.getId(), packet.getReturnAddress(), guids, replica);
-    // Now we update any group guid stuff
-    if (info.getGroupBehavior().equals(SelectGroupBehavior.GROUP_SETUP)) {
-      getLogger().log(Level.FINE,
-              "NS{0} storing query string and other info", replica.getNodeID());
-      // for setup we need to squirrel away the query for later lookups
-      NSGroupAccess.updateQueryString(info.getGuid(), info.getQuery(), replica.getRequestHandler());
-      NSGroupAccess.updateMinRefresh(info.getGuid(), info.getMinRefreshInterval(), replica.getRequestHandler());
-    }
-    if (info.getGroupBehavior().equals(SelectGroupBehavior.GROUP_SETUP) || info.getGroupBehavior().equals(SelectGroupBehavior.GROUP_LOOKUP)) {
-      String guid = info.getGuid();
-      getLogger().log(Level.FINE, "NS{0} updating group members", replica.getNodeID());
-      NSGroupAccess.updateMembers(guid, guids, replica.getRequestHandler(), packet.getReturnAddress());
-      //NSGroupAccess.updateRecords(guid, processResponsesIntoJSONArray(info.getResponsesAsMap()), replica); 
-      NSGroupAccess.updateLastUpdate(guid, new Date(), replica.getRequestHandler());
-    }
+    finishQuery(info, packet.getId(), packet.getReturnAddress(), replica);
   }
 
-  private static Set<String> extractGuidsFromRecords(Set<JSONObject> records) {
-    Set<String> result = new HashSet<>();
-    for (JSONObject json : records) {
-      try {
-        result.add(json.getString(NameRecord.NAME.getName()));
-      } catch (JSONException e) {
+  private static NSSelectInfo<String> addQueryInfo(Set<String> serverIds, SelectOperation selectOperation,
+          SelectGroupBehavior groupBehavior, String query, int minRefreshInterval, String guid,
+          SelectCallback callback) {
+    int id;
+    NSSelectInfo<String> info;
+    do {
+      id = RANDOM_ID.nextInt();
+      info = new NSSelectInfo<>(id, serverIds, selectOperation, groupBehavior, query, minRefreshInterval, guid, callback);
+      //Add query info unless the id is taken
+    } while (QUERIES_IN_PROGRESS.putIfAbsent(id, info) != null);
+    return info;
+  }
+
+  private static final int CHUNK_SIZE = Config.getGlobalInt(GNSConfig.GNSC.SELECT_RESPONSE_CHUNK_SIZE);
+
+  /**
+   * Runs the select locally and sends the guids of the matching records to the
+   * collecting NS in chunks of at most SELECT_RESPONSE_CHUNK_SIZE. Only the guids
+   * are read from the database and the cursor is read as the chunks are sent
+   * so the whole result is never held in memory here.
+   *
+   * @param request
+   * @param app
+   * @param local true if this is the collecting NS
+   */
+  @SuppressWarnings("unchecked")
+  private static void sendSelectedGuids(SelectRequestPacket<String> request,
+          GNSApplicationInterface<String> app, boolean local)
+          throws FailedDBOperationException, JSONException, IOException, ClientException {
+    AbstractRecordCursor cursor = getCursorForSelect(request, app);
+    JSONArray guids = new JSONArray();
+    int chunks = 0;
+    int count = 0;
+    while (cursor != null && cursor.hasNext()) {
+      String name = cursor.nextJSONObject().optString(NameRecord.NAME.getName(), null);
+      if (name != null) {
+        guids.put(name);
+      }
+      if (guids.length() >= CHUNK_SIZE) {
+        sendGuidsChunk(request, app, local, guids, -1);
+        count += guids.length();
+        chunks++;
+        guids = new JSONArray();
       }
     }
-    return result;
+    count += guids.length();
+    sendGuidsChunk(request, app, local, guids, ++chunks);
+    getLogger().log(Level.FINE,
+            "NS {0} sent back {1} guid(s) in {2} chunk(s) in response to {3}",
+            new Object[]{app.getNodeID(), count, chunks, request.getSummary()});
   }
 
-  private static int addQueryInfo(Set<String> serverIds, SelectOperation selectOperation,
-          SelectGroupBehavior groupBehavior, String query, int minRefreshInterval, String guid) {
-    int id;
-    do {
-      id = RANDOM_ID.nextInt();
-    } while (QUERIES_IN_PROGRESS.containsKey(id));
-    //Add query info
-    NSSelectInfo<String> info = new NSSelectInfo<>(id, serverIds, selectOperation, groupBehavior, query, minRefreshInterval, guid);
-    QUERIES_IN_PROGRESS.put(id, info);
-    return id;
+  private static void sendGuidsChunk(SelectRequestPacket<String> request,
+          GNSApplicationInterface<String> app, boolean local, JSONArray guids, int chunks)
+          throws JSONException, IOException, ClientException {
+    SelectResponsePacket<String> response = SelectResponsePacket.makeSuccessPacketForGuidsChunk(
+            request.getId(), request.getClientAddress(), request.getNsQueryId(),
+            app.getNodeID(), guids, chunks);
+    if (local) {
+      handleSelectResponse(response, app);
+    } else {
+      app.sendToID(request.getNameServerID(), response.toJSONObject());
+    }
   }
 
-  private static JSONArray getJSONRecordsForSelect(SelectRequestPacket<String> request,
+  // only the guid of each matching record is sent back
+  private static final ArrayList<ColumnField> NAME_ONLY = new ArrayList<>(Arrays.asList(NameRecord.NAME));
+
+  private static AbstractRecordCursor getCursorForSelect(SelectRequestPacket<String> request,
           GNSApplicationInterface<String> ar) throws FailedDBOperationException {
-    JSONArray jsonRecords = new JSONArray();
-    // actually only need name and values map... fix this
     AbstractRecordCursor cursor = null;
     switch (request.getSelectOperation()) {
       case EQUALS:
-        cursor = NameRecord.selectRecords(ar.getDB(), request.getKey(), request.getValue());
+        cursor = NameRecord.selectRecords(ar.getDB(), request.getKey(), request.getValue(), NAME_ONLY);
         break;
       case NEAR:
         if (request.getValue() instanceof String) {
           cursor = NameRecord.selectRecordsNear(ar.getDB(), request.getKey(), (String) request.getValue(),
-                  Double.parseDouble((String) request.getOtherValue()));
+                  Double.parseDouble((String) request.getOtherValue()), NAME_ONLY);
         } else {
           break;
         }
         break;
       case WITHIN:
         if (request.getValue() instanceof String) {
-          cursor = NameRecord.selectRecordsWithin(ar.getDB(), request.getKey(), (String) request.getValue());
+          cursor = NameRecord.selectRecordsWithin(ar.getDB(), request.getKey(), (String) request.getValue(), NAME_ONLY);
         } else {
           break;
         }
@@ -437,20 +578,26 @@ public class Select {
       case QUERY:
         getLogger().log(Level.FINE, "NS{0} query: {1}",
                 new Object[]{ar.getNodeID(), request.getQuery()});
-        cursor = NameRecord.selectRecordsQuery(ar.getDB(), request.getQuery());
+        cursor = NameRecord.selectRecordsQuery(ar.getDB(), request.getQuery(), NAME_ONLY);
         break;
       default:
         break;
     }
-    // think about returning a cursor that has prefetched a limited (100 which is like mongo limit)
-    // number of records in it and the ability to fetch more
-    while (cursor != null && cursor.hasNext()) {
-      jsonRecords.put(cursor.nextJSONObject());
+    return cursor;
+  }
+
+  // stuffs the guids that are returned from an NS into the NSSelectInfo record
+  private static void processGuids(JSONArray guids, NSSelectInfo<String> info,
+          GNSApplicationInterface<String> ar) throws JSONException {
+    int length = guids.length();
+    getLogger().log(Level.FINE,
+            "NS{0} processing {1} guids", new Object[]{ar.getNodeID(), length});
+    for (int i = 0; i < length; i++) {
+      info.addGuidIfNotSeenYet(guids.getString(i));
     }
-    return jsonRecords;
   }
 
-  // takes the JSON records that are returned from an NS and stuffs the into the NSSelectInfo record
+  // takes the JSON records that are returned from an older NS and stuffs their guids into the NSSelectInfo record
   private static void processJSONRecords(JSONArray jsonArray, NSSelectInfo<String> info,
           GNSApplicationInterface<String> ar) throws JSONException {
     int length = jsonArray.length();
@@ -460,7 +607,7 @@ public class Select {
     for (int i = 0; i < length; i++) {
       JSONObject record = jsonArray.getJSONObject(i);
       String name = record.getString(NameRecord.NAME.getName());
-      if (info.addResponseIfNotSeenYet(name, record)) {
+      if (info.addGuidIfNotSeenYet(name)) {
         getLogger().log(Level.FINE, "NS{0} added record for {1}", new Object[]{ar.getNodeID(), name});
       } else {
         getLogger().log(Level.FINE, "NS{0} DID NOT ADD record for {1}", new Object[]{ar.getNodeID(), name});
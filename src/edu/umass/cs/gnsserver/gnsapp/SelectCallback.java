@@ -0,0 +1,40 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp;
+
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectResponsePacket;
+
+/**
+ * Called by {@link Select} when a select query that was started by
+ * this node has finished, either because every server has responded
+ * or because the select timeout has passed.
+ *
+ * @author westy
+ */
+public interface SelectCallback {
+
+  /**
+   * Handles the collated response for a select query.
+   * Called exactly once per query.
+   *
+   * @param response the response containing just the guids
+   */
+  public void handleSelectResponse(SelectResponsePacket<String> response);
+}
@@ -54,7 +54,6 @@ import edu.umass.cs.utils.Util;
 
 import java.net.InetSocketAddress;
 import java.util.Date;
-import java.util.HashSet;
 
 /**
  * This class handles select operations which have a similar semantic to an SQL SELECT.
@@ -355,7 +354,7 @@ public class SelectOld {
   private static void handledAllServersResponded(SelectResponsePacket<String> packet, NSSelectInfo<String> info,
           GNSApplicationInterface<String> replica) throws JSONException, ClientException, IOException {
     // If all the servers have sent us a response we're done.
-    Set<String> guids = extractGuidsFromRecords(info.getResponsesAsSet());
+    Set<String> guids = info.getGuids();
 
     // arun: remove must be before the notify in sendReponsePacketToCaller
     // we're done processing this select query
@@ -380,17 +379,6 @@ public class SelectOld {
     }
   }
 
-  private static Set<String> extractGuidsFromRecords(Set<JSONObject> records) {
-    Set<String> result = new HashSet<>();
-    for (JSONObject json : records) {
-      try {
-        result.add(json.getString(NameRecord.NAME.getName()));
-      } catch (JSONException e) {
-      }
-    }
-    return result;
-  }
-
   private static int addQueryInfo(Set<String> serverIds, SelectOperation selectOperation,
           SelectGroupBehavior groupBehavior, String query, int minRefreshInterval, String guid) {
     int id;
@@ -453,7 +441,7 @@ public class SelectOld {
     for (int i = 0; i < length; i++) {
       JSONObject record = jsonArray.getJSONObject(i);
       String name = record.getString(NameRecord.NAME.getName());
-      if (info.addResponseIfNotSeenYet(name, record)) {
+      if (info.addGuidIfNotSeenYet(name)) {
         GNSConfig.getLogger().log(Level.FINE, "NS{0} added record for {1}", new Object[]{ar.getNodeID(), name});
       } else {
         GNSConfig.getLogger().log(Level.FINE, "NS{0} DID NOT ADD record for {1}", new Object[]{ar.getNodeID(), name});
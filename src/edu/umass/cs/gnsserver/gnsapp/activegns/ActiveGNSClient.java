@@ -76,6 +76,17 @@ public class ActiveGNSClient extends GNSClient implements ActiveDBInterface {
 		}
 	}
 
+	/**
+	 * Public so that {@link edu.umass.cs.gnsserver.activecode.ActiveCodeDB}
+	 * can tell whether a read may be executed without coordination.
+	 * 
+	 * @return true if reads are coordinated
+	 */
+	@Override
+	public boolean isForceCoordinatedReads() {
+		return super.isForceCoordinatedReads();
+	}
+
 	/** Overrides {@link GNSClient#execute(CommandPacket)} with internal 
 	 * request checks that can only be determined with a {@link GNSClient}
 	 * instance, e.g, dynamically force-coordinated read requests.
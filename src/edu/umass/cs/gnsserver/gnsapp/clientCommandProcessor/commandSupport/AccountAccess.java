@@ -46,6 +46,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.logging.Level;
 
 import org.json.JSONArray;
@@ -305,20 +309,52 @@ public class AccountAccess {
     String value = null;
     GNSConfig.getLogger().log(Level.FINE, "HRN_GUID NOT FOUND for {0}", name);
     if (allowRemoteLookup) {
-      GNSConfig.getLogger().log(Level.FINE, "LOOKING REMOTELY for HRN_GUID for {0}", name);
-      try {
-        value = handler.getRemoteQuery().fieldRead(name, HRN_GUID);
+      value = lookupGuidRemotely(name, handler).join();
+    }
+    return value;
+  }
+
+  /**
+   * Same as {@link #lookupGuidAnywhere} but returns a future instead of
+   * waiting for the remote query.
+   *
+   * @param name
+   * @param handler
+   * @return a future guid or null if the corresponding guid does not exist
+   */
+  public static CompletableFuture<String> lookupGuidAnywhereAsync(String name,
+          ClientRequestHandlerInterface handler) {
+    String guid = lookupGuid(name, handler, false);
+    return guid != null ? CompletableFuture.completedFuture(guid)
+            : lookupGuidRemotely(name, handler);
+  }
+
+  // never fails, problems are logged and return null like the local lookup
+  private static CompletableFuture<String> lookupGuidRemotely(final String name,
+          ClientRequestHandlerInterface handler) {
+    GNSConfig.getLogger().log(Level.FINE, "LOOKING REMOTELY for HRN_GUID for {0}", name);
+    return handler.getRemoteQuery().fieldReadAsync(name, HRN_GUID).thenApply(new Function<String, String>() {
+      @Override
+      public String apply(String value) {
         if (!FieldAccess.SINGLE_FIELD_VALUE_ONLY && value != null) {
           GNSConfig.getLogger().log(Level.FINE, "Found HRN_GUID for {0}:{1}", new Object[]{name, value});
-          value = new JSONObject(value).getString(HRN_GUID);
+          try {
+            return new JSONObject(value).getString(HRN_GUID);
+          } catch (JSONException e) {
+            throw new CompletionException(e);
+          }
         }
-      } catch (IOException | JSONException | ClientException e) {
+        return value;
+      }
+    }).exceptionally(new Function<Throwable, String>() {
+      @Override
+      public String apply(Throwable e) {
         GNSConfig.getLogger().log(Level.SEVERE,
                 "Problem getting HRN_GUID for {0} from remote server: {1}",
-                new Object[]{name, e});
+                new Object[]{name, e instanceof CompletionException ? e.getCause() : e});
+        return null;
       }
-    }
-    return value;
+    });
   }
 
   /**
@@ -380,28 +416,55 @@ public class AccountAccess {
     GNSConfig.getLogger().log(Level.FINE,
             "GUID_INFO NOT FOUND for {0}", guid);
     if (allowRemoteLookup) {
-      GNSConfig.getLogger().log(Level.FINE,
-              "LOOKING REMOTELY for GUID_INFO for {0}",
-              guid);
-      String value = null;
-      try {
-        value = handler.getRemoteQuery().fieldRead(guid, GUID_INFO);
-      } catch (IOException | JSONException | ClientException e) {
+      return lookupGuidInfoRemotely(guid, handler).join();
+    }
+    return null;
+  }
+
+  /**
+   * Same as {@link #lookupGuidInfoAnywhere} but returns a future instead of
+   * waiting for the remote query.
+   *
+   * @param guid
+   * @param handler
+   * @return a future {@link GuidInfo} instance or null if it doesn't exist
+   */
+  public static CompletableFuture<GuidInfo> lookupGuidInfoAnywhereAsync(String guid,
+          ClientRequestHandlerInterface handler) {
+    GuidInfo guidInfo = lookupGuidInfo(guid, handler, false);
+    return guidInfo != null ? CompletableFuture.completedFuture(guidInfo)
+            : lookupGuidInfoRemotely(guid, handler);
+  }
+
+  // never fails, problems are logged and return null like the local lookup
+  private static CompletableFuture<GuidInfo> lookupGuidInfoRemotely(final String guid,
+          ClientRequestHandlerInterface handler) {
+    GNSConfig.getLogger().log(Level.FINE,
+            "LOOKING REMOTELY for GUID_INFO for {0}",
+            guid);
+    return handler.getRemoteQuery().fieldReadAsync(guid, GUID_INFO).exceptionally(new Function<Throwable, String>() {
+      @Override
+      public String apply(Throwable e) {
         GNSConfig.getLogger().log(Level.SEVERE,
                 "Problem getting GUID_INFO for {0} from remote server: {1}",
-                new Object[]{guid, e});
+                new Object[]{guid, e instanceof CompletionException ? e.getCause() : e});
+        return null;
       }
-      if (value != null) {
-        try {
-          return new GuidInfo(new JSONObject(value));
-        } catch (JSONException | ParseException e) {
-          GNSConfig.getLogger().log(Level.SEVERE,
-                  "Problem parsing GUID_INFO value from remote server for {0}: {1}",
-                  new Object[]{guid, e});
+    }).thenApply(new Function<String, GuidInfo>() {
+      @Override
+      public GuidInfo apply(String value) {
+        if (value != null) {
+          try {
+            return new GuidInfo(new JSONObject(value));
+          } catch (JSONException | ParseException e) {
+            GNSConfig.getLogger().log(Level.SEVERE,
+                    "Problem parsing GUID_INFO value from remote server for {0}: {1}",
+                    new Object[]{guid, e});
+          }
         }
+        return null;
       }
-    }
-    return null;
+    });
   }
 
   /**
@@ -893,6 +956,8 @@ public class AccountAccess {
  GNSProtocol.GUID.toString(): "_GNS_PRIMARY_GUID" -- GNSProtocol.GUID.toString() (primary) for secondary guid<br>
  GNSProtocol.GUID.toString(): "_GNS_GUID_INFO" -- {guid info}<br>
  HRN: "_GNS_GUID" -- GNSProtocol.GUID.toString()<br>
+   * <p>
+   * This waits for {@link #addGuidAsync}.
    *
    * @param accountInfo
    * - the accountInfo of the account to add the GNSProtocol.GUID.toString() to
@@ -909,31 +974,96 @@ public class AccountAccess {
   public static CommandResponse addGuid(AccountInfo accountInfo,
           GuidInfo accountGuidInfo, String name, String guid,
           String publicKey, ClientRequestHandlerInterface handler) {
-    if ((AccountAccess.lookupGuidAnywhere(name, handler)) != null) {
-      return new CommandResponse(
-              ResponseCode.DUPLICATE_NAME_EXCEPTION, GNSProtocol.BAD_RESPONSE.toString()
-              + " " + GNSProtocol.DUPLICATE_NAME.toString() + " " + name);
-    }
-    if ((AccountAccess.lookupGuidInfoAnywhere(guid, handler)) != null) {
-      return new CommandResponse(
-              ResponseCode.DUPLICATE_GUID_EXCEPTION, GNSProtocol.BAD_RESPONSE.toString()
-              + " " + GNSProtocol.DUPLICATE_GUID.toString() + " " + name);
-    }
-    boolean createdName = false, createdGUID = false;
+    return addGuidAsync(accountInfo, accountGuidInfo, name, guid, publicKey, handler).join();
+  }
+
+  /**
+   * Same as {@link #addGuid} but returns a future instead of waiting.
+   * The two lookups are sent at the same time and each create, the rollback
+   * and the account info update are sent when the step before them completes,
+   * so no thread waits for any of those round trips.
+   * The future doesn't fail, problems are returned in the response.
+   *
+   * @param accountInfo
+   * @param accountGuidInfo
+   * @param name
+   * @param guid
+   * @param publicKey
+   * @param handler
+   * @return a future status result
+   */
+  public static CompletableFuture<CommandResponse> addGuidAsync(final AccountInfo accountInfo,
+          final GuidInfo accountGuidInfo, final String name, final String guid,
+          final String publicKey, final ClientRequestHandlerInterface handler) {
+    // both of these may have to ask another server so ask at the same time
+    final CompletableFuture<String> existingGuid = AccountAccess.lookupGuidAnywhereAsync(name, handler);
+    final CompletableFuture<GuidInfo> existingGuidInfo = AccountAccess.lookupGuidInfoAnywhereAsync(guid, handler);
+    return CompletableFuture.allOf(existingGuid, existingGuidInfo).thenCompose(
+            new Function<Void, CompletableFuture<CommandResponse>>() {
+      @Override
+      public CompletableFuture<CommandResponse> apply(Void lookedUp) {
+        if (existingGuid.join() != null) {
+          return CompletableFuture.completedFuture(new CommandResponse(
+                  ResponseCode.DUPLICATE_NAME_EXCEPTION, GNSProtocol.BAD_RESPONSE.toString()
+                  + " " + GNSProtocol.DUPLICATE_NAME.toString() + " " + name));
+        }
+        if (existingGuidInfo.join() != null) {
+          return CompletableFuture.completedFuture(new CommandResponse(
+                  ResponseCode.DUPLICATE_GUID_EXCEPTION, GNSProtocol.BAD_RESPONSE.toString()
+                  + " " + GNSProtocol.DUPLICATE_GUID.toString() + " " + name));
+        }
+        return createNameRecord(accountInfo, accountGuidInfo, name, guid, publicKey, handler);
+      }
+    }).exceptionally(new Function<Throwable, CommandResponse>() {
+      @Override
+      public CommandResponse apply(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR,
+                GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.UNSPECIFIED_ERROR.toString() + " "
+                + cause.getMessage());
+      }
+    });
+  }
+
+  // the first step of addGuidAsync, creates the HRN (alias) record
+  private static CompletableFuture<CommandResponse> createNameRecord(final AccountInfo accountInfo,
+          final GuidInfo accountGuidInfo, final String name, final String guid,
+          final String publicKey, final ClientRequestHandlerInterface handler) {
+    JSONObject jsonHRN = new JSONObject();
     try {
-      JSONObject jsonHRN = new JSONObject();
       jsonHRN.put(HRN_GUID, guid);
-      ResponseCode code = handler.getRemoteQuery().createRecord(name, jsonHRN);
-      // Return the error if we could not createField the HRN (alias) record.
-      if (code.isExceptionOrError()) {
-        return new CommandResponse(code, GNSProtocol.BAD_RESPONSE.toString() + " "
-                + code.getProtocolCode() + " " + name + "(" + guid
-                + ")" + " " + code.getMessage());
+    } catch (JSONException e) {
+      return CompletableFuture.completedFuture(jsonParseErrorResponse(e));
+    }
+    return handler.getRemoteQuery().createRecordAsync(name, jsonHRN).handle(
+            new BiFunction<ResponseCode, Throwable, CompletableFuture<CommandResponse>>() {
+      @Override
+      public CompletableFuture<CommandResponse> apply(ResponseCode code, Throwable e) {
+        if (e != null) {
+          code = responseCodeOf(e);
+          return CompletableFuture.completedFuture(new CommandResponse(code, GNSProtocol.BAD_RESPONSE.toString()
+                  + " " + code + " " + code.getMessage()
+                  + "; created neither " + name + " nor " + guid));
+        }
+        // Return the error if we could not createField the HRN (alias) record.
+        if (code.isExceptionOrError()) {
+          return CompletableFuture.completedFuture(new CommandResponse(code, GNSProtocol.BAD_RESPONSE.toString() + " "
+                  + code.getProtocolCode() + " " + name + "(" + guid
+                  + ")" + " " + code.getMessage()));
+        }
+        // else name created
+        return createGuidRecord(accountInfo, accountGuidInfo, name, guid, publicKey, handler);
       }
-      createdName = true;
-      // else name created
+    }).thenCompose(Function.<CompletableFuture<CommandResponse>>identity());
+  }
+
+  // the second step of addGuidAsync, creates the guid record or rolls back the name
+  private static CompletableFuture<CommandResponse> createGuidRecord(final AccountInfo accountInfo,
+          GuidInfo accountGuidInfo, final String name, final String guid,
+          String publicKey, final ClientRequestHandlerInterface handler) {
+    JSONObject jsonGuid = new JSONObject();
+    try {
       GuidInfo guidInfo = new GuidInfo(name, guid, publicKey);
-      JSONObject jsonGuid = new JSONObject();
       jsonGuid.put(GUID_INFO, guidInfo.toJSONObject());
       jsonGuid.put(PRIMARY_GUID, accountInfo.getGuid());
       // set up ACL to look like this
@@ -945,64 +1075,96 @@ public class AccountAccess {
               GNSProtocol.ENTIRE_RECORD.toString(), Arrays.asList(accountGuidInfo.getPublicKey()));
       // prefix is the same for all acls so just pick one to use here
       jsonGuid.put(MetaDataTypeName.READ_WHITELIST.getPrefix(), acl);
-      /* arun: You were not checking the response code below at all, which
-			 * was a bug. The addGuid needs to be rolled back if the second step
-			 * fails. */
-      ResponseCode guidCode = null;
-      try {
-        guidCode = handler.getRemoteQuery().createRecord(guid, jsonGuid);
-      } catch (ClientException ce1) {
-        (guidCode = ce1.getCode()).setMessage(ce1.getMessage());
-      }
-      if (guidCode == null || guidCode.isExceptionOrError()) {
-        // rollback name creation
-        ResponseCode rollbackCode = handler.getRemoteQuery().deleteRecordSuppressExceptions(name);
-        return new CommandResponse(
-                guidCode,
-                GNSProtocol.BAD_RESPONSE.toString()
-                + " "
-                + guidCode.getProtocolCode()
-                + " "
-                + guid
-                + " "
-                + guidCode.getMessage()
-                + " "
-                + (rollbackCode == null
-                || !rollbackCode.isOKResult() ? "; failed to roll back "
-                        + name
-                        + " creation: "
-                        + rollbackCode
-                        + ":" + rollbackCode.getMessage()
-                        : "; rolled back " + name + " creation"));
+    } catch (JSONException e) {
+      return CompletableFuture.completedFuture(jsonParseErrorResponse(e));
+    }
+    /* arun: You were not checking the response code below at all, which
+		 * was a bug. The addGuid needs to be rolled back if the second step
+		 * fails. */
+    return handler.getRemoteQuery().createRecordAsync(guid, jsonGuid).handle(
+            new BiFunction<ResponseCode, Throwable, CompletableFuture<CommandResponse>>() {
+      @Override
+      public CompletableFuture<CommandResponse> apply(ResponseCode code, Throwable e) {
+        final ResponseCode guidCode = e != null ? responseCodeOf(e) : code;
+        if (guidCode == null || guidCode.isExceptionOrError()) {
+          // rollback name creation
+          return handler.getRemoteQuery().deleteRecordAsync(name).handle(
+                  new BiFunction<ResponseCode, Throwable, CommandResponse>() {
+            @Override
+            public CommandResponse apply(ResponseCode rollbackCode, Throwable rollbackError) {
+              if (rollbackError != null) {
+                rollbackCode = responseCodeOf(rollbackError);
+              }
+              return new CommandResponse(
+                      guidCode,
+                      GNSProtocol.BAD_RESPONSE.toString()
+                      + " "
+                      + guidCode.getProtocolCode()
+                      + " "
+                      + guid
+                      + " "
+                      + guidCode.getMessage()
+                      + " "
+                      + (rollbackCode == null
+                      || !rollbackCode.isOKResult() ? "; failed to roll back "
+                              + name
+                              + " creation: "
+                              + rollbackCode
+                              + ":" + (rollbackCode != null ? rollbackCode.getMessage() : null)
+                              : "; rolled back " + name + " creation"));
+            }
+          });
+        }
+        // else both name and guid created
+        return updateAccountInfoForNewGuid(accountInfo, name, guid, handler);
       }
-      createdGUID = true;
-      // else both name and guid created
-      accountInfo.addGuid(guid);
-      accountInfo.noteUpdate();
-      updateAccountInfoNoAuthentication(accountInfo, handler, true);
-      return new CommandResponse(ResponseCode.NO_ERROR, GNSProtocol.OK_RESPONSE.toString()
-              + " " + " [created " + name + " and " + guid
-              + " and updated account info successfully]");
+    }).thenCompose(Function.<CompletableFuture<CommandResponse>>identity());
+  }
+
+  // the last step of addGuidAsync, a failed update is only logged like it was by addGuid
+  private static CompletableFuture<CommandResponse> updateAccountInfoForNewGuid(AccountInfo accountInfo,
+          final String name, final String guid, ClientRequestHandlerInterface handler) {
+    final CommandResponse created = new CommandResponse(ResponseCode.NO_ERROR, GNSProtocol.OK_RESPONSE.toString()
+            + " " + " [created " + name + " and " + guid
+            + " and updated account info successfully]");
+    accountInfo.addGuid(guid);
+    accountInfo.noteUpdate();
+    String value;
+    try {
+      value = accountInfo.toJSONObject().toString();
     } catch (JSONException e) {
-      return new CommandResponse(ResponseCode.JSON_PARSE_ERROR,
-              GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.JSON_PARSE_ERROR.toString() + " "
-              + e.getMessage());
-    } catch (ServerRuntimeException e) {
-      return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR,
-              GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.UNSPECIFIED_ERROR.toString() + " "
-              + e.getMessage());
-    } catch (ClientException ce) {
-      return new CommandResponse(ce.getCode(), GNSProtocol.BAD_RESPONSE.toString()
-              + " "
-              + ce.getCode()
-              + " "
-              + ce.getMessage()
-              + (createdName ? "; created "
-                      + name
-                      + (createdGUID ? "; created " + guid
-                              + "; failed to update account info" : "")
-                      : "; created neither " + name + " nor " + guid));
+      GNSConfig.getLogger().log(Level.SEVERE,
+              "Problem parsing account info:{0}", e);
+      return CompletableFuture.completedFuture(created);
+    }
+    return handler.getRemoteQuery().fieldUpdateAsync(accountInfo.getGuid(), ACCOUNT_INFO, value).handle(
+            new BiFunction<String, Throwable, CommandResponse>() {
+      @Override
+      public CommandResponse apply(String response, Throwable e) {
+        if (e != null) {
+          GNSConfig.getLogger().log(Level.SEVERE,
+                  "Problem with remote query:{0}", e instanceof CompletionException ? e.getCause() : e);
+        }
+        return created;
+      }
+    });
+  }
+
+  private static ResponseCode responseCodeOf(Throwable e) {
+    Throwable cause = e;
+    while (cause instanceof CompletionException && cause.getCause() != null) {
+      cause = cause.getCause();
     }
+    if (cause instanceof ClientException) {
+      return ((ClientException) cause).getCode().setMessage(cause.getMessage());
+    }
+    return ResponseCode.UNSPECIFIED_ERROR.setMessage(cause.getMessage());
+  }
+
+  private static CommandResponse jsonParseErrorResponse(JSONException e) {
+    return new CommandResponse(ResponseCode.JSON_PARSE_ERROR,
+            GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.JSON_PARSE_ERROR.toString() + " "
+            + e.getMessage());
   }
 
   /**
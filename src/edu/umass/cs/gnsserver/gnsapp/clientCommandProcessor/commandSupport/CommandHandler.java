@@ -19,15 +19,21 @@ import edu.umass.cs.gnsclient.client.CommandUtils;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModule;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.data.AbstractUpdate;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.select.AbstractSelect;
 import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnsserver.gnsapp.GNSApp;
+import edu.umass.cs.gnsserver.gnsapp.Select;
+import edu.umass.cs.gnsserver.gnsapp.SelectCallback;
 import edu.umass.cs.gnscommon.ResponseCode;
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
 import edu.umass.cs.gnscommon.packets.CommandPacket;
 import edu.umass.cs.gnscommon.packets.ResponsePacket;
 import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientCommandProcessorConfig;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.gnsapp.packet.InternalCommandPacket;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectResponsePacket;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.reconfiguration.ReconfigurationConfig.RC;
@@ -40,6 +46,7 @@ import java.io.UnsupportedEncodingException;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -84,6 +91,13 @@ public class CommandHandler {
           AbstractCommand command, ClientRequestHandlerInterface handler,
           boolean doNotReplyToClient, GNSApp app) {
     JSONObject jsonFormattedCommand = PacketUtils.getCommand(commandPacket);
+    if (command instanceof AbstractSelect && !doNotReplyToClient
+            && commandPacket.getClientAddress() != null
+            && Select.useLocalSelect()
+            && Config.getGlobalBoolean(GNSConfig.GNSC.ENABLE_ASYNC_SELECT)) {
+      runSelectCommandAsync(commandPacket, (AbstractSelect) command, app);
+      return;
+    }
     try {
       long receiptTime = System.currentTimeMillis(); // instrumentation
       final Long executeCommandStart = System.currentTimeMillis(); // instrumentation
@@ -162,10 +176,78 @@ public class CommandHandler {
 
   }
 
+  /**
+   * Starts the select and returns without waiting for the other servers.
+   * The response goes through {@link #handleCommandReturnValuePacketForApp}
+   * like any other. If the select completes after the app is done executing
+   * the command, gigapaxos no longer sends responses for it, so the response
+   * is then also sent straight to the client.
+   */
+  private static void runSelectCommandAsync(final CommandPacket commandPacket,
+          AbstractSelect command, final GNSApp app) {
+    final long receiptTime = System.currentTimeMillis(); // instrumentation
+    final InetSocketAddress clientAddress = commandPacket.getClientAddress();
+    // set once this method returns, guarded by itself
+    final boolean[] returned = new boolean[1];
+    try {
+      Select.handleSelectRequestFromClient(
+              command.getSelectRequest(PacketUtils.getCommand(commandPacket)), app,
+              new SelectCallback() {
+        @Override
+        public void handleSelectResponse(SelectResponsePacket<String> response) {
+          try {
+            ResponsePacket returnPacket = new ResponsePacket(
+                    commandPacket.getRequestID(),
+                    commandPacket.getServiceName(),
+                    FieldAccess.getSelectCommandResponse(response), 0, 0,
+                    System.currentTimeMillis() - receiptTime);
+            ClientCommandProcessorConfig.getLogger().log(Level.FINE,
+                    "{0} handling async select reply: {1}",
+                    new Object[]{app, returnPacket});
+            synchronized (returned) {
+              if (!returned[0]) {
+                handleCommandReturnValuePacketForApp(returnPacket, false, app);
+                return;
+              }
+            }
+            commandPacket.setResponse(returnPacket);
+            handleCommandReturnValuePacketForApp(returnPacket, true, app);
+            app.sendToClientAddress(clientAddress, returnPacket);
+          } catch (IOException | JSONException e) {
+            ClientCommandProcessorConfig.getLogger().log(Level.SEVERE,
+                    "Problem replying to select command: {0}", e);
+          }
+        }
+      });
+    } catch (JSONException | UnknownHostException | FailedDBOperationException e) {
+      ClientCommandProcessorConfig.getLogger().log(Level.SEVERE,
+              "{0}: problem  executing select command: {1}",
+              new Object[]{app, e});
+      try {
+        handleCommandReturnValuePacketForApp(new ResponsePacket(
+                commandPacket.getRequestID(), commandPacket.getServiceName(),
+                new CommandResponse(ResponseCode.QUERY_PROCESSING_ERROR,
+                        GNSProtocol.BAD_RESPONSE.toString() + " "
+                        + GNSProtocol.QUERY_PROCESSING_ERROR.toString() + " " + e), 0, 0,
+                System.currentTimeMillis() - receiptTime), false, app);
+      } catch (IOException | JSONException f) {
+        ClientCommandProcessorConfig.getLogger().log(Level.SEVERE,
+                "Problem replying to select command: {0}", f);
+      }
+    }
+    synchronized (returned) {
+      returned[0] = true;
+    }
+  }
+
   private static CommandPacket addMessageWithoutSignatureToCommand(
           CommandPacket commandPacket) throws JSONException {
     JSONObject command = PacketUtils.getCommand(commandPacket);
-    CommandUtils.addMessageWithoutSignatureToJSON(command);
+    // Newer clients sign the binary encoding, which the commands get with
+    // PacketUtils.getSignedMessage straight from the received bytes.
+    if (!command.optBoolean(GNSProtocol.SIGNED_BINARY.toString(), false)) {
+      CommandUtils.addMessageWithoutSignatureToJSON(command);
+    }
     return commandPacket;
   }
 
@@ -207,6 +289,33 @@ public class CommandHandler {
     }
   }
 
+  /**
+   * Executes an internal command at this server as if it had just been
+   * received from the server that issued it, but without sending it anywhere.
+   * The packet goes through the same serialization as a sent one, so the TTL
+   * is decremented by one hop, and then through the same header checks and
+   * ACL checks in the command as a received one. Only commands that do not
+   * need coordination can be run this way.
+   *
+   * @param commandPacket
+   * @param app
+   * @return the response that would have been sent back
+   * @throws JSONException
+   */
+  public static ResponsePacket executeInternalCommandLocally(CommandPacket commandPacket,
+          GNSApp app) throws JSONException {
+    assert (!commandPacket.needsCoordination());
+    CommandPacket received = addMessageWithoutSignatureToCommand(
+            new InternalCommandPacket(commandPacket.toJSONObject()));
+    long receiptTime = System.currentTimeMillis(); // instrumentation
+    CommandResponse returnValue = executeCommand(
+            commandModule.lookupCommand(PacketUtils.getCommand(received)),
+            received, app.getRequestHandler());
+    return new ResponsePacket(received.getRequestID(),
+            received.getServiceName(), returnValue, 0, 0,
+            System.currentTimeMillis() - receiptTime);
+  }
+
   private static InternalRequestHeader getInternalHeaderAfterEnforcingChecks(
           CommandPacket commandPacket, ClientRequestHandlerInterface handler)
           throws InternalRequestException {
@@ -548,13 +548,30 @@ public class FieldAccess {
   private static JSONArray executeSelectHelper(SelectRequestPacket<String> packet, GNSApp app)
           throws FailedDBOperationException, JSONException, UnknownHostException {
     SelectResponsePacket<String> responsePacket = Select.handleSelectRequestFromClient(packet, app);
-    if (SelectResponsePacket.ResponseCode.NOERROR.equals(responsePacket.getResponseCode())) {
+    if (responsePacket != null
+            && SelectResponsePacket.ResponseCode.NOERROR.equals(responsePacket.getResponseCode())) {
       return responsePacket.getGuids();
     } else {
       return null;
     }
   }
 
+  /**
+   * Converts the collated response of a select into the command response
+   * the select commands return.
+   *
+   * @param responsePacket
+   * @return a command response
+   */
+  public static CommandResponse getSelectCommandResponse(SelectResponsePacket<String> responsePacket) {
+    if (responsePacket != null
+            && SelectResponsePacket.ResponseCode.NOERROR.equals(responsePacket.getResponseCode())
+            && responsePacket.getGuids() != null) {
+      return new CommandResponse(ResponseCode.NO_ERROR, responsePacket.getGuids().toString());
+    }
+    return new CommandResponse(ResponseCode.NO_ERROR, EMPTY_JSON_ARRAY_STRING);
+  }
+
   /**
    * Sends a select request to the server to retrieve all the guids matching the request.
    *
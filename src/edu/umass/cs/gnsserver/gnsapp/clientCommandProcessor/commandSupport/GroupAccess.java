@@ -24,6 +24,7 @@ import edu.umass.cs.gnscommon.exceptions.client.ClientException;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnsserver.utils.ResultValue;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.GroupMemberUpdater;
 import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSFieldAccess;
 import edu.umass.cs.gnsserver.main.GNSConfig;
 
@@ -132,10 +133,10 @@ public class GroupAccess {
               UpdateOperation.SINGLE_FIELD_APPEND_OR_CREATE, writer, signature, message,
               timestamp, handler);
     }
-    if (code.isOKResult()) {
-      for (String memberGuid : members.toStringSet()) {
-        handler.getRemoteQuery().fieldAppendToArray(memberGuid, GROUPS, new ResultValue(Arrays.asList(guid)));
-      }
+    if (code.isOKResult()
+            && !GroupMemberUpdater.appendToGroups(guid, members.toStringSet(), handler).isEmpty()) {
+      // the group was updated but some of the members weren't
+      code = ResponseCode.UPDATE_ERROR;
     }
     return code;
   }
@@ -199,10 +200,10 @@ public class GroupAccess {
               UpdateOperation.SINGLE_FIELD_REMOVE, writer, signature, message,
               timestamp, handler);
     }
-    if (code.isOKResult()) {
-      for (String memberGuid : members.toStringSet()) {
-        handler.getRemoteQuery().fieldRemove(memberGuid, GroupAccess.GROUPS, guid);
-      }
+    if (code.isOKResult()
+            && !GroupMemberUpdater.removeFromGroups(guid, members.toStringSet(), handler).isEmpty()) {
+      // the group was updated but some of the members weren't
+      code = ResponseCode.UPDATE_ERROR;
     }
     return code;
   }
@@ -30,15 +30,21 @@ import java.security.NoSuchAlgorithmException;
  */
 public class ShaOneHashFunction extends AbstractHashFunction {
 
-  private MessageDigest messageDigest;
+  // MessageDigest isn't thread safe so each thread gets its own rather than
+  // every guid computation taking one lock
+  private static final ThreadLocal<MessageDigest> MESSAGE_DIGEST = new ThreadLocal<MessageDigest>() {
+    @Override
+    protected MessageDigest initialValue() {
+      try {
+        return MessageDigest.getInstance("SHA1");
+      } catch (NoSuchAlgorithmException e) {
+        GNSConfig.getLogger().severe("Problem initializing digest: " + e);
+        return null;
+      }
+    }
+  };
 
   private ShaOneHashFunction() {
-
-    try {
-      messageDigest = MessageDigest.getInstance("SHA1");
-    } catch (NoSuchAlgorithmException e) {
-      GNSConfig.getLogger().severe("Problem initializing digest: " + e);
-    }
   }
 
   /**
@@ -48,10 +54,9 @@ public class ShaOneHashFunction extends AbstractHashFunction {
    * @return a byte array
    */
   @Override
-  public synchronized byte[] hash(String key) {
+  public byte[] hash(String key) {
     try {
-      messageDigest.update(key.getBytes("UTF-8"));
-      return messageDigest.digest();
+      return MESSAGE_DIGEST.get().digest(key.getBytes("UTF-8"));
     } catch (UnsupportedEncodingException e) {
       throw new RuntimeException(e);
     }
@@ -64,9 +69,8 @@ public class ShaOneHashFunction extends AbstractHashFunction {
    * @param bytes
    * @return a byte array
    */
-  public synchronized byte[] hash(byte[] bytes) {
-    messageDigest.update(bytes);
-    return messageDigest.digest();
+  public byte[] hash(byte[] bytes) {
+    return MESSAGE_DIGEST.get().digest(bytes);
   }
 
   /**
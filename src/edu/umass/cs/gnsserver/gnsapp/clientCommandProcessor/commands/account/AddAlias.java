@@ -19,6 +19,7 @@
  */
 package edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.account;
 
+import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnscommon.utils.Format;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
@@ -72,7 +73,7 @@ public class AddAlias extends AbstractCommand {
     // The HRN (alias) we are adding to this account guid
     String name = json.getString(GNSProtocol.NAME.toString());
     String signature = json.getString(GNSProtocol.SIGNATURE.toString());
-    String message = json.getString(GNSProtocol.SIGNATUREFULLMESSAGE.toString());
+    String message = PacketUtils.getSignedMessage(json);
     Date timestamp = json.has(GNSProtocol.TIMESTAMP.toString()) ? Format.parseDateISO8601UTC(json.getString(GNSProtocol.TIMESTAMP.toString())) : null; // can be null on older client
     // Fixme: Does this really need remote access?
     AccountInfo accountInfo = AccountAccess.lookupAccountInfoFromGuidAnywhere(guid, handler);
@@ -23,6 +23,7 @@ package edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.account;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountInfo;
+import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnscommon.SharedGuidUtils;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.CommandResponse;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.GuidInfo;
@@ -76,7 +77,7 @@ public class AddGuid extends AbstractCommand {
     String accountGuid = json.getString(GNSProtocol.GUID.toString());
     String publicKey = json.getString(GNSProtocol.PUBLIC_KEY.toString());
     String signature = json.getString(GNSProtocol.SIGNATURE.toString());
-    String message = json.getString(GNSProtocol.SIGNATUREFULLMESSAGE.toString());
+    String message = PacketUtils.getSignedMessage(json);
 
     String newGuid = SharedGuidUtils.createGuidStringFromBase64PublicKey(publicKey);
 //    byte[] publicKeyBytes = Base64.decode(publicKey);
@@ -26,6 +26,7 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.Comma
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.GuidInfo;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModule;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
+import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnscommon.CommandType;
 import edu.umass.cs.gnscommon.ResponseCode;
 import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSAccessSupport;
@@ -78,7 +79,7 @@ public class AddMultipleGuids extends AbstractCommand {
     JSONArray names = json.optJSONArray(GNSProtocol.NAMES.toString());
     JSONArray publicKeys = json.optJSONArray(GNSProtocol.PUBLIC_KEYS.toString());
     String signature = json.getString(GNSProtocol.SIGNATURE.toString());
-    String message = json.getString(GNSProtocol.SIGNATUREFULLMESSAGE.toString());
+    String message = PacketUtils.getSignedMessage(json);
 
     GuidInfo accountGuidInfo;
     if ((accountGuidInfo = AccountAccess.lookupGuidInfoAnywhere(guid, handler)) == null) {
@@ -21,6 +21,7 @@ package edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.account;
 
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
+import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnscommon.SharedGuidUtils;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.CommandResponse;
 import edu.umass.cs.gnscommon.exceptions.client.ClientException;
@@ -72,7 +73,7 @@ public class RegisterAccount extends AbstractCommand {
     String publicKey = json.getString(GNSProtocol.PUBLIC_KEY.toString());
     String password = json.getString(GNSProtocol.PASSWORD.toString());
     String signature = json.optString(GNSProtocol.SIGNATURE.toString(), null);
-    String message = json.optString(GNSProtocol.SIGNATUREFULLMESSAGE.toString(), null);
+    String message = PacketUtils.getSignedMessage(json);
     
     String guid = SharedGuidUtils.createGuidStringFromBase64PublicKey(publicKey);
     // FIXME: this lacking signature check is for temporary backward compatability... remove it.
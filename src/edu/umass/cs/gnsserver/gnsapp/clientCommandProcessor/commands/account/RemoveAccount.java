@@ -23,6 +23,7 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandler
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountInfo;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.CommandResponse;
+import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnscommon.exceptions.client.ClientException;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.GuidInfo;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModule;
@@ -74,7 +75,7 @@ public class RemoveAccount extends AbstractCommand {
     // The guid of that wants to remove this account.
     String guid = json.getString(GNSProtocol.GUID.toString());
     String signature = json.getString(GNSProtocol.SIGNATURE.toString());
-    String message = json.getString(GNSProtocol.SIGNATUREFULLMESSAGE.toString());
+    String message = PacketUtils.getSignedMessage(json);
     GuidInfo guidInfo;
     // Fixme: verify that we might need to look remotely for this.
     if ((guidInfo = AccountAccess.lookupGuidInfoAnywhere(guid, handler)) == null) {
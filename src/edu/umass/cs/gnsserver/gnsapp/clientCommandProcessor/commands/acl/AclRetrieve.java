@@ -19,8 +19,9 @@
  */
 package edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.acl;
 
+import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnscommon.utils.Format;
-import edu.umass.cs.gnscommon.SharedGuidUtils;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.AclIndex;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.CommandResponse;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.FieldMetaData;
@@ -75,7 +76,7 @@ public class AclRetrieve extends AbstractCommand {
     // allows someone other than guid to read acl, defaults to guid
     String reader = json.optString(GNSProtocol.READER.toString(), guid);
     String signature = json.getString(GNSProtocol.SIGNATURE.toString());
-    String message = json.getString(GNSProtocol.SIGNATUREFULLMESSAGE.toString());
+    String message = PacketUtils.getSignedMessage(json);
     Date timestamp = json.has(GNSProtocol.TIMESTAMP.toString()) 
             ? Format.parseDateISO8601UTC(json.getString(GNSProtocol.TIMESTAMP.toString())) : null; // can be null on older client
 
@@ -85,8 +86,18 @@ public class AclRetrieve extends AbstractCommand {
               GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.BAD_ACL_TYPE.toString()
               + "Should be one of " + Arrays.toString(MetaDataTypeName.values()));
     }
-    JSONArray guids = SharedGuidUtils.convertPublicKeysToGuids(new JSONArray(FieldMetaData.lookup(access,
-            guid, field, reader, signature, message, timestamp, handler)));
+    JSONArray guids = new JSONArray();
+    for (String publicKey : FieldMetaData.lookup(access, guid, field, reader, signature, message, timestamp, handler)) {
+      if (publicKey.equals(GNSProtocol.ALL_GUIDS.toString())) {
+        guids.put(publicKey);
+      } else {
+        // remembers the guid of each key so big ACLs aren't rehashed on every retrieve
+        String aclGuid = AclIndex.guidForPublicKey(publicKey);
+        if (aclGuid != null) {
+          guids.put(aclGuid);
+        }
+      }
+    }
     return new CommandResponse(ResponseCode.NO_ERROR, guids.toString());
   }
 
@@ -20,6 +20,7 @@
 package edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.data;
 
 
+import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.ResponseCode;
 import edu.umass.cs.gnscommon.utils.Base64;
@@ -77,7 +78,7 @@ public abstract class AbstractUpdate extends AbstractCommand {
     // writer might be unspecified so we use the guid
     String writer = json.optString(GNSProtocol.WRITER.toString(), guid);
     String signature = json.optString(GNSProtocol.SIGNATURE.toString(), null);
-    String message = json.optString(GNSProtocol.SIGNATUREFULLMESSAGE.toString(), null);
+    String message = PacketUtils.getSignedMessage(json);
     Date timestamp = json.has(GNSProtocol.TIMESTAMP.toString())
             ? Format.parseDateISO8601UTC(json.getString(GNSProtocol.TIMESTAMP.toString())) : null; // can be null on older client
 
@@ -23,6 +23,7 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandler
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.CommandResponse;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModule;
+import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.ResponseCode;
 import edu.umass.cs.gnscommon.utils.Format;
@@ -73,7 +74,7 @@ public abstract class AbstractUpdateList extends AbstractCommand {
     int argument = json.optInt(GNSProtocol.ARGUMENT.toString(), -1);
     String writer = json.optString(GNSProtocol.WRITER.toString(), guid);
     String signature = json.optString(GNSProtocol.SIGNATURE.toString(), null);
-    String message = json.optString(GNSProtocol.SIGNATUREFULLMESSAGE.toString(), null);
+    String message = PacketUtils.getSignedMessage(json);
     Date timestamp;
     if (json.has(GNSProtocol.TIMESTAMP.toString())) {
       timestamp = json.has(GNSProtocol.TIMESTAMP.toString()) ? Format.parseDateISO8601UTC(json.getString(GNSProtocol.TIMESTAMP.toString())) : null; // can be null on older client
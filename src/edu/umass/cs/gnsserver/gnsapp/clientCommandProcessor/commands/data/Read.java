@@ -19,6 +19,7 @@
  */
 package edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.data;
 
+import edu.umass.cs.gnscommon.packets.PacketUtils;
 import edu.umass.cs.gnscommon.utils.Format;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.CommandResponse;
@@ -80,7 +81,7 @@ public class Read extends AbstractCommand {
     String reader = json.optString(GNSProtocol.READER.toString(), null);
     // signature and message can be empty for unsigned cases (reader should be null as well)
     String signature = json.optString(GNSProtocol.SIGNATURE.toString(), null);
-    String message = json.optString(GNSProtocol.SIGNATUREFULLMESSAGE.toString(), null);
+    String message = PacketUtils.getSignedMessage(json);
     Date timestamp;
     if (json.has(GNSProtocol.TIMESTAMP.toString())) {
       timestamp = json.has(GNSProtocol.TIMESTAMP.toString())
@@ -0,0 +1,54 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.select;
+
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModule;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The superclass for select commands that are nothing more than a
+ * {@link SelectRequestPacket}. Those can be run without blocking the
+ * thread that executes the command, see CommandHandler.
+ *
+ * @author westy
+ */
+public abstract class AbstractSelect extends AbstractCommand {
+
+  /**
+   *
+   * @param module
+   */
+  public AbstractSelect(CommandModule module) {
+    super(module);
+  }
+
+  /**
+   * Returns the select request that executing this command sends out.
+   *
+   * @param json
+   * @return a select request packet
+   * @throws JSONException
+   */
+  public abstract SelectRequestPacket<String> getSelectRequest(JSONObject json) throws JSONException;
+
+}
@@ -25,7 +25,9 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.Field
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModule;
 import edu.umass.cs.gnscommon.CommandType;
 import edu.umass.cs.gnscommon.GNSProtocol;
-import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectGroupBehavior;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectOperation;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -34,7 +36,7 @@ import org.json.JSONObject;
  *
  * @author westy
  */
-public class Select extends AbstractCommand {
+public class Select extends AbstractSelect {
 
   /**
    *
@@ -60,5 +62,12 @@ public class Select extends AbstractCommand {
     return FieldAccess.select(field, value, handler);
   }
 
-  
+  @Override
+  public SelectRequestPacket<String> getSelectRequest(JSONObject json) throws JSONException {
+    String field = json.getString(GNSProtocol.FIELD.toString());
+    String value = json.getString(GNSProtocol.VALUE.toString());
+    return new SelectRequestPacket<>(-1, SelectOperation.EQUALS,
+            SelectGroupBehavior.NONE, field, value, null);
+  }
+
 }
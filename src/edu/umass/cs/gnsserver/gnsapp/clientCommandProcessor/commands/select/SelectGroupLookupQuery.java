@@ -21,11 +21,11 @@ package edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.select;
 
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.CommandResponse;
-import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModule;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.FieldAccess;
 import edu.umass.cs.gnscommon.CommandType;
 import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -33,7 +33,7 @@ import org.json.JSONObject;
  *
  * @author westy
  */
-public class SelectGroupLookupQuery extends AbstractCommand {
+public class SelectGroupLookupQuery extends AbstractSelect {
 
   /**
    *
@@ -58,5 +58,10 @@ public class SelectGroupLookupQuery extends AbstractCommand {
     return FieldAccess.selectGroupLookupQuery(guid, handler);
   }
 
-  
+  @Override
+  public SelectRequestPacket<String> getSelectRequest(JSONObject json) throws JSONException {
+    String guid = json.getString(GNSProtocol.GUID.toString());
+    return SelectRequestPacket.MakeGroupLookupRequest(-1, guid);
+  }
+
 }
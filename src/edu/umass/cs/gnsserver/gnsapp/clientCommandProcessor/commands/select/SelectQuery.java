@@ -25,7 +25,7 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.Field
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModule;
 import edu.umass.cs.gnscommon.CommandType;
 import edu.umass.cs.gnscommon.GNSProtocol;
-import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -34,7 +34,7 @@ import org.json.JSONObject;
  *
  * @author westy
  */
-public class SelectQuery extends AbstractCommand {
+public class SelectQuery extends AbstractSelect {
 
   /**
    *
@@ -59,5 +59,10 @@ public class SelectQuery extends AbstractCommand {
     return FieldAccess.selectQuery(query, handler);
   }
 
-  
+  @Override
+  public SelectRequestPacket<String> getSelectRequest(JSONObject json) throws JSONException {
+    String query = json.getString(GNSProtocol.QUERY.toString());
+    return SelectRequestPacket.MakeQueryRequest(-1, query);
+  }
+
 }
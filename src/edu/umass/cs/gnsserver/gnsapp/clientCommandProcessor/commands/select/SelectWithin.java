@@ -26,7 +26,9 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModu
 import edu.umass.cs.gnscommon.CommandType;
 
 import edu.umass.cs.gnscommon.GNSProtocol;
-import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectGroupBehavior;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectOperation;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -35,7 +37,7 @@ import org.json.JSONObject;
  *
  * @author westy
  */
-public class SelectWithin extends AbstractCommand {
+public class SelectWithin extends AbstractSelect {
 
   /**
    *
@@ -62,5 +64,12 @@ public class SelectWithin extends AbstractCommand {
     return FieldAccess.selectWithin(field, within, handler);
   }
 
-  
+  @Override
+  public SelectRequestPacket<String> getSelectRequest(JSONObject json) throws JSONException {
+    String field = json.getString(GNSProtocol.FIELD.toString());
+    String within = json.getString(GNSProtocol.WITHIN.toString());
+    return new SelectRequestPacket<>(-1, SelectOperation.WITHIN,
+            SelectGroupBehavior.NONE, field, within, null);
+  }
+
 }
@@ -0,0 +1,230 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientSupport;
+
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.SharedGuidUtils;
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.FieldMetaData;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.BasicRecordMap;
+import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.gnsserver.utils.ResultValue;
+import edu.umass.cs.utils.Config;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A guid indexed view of an ACL. ACLs are stored as lists of public keys, which
+ * means finding the entry for an accessor used to take a SHA-1 of every key in the list.
+ * An AclIndex maps the guid of each key to the key so membership and key lookups
+ * are a hash lookup.
+ *
+ * Indexes are built from the stored lists the first time an ACL is checked and kept
+ * by the record map until the record is written, so existing records don't need
+ * to be migrated.
+ *
+ * @author westy
+ */
+public class AclIndex {
+
+  private static final String ACL_ROOT = MetaDataTypeName.READ_WHITELIST.getPrefix();
+
+  private static final Cache<String, String> GUIDS_BY_PUBLIC_KEY = CacheBuilder.newBuilder()
+          .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          .maximumSize(Config.getGlobalInt(GNSConfig.GNSC.PUBLIC_KEY_GUID_CACHE_SIZE)).build();
+
+  /**
+   * An empty ACL.
+   */
+  public static final AclIndex EMPTY = new AclIndex(Collections.<String>emptySet());
+
+  private final Set<String> publicKeys;
+  private final Map<String, String> publicKeysByGuid;
+  private final boolean everyone;
+
+  /**
+   * Creates an index of the given ACL entries.
+   *
+   * @param entries public keys and possibly {@link GNSProtocol#EVERYONE}
+   */
+  public AclIndex(Collection<String> entries) {
+    this.publicKeys = Collections.unmodifiableSet(new HashSet<>(entries));
+    this.publicKeysByGuid = new HashMap<>();
+    boolean all = false;
+    for (String entry : publicKeys) {
+      if (GNSProtocol.EVERYONE.toString().equals(entry)) {
+        all = true;
+      } else {
+        String guid = guidForPublicKey(entry);
+        if (guid != null) {
+          publicKeysByGuid.put(guid, entry);
+        }
+      }
+    }
+    this.everyone = all;
+  }
+
+  /**
+   * Returns the public key of guid if it is in the ACL.
+   *
+   * @param guid
+   * @return the public key or null
+   */
+  public String getPublicKey(String guid) {
+    return guid != null ? publicKeysByGuid.get(guid) : null;
+  }
+
+  /**
+   * Returns true if guid is in the ACL.
+   *
+   * @param guid
+   * @return true if guid is in the ACL
+   */
+  public boolean containsGuid(String guid) {
+    return guid != null && publicKeysByGuid.containsKey(guid);
+  }
+
+  /**
+   * Returns true if any of the guids is in the ACL.
+   *
+   * @param guids
+   * @return true if any of the guids is in the ACL
+   */
+  public boolean containsAnyGuid(Set<String> guids) {
+    for (String guid : guids) {
+      if (publicKeysByGuid.containsKey(guid)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the ACL contains {@link GNSProtocol#EVERYONE}.
+   *
+   * @return true if everyone is allowed
+   */
+  public boolean containsEveryone() {
+    return everyone;
+  }
+
+  /**
+   * Returns the entries of the ACL as stored.
+   *
+   * @return the public keys
+   */
+  public Set<String> getPublicKeys() {
+    return publicKeys;
+  }
+
+  /**
+   * Returns the guids of the public keys in the ACL.
+   *
+   * @return the guids
+   */
+  public Set<String> getGuids() {
+    return Collections.unmodifiableSet(publicKeysByGuid.keySet());
+  }
+
+  /**
+   * Returns the guid for a Base64 encoded public key, hashing the key
+   * only if it hasn't been seen recently.
+   *
+   * @param publicKey
+   * @return the guid or null if the key is bogus
+   */
+  public static String guidForPublicKey(String publicKey) {
+    String guid = GUIDS_BY_PUBLIC_KEY.getIfPresent(publicKey);
+    if (guid == null) {
+      try {
+        guid = SharedGuidUtils.createGuidStringFromBase64PublicKey(publicKey);
+      } catch (IllegalArgumentException e) {
+        // ignore any bogus publicKeys
+        return null;
+      }
+      GUIDS_BY_PUBLIC_KEY.put(publicKey, guid);
+    }
+    return guid;
+  }
+
+  /**
+   * Returns the index of the ACL of the field in guid's record on this server.
+   *
+   * @param type
+   * @param guid
+   * @param key
+   * @param database
+   * @return the index
+   * @throws FailedDBOperationException
+   * @throws FieldNotFoundException if the ACL doesn't exist
+   * @throws RecordNotFoundException
+   */
+  public static AclIndex lookupLocally(MetaDataTypeName type, String guid, String key,
+          BasicRecordMap database)
+          throws FailedDBOperationException, FieldNotFoundException, RecordNotFoundException {
+    String field = FieldMetaData.makeFieldMetaDataKey(type, key);
+    if (!Config.getGlobalBoolean(GNSConfig.GNSC.ENABLE_ACL_INDEX)) {
+      return readFromRecord(guid, field, database);
+    }
+    return database.lookupAclIndex(guid, field);
+  }
+
+  /**
+   * Builds the index of the ACL in field of guid's record from the stored list.
+   *
+   * @param guid
+   * @param field the ACL metadata key
+   * @param database
+   * @return the index
+   * @throws FailedDBOperationException
+   * @throws FieldNotFoundException if the ACL doesn't exist
+   * @throws RecordNotFoundException
+   */
+  public static AclIndex readFromRecord(String guid, String field, BasicRecordMap database)
+          throws FailedDBOperationException, FieldNotFoundException, RecordNotFoundException {
+    return new AclIndex(toStrings(NSFieldAccess.lookupListFieldLocallyNoAuth(guid, field, database)));
+  }
+
+  /**
+   * Returns true if writing field can change an ACL.
+   *
+   * @param field
+   * @return true if field is, or contains, an ACL
+   */
+  public static boolean isAclField(String field) {
+    return field.startsWith(ACL_ROOT) || ACL_ROOT.startsWith(field);
+  }
+
+  private static Collection<String> toStrings(ResultValue values) {
+    Set<String> strings = new HashSet<>();
+    for (Object value : values) {
+      strings.add(String.valueOf(value));
+    }
+    return strings;
+  }
+}
@@ -0,0 +1,304 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientSupport;
+
+import edu.umass.cs.gigapaxos.interfaces.Request;
+import edu.umass.cs.gigapaxos.interfaces.RequestCallback;
+import edu.umass.cs.gnscommon.ResponseCode;
+import edu.umass.cs.gnscommon.packets.ResponsePacket;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.GroupAccess;
+import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.gnsserver.utils.ResultValue;
+import edu.umass.cs.utils.Config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Updates the reverse group link (the GROUPS field) in all the members of
+ * a group. Every member is its own replica group, so each member is still
+ * one update, but instead of sending them one at a time and waiting for each,
+ * the members are split up by the active replicas they are on and each of those
+ * sets of replicas is sent a window of updates at a time, all of them at once.
+ * The updates that fail or time out are returned so the caller can report them.
+ *
+ * @author westy
+ */
+public class GroupMemberUpdater {
+
+  /**
+   * Returns the set of replicas a member is on, any object that is equal for
+   * members on the same replicas will do.
+   */
+  interface Replicas {
+
+    Object of(String member);
+  }
+
+  /**
+   * Sends the update of one member, without waiting for it.
+   */
+  interface Sender {
+
+    void send(String member, Completion completion) throws Exception;
+  }
+
+  /**
+   * Called once the update of a member is done.
+   */
+  interface Completion {
+
+    void completed(String member, ResponseCode code);
+  }
+
+  private static final long WAIT_TIMESTEP = 100;
+
+  private final Replicas replicas;
+  private final Sender sender;
+  private final int window;
+  private final long timeout;
+
+  /**
+   * @param replicas
+   * @param sender
+   * @param window the number of updates sent at a time to each set of replicas
+   * @param timeout how long to wait for each update
+   */
+  GroupMemberUpdater(Replicas replicas, Sender sender, int window, long timeout) {
+    this.replicas = replicas;
+    this.sender = sender;
+    this.window = window;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Appends the group to the GROUPS field of all the members.
+   *
+   * @param groupGuid
+   * @param members
+   * @param handler
+   * @return the members whose update failed and why, empty if none did
+   */
+  public static Map<String, ResponseCode> appendToGroups(String groupGuid, Collection<String> members,
+          final ClientRequestHandlerInterface handler) {
+    final ResultValue value = new ResultValue(Arrays.asList(groupGuid));
+    return forHandler(handler, new Sender() {
+      @Override
+      public void send(String member, Completion completion) throws Exception {
+        handler.getRemoteQuery().fieldAppendToArray(member, GroupAccess.GROUPS, value,
+                getCallback(member, completion));
+      }
+    }).update(members);
+  }
+
+  /**
+   * Replaces the GROUPS field of all the members with the group.
+   *
+   * @param groupGuid
+   * @param members
+   * @param handler
+   * @return the members whose update failed and why, empty if none did
+   */
+  public static Map<String, ResponseCode> replaceGroups(String groupGuid, Collection<String> members,
+          final ClientRequestHandlerInterface handler) {
+    final ResultValue value = new ResultValue(Arrays.asList(groupGuid));
+    return forHandler(handler, new Sender() {
+      @Override
+      public void send(String member, Completion completion) throws Exception {
+        handler.getRemoteQuery().fieldReplaceOrCreateArray(member, GroupAccess.GROUPS, value,
+                getCallback(member, completion));
+      }
+    }).update(members);
+  }
+
+  /**
+   * Removes the group from the GROUPS field of all the members.
+   *
+   * @param groupGuid
+   * @param members
+   * @param handler
+   * @return the members whose update failed and why, empty if none did
+   */
+  public static Map<String, ResponseCode> removeFromGroups(final String groupGuid, Collection<String> members,
+          final ClientRequestHandlerInterface handler) {
+    return forHandler(handler, new Sender() {
+      @Override
+      public void send(String member, Completion completion) throws Exception {
+        handler.getRemoteQuery().fieldRemove(member, GroupAccess.GROUPS, groupGuid,
+                getCallback(member, completion));
+      }
+    }).update(members);
+  }
+
+  private static GroupMemberUpdater forHandler(final ClientRequestHandlerInterface handler, Sender sender) {
+    return new GroupMemberUpdater(new Replicas() {
+      @Override
+      public Object of(String member) {
+        return handler.getNodeConfig().getReplicatedActives(member);
+      }
+    }, sender, Config.getGlobalInt(GNSConfig.GNSC.GROUP_MEMBER_UPDATE_WINDOW),
+            Config.getGlobalInt(GNSConfig.GNSC.REPLICA_UPDATE_TIMEOUT));
+  }
+
+  private static RequestCallback getCallback(final String member, final Completion completion) {
+    return new RequestCallback() {
+      @Override
+      public void handleResponse(Request response) {
+        completion.completed(member, response instanceof ResponsePacket
+                ? ((ResponsePacket) response).getErrorCode()
+                // an ActiveReplicaError
+                : ResponseCode.ACTIVE_REPLICA_EXCEPTION);
+      }
+    };
+  }
+
+  /**
+   * Updates all the members and waits until every update is done or has timed out.
+   *
+   * @param members
+   * @return the members whose update failed and why, empty if none did
+   */
+  Map<String, ResponseCode> update(Collection<String> members) {
+    Fanout fanout = new Fanout(members);
+    fanout.run();
+    if (!fanout.failures.isEmpty()) {
+      ClientSupportConfig.getLogger().log(Level.WARNING,
+              "Updating {0} of {1} group members failed: {2}",
+              new Object[]{fanout.failures.size(), fanout.total, fanout.failures});
+    }
+    return fanout.failures;
+  }
+
+  private static class ReplicaGroup {
+
+    private final ArrayDeque<String> pending = new ArrayDeque<>();
+    private int outstanding = 0;
+  }
+
+  private class Fanout implements Completion {
+
+    private final List<ReplicaGroup> groups = new ArrayList<>();
+    private final Map<String, ReplicaGroup> groupOf = new HashMap<>();
+    // member -> time sent, guarded by this
+    private final Map<String, Long> inFlight = new HashMap<>();
+    private final Map<String, ResponseCode> failures = new ConcurrentHashMap<>();
+    private final int total;
+    private int done = 0;
+
+    Fanout(Collection<String> members) {
+      Map<Object, ReplicaGroup> byReplicas = new HashMap<>();
+      for (String member : new LinkedHashSet<>(members)) {
+        Object key = replicas.of(member);
+        ReplicaGroup group = byReplicas.get(key);
+        if (group == null) {
+          group = new ReplicaGroup();
+          byReplicas.put(key, group);
+          groups.add(group);
+        }
+        group.pending.add(member);
+        groupOf.put(member, group);
+      }
+      total = groupOf.size();
+    }
+
+    @Override
+    public synchronized void completed(String member, ResponseCode code) {
+      if (inFlight.remove(member) == null) {
+        // already timed out
+        return;
+      }
+      finish(member, code);
+      notifyAll();
+    }
+
+    private void finish(String member, ResponseCode code) {
+      groupOf.get(member).outstanding--;
+      if (code == null || !code.isOKResult()) {
+        failures.put(member, code != null ? code : ResponseCode.UNSPECIFIED_ERROR);
+      }
+      done++;
+    }
+
+    synchronized void run() {
+      try {
+        while (done < total) {
+          send();
+          expire();
+          if (done < total) {
+            wait(WAIT_TIMESTEP);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        // whatever hasn't finished has failed
+        for (String member : inFlight.keySet()) {
+          failures.put(member, ResponseCode.TIMEOUT);
+        }
+        for (ReplicaGroup group : groups) {
+          for (String member : group.pending) {
+            failures.put(member, ResponseCode.TIMEOUT);
+          }
+        }
+      }
+    }
+
+    // tops up the window of every set of replicas
+    private void send() {
+      for (ReplicaGroup group : groups) {
+        while (group.outstanding < window && !group.pending.isEmpty()) {
+          String member = group.pending.poll();
+          inFlight.put(member, System.currentTimeMillis());
+          group.outstanding++;
+          try {
+            sender.send(member, this);
+          } catch (Exception e) {
+            ClientSupportConfig.getLogger().log(Level.FINE,
+                    "Problem sending group update to {0}: {1}", new Object[]{member, e});
+            if (inFlight.remove(member) != null) {
+              finish(member, ResponseCode.UNSPECIFIED_ERROR);
+            }
+          }
+        }
+      }
+    }
+
+    private void expire() {
+      long now = System.currentTimeMillis();
+      Iterator<Map.Entry<String, Long>> iterator = inFlight.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, Long> entry = iterator.next();
+        if (now - entry.getValue() > timeout) {
+          iterator.remove();
+          finish(entry.getKey(), ResponseCode.TIMEOUT);
+        }
+      }
+    }
+  }
+}
@@ -19,7 +19,8 @@
  */
 package edu.umass.cs.gnsserver.gnsapp.clientSupport;
 
-import com.google.common.collect.Sets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
@@ -35,7 +36,6 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.logging.Level;
 import edu.umass.cs.gnscommon.utils.ByteUtils;
-import edu.umass.cs.gnscommon.SharedGuidUtils;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
 import edu.umass.cs.gnsserver.gnsapp.deprecated.GNSApplicationInterface;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.BasicRecordMap;
@@ -65,20 +65,62 @@ import edu.umass.cs.gnscommon.GNSProtocol;
  */
 public class NSAccessSupport {
 
-  private static KeyFactory keyFactory;
-  // arun: at least as many instances as cores for parallelism.
-  private static Signature[] signatureInstances = new Signature[2 * Runtime.getRuntime().availableProcessors()];
+  // Signature, Cipher, MessageDigest and KeyFactory instances are not
+  // thread-safe, so each thread gets its own instead of sharing a pool
+  // behind locks.
+  private static final ThreadLocal<KeyFactory> KEY_FACTORY = new ThreadLocal<KeyFactory>() {
+    @Override
+    protected KeyFactory initialValue() {
+      try {
+        return KeyFactory.getInstance(GNSProtocol.RSA_ALGORITHM.toString());
+      } catch (NoSuchAlgorithmException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        return null;
+      }
+    }
+  };
 
-  static {
-    try {
-      keyFactory = KeyFactory.getInstance(GNSProtocol.RSA_ALGORITHM.toString());
-      for (int i = 0; i < signatureInstances.length; i++) {
-        signatureInstances[i] = Signature.getInstance(GNSProtocol.SIGNATURE_ALGORITHM.toString());
+  private static final ThreadLocal<Signature> SIGNATURE = new ThreadLocal<Signature>() {
+    @Override
+    protected Signature initialValue() {
+      try {
+        return Signature.getInstance(GNSProtocol.SIGNATURE_ALGORITHM.toString());
+      } catch (NoSuchAlgorithmException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        return null;
       }
-    } catch (NoSuchAlgorithmException e) {
-      ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
     }
-  }
+  };
+
+  private static final ThreadLocal<MessageDigest> MESSAGE_DIGEST = new ThreadLocal<MessageDigest>() {
+    @Override
+    protected MessageDigest initialValue() {
+      try {
+        return MessageDigest.getInstance(GNSProtocol.DIGEST_ALGORITHM.toString());
+      } catch (NoSuchAlgorithmException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        return null;
+      }
+    }
+  };
+
+  private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<Cipher>() {
+    @Override
+    protected Cipher initialValue() {
+      try {
+        return Cipher.getInstance(GNSProtocol.SECRET_KEY_ALGORITHM.toString());
+      } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        return null;
+      }
+    }
+  };
+
+  // Decoded public keys keyed by their Base64 encoding so we don't redo
+  // the Base64 decode and X509 parse on every command from the same guid.
+  private static final Cache<String, PublicKey> PUBLIC_KEY_CACHE
+          = CacheBuilder.newBuilder().concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+          .maximumSize(Config.getGlobalInt(GNSC.PUBLIC_KEY_CACHE_SIZE)).build();
 
   /**
    * Verifies that the signature corresponds to the message using the public key.
@@ -94,8 +136,8 @@ public class NSAccessSupport {
    */
   public static boolean verifySignature(String accessorPublicKey, String signature, String message) throws
           InvalidKeyException, SignatureException, UnsupportedEncodingException, InvalidKeySpecException {
-    byte[] publickeyBytes = Base64.decode(accessorPublicKey);
-    if (publickeyBytes == null) { // bogus public key
+    PublicKey publicKey = getPublicKey(accessorPublicKey);
+    if (publicKey == null) { // bogus public key
       ClientSupportConfig.getLogger().log(Level.FINE, "&&&&Base 64 decoding is bogus!!!");
       return false;
     }
@@ -105,7 +147,7 @@ public class NSAccessSupport {
               Util.truncate(signature, 16, 16),
               Util.truncate(message, 16, 16)});
     long t = System.nanoTime();
-    boolean result = verifySignatureInternal(publickeyBytes, signature, message);
+    boolean result = verifySignatureInternal(publicKey, signature, message);
     if (Util.oneIn(100)) {
       DelayProfiler.updateDelayNano("verification", t);
     }
@@ -118,80 +160,51 @@ public class NSAccessSupport {
     return result;
   }
 
-  private static int sigIndex = 0;
-
-  private synchronized static Signature getSignatureInstance() {
-    return signatureInstances[sigIndex++ % signatureInstances.length];
+  /**
+   * Returns the public key for the Base64 encoded key, decoding it only if
+   * it isn't in the cache.
+   *
+   * @param encodedPublicKey
+   * @return the public key or null if the encoding is bogus
+   * @throws InvalidKeySpecException
+   */
+  static PublicKey getPublicKey(String encodedPublicKey) throws InvalidKeySpecException {
+    PublicKey publicKey = PUBLIC_KEY_CACHE.getIfPresent(encodedPublicKey);
+    if (publicKey == null) {
+      byte[] publickeyBytes = Base64.decode(encodedPublicKey);
+      if (publickeyBytes == null) {
+        return null;
+      }
+      publicKey = KEY_FACTORY.get().generatePublic(new X509EncodedKeySpec(publickeyBytes));
+      PUBLIC_KEY_CACHE.put(encodedPublicKey, publicKey);
+    }
+    return publicKey;
   }
 
-  private static synchronized boolean verifySignatureInternal(byte[] publickeyBytes, String signature, String message)
-          throws InvalidKeyException, SignatureException, UnsupportedEncodingException, InvalidKeySpecException {
+  private static boolean verifySignatureInternal(PublicKey publicKey, String signature, String message)
+          throws InvalidKeyException, SignatureException, UnsupportedEncodingException {
 
     if (Config.getGlobalBoolean(GNSC.ENABLE_SECRET_KEY)) {
       try {
-        return verifySignatureInternalSecretKey(publickeyBytes, signature, message);
+        return verifySignatureInternalSecretKey(publicKey, signature, message);
       } catch (Exception e) {
         // Note that: This just falls through to the older non-secret method if it fails
       }
     }
 
-    X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(publickeyBytes);
-    PublicKey publicKey = keyFactory.generatePublic(publicKeySpec);
-
-    Signature sigInstance = getSignatureInstance();
-    synchronized (sigInstance) {
-      sigInstance.initVerify(publicKey);
-      // iOS client uses UTF-8 - should switch to ISO-8859-1 to be consistent with
-      // secret key version
-      sigInstance.update(message.getBytes("UTF-8"));
-      // Non secret uses ISO-8859-1, but the iOS client uses hex so 
-      // we need to keep this for now.
-      return sigInstance.verify(ByteUtils.hexStringToByteArray(signature));
-    }
-  }
-
-  private static final MessageDigest[] mds = new MessageDigest[Runtime.getRuntime().availableProcessors()];
-
-  static {
-    for (int i = 0; i < mds.length; i++) {
-      try {
-        mds[i] = MessageDigest.getInstance(GNSProtocol.DIGEST_ALGORITHM.toString());
-      } catch (NoSuchAlgorithmException e) {
-        e.printStackTrace();
-        System.exit(1);
-      }
-    }
-  }
-  private static int mdIndex = 0;
-
-  private static MessageDigest getMessageDigestInstance() {
-    return mds[mdIndex++ % mds.length];
-  }
-
-  private static final Cipher[] ciphers = new Cipher[2 * Runtime.getRuntime().availableProcessors()];
-
-  static {
-    for (int i = 0; i < ciphers.length; i++) {
-      try {
-        ciphers[i] = Cipher.getInstance(GNSProtocol.SECRET_KEY_ALGORITHM.toString());
-      } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-        e.printStackTrace();
-        System.exit(1);
-      }
-    }
-  }
-
-  private static int cipherIndex = 0;
-
-  private static Cipher getCipherInstance() {
-    return ciphers[cipherIndex++ % ciphers.length];
+    Signature sigInstance = SIGNATURE.get();
+    sigInstance.initVerify(publicKey);
+    // iOS client uses UTF-8 - should switch to ISO-8859-1 to be consistent with
+    // secret key version
+    sigInstance.update(message.getBytes("UTF-8"));
+    // Non secret uses ISO-8859-1, but the iOS client uses hex so 
+    // we need to keep this for now.
+    return sigInstance.verify(ByteUtils.hexStringToByteArray(signature));
   }
 
-  private static synchronized boolean verifySignatureInternalSecretKey(byte[] publickeyBytes, String signature, String message)
+  private static boolean verifySignatureInternalSecretKey(PublicKey publicKey, String signature, String message)
           throws InvalidKeyException, SignatureException, UnsupportedEncodingException, InvalidKeySpecException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
 
-    PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(publickeyBytes));
-
     // FIXME: The reason why we use CHARSET should be more throughly documented here.
     byte[] sigBytes = signature.getBytes(GNSProtocol.CHARSET.toString());
     byte[] bytes = message.getBytes(GNSProtocol.CHARSET.toString());
@@ -205,16 +218,10 @@ public class NSAccessSupport {
     bbuf.get(skCertEncoded);
     SecretKey secretKey = SessionKeys.getSecretKeyFromCertificate(skCertEncoded, publicKey);
 
-    MessageDigest md = getMessageDigestInstance();
-    byte[] digest = null;
-    synchronized (md) {
-      digest = md.digest(bytes);
-    }
-    Cipher cipher = getCipherInstance();
-    synchronized (cipher) {
-      cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-      return Arrays.equals(sign, cipher.doFinal(digest));
-    }
+    byte[] digest = MESSAGE_DIGEST.get().digest(bytes);
+    Cipher cipher = CIPHER.get();
+    cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+    return Arrays.equals(sign, cipher.doFinal(digest));
   }
 
   /**
@@ -267,13 +274,10 @@ public class NSAccessSupport {
           GNSApplicationInterface<String> activeReplica)
           throws FieldNotFoundException, FailedDBOperationException {
     try {
-      // FIXME: Tidy this mess up.
-      @SuppressWarnings("unchecked")
-      Set<String> allowedUsers = (Set<String>) (Set<?>) NSFieldMetaData.lookupLocally(accessType,
-              guid, field, activeReplica.getDB());
+      AclIndex allowedUsers = AclIndex.lookupLocally(accessType, guid, field, activeReplica.getDB());
       ClientSupportConfig.getLogger().log(Level.FINE, "{0} allowed users of {1} : {2}",
-              new Object[]{guid, field, allowedUsers});
-      return !Sets.intersection(SharedGuidUtils.convertPublicKeysToGuids(allowedUsers), groups).isEmpty();
+              new Object[]{guid, field, allowedUsers.getGuids()});
+      return allowedUsers.containsAnyGuid(groups);
     } catch (RecordNotFoundException e) {
       ClientSupportConfig.getLogger().log(Level.WARNING,
               "User {0} access problem for {2} field: {3}",
@@ -363,11 +367,9 @@ public class NSAccessSupport {
   private static boolean checkForAccess(MetaDataTypeName accessType, String guid, String field, String accessorGuid,
           GNSApplicationInterface<String> activeReplica) throws FailedDBOperationException {
     try {
-      // FIXME: Tidy this mess up.
-      @SuppressWarnings("unchecked")
-      Set<String> allowedusers = (Set<String>) (Set<?>) NSFieldMetaData.lookupLocally(accessType,
-              guid, field, activeReplica.getDB());
-      ClientSupportConfig.getLogger().log(Level.FINE, "{0} allowed users of {1} : {2}", new Object[]{guid, field, allowedusers});
+      AclIndex allowedusers = AclIndex.lookupLocally(accessType, guid, field, activeReplica.getDB());
+      ClientSupportConfig.getLogger().log(Level.FINE, "{0} allowed users of {1} : {2}",
+              new Object[]{guid, field, allowedusers.getGuids()});
       if (checkAllowedUsers(accessorGuid, allowedusers, activeReplica)) {
         ClientSupportConfig.getLogger().log(Level.FINE, "User {0} allowed to access {1}",
                 new Object[]{accessorGuid,
@@ -393,26 +395,26 @@ public class NSAccessSupport {
    * Finally handles the case where the allowed users contains the GNSProtocol.EVERYONE.toString() symbol.
    *
    * @param accessorGuid - the guid that we are checking for access
-   * @param allowedUsers - the list of publickeys that are in the acl
+   * @param allowedUsers - the acl
    * @param activeReplica
    * @return true if the guid is in the allowed users
    * @throws FailedDBOperationException
    */
   @Deprecated
   private static boolean checkAllowedUsers(String accessorGuid,
-          Set<String> allowedUsers, GNSApplicationInterface<String> activeReplica) throws FailedDBOperationException {
-    if (SharedGuidUtils.publicKeyListContainsGuid(accessorGuid, allowedUsers)) {
+          AclIndex allowedUsers, GNSApplicationInterface<String> activeReplica) throws FailedDBOperationException {
+    if (allowedUsers.containsGuid(accessorGuid)) {
       return true;
-    } else if (allowedUsers.contains(GNSProtocol.EVERYONE.toString())) {
+    } else if (allowedUsers.containsEveryone()) {
       return true;
     } else {
-      // see if allowed users (the public keys for the guids and group guids that is in the ACL) 
+      // see if allowed users (the guids and group guids that are in the ACL) 
       // intersects with the groups that this guid is a member of (which is stored with this guid)
       ClientSupportConfig.getLogger().log(Level.FINE,
               "Looking up groups for {0} and check against {1}",
-              new Object[]{accessorGuid, SharedGuidUtils.convertPublicKeysToGuids(allowedUsers)});
-      return !Sets.intersection(SharedGuidUtils.convertPublicKeysToGuids(allowedUsers),
-              NSGroupAccess.lookupGroups(accessorGuid, activeReplica.getRequestHandler())).isEmpty();
+              new Object[]{accessorGuid, allowedUsers.getGuids()});
+      return allowedUsers.containsAnyGuid(
+              NSGroupAccess.lookupGroups(accessorGuid, activeReplica.getRequestHandler()));
     }
   }
 
@@ -429,8 +431,8 @@ public class NSAccessSupport {
   public static boolean fieldAccessibleByEveryone(MetaDataTypeName access, String guid, String field,
           GNSApplicationInterface<String> activeReplica) throws FailedDBOperationException {
     try {
-      return NSFieldMetaData.lookupLocally(access, guid, field, activeReplica.getDB()).contains(GNSProtocol.EVERYONE.toString())
-              || NSFieldMetaData.lookupLocally(access, guid, GNSProtocol.ENTIRE_RECORD.toString(), activeReplica.getDB()).contains(GNSProtocol.EVERYONE.toString());
+      return AclIndex.lookupLocally(access, guid, field, activeReplica.getDB()).containsEveryone()
+              || AclIndex.lookupLocally(access, guid, GNSProtocol.ENTIRE_RECORD.toString(), activeReplica.getDB()).containsEveryone();
     } catch (FieldNotFoundException e) {
       // This is actually a normal result.. so no warning here.
       return false;
@@ -454,64 +456,75 @@ public class NSAccessSupport {
    * @return a set of public keys
    * @throws FailedDBOperationException
    */
-  @SuppressWarnings("unchecked")
   public static Set<String> lookupPublicKeysFromAcl(MetaDataTypeName access, String guid, String field,
           BasicRecordMap database) throws FailedDBOperationException {
+    return new HashSet<>(lookupAclIndex(access, guid, field, database).getPublicKeys());
+  }
+
+  /**
+   * Same as {@link #lookupPublicKeysFromAcl} but returns the ACL indexed by guid.
+   *
+   * @param access
+   * @param guid
+   * @param field
+   * @param database
+   * @return the acl
+   * @throws FailedDBOperationException
+   */
+  public static AclIndex lookupAclIndex(MetaDataTypeName access, String guid, String field,
+          BasicRecordMap database) throws FailedDBOperationException {
     if (Config.getGlobalBoolean(GNSConfig.GNSC.USE_OLD_ACL_MODEL)) {
-      return oldLookupPublicKeysFromAcl(access, guid, field, database);
+      return oldLookupAclIndex(access, guid, field, database);
     } else {
-      return newLookupPublicKeysFromAcl(access, guid, field, database);
+      return newLookupAclIndex(access, guid, field, database);
     }
   }
 
-  @SuppressWarnings("unchecked")
-  public static Set<String> newLookupPublicKeysFromAcl(MetaDataTypeName access, String guid, String field,
+  private static AclIndex newLookupAclIndex(MetaDataTypeName access, String guid, String field,
           BasicRecordMap database) throws FailedDBOperationException {
     ClientSupportConfig.getLogger().log(Level.FINE, "###field={0}", new Object[]{field});
     try {
-      // If the field is found this will return a list of the public keys in the ACL,
+      // If the field is found this will return the ACL,
       // empty or otherwise. If it is empty we will stop looking.
-      return (Set<String>) (Set<?>) NSFieldMetaData.lookupLocally(access, guid, field, database);
+      return AclIndex.lookupLocally(access, guid, field, database);
     } catch (RecordNotFoundException e) {
       ClientSupportConfig.getLogger().log(Level.WARNING, "User {0} access problem for {1}'s {2} field: {3}",
               new Object[]{guid, field, access.toString(), e});
-      return new HashSet<>();
+      return AclIndex.EMPTY;
     } catch (FieldNotFoundException e) {
       ClientSupportConfig.getLogger().log(Level.FINE, "###field NOT FOUND={0}.. GOING UP", new Object[]{field});
     }
     // otherwise go up the hierarchy and check
     if (field.contains(".")) {
-      return newLookupPublicKeysFromAcl(access, guid, field.substring(0, field.lastIndexOf(".")), database);
+      return newLookupAclIndex(access, guid, field.substring(0, field.lastIndexOf(".")), database);
       // One last check at the root (GNSProtocol.ENTIRE_RECORD.toString()) field.
     } else if (!GNSProtocol.ENTIRE_RECORD.toString().equals(field)) {
-      return newLookupPublicKeysFromAcl(access, guid, GNSProtocol.ENTIRE_RECORD.toString(), database);
+      return newLookupAclIndex(access, guid, GNSProtocol.ENTIRE_RECORD.toString(), database);
     } else {
-      return new HashSet<>();
+      return AclIndex.EMPTY;
     }
   }
 
   @Deprecated
-  @SuppressWarnings("unchecked")
-  public static Set<String> oldLookupPublicKeysFromAcl(MetaDataTypeName access, String guid, String field,
+  private static AclIndex oldLookupAclIndex(MetaDataTypeName access, String guid, String field,
           BasicRecordMap database) throws FailedDBOperationException {
     ClientSupportConfig.getLogger().log(Level.FINE, "###field={0}",
             new Object[]{field});
     try {
-      //FIXME: Clean this mess up.
-      return (Set<String>) (Set<?>) NSFieldMetaData.lookupLocally(access, guid, field, database);
+      return AclIndex.lookupLocally(access, guid, field, database);
     } catch (FieldNotFoundException e) {
       ClientSupportConfig.getLogger().log(Level.FINE, "###field NOT FOUND={0}.. GOING UP", new Object[]{field});
     } catch (RecordNotFoundException e) {
       ClientSupportConfig.getLogger().log(Level.WARNING,
               // The message template wasn't working here... odd.
               "User " + guid + " access problem for " + field + "'s " + access.toString() + " field: " + e);
-      return new HashSet<>();
+      return AclIndex.EMPTY;
     }
     // otherwise go up the hierarchy and check
     if (field.contains(".")) {
-      return oldLookupPublicKeysFromAcl(access, guid, field.substring(0, field.lastIndexOf(".")), database);
+      return oldLookupAclIndex(access, guid, field.substring(0, field.lastIndexOf(".")), database);
     } else {
-      return new HashSet<>();
+      return AclIndex.EMPTY;
     }
   }
 
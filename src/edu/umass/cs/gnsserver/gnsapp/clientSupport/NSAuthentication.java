@@ -23,7 +23,6 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.ResponseCode;
-import edu.umass.cs.gnscommon.SharedGuidUtils;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.GuidInfo;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
 import edu.umass.cs.gnsserver.gnsapp.deprecated.GNSApplicationInterface;
@@ -269,27 +268,29 @@ public class NSAuthentication {
           throws FailedDBOperationException {
     String publicKey;
     // Field could also be GNSProtocol.ENTIRE_RECORD.toString() here 
-    Set<String> publicKeys = NSAccessSupport.lookupPublicKeysFromAcl(access, guid, field, gnsApp.getDB());
-    publicKey = SharedGuidUtils.findPublicKeyForGuid(accessorGuid, publicKeys);
+    AclIndex acl = NSAccessSupport.lookupAclIndex(access, guid, field, gnsApp.getDB());
+    publicKey = acl.getPublicKey(accessorGuid);
+    boolean everyone = acl.containsEveryone();
     ClientSupportConfig.getLogger().log(Level.FINE,
-            "================> {0} lookup for {1} returned: {2} public keys={3}",
+            "================> {0} lookup for {1} returned: {2} acl guids={3}",
             new Object[]{access.toString(), field, publicKey,
-              publicKeys});
-    // In the new ACL model this is done differently in the above lookupPublicKeysFromAcl call.
+              acl.getGuids()});
+    // In the new ACL model this is done differently in the above lookupAclIndex call.
     if (Config.getGlobalBoolean(GNSConfig.GNSC.USE_OLD_ACL_MODEL) && publicKey == null) {
       // NOT DONE IN THE NEW ACL MODEL.
       // Also catch all the keys that are stored in the +ALL+ record.
       // This handles the case where the guid attempting access isn't stored in a single field ACL
       // but is stored in the GNSProtocol.ENTIRE_RECORD.toString() (+ALL+) ACL
-      publicKeys.addAll(NSAccessSupport.lookupPublicKeysFromAcl(access, guid, GNSProtocol.ENTIRE_RECORD.toString(), gnsApp.getDB()));
-      publicKey = SharedGuidUtils.findPublicKeyForGuid(accessorGuid, publicKeys);
+      AclIndex allAcl = NSAccessSupport.lookupAclIndex(access, guid, GNSProtocol.ENTIRE_RECORD.toString(), gnsApp.getDB());
+      publicKey = allAcl.getPublicKey(accessorGuid);
+      everyone = everyone || allAcl.containsEveryone();
       ClientSupportConfig.getLogger().log(Level.FINE,
-              "================> {0} lookup with +ALL+ returned: {1} public keys={2}",
-              new Object[]{access.toString(), publicKey, publicKeys});
+              "================> {0} lookup with +ALL+ returned: {1} acl guids={2}",
+              new Object[]{access.toString(), publicKey, allAcl.getGuids()});
     }
-    // See if public keys contains GNSProtocol.EVERYONE.toString() which means we need to go old school and lookup the guid 
+    // See if the acl contains GNSProtocol.EVERYONE.toString() which means we need to go old school and lookup the guid 
     // explicitly because it's not going to have an entry in the ACL
-    if (publicKey == null && publicKeys.contains(GNSProtocol.EVERYONE.toString())) {
+    if (publicKey == null && everyone) {
       GuidInfo accessorGuidInfo;
       if ((accessorGuidInfo = NSAccountAccess.lookupGuidInfoAnywhere(accessorGuid, gnsApp)) != null) {
         ClientSupportConfig.getLogger().log(Level.FINE,
@@ -300,8 +301,8 @@ public class NSAuthentication {
     }
     if (publicKey == null) {
       ClientSupportConfig.getLogger().log(Level.FINE,
-              "================> Public key not found: accessor={0} guid={1} field={2} public keys={3}",
-              new Object[]{accessorGuid, guid, field, publicKeys});
+              "================> Public key not found: accessor={0} guid={1} field={2} acl guids={3}",
+              new Object[]{accessorGuid, guid, field, acl.getGuids()});
     }
     return publicKey;
   }
@@ -367,8 +367,9 @@ public class NSFieldAccess {
     }
 
     ValuesMap newResult = originalValues;
-    // Only do this for user fields.
-    if (field == null || !InternalField.isInternalField(field)) {
+    // Only do this for user fields of guids that have code.
+    if ((field == null || !InternalField.isInternalField(field))
+            && gnsApp.getDB().mayHaveActiveCode(guid, ActiveCode.ON_READ)) {
       int hopLimit = 1;
       // Grab the code because it is of a different type
       NameRecord codeRecord = null;
@@ -35,7 +35,6 @@ import edu.umass.cs.gnsserver.utils.ValuesMap;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.Set;
 import java.util.logging.Level;
@@ -94,13 +93,8 @@ public class NSGroupAccess {
 
     if (response.equals(GNSProtocol.OK_RESPONSE.toString())) {
       //if (!groupResponse.isAnError()) {
-      // This is probably a bad idea to update every member
-      for (String member : members) {
-        handler.getRemoteQuery().fieldReplaceOrCreateArray(member, GroupAccess.GROUPS,
-                new ResultValue(Arrays.asList(guid)));
-//        LNSUpdateHandler.sendUpdate(member, GroupAccess.GROUPS, new ResultValue(Arrays.asList(guid)),
-//                UpdateOperation.SINGLE_FIELD_APPEND_OR_CREATE, activeReplica, lnsAddress);
-      }
+      // The members that fail are logged by the updater, the group itself is already updated
+      GroupMemberUpdater.replaceGroups(guid, members, handler);
     }
   }
 
@@ -13,6 +13,7 @@ import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
 import edu.umass.cs.gnsserver.activecode.ActiveCodeHandler;
 import edu.umass.cs.gnsserver.database.ColumnFieldType;
+import edu.umass.cs.gnsserver.gnsapp.LNSCacheSubscriptions;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.InternalField;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
@@ -31,6 +32,7 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.logging.Level;
 
@@ -111,8 +113,11 @@ public class NSUpdateSupport {
     if (!operation.equals(UpdateOperation.CREATE_INDEX)) {
       // Handle usual case
       NameRecord nameRecord = getNameRecord(guid, field, operation, app.getDB());
-      updateNameRecord(header, nameRecord, guid, field, operation, updateValue, oldValue, argument, userJSON,
-              app.getDB(), app.getActiveCodeHandler());
+      ValuesMap newValue = updateNameRecord(header, nameRecord, guid, field, operation, updateValue, oldValue,
+              argument, userJSON, app.getDB(), app.getActiveCodeHandler());
+      // tell any LNSs caching this guid
+      LNSCacheSubscriptions.recordUpdated(guid, field != null ? Collections.singletonList(field)
+              : newValue != null ? newValue.getKeys() : null, app);
       return ResponseCode.NO_ERROR;
     } else // Handle special case of a create index
     {
@@ -144,7 +149,7 @@ public class NSUpdateSupport {
     }
   }
 
-  private static void updateNameRecord(InternalRequestHeader header, NameRecord nameRecord, String guid, String field,
+  private static ValuesMap updateNameRecord(InternalRequestHeader header, NameRecord nameRecord, String guid, String field,
           UpdateOperation operation, ResultValue updateValue, ResultValue oldValue, int argument,
           ValuesMap userJSON, BasicRecordMap db, ActiveCodeHandler activeCodeHandler) throws FailedDBOperationException, FieldNotFoundException {
     ValuesMap newValue = null;
@@ -168,11 +173,14 @@ public class NSUpdateSupport {
     }
     // Apply updateEntireValuesMap to record in the database
     nameRecord.updateNameRecord(field, updateValue, oldValue, argument, newValue, operation);
+    return newValue;
   }
 
   private static ValuesMap handleActiveCode(InternalRequestHeader header, String guid, String field, ValuesMap userJSON, BasicRecordMap db, ActiveCodeHandler activeCodeHandler) throws FailedDBOperationException, FieldNotFoundException, JSONException {
     // Only do active field handling for user fields.
-    if (field == null || !InternalField.isInternalField(field)) {
+    if ((field == null || !InternalField.isInternalField(field))
+            // most guids don't have code so skip reading the code field for those
+            && db.mayHaveActiveCode(guid, ActiveCode.ON_WRITE)) {
       NameRecord activeCodeNameRecord = null;
       try {
         activeCodeNameRecord = NameRecord.getNameRecordMultiUserFields(db, guid,
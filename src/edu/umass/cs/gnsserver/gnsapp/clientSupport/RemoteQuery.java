@@ -34,13 +34,25 @@ import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.Util;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 
 import java.util.logging.Logger;
@@ -51,6 +63,9 @@ import edu.umass.cs.gnscommon.GNSProtocol;
 
 /**
  * A synchronized version of ClientAsynchBase for sending requests to other servers.
+ * Each request also has an asynchronous version that returns a CompletableFuture
+ * instead of tying up the calling thread until the response arrives, the
+ * synchronous methods just wait for those futures.
  *
  * @author westy
  */
@@ -64,7 +79,11 @@ public class RemoteQuery extends ClientAsynchBase {
   private final ConcurrentMap<Long, Request> replicaResultMap = new ConcurrentHashMap<>(10, 0.75f, 3);
   // For synchronus recon messages
   private static final long RECON_TIMEOUT = Config.getGlobalInt(GNSConfig.GNSC.RECON_TIMEOUT);
-  private final ConcurrentMap<String, ClientReconfigurationPacket> reconResultMap = new ConcurrentHashMap<>(10, 0.75f, 3);
+  // Reads that are waiting for a response, keyed by command, guid, field and
+  // the number of writes done when they were sent
+  private final ConcurrentMap<String, CompletableFuture<String>> pendingReads = new ConcurrentHashMap<>(10, 0.75f, 3);
+  // Writes sent by this RemoteQuery that have completed, successfully or not
+  private final AtomicLong writesDone = new AtomicLong();
   private final String myID;
   private final InetSocketAddress myAddr;
 
@@ -175,37 +194,6 @@ public class RemoteQuery extends ClientAsynchBase {
     };
   }
 
-  /**
-   * A callback that notifys any waits and records the response from a reconfigurator.
-   */
-  private final RequestCallback reconCallback = new RequestCallback() {
-
-    @Override
-    public void handleResponse(Request response) {
-      reconResultMap.put(response.getServiceName(),
-              (ClientReconfigurationPacket) response);
-    }
-  };
-
-  private RequestCallback getReconfiguratoRequestCallback(Object monitor) {
-    return new RequestCallback() {
-      @Override
-      public void handleResponse(Request arg0) {
-        reconCallback.handleResponse(arg0);
-        synchronized (monitor) {
-          monitor.notifyAll();
-        }
-      }
-    };
-    // Use of lambda causes a problem in Android.
-//    return (Request arg0) -> {
-//      reconCallback.handleResponse(arg0);
-//      synchronized (monitor) {
-//        monitor.notifyAll();
-//      }
-//    };
-  }
-
   private ClientRequest waitForReplicaResponse(long id, Object monitor, RequestCallbackWithRequest callback)
           throws ClientException, ActiveReplicaException {
     return waitForReplicaResponse(id, monitor, callback, REPLICA_READ_TIMEOUT);
@@ -254,78 +242,271 @@ public class RemoteQuery extends ClientAsynchBase {
     }
   }
 
-  private ClientReconfigurationPacket waitForReconResponse(Request request, Object monitor) throws ClientException {
-    return waitForReconResponse(request, monitor, RECON_TIMEOUT);
+  private static final long WAIT_TIMESTEP = 1000;
+
+  // The timer only fails futures that have waited too long, it never sends anything
+  private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1,
+          new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, RemoteQuery.class.getSimpleName() + "Timer");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  static {
+    // most futures complete long before their timeout
+    TIMER.setRemoveOnCancelPolicy(true);
   }
 
-  private static final long WAIT_TIMESTEP = 1000;
+  /**
+   * Sends a request with the callback given and returns the request id.
+   */
+  private interface AsynchSend {
 
-  private ClientReconfigurationPacket waitForReconResponse(Request request, Object monitor, long timeout)
-          throws ClientException {
+    long send(RequestCallback callback) throws IOException, JSONException, ClientException;
+  }
+
+  /**
+   * A callback that completes a future with the response.
+   */
+  private static class FutureCallback implements RequestCallbackWithRequest {
+
+    private final CompletableFuture<Request> future = new CompletableFuture<>();
+    private volatile Request request = null;
+
+    @Override
+    public void handleResponse(Request response) {
+      future.complete(response);
+    }
+
+    @Override
+    public RequestCallbackWithRequest setRequest(Request request) {
+      this.request = request;
+      return this;
+    }
+
+    @Override
+    public Request getRequest() {
+      return this.request;
+    }
+
+    @Override
+    public Request getResponse() {
+      return future.getNow(null);
+    }
+  }
+
+  private static <T> CompletableFuture<T> failedFuture(Throwable throwable) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(throwable);
+    return future;
+  }
+
+  /**
+   * Fails the future with a TIMEOUT ClientException if it isn't done within the timeout.
+   */
+  private <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future, final long timeout,
+          final String description) {
+    final ScheduledFuture<?> timer = TIMER.schedule(new Runnable() {
+      @Override
+      public void run() {
+        ClientException e = new ClientException(ResponseCode.TIMEOUT,
+                RemoteQuery.this + ": Timed out after waiting for " + timeout
+                + "ms for response to " + description);
+        if (future.completeExceptionally(e)) {
+          LOGGER.log(Level.WARNING, "{0}", e.getMessage());
+        }
+      }
+    }, timeout, TimeUnit.MILLISECONDS);
+    future.whenComplete(new BiConsumer<T, Throwable>() {
+      @Override
+      public void accept(T result, Throwable throwable) {
+        timer.cancel(false);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Blocks until the future is done and returns its result, throwing
+   * the exception it failed with.
+   */
+  private static <T> T await(CompletableFuture<T> future) throws IOException, JSONException, ClientException {
     try {
-      synchronized (monitor) {
-        long monitorStartTime = System.currentTimeMillis();
-        while (!reconResultMap.containsKey(request.getServiceName())
-                && (timeout == 0 || System.currentTimeMillis() - monitorStartTime < timeout)) {
-          LOGGER.log(Level.FINE,
-                  "{0} waiting for next time step for request {1}",
-                  new Object[]{this, request.getSummary()});
-          monitor.wait(WAIT_TIMESTEP);
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ClientException("Wait for return packet was interrupted " + e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      while (cause instanceof CompletionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof ClientException) {
+        throw (ClientException) cause;
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof JSONException) {
+        throw (JSONException) cause;
+      } else {
+        throw new ClientException(cause);
+      }
+    }
+  }
+
+  /**
+   * Same as {@link #await} for the reconfigurator requests that only throw ClientExceptions.
+   */
+  private static <T> T awaitRecon(CompletableFuture<T> future, String name) throws ClientException {
+    try {
+      return await(future);
+    } catch (IOException | JSONException e) {
+      LOGGER.log(Level.SEVERE, "Problem sending request for {0} :{1}",
+              new Object[]{name, e});
+      throw new ClientException(ResponseCode.UNSPECIFIED_ERROR, e.getMessage());
+    }
+  }
+
+  /**
+   * Sends a command to an active replica. The future returns the return value
+   * of the response, null for a null response, or notFoundResponse if the name
+   * doesn't exist. Error responses fail the future with the same exceptions
+   * {@link CommandUtils#checkResponse} throws.
+   */
+  private CompletableFuture<String> sendCommand(AsynchSend send, long timeout,
+          final String notFoundResponse) {
+    final FutureCallback callback = new FutureCallback();
+    long requestId;
+    try {
+      requestId = send.send(callback);
+    } catch (IOException | JSONException | ClientException e) {
+      return failedFuture(e);
+    }
+    withTimeout(callback.future, timeout, callback.getRequest() != null
+            ? callback.getRequest().getSummary().toString() : Long.toString(requestId));
+    return callback.future.thenApply(new Function<Request, String>() {
+      @Override
+      public String apply(Request response) {
+        if (response instanceof ActiveReplicaError) {
+          return notFoundResponse;
+        } else if (!(response instanceof ResponsePacket)) {
+          throw new CompletionException(new ClientException("Bad response type: " + response.getClass()));
         }
-        if (timeout != 0 && System.currentTimeMillis() - monitorStartTime >= timeout) {
-          ClientException e = new ClientException(ResponseCode.TIMEOUT,
-                  this
-                  + ": Timed out on reconfigurator response after waiting for "
-                  + timeout + "ms for response packet for "
-                  + request.getSummary());
-          LOGGER.log(Level.WARNING, "\n\n\n\n{0}", e.getMessage());
-          e.printStackTrace();
-          throw e;
+        LOGGER.log(Level.FINE,
+                "{0} received {1}", new Object[]{RemoteQuery.this, response.getSummary()});
+        try {
+          ResponsePacket packet = CommandUtils.checkResponse((ResponsePacket) response,
+                  (CommandPacket) callback.getRequest());
+          return packet != null ? packet.getReturnValue() : null;
+        } catch (ClientException e) {
+          throw new CompletionException(e);
         }
       }
-    } catch (InterruptedException x) {
-      throw new ClientException("Wait for return packet was interrupted " + x);
+    });
+  }
+
+  /**
+   * Sends a write. The write is counted as done before the future returned completes
+   * so any read issued after that doesn't join a read sent before it.
+   */
+  private CompletableFuture<String> sendWrite(AsynchSend send, String notFoundResponse) {
+    return countWrite(sendCommand(send, REPLICA_UPDATE_TIMEOUT, notFoundResponse));
+  }
+
+  private <T> CompletableFuture<T> countWrite(CompletableFuture<T> write) {
+    return write.whenComplete(new BiConsumer<T, Throwable>() {
+      @Override
+      public void accept(T result, Throwable throwable) {
+        writesDone.incrementAndGet();
+      }
+    });
+  }
+
+  /**
+   * Returns the future of an identical read that is still waiting for its response
+   * or else sends the read. A read only joins one that was sent after the last write
+   * through this RemoteQuery completed, so a caller that waited for its own write
+   * always reads after it. Writes done some other way aren't seen here, so a caller
+   * that reads what it just wrote that way has to read with something else.
+   * The future returned is shared, so callers must not complete it themselves.
+   */
+  private CompletableFuture<String> sendRead(String readKey, AsynchSend send,
+          String notFoundResponse) {
+    final String key = readKey + " " + writesDone.get();
+    CompletableFuture<String> pending = pendingReads.get(key);
+    if (pending != null) {
+      return pending;
+    }
+    final CompletableFuture<String> read = new CompletableFuture<>();
+    pending = pendingReads.putIfAbsent(key, read);
+    if (pending != null) {
+      return pending;
     }
-    return reconResultMap.remove(request.getServiceName());
+    sendCommand(send, REPLICA_READ_TIMEOUT, notFoundResponse).whenComplete(new BiConsumer<String, Throwable>() {
+      @Override
+      public void accept(String value, Throwable throwable) {
+        pendingReads.remove(key, read);
+        if (throwable != null) {
+          read.completeExceptionally(throwable);
+        } else {
+          read.complete(value);
+        }
+      }
+    });
+    return read;
+  }
+
+  private static String badGuidResponse(String guid) {
+    return GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.BAD_GUID.toString() + " " + guid;
   }
 
   /**
    * Sends a ClientReconfigurationPacket to a reconfigurator.
-   * Returns true if the request was successful.
+   * The future returns NO_ERROR if the request was successful.
    *
    * @param request
-   * @return true if the request was successful
-   * @throws IOException
-   * @throws ClientException
+   * @param timeout
+   * @return a future response code
    */
-  private ResponseCode sendReconRequest(ClientReconfigurationPacket request) throws IOException, ClientException {
-    return sendReconRequest(request, RECON_TIMEOUT);
+  private CompletableFuture<ResponseCode> sendReconRequestAsync(ClientReconfigurationPacket request, long timeout) {
+    final FutureCallback callback = new FutureCallback();
+    try {
+      sendRequest(request, callback);
+    } catch (IOException e) {
+      return failedFuture(e);
+    }
+    withTimeout(callback.future, timeout, "reconfigurator request " + request.getSummary());
+    // creates and deletes are writes too
+    return countWrite(callback.future.thenApply(new Function<Request, ResponseCode>() {
+      @Override
+      public ResponseCode apply(Request packet) {
+        ClientReconfigurationPacket response = (ClientReconfigurationPacket) packet;
+        // FIXME: return better error codes.
+        if (response.isFailed()) {
+          // arun: return duplicate error if name already exists
+          return (response instanceof CreateServiceName
+                  && response.getResponseCode() == ClientReconfigurationPacket.ResponseCodes.DUPLICATE_ERROR
+                          ? ResponseCode.DUPLICATE_ID_EXCEPTION
+                          : // else generic error
+                          ResponseCode.UNSPECIFIED_ERROR).setMessage(response.getResponseMessage());
+        } else {
+          return ResponseCode.NO_ERROR;
+        }
+      }
+    }));
   }
 
   /**
-   * Sends a ClientReconfigurationPacket to a reconfigurator.
-   * Returns true if the request was successful.
+   * Creates a record at an appropriate reconfigurator.
    *
-   * @param request
-   * @return true if the request was successful
-   * @throws IOException
-   * @throws ClientException
+   * @param name
+   * @param value
+   * @return a future NSResponseCode
    */
-  private ResponseCode sendReconRequest(ClientReconfigurationPacket request, long timeout) throws IOException, ClientException {
-    Object monitor = new Object();
-    sendRequest(request, this.getReconfiguratoRequestCallback(monitor));
-    ClientReconfigurationPacket response = waitForReconResponse(request, monitor, timeout);
-    // FIXME: return better error codes.
-    if (response.isFailed()) {
-      // arun: return duplicate error if name already exists
-      return (response instanceof CreateServiceName
-              && response.getResponseCode() == ClientReconfigurationPacket.ResponseCodes.DUPLICATE_ERROR
-                      ? ResponseCode.DUPLICATE_ID_EXCEPTION
-                      : // else generic error
-                      ResponseCode.UNSPECIFIED_ERROR).setMessage(response.getResponseMessage());
-    } else {
-      return ResponseCode.NO_ERROR;
-    }
+  public CompletableFuture<ResponseCode> createRecordAsync(String name, JSONObject value) {
+    return sendReconRequestAsync(new CreateServiceName(name, value.toString()), RECON_TIMEOUT);
   }
 
   /**
@@ -337,14 +518,7 @@ public class RemoteQuery extends ClientAsynchBase {
    * @throws ClientException
    */
   public ResponseCode createRecord(String name, JSONObject value) throws ClientException {
-    try {
-      CreateServiceName packet = new CreateServiceName(name, value.toString());
-      return sendReconRequest(packet);
-    } catch (IOException e) {
-      LOGGER.log(Level.SEVERE, "Problem creating {0} :{1}",
-              new Object[]{name, e});
-      throw new ClientException(ResponseCode.UNSPECIFIED_ERROR, e.getMessage());
-    }
+    return awaitRecon(createRecordAsync(name, value), name);
   }
 
   // Ballpark number of request we can do per second on a slow machine
@@ -363,13 +537,18 @@ public class RemoteQuery extends ClientAsynchBase {
           ClientRequestHandlerInterface handler) {
     try {
       CreateServiceName[] creates = makeBatchedCreateNameRequest(names, values, handler);
+      // each batch goes to a different RC group so they can all be waiting at once
+      List<CompletableFuture<ResponseCode>> responses = new ArrayList<>();
       for (CreateServiceName create : creates) {
         LOGGER.log(Level.FINE,
                 "{0} sending create for NAME = ",
                 new Object[]{this, create.getServiceName()});
         // Make a timeout that somewhat reflects the amount of work we're going to do.
         long timeout = Math.max(RECON_TIMEOUT, (create.getNameStates().size() / REQUESTS_PER_SECOND) * 1000);
-        sendReconRequest(create, timeout);
+        responses.add(sendReconRequestAsync(create, timeout));
+      }
+      for (CompletableFuture<ResponseCode> response : responses) {
+        await(response);
       }
       return ResponseCode.NO_ERROR;
     } catch (JSONException | IOException | ClientException e) {
@@ -408,6 +587,16 @@ public class RemoteQuery extends ClientAsynchBase {
     return creates.toArray(new CreateServiceName[0]);
   }
 
+  /**
+   * Deletes a record at the appropriate reconfigurators.
+   *
+   * @param name
+   * @return a future ResponseCode
+   */
+  public CompletableFuture<ResponseCode> deleteRecordAsync(String name) {
+    return sendReconRequestAsync(new DeleteServiceName(name), RECON_TIMEOUT);
+  }
+
   /**
    * Deletes a record at the appropriate reconfigurators.
    *
@@ -416,14 +605,7 @@ public class RemoteQuery extends ClientAsynchBase {
    * @throws ClientException
    */
   public ResponseCode deleteRecord(String name) throws ClientException {
-    try {
-      DeleteServiceName packet = new DeleteServiceName(name);
-      return sendReconRequest(packet);
-    } catch (IOException e) {
-      LOGGER.log(Level.SEVERE, "Problem creating {0} :{1}",
-              new Object[]{name, e});
-      throw new ClientException(ResponseCode.UNSPECIFIED_ERROR, e.getMessage());
-    }
+    return awaitRecon(deleteRecordAsync(name), name);
   }
 
   /**
@@ -434,60 +616,31 @@ public class RemoteQuery extends ClientAsynchBase {
   public ResponseCode deleteRecordSuppressExceptions(String name)
           throws ClientException {
     try {
-      DeleteServiceName packet = new DeleteServiceName(name);
-      return sendReconRequest(packet);
-    } catch (IOException e) {
-      LOGGER.log(Level.SEVERE,
-              "Problem creating {0} :{1}", new Object[]{name, e});
-      return ResponseCode.UNSPECIFIED_ERROR.setMessage(e.getMessage());
+      return deleteRecord(name);
     } catch (ClientException ce) {
       return ce.getCode().setMessage(ce.getMessage());
     }
   }
 
   /**
-   * Handles the reponse from some query with a default timeout period.
-   *
-   * @param requestId
-   * @param monitor
-   * @param notFoundReponse
-   * @return the response from the query
-   * @throws ClientException
-   */
-  private String handleQueryResponse(long requestId, Object monitor, String notFoundReponse) throws ClientException {
-    return handleQueryResponse(requestId, monitor, null, REPLICA_READ_TIMEOUT, notFoundReponse);
-  }
-
-  private String handleQueryResponse(long requestId, Object monitor,
-          RequestCallbackWithRequest callback, String notFoundReponse) throws ClientException {
-    return handleQueryResponse(requestId, monitor, callback, REPLICA_READ_TIMEOUT, notFoundReponse);
-  }
-
-  /**
-   * Handles the response from some query with a specified timeout period.
+   * Lookup the field on another server.
+   * The future returns null if it doesn't exist.
+   * Identical reads that are waiting for their response share one request.
    *
-   * @param requestId
-   * @param monitor
-   * @param timeout
-   * @param notFoundReponse
-   * @return the response from the query
-   * @throws ClientException
+   * @param guid
+   * @param field
+   * @return the future value of the field as a string
    */
-  private String handleQueryResponse(long requestId, Object monitor, RequestCallbackWithRequest callback,
-          long timeout, String notFoundReponse) throws ClientException {
-    try {
-      ResponsePacket packet
-              = (ResponsePacket) waitForReplicaResponse(requestId, monitor, callback, timeout);
-      if (packet == null) {
-        throw new ClientException("Packet not found in table " + requestId);
-      } else {
-        LOGGER.log(Level.FINE,
-                "{0} received {1}", new Object[]{this, packet.getSummary()});
-        return CommandUtils.checkResponse(packet, ((CommandPacket) callback.getRequest())).getReturnValue();
+  public CompletableFuture<String> fieldReadAsync(final String guid, final String field) {
+    LOGGER.log(Level.FINE,
+            "{0} Field read of {1} : {2}",
+            new Object[]{this, guid, Util.truncate(field, 16, 16)});
+    return sendRead("read " + guid + " " + field, new AsynchSend() {
+      @Override
+      public long send(RequestCallback callback) throws IOException, JSONException, ClientException {
+        return fieldRead(guid, field, callback);
       }
-    } catch (ActiveReplicaException e) {
-      return notFoundReponse;
-    }
+    }, null);
   }
 
   /**
@@ -502,17 +655,31 @@ public class RemoteQuery extends ClientAsynchBase {
    * @throws ClientException
    */
   public String fieldRead(String guid, String field) throws IOException, JSONException, ClientException {
-    LOGGER.log(Level.FINE,
-            "{0} Field read of {1} : {2}",
-            new Object[]{this, guid, Util.truncate(field, 16, 16)});
-    Object monitor = new Object();
-    RequestCallbackWithRequest callback;
-    long requestId = fieldRead(guid, field, callback = this.getRequestCallback(monitor));
-    return handleQueryResponse(requestId, monitor, callback, null);
+    return await(fieldReadAsync(guid, field));
   }
 
   private static final String EMPTY_JSON_ARRAY_STRING = new JSONArray().toString();
 
+  /**
+   * Lookup the field that is an array on another server.
+   * Identical reads that are waiting for their response share one request.
+   *
+   * @param guid
+   * @param field
+   * @return the future value of the field as a JSON array string
+   */
+  public CompletableFuture<String> fieldReadArrayAsync(final String guid, final String field) {
+    LOGGER.log(Level.FINE,
+            "{0} Field read array of {1} : {2}",
+            new Object[]{this, guid, field});
+    return sendRead("readArray " + guid + " " + field, new AsynchSend() {
+      @Override
+      public long send(RequestCallback callback) throws IOException, JSONException, ClientException {
+        return fieldReadArray(guid, field, callback);
+      }
+    }, EMPTY_JSON_ARRAY_STRING);
+  }
+
   /**
    * Lookup the field that is an array on another server.
    *
@@ -524,14 +691,27 @@ public class RemoteQuery extends ClientAsynchBase {
    * @throws ClientException
    */
   public String fieldReadArray(String guid, String field) throws IOException, JSONException, ClientException {
+    return await(fieldReadArrayAsync(guid, field));
+  }
 
+  /**
+   * Updates a field at a remote replica.
+   *
+   * @param guid
+   * @param field
+   * @param value
+   * @return the future response to the query
+   */
+  public CompletableFuture<String> fieldUpdateAsync(final String guid, final String field, final Object value) {
     LOGGER.log(Level.FINE,
-            "{0} Field read array of {1} : {2}",
-            new Object[]{this, guid, field});
-    Object monitor = new Object();
-    RequestCallbackWithRequest callback;
-    long requestId = fieldReadArray(guid, field, callback = this.getRequestCallback(monitor));
-    return handleQueryResponse(requestId, monitor, callback, EMPTY_JSON_ARRAY_STRING);
+            "{0} Field update {1} / {2} : {3}",
+            new Object[]{this, guid, field, value});
+    return sendWrite(new AsynchSend() {
+      @Override
+      public long send(RequestCallback callback) throws IOException, JSONException, ClientException {
+        return fieldUpdate(guid, field, value, callback);
+      }
+    }, badGuidResponse(guid));
   }
 
   /**
@@ -547,15 +727,28 @@ public class RemoteQuery extends ClientAsynchBase {
    */
   public String fieldUpdate(String guid, String field, Object value)
           throws IOException, JSONException, ClientException {
+    return await(fieldUpdateAsync(guid, field, value));
+  }
 
+  /**
+   * Updates or creates a field that is an array at a remote replica.
+   *
+   * @param guid
+   * @param field
+   * @param value
+   * @return the future response to the query
+   */
+  public CompletableFuture<String> fieldReplaceOrCreateArrayAsync(final String guid, final String field,
+          final ResultValue value) {
     LOGGER.log(Level.FINE,
-            "{0} Field update {1} / {2} : {3}",
+            "{0} Field fieldReplaceOrCreateArray {1} / {2} : {3}",
             new Object[]{this, guid, field, value});
-    Object monitor = new Object();
-    RequestCallbackWithRequest callback;
-    long requestId = fieldUpdate(guid, field, value, callback = this.getRequestCallback(monitor));
-    return handleQueryResponse(requestId, monitor, callback, REPLICA_UPDATE_TIMEOUT,
-            GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.BAD_GUID.toString() + " " + guid);
+    return sendWrite(new AsynchSend() {
+      @Override
+      public long send(RequestCallback callback) throws IOException, JSONException, ClientException {
+        return fieldReplaceOrCreateArray(guid, field, value, callback);
+      }
+    }, badGuidResponse(guid));
   }
 
   /**
@@ -571,15 +764,28 @@ public class RemoteQuery extends ClientAsynchBase {
    */
   public String fieldReplaceOrCreateArray(String guid, String field, ResultValue value)
           throws IOException, JSONException, ClientException {
+    return await(fieldReplaceOrCreateArrayAsync(guid, field, value));
+  }
 
-    LOGGER.log(Level.FINE,
-            "{0} Field fieldReplaceOrCreateArray {1} / {2} : {3}",
-            new Object[]{this, guid, field, value});
-    Object monitor = new Object();
-    RequestCallbackWithRequest callback;
-    long requestId = fieldReplaceOrCreateArray(guid, field, value, callback = this.getRequestCallback(monitor));
-    return handleQueryResponse(requestId, monitor, callback, REPLICA_UPDATE_TIMEOUT,
-            GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.BAD_GUID.toString() + " " + guid);
+  /**
+   * Appends a value to a field that is an array at a remote replica.
+   *
+   * @param guid
+   * @param field
+   * @param value
+   * @return the future response to the query
+   */
+  public CompletableFuture<String> fieldAppendToArrayAsync(final String guid, final String field,
+          final ResultValue value) {
+    GNSConfig.getLogger().log(Level.FINE,
+            "{0} Field fieldAppendToArray {1} / {2} : {3}",
+            new Object[]{this, guid, field, Util.truncate(value, 64, 64)});
+    return sendWrite(new AsynchSend() {
+      @Override
+      public long send(RequestCallback callback) throws IOException, JSONException, ClientException {
+        return fieldAppendToArray(guid, field, value, callback);
+      }
+    }, badGuidResponse(guid));
   }
 
   /**
@@ -595,14 +801,28 @@ public class RemoteQuery extends ClientAsynchBase {
    */
   public String fieldAppendToArray(String guid, String field, ResultValue value)
           throws IOException, JSONException, ClientException {
-    GNSConfig.getLogger().log(Level.FINE,
-            "{0} Field fieldAppendToArray {1} / {2} : {3}",
-            new Object[]{this, guid, field, Util.truncate(value, 64, 64)});
-    Object monitor = new Object();
-    RequestCallbackWithRequest callback;
-    long requestId = fieldAppendToArray(guid, field, value, callback = this.getRequestCallback(monitor));
-    return handleQueryResponse(requestId, monitor, callback, REPLICA_UPDATE_TIMEOUT,
-            GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.BAD_GUID.toString() + " " + guid);
+    return await(fieldAppendToArrayAsync(guid, field, value));
+  }
+
+  /**
+   * Removes a value from a field that is an array at a remote replica.
+   *
+   * @param guid
+   * @param field
+   * @param value
+   * @return the future response to the query
+   */
+  public CompletableFuture<String> fieldRemoveAsync(final String guid, final String field, final Object value) {
+    assert value instanceof String || value instanceof Number;
+    LOGGER.log(Level.FINE,
+            "{0} Field remove {1} / {2} : {3}",
+            new Object[]{this, guid, field, value});
+    return sendWrite(new AsynchSend() {
+      @Override
+      public long send(RequestCallback callback) throws IOException, JSONException, ClientException {
+        return fieldRemove(guid, field, value, callback);
+      }
+    }, badGuidResponse(guid));
   }
 
   /**
@@ -618,15 +838,28 @@ public class RemoteQuery extends ClientAsynchBase {
    */
   public String fieldRemove(String guid, String field, Object value)
           throws IOException, JSONException, ClientException {
-    assert value instanceof String || value instanceof Number;
-    LOGGER.log(Level.FINE,
-            "{0} Field remove {1} / {2} : {3}",
+    return await(fieldRemoveAsync(guid, field, value));
+  }
+
+  /**
+   * Removes all the values given from a field that is an array at a remote replica.
+   *
+   * @param guid
+   * @param field
+   * @param value
+   * @return the future response to the query
+   */
+  public CompletableFuture<String> fieldRemoveMultipleAsync(final String guid, final String field,
+          final ResultValue value) {
+    GNSConfig.getLogger().log(Level.FINE,
+            "{0} Field fieldRemoveMultiple {1} / {2} = {3}",
             new Object[]{this, guid, field, value});
-    Object monitor = new Object();
-    RequestCallbackWithRequest callback;
-    long requestId = fieldRemove(guid, field, value, callback = this.getRequestCallback(monitor));
-    return handleQueryResponse(requestId, monitor, callback,
-            REPLICA_UPDATE_TIMEOUT, GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.BAD_GUID.toString() + " " + guid);
+    return sendWrite(new AsynchSend() {
+      @Override
+      public long send(RequestCallback callback) throws IOException, JSONException, ClientException {
+        return fieldRemoveMultiple(guid, field, value, callback);
+      }
+    }, badGuidResponse(guid));
   }
 
   /**
@@ -642,14 +875,7 @@ public class RemoteQuery extends ClientAsynchBase {
    */
   public String fieldRemoveMultiple(String guid, String field, ResultValue value)
           throws IOException, JSONException, ClientException {
-    GNSConfig.getLogger().log(Level.FINE,
-            "{0} Field fieldRemoveMultiple {1} / {2} = {3}",
-            new Object[]{this, guid, field, value});
-    Object monitor = new Object();
-    RequestCallbackWithRequest callback;
-    long requestId = fieldRemoveMultiple(guid, field, value, callback = this.getRequestCallback(monitor));
-    return handleQueryResponse(requestId, monitor, callback, REPLICA_UPDATE_TIMEOUT,
-            GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.BAD_GUID.toString() + " " + guid);
+    return await(fieldRemoveMultipleAsync(guid, field, value));
   }
 
   /**
@@ -26,6 +26,7 @@ import edu.umass.cs.gnsserver.gnsapp.recordmap.BasicRecordMap;
 import edu.umass.cs.reconfiguration.interfaces.ReconfigurableNodeConfig;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 
 import org.json.JSONObject;
 
@@ -77,6 +78,15 @@ public interface GNSApplicationInterface<NodeIDType> {
    */
   void sendToID(NodeIDType id, JSONObject msg) throws IOException;
 
+  /**
+   * Sends a JSON packet to an address that isn't a node, e.g., a LocalNameServer.
+   *
+   * @param address
+   * @param msg
+   * @throws IOException
+   */
+  void sendToAddress(InetSocketAddress address, JSONObject msg) throws IOException;
+
   /**
    * Returns the request handler.
    *
@@ -93,4 +93,15 @@ public BasicPacketWithClientAddress setResponse(ClientRequest response) {
     return clientAddress;
   }
 
+  /**
+   * Sets the address from which this packet originated. Used for packets
+   * that aren't parsed from JSON and so don't have the sender address
+   * stamped into them.
+   * 
+   * @param clientAddress
+   */
+  public void setClientAddress(InetSocketAddress clientAddress) {
+    this.clientAddress = clientAddress;
+  }
+
 }
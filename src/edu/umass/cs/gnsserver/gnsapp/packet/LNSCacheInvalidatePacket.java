@@ -0,0 +1,135 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.packet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Sent by an active replica to the LocalNameServers that subscribed to a guid
+ * (see {@link LNSCacheSubscribePacket}) after the guid was updated.
+ * A null list of fields means the whole record changed.
+ *
+ * @author westy
+ */
+public class LNSCacheInvalidatePacket extends BasicPacket {
+
+  private final static String GUID = "guid";
+  private final static String FIELDS = "fields";
+  private final static String TIME = "time";
+
+  private final String guid;
+  private final List<String> fields;
+  // when the update was applied, used to measure invalidation lag
+  private final long updateTime;
+
+  /**
+   * Constructs a new LNSCacheInvalidatePacket.
+   *
+   * @param guid
+   * @param fields the updated fields or null if the whole record changed
+   * @param updateTime
+   */
+  public LNSCacheInvalidatePacket(String guid, Collection<String> fields, long updateTime) {
+    this.type = Packet.PacketType.LNS_CACHE_INVALIDATE;
+    this.guid = guid;
+    this.fields = fields != null ? new ArrayList<>(fields) : null;
+    this.updateTime = updateTime;
+  }
+
+  /**
+   * Constructs a new LNSCacheInvalidatePacket from a JSONObject.
+   *
+   * @param json
+   * @throws JSONException
+   */
+  public LNSCacheInvalidatePacket(JSONObject json) throws JSONException {
+    if (Packet.getPacketType(json) != Packet.PacketType.LNS_CACHE_INVALIDATE) {
+      throw new JSONException("LNSCacheInvalidatePacket: wrong packet type " + Packet.getPacketType(json));
+    }
+    this.type = Packet.getPacketType(json);
+    this.guid = json.getString(GUID);
+    if (json.has(FIELDS)) {
+      JSONArray array = json.getJSONArray(FIELDS);
+      this.fields = new ArrayList<>(array.length());
+      for (int i = 0; i < array.length(); i++) {
+        this.fields.add(array.getString(i));
+      }
+    } else {
+      this.fields = null;
+    }
+    this.updateTime = json.getLong(TIME);
+  }
+
+  /**
+   * Converts a LNSCacheInvalidatePacket to a JSONObject.
+   *
+   * @return JSONObject
+   * @throws JSONException
+   */
+  @Override
+  public JSONObject toJSONObject() throws JSONException {
+    JSONObject json = new JSONObject();
+    addToJSONObject(json);
+    return json;
+  }
+
+  @Override
+  public void addToJSONObject(JSONObject json) throws JSONException {
+    Packet.putPacketType(json, getType());
+    json.put(GUID, guid);
+    if (fields != null) {
+      json.put(FIELDS, new JSONArray(fields));
+    }
+    json.put(TIME, updateTime);
+  }
+
+  /**
+   * Return the guid.
+   *
+   * @return the guid
+   */
+  public String getGuid() {
+    return guid;
+  }
+
+  /**
+   * Returns the updated fields or null if the whole record changed.
+   *
+   * @return the fields
+   */
+  public List<String> getFields() {
+    return fields;
+  }
+
+  /**
+   * Returns the time the update was applied at the active replica.
+   *
+   * @return the time in milleseconds
+   */
+  public long getUpdateTime() {
+    return updateTime;
+  }
+}
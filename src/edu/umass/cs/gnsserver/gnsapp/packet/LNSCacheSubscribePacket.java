@@ -0,0 +1,160 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.packet;
+
+import edu.umass.cs.gigapaxos.interfaces.ClientRequest;
+import edu.umass.cs.nio.MessageNIOTransport;
+
+import java.net.InetSocketAddress;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Sent by a LocalNameServer to the active replicas of a guid when it starts
+ * caching fields of the guid. The replicas send an {@link LNSCacheInvalidatePacket}
+ * to the address the subscription came from whenever the guid is updated until
+ * the subscription times out.
+ *
+ * @author westy
+ */
+public class LNSCacheSubscribePacket extends BasicPacketWithClientAddress implements ClientRequest {
+
+  private final static String ID = "id";
+  private final static String GUID = "guid";
+
+  private final long requestId;
+  private final String guid;
+  // stamped in by the transport, never taken from the packet's fields
+  private final InetSocketAddress senderAddress;
+
+  /**
+   * Constructs a new LNSCacheSubscribePacket.
+   *
+   * @param requestId
+   * @param guid
+   */
+  public LNSCacheSubscribePacket(long requestId, String guid) {
+    this.type = Packet.PacketType.LNS_CACHE_SUBSCRIBE;
+    this.requestId = requestId;
+    this.guid = guid;
+    this.senderAddress = null;
+  }
+
+  /**
+   * Constructs a new LNSCacheSubscribePacket from a JSONObject.
+   *
+   * @param json
+   * @throws JSONException
+   */
+  public LNSCacheSubscribePacket(JSONObject json) throws JSONException {
+    super(json);
+    if (Packet.getPacketType(json) != Packet.PacketType.LNS_CACHE_SUBSCRIBE) {
+      throw new JSONException("LNSCacheSubscribePacket: wrong packet type " + Packet.getPacketType(json));
+    }
+    this.type = Packet.getPacketType(json);
+    this.requestId = json.getLong(ID);
+    this.guid = json.getString(GUID);
+    this.senderAddress = MessageNIOTransport.getSenderAddress(json);
+  }
+
+  /**
+   * Converts a LNSCacheSubscribePacket to a JSONObject.
+   *
+   * @return JSONObject
+   * @throws JSONException
+   */
+  @Override
+  public JSONObject toJSONObject() throws JSONException {
+    JSONObject json = new JSONObject();
+    addToJSONObject(json);
+    return json;
+  }
+
+  @Override
+  public void addToJSONObject(JSONObject json) throws JSONException {
+    Packet.putPacketType(json, getType());
+    super.addToJSONObject(json);
+    json.put(ID, requestId);
+    json.put(GUID, guid);
+  }
+
+  /**
+   * Return the guid.
+   *
+   * @return the guid
+   */
+  public String getGuid() {
+    return guid;
+  }
+
+  /**
+   * Returns the address the packet was received from, which is where the
+   * invalidations go.
+   *
+   * @return the address or null if the packet wasn't received
+   */
+  public InetSocketAddress getSenderAddress() {
+    return senderAddress;
+  }
+
+  /**
+   *
+   * @return the service name
+   */
+  @Override
+  public String getServiceName() {
+    return guid;
+  }
+
+  /**
+   *
+   * @return the response
+   */
+  @Override
+  public ClientRequest getResponse() {
+    return this.response;
+  }
+
+  /**
+   *
+   * @return the request id
+   */
+  @Override
+  public long getRequestID() {
+    return requestId;
+  }
+
+  /**
+   *
+   * @return the summary object
+   */
+  @Override
+  public Object getSummary() {
+    return new Object() {
+      @Override
+      public String toString() {
+        return LNSCacheSubscribePacket.this.getType() + ":"
+                + LNSCacheSubscribePacket.this.requestId + ":"
+                + LNSCacheSubscribePacket.this.guid + "[" + LNSCacheSubscribePacket.this.senderAddress + "]";
+      }
+    };
+  }
+}
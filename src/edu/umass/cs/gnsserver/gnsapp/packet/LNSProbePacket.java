@@ -0,0 +1,165 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.packet;
+
+import edu.umass.cs.gigapaxos.interfaces.ClientRequest;
+import edu.umass.cs.nio.MessageNIOTransport;
+
+import java.net.InetSocketAddress;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Sent by a LocalNameServer to an active replica to measure the round trip
+ * time to it. The replica sends the same packet back to the address the probe
+ * came from as an LNS_PROBE_RESPONSE. The name is one that the replica has so that the probe
+ * gets to the app.
+ *
+ * @author westy
+ */
+public class LNSProbePacket extends BasicPacketWithClientAddress implements ClientRequest {
+
+  private final static String ID = "id";
+  private final static String NAME = "name";
+
+  private final long requestId;
+  private final String name;
+  // stamped in by the transport, never taken from the packet's fields
+  private final InetSocketAddress senderAddress;
+
+  /**
+   * Constructs a new LNSProbePacket.
+   *
+   * @param requestId
+   * @param name
+   */
+  public LNSProbePacket(long requestId, String name) {
+    this(Packet.PacketType.LNS_PROBE, requestId, name);
+  }
+
+  private LNSProbePacket(Packet.PacketType type, long requestId, String name) {
+    this.type = type;
+    this.requestId = requestId;
+    this.name = name;
+    this.senderAddress = null;
+  }
+
+  /**
+   * Constructs a new LNSProbePacket or response from a JSONObject.
+   *
+   * @param json
+   * @throws JSONException
+   */
+  public LNSProbePacket(JSONObject json) throws JSONException {
+    super(json);
+    if (Packet.getPacketType(json) != Packet.PacketType.LNS_PROBE
+            && Packet.getPacketType(json) != Packet.PacketType.LNS_PROBE_RESPONSE) {
+      throw new JSONException("LNSProbePacket: wrong packet type " + Packet.getPacketType(json));
+    }
+    this.type = Packet.getPacketType(json);
+    this.requestId = json.getLong(ID);
+    this.name = json.getString(NAME);
+    this.senderAddress = MessageNIOTransport.getSenderAddress(json);
+  }
+
+  /**
+   * Returns the response to this probe.
+   *
+   * @return the response
+   */
+  public LNSProbePacket makeResponse() {
+    return new LNSProbePacket(Packet.PacketType.LNS_PROBE_RESPONSE, requestId, name);
+  }
+
+  /**
+   * Converts a LNSProbePacket to a JSONObject.
+   *
+   * @return JSONObject
+   * @throws JSONException
+   */
+  @Override
+  public JSONObject toJSONObject() throws JSONException {
+    JSONObject json = new JSONObject();
+    addToJSONObject(json);
+    return json;
+  }
+
+  @Override
+  public void addToJSONObject(JSONObject json) throws JSONException {
+    Packet.putPacketType(json, getType());
+    super.addToJSONObject(json);
+    json.put(ID, requestId);
+    json.put(NAME, name);
+  }
+
+  /**
+   * Returns the address the packet was received from, which is where the
+   * response goes.
+   *
+   * @return the address or null if the packet wasn't received
+   */
+  public InetSocketAddress getSenderAddress() {
+    return senderAddress;
+  }
+
+  /**
+   *
+   * @return the service name
+   */
+  @Override
+  public String getServiceName() {
+    return name;
+  }
+
+  /**
+   *
+   * @return the response
+   */
+  @Override
+  public ClientRequest getResponse() {
+    return this.response;
+  }
+
+  /**
+   *
+   * @return the request id
+   */
+  @Override
+  public long getRequestID() {
+    return requestId;
+  }
+
+  /**
+   *
+   * @return the summary object
+   */
+  @Override
+  public Object getSummary() {
+    return new Object() {
+      @Override
+      public String toString() {
+        return LNSProbePacket.this.getType() + ":"
+                + LNSProbePacket.this.requestId + ":"
+                + LNSProbePacket.this.name + "[" + LNSProbePacket.this.senderAddress + "]";
+      }
+    };
+  }
+}
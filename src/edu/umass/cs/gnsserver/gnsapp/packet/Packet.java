@@ -113,6 +113,22 @@ public class Packet {
      * SELECT_RESPONSE
      */
     SELECT_RESPONSE(71, SelectResponsePacket.class.getCanonicalName()),
+    /**
+     * LNS_CACHE_SUBSCRIBE
+     */
+    LNS_CACHE_SUBSCRIBE(80, LNSCacheSubscribePacket.class.getCanonicalName()),
+    /**
+     * LNS_CACHE_INVALIDATE
+     */
+    LNS_CACHE_INVALIDATE(81, LNSCacheInvalidatePacket.class.getCanonicalName()),
+    /**
+     * LNS_PROBE
+     */
+    LNS_PROBE(82, LNSProbePacket.class.getCanonicalName()),
+    /**
+     * LNS_PROBE_RESPONSE
+     */
+    LNS_PROBE_RESPONSE(83, LNSProbePacket.class.getCanonicalName()),
     // paxos
 
     /**
@@ -290,6 +306,15 @@ public class Packet {
           return new edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket<>(json, unstringer);
         case SELECT_RESPONSE:
           return new edu.umass.cs.gnsserver.gnsapp.packet.SelectResponsePacket<>(json, unstringer);
+        // lns value cache
+        case LNS_CACHE_SUBSCRIBE:
+          return new edu.umass.cs.gnsserver.gnsapp.packet.LNSCacheSubscribePacket(json);
+        case LNS_CACHE_INVALIDATE:
+          return new edu.umass.cs.gnsserver.gnsapp.packet.LNSCacheInvalidatePacket(json);
+        // lns latency probes
+        case LNS_PROBE:
+        case LNS_PROBE_RESPONSE:
+          return new edu.umass.cs.gnsserver.gnsapp.packet.LNSProbePacket(json);
         // paxos
         case PAXOS_PACKET:
           return null;
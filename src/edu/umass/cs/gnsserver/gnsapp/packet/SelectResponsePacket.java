@@ -45,6 +45,7 @@ public class SelectResponsePacket<NodeIDType> extends BasicPacketWithReturnAddre
   private final static String NSQUERYID = "nsQueryId";
   private final static String RESPONSECODE = "code";
   private final static String ERRORSTRING = "error";
+  private final static String CHUNKS = "chunks";
   
 
   /**
@@ -68,6 +69,8 @@ public class SelectResponsePacket<NodeIDType> extends BasicPacketWithReturnAddre
   private JSONArray guids;
   private ResponseCode responseCode;
   private String errorMessage;
+  // the total number of responses for this query from this server, only set in the last one
+  private int chunks = 1;
 
   /**
    * Constructs a new SelectResponsePacket
@@ -123,6 +126,28 @@ public class SelectResponsePacket<NodeIDType> extends BasicPacketWithReturnAddre
             null, guids, ResponseCode.NOERROR, null);
   }
 
+  /**
+   * Used by a NameServer to send part of its guids back to the collecting NameServer.
+   * Only the last chunk carries the total number of chunks that were sent, every
+   * other chunk uses -1.
+   *
+   * @param id
+   * @param lnsAddress
+   * @param nsQueryId
+   * @param nameServerID
+   * @param guids
+   * @param chunks the total number of chunks or -1 if more are coming
+   * @return a SelectResponsePacket
+   */
+  public static SelectResponsePacket<String> makeSuccessPacketForGuidsChunk(long id,
+          InetSocketAddress lnsAddress,
+          int nsQueryId, String nameServerID, JSONArray guids, int chunks) {
+    SelectResponsePacket<String> packet = new SelectResponsePacket<>(id, lnsAddress, nsQueryId, nameServerID,
+            null, guids, ResponseCode.NOERROR, null);
+    packet.chunks = chunks;
+    return packet;
+  }
+
   /**
    * Used by a NameServer to a failure response to a NameServer or Local NameServer
    *
@@ -161,7 +186,8 @@ public class SelectResponsePacket<NodeIDType> extends BasicPacketWithReturnAddre
     this.records = json.optJSONArray(RECORDS);
     this.guids = json.optJSONArray(GUIDS);
     this.errorMessage = json.optString(ERRORSTRING, null);
-
+    // older servers send everything in one response
+    this.chunks = json.optInt(CHUNKS, 1);
   }
 
   /**
@@ -189,6 +215,9 @@ public class SelectResponsePacket<NodeIDType> extends BasicPacketWithReturnAddre
     if (errorMessage != null) {
       json.put(ERRORSTRING, errorMessage);
     }
+    if (chunks != 1) {
+      json.put(CHUNKS, chunks);
+    }
     return json;
   }
 
@@ -219,6 +248,16 @@ public class SelectResponsePacket<NodeIDType> extends BasicPacketWithReturnAddre
     return guids;
   }
 
+  /**
+   * Return the total number of chunks the sending server used for its result
+   * if this is its last chunk, or -1 if more chunks are coming.
+   *
+   * @return the number of chunks or -1
+   */
+  public int getChunks() {
+    return chunks;
+  }
+
   /**
    * Return the NS query requestId.
    *
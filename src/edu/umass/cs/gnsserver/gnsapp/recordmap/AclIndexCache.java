@@ -0,0 +1,119 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.recordmap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnsserver.database.ColumnField;
+import edu.umass.cs.gnsserver.database.ColumnFieldType;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.AclIndex;
+import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.utils.Config;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@link AclIndex}es of the ACLs of the records in a record map. Each record map
+ * has its own so that an index is only ever built from, and dropped by writes to,
+ * the database it indexes, even when several replicas run in one JVM.
+ *
+ * Indexes are built from the stored lists the first time an ACL is checked and kept
+ * until the record is written, which the record map reports with {@link #invalidate(String)}.
+ *
+ * @author westy
+ */
+class AclIndexCache {
+
+  // cached for ACL fields that don't exist
+  private static final AclIndex NOT_FOUND = new AclIndex(Collections.<String>emptySet());
+
+  // guid -> ACL metadata key -> index
+  private final Cache<String, ConcurrentMap<String, AclIndex>> indexes = CacheBuilder.newBuilder()
+          .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          .maximumSize(Config.getGlobalInt(GNSConfig.GNSC.ACL_INDEX_SIZE)).build();
+
+  // Bumped on every invalidation so that an index built from a read that raced
+  // with a write isn't kept.
+  private static final int VERSION_STRIPES = 4096;
+  private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+  /**
+   * Returns the index of the ACL in field of guid's record, building it if needed.
+   *
+   * @param guid
+   * @param field the ACL metadata key
+   * @param recordMap the record map that owns this cache
+   * @return the index
+   * @throws FailedDBOperationException
+   * @throws FieldNotFoundException if the ACL doesn't exist
+   * @throws RecordNotFoundException
+   */
+  AclIndex lookup(String guid, String field, BasicRecordMap recordMap)
+          throws FailedDBOperationException, FieldNotFoundException, RecordNotFoundException {
+    ConcurrentMap<String, AclIndex> guidIndexes = indexes.getIfPresent(guid);
+    AclIndex index = guidIndexes != null ? guidIndexes.get(field) : null;
+    if (index == null) {
+      int slot = (guid.hashCode() & Integer.MAX_VALUE) % VERSION_STRIPES;
+      long version = versions.get(slot);
+      try {
+        index = AclIndex.readFromRecord(guid, field, recordMap);
+      } catch (FieldNotFoundException e) {
+        index = NOT_FOUND;
+      }
+      try {
+        guidIndexes = indexes.get(guid, new Callable<ConcurrentMap<String, AclIndex>>() {
+          @Override
+          public ConcurrentMap<String, AclIndex> call() {
+            return new ConcurrentHashMap<>();
+          }
+        });
+        guidIndexes.put(field, index);
+        if (versions.get(slot) != version) {
+          // the record was written while we were reading it
+          guidIndexes.remove(field, index);
+        }
+      } catch (ExecutionException e) {
+        // can't happen, the loader doesn't throw
+      }
+    }
+    if (index == NOT_FOUND) {
+      throw new FieldNotFoundException(new ColumnField(field, ColumnFieldType.LIST_STRING));
+    }
+    return index;
+  }
+
+  /**
+   * Drops the ACL indexes of guid.
+   *
+   * @param guid
+   */
+  void invalidate(String guid) {
+    versions.incrementAndGet((guid.hashCode() & Integer.MAX_VALUE) % VERSION_STRIPES);
+    indexes.invalidate(guid);
+  }
+}
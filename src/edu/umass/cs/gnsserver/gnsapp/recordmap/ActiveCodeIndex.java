@@ -0,0 +1,207 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.recordmap;
+
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
+import edu.umass.cs.gnsserver.database.AbstractRecordCursor;
+import edu.umass.cs.gnsserver.database.ColumnField;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode;
+import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.gnsserver.utils.ValuesMap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The names of the records in a record map that have an active code field,
+ * one set for {@link ActiveCode#ON_READ} and one for {@link ActiveCode#ON_WRITE}.
+ * Very few records have code, so this lets reads and updates skip looking
+ * up the code field of every other record.
+ *
+ * The sets are kept up to date by the record map on every write, including
+ * the ones done by SetCode and ClearCode and by restore. The records that were
+ * already in the database are added by scanning it on a background thread
+ * that the app starts when active code is enabled, and until the scan is done
+ * every record may have code. A name may be left in a set after its code is gone if a write races
+ * with the scan, which only costs the lookup that would have been done anyway.
+ *
+ * @author westy
+ */
+class ActiveCodeIndex {
+
+  private final Set<String> onRead = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final Set<String> onWrite = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private volatile boolean built = false;
+  private final CountDownLatch scanned = new CountDownLatch(1);
+
+  /**
+   * Starts adding the records already in the database on a background thread.
+   *
+   * @param recordMap
+   */
+  void startBuild(final BasicRecordMap recordMap) {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          build(recordMap);
+        } catch (FailedDBOperationException e) {
+          // every record may have code for as long as the server runs
+          GNSConfig.getLogger().log(Level.SEVERE,
+                  "Unable to build active code index, every record will be checked for code: {0}", e);
+        } finally {
+          scanned.countDown();
+        }
+      }
+    }, ActiveCodeIndex.class.getSimpleName() + "Builder");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Waits until the scan started by {@link #startBuild} is over.
+   *
+   * @throws InterruptedException
+   */
+  void awaitBuild() throws InterruptedException {
+    scanned.await();
+  }
+
+  /**
+   * Returns false if the record is known not to have the code field.
+   *
+   * @param name
+   * @param codeField
+   * @return false if the record doesn't have the code field
+   */
+  boolean mayHaveCode(String name, String codeField) {
+    Set<String> names = getNames(codeField);
+    if (names == null || !built) {
+      return true;
+    }
+    return names.contains(name);
+  }
+
+  /**
+   * Called after the fields are written.
+   *
+   * @param name
+   * @param keys
+   */
+  void fieldsWritten(String name, Collection<ColumnField> keys) {
+    for (ColumnField key : keys) {
+      Set<String> names = getNames(key.getName());
+      if (names != null) {
+        names.add(name);
+      }
+    }
+  }
+
+  /**
+   * Called after the fields are removed.
+   *
+   * @param name
+   * @param keys
+   */
+  void fieldsRemoved(String name, Collection<ColumnField> keys) {
+    for (ColumnField key : keys) {
+      Set<String> names = getNames(key.getName());
+      if (names != null) {
+        names.remove(name);
+      }
+    }
+  }
+
+  /**
+   * Called after all the fields of a record are replaced or a record is added.
+   *
+   * @param name
+   * @param valuesMap the new fields
+   */
+  void recordWritten(String name, JSONObject valuesMap) {
+    setContains(onRead, name, valuesMap != null && valuesMap.has(ActiveCode.ON_READ));
+    setContains(onWrite, name, valuesMap != null && valuesMap.has(ActiveCode.ON_WRITE));
+  }
+
+  /**
+   * Called after a record is removed.
+   *
+   * @param name
+   */
+  void recordRemoved(String name) {
+    onRead.remove(name);
+    onWrite.remove(name);
+  }
+
+  private void build(BasicRecordMap recordMap) throws FailedDBOperationException {
+    long startTime = System.currentTimeMillis();
+    int count = 0;
+    AbstractRecordCursor cursor = NameRecord.getAllRowsIterator(recordMap);
+    while (cursor.hasNext()) {
+      JSONObject json = cursor.nextJSONObject();
+      try {
+        NameRecord nameRecord = new NameRecord(recordMap, json);
+        ValuesMap valuesMap = nameRecord.getValuesMap();
+        // only ever add here, a concurrent write may have already updated the sets
+        if (valuesMap.has(ActiveCode.ON_READ)) {
+          onRead.add(nameRecord.getName());
+        }
+        if (valuesMap.has(ActiveCode.ON_WRITE)) {
+          onWrite.add(nameRecord.getName());
+        }
+        count++;
+      } catch (JSONException | FieldNotFoundException e) {
+        GNSConfig.getLogger().log(Level.SEVERE,
+                "Problem reading record {0} while building active code index: {1}",
+                new Object[]{json, e});
+      }
+    }
+    built = true;
+    GNSConfig.getLogger().log(Level.INFO,
+            "Built active code index from {0} records in {1}ms: {2} with read code, {3} with write code",
+            new Object[]{count, System.currentTimeMillis() - startTime, onRead.size(), onWrite.size()});
+  }
+
+  private Set<String> getNames(String codeField) {
+    if (ActiveCode.ON_READ.equals(codeField)) {
+      return onRead;
+    } else if (ActiveCode.ON_WRITE.equals(codeField)) {
+      return onWrite;
+    } else {
+      return null;
+    }
+  }
+
+  private static void setContains(Set<String> names, String name, boolean contains) {
+    if (contains) {
+      names.add(name);
+    } else {
+      names.remove(name);
+    }
+  }
+}
@@ -23,15 +23,19 @@ import edu.umass.cs.gnsserver.database.AbstractRecordCursor;
 import edu.umass.cs.gnsserver.database.ColumnField;
 import edu.umass.cs.gnsserver.database.NoSQLRecords;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.AclIndex;
 import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnsserver.utils.ValuesMap;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 
 /**
@@ -45,6 +49,8 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
 
   private final String collectionName;
   private final NoSQLRecords noSqlRecords;
+  private final ActiveCodeIndex activeCodeIndex = new ActiveCodeIndex();
+  private final AclIndexCache aclIndexes = new AclIndexCache();
 
   /**
    * Creates an MongoRecordMap instance.
@@ -74,12 +80,21 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
     return noSqlRecords.lookupSomeFields(collectionName, name, nameField, valuesMapField, valuesMapKeys);
   }
 
+  @Override
+  public Map<String, HashMap<ColumnField, Object>> lookupUserFieldsMultiple(Collection<String> names,
+          ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys)
+          throws FailedDBOperationException {
+    return noSqlRecords.lookupSomeFieldsMultiple(collectionName, names, nameField, valuesMapField, valuesMapKeys);
+  }
+
   @Override
   public void addRecord(JSONObject json) throws FailedDBOperationException, RecordExistsException {
     NoSQLRecords records = noSqlRecords;
     try {
       String name = json.getString(NameRecord.NAME.getName());
       records.insert(collectionName, name, json);
+      aclIndexes.invalidate(name);
+      activeCodeIndex.recordWritten(name, json.optJSONObject(NameRecord.VALUES_MAP.getName()));
       GNSConfig.getLogger().log(Level.FINER, "{0}:: Added {1} JSON: {2}",
               new Object[]{records.toString(), name, json});
     } catch (JSONException e) {
@@ -91,6 +106,8 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
   @Override
   public void removeRecord(String name) throws FailedDBOperationException {
     noSqlRecords.removeEntireRecord(collectionName, name);
+    aclIndexes.invalidate(name);
+    activeCodeIndex.recordRemoved(name);
   }
 
   @Override
@@ -98,10 +115,43 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
     return noSqlRecords.contains(collectionName, name);
   }
 
+  @Override
+  public boolean mayHaveActiveCode(String name, String codeField) throws FailedDBOperationException {
+    return activeCodeIndex.mayHaveCode(name, codeField);
+  }
+
+  @Override
+  public AclIndex lookupAclIndex(String name, String aclField)
+          throws FailedDBOperationException, FieldNotFoundException, RecordNotFoundException {
+    return aclIndexes.lookup(name, aclField, this);
+  }
+
+  /**
+   * Starts adding the records that are already in the database to the active
+   * code index on a background thread. Until this is called and the scan is
+   * done every record may have active code, so only servers that run active
+   * code need to call it.
+   */
+  public void startActiveCodeIndex() {
+    activeCodeIndex.startBuild(this);
+  }
+
+  /**
+   * Waits until the records that were already in the database are in the
+   * active code index. The scan must have been started with {@link #startActiveCodeIndex()}.
+   *
+   * @throws InterruptedException
+   */
+  void awaitActiveCodeIndex() throws InterruptedException {
+    activeCodeIndex.awaitBuild();
+  }
+
   @Override
   public void updateEntireValuesMap(String name, ValuesMap valuesMap)
           throws FailedDBOperationException {
     noSqlRecords.updateEntireRecord(collectionName, name, valuesMap);
+    aclIndexes.invalidate(name);
+    activeCodeIndex.recordWritten(name, valuesMap);
   }
 
   @Override
@@ -109,6 +159,8 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
           throws FailedDBOperationException {
     noSqlRecords.updateIndividualFields(collectionName, name,
             NameRecord.VALUES_MAP, valuesMapKeys, valuesMapValues);
+    invalidateAclIndexIfNeeded(name, valuesMapKeys);
+    activeCodeIndex.fieldsWritten(name, valuesMapKeys);
 //    noSqlRecords.updateFields(collectionName, name, NameRecord.NAME, null, null, 
 //            NameRecord.VALUES_MAP, valuesMapKeys, valuesMapValues);
   }
@@ -117,6 +169,19 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
   public void removeMapKeys(String name, ColumnField mapField, ArrayList<ColumnField> mapKeys)
           throws FailedDBOperationException {
     noSqlRecords.removeMapKeys(collectionName, name, mapField, mapKeys);
+    invalidateAclIndexIfNeeded(name, mapKeys);
+    if (NameRecord.VALUES_MAP.getName().equals(mapField.getName())) {
+      activeCodeIndex.fieldsRemoved(name, mapKeys);
+    }
+  }
+
+  private void invalidateAclIndexIfNeeded(String name, ArrayList<ColumnField> keys) {
+    for (ColumnField key : keys) {
+      if (AclIndex.isAclField(key.getName())) {
+        aclIndexes.invalidate(name);
+        return;
+      }
+    }
   }
 
   @Override
@@ -125,23 +190,27 @@ public class GNSRecordMap<NodeIDType> extends BasicRecordMap {
   }
 
   @Override
-  public AbstractRecordCursor selectRecords(ColumnField valuesMapField, String key, Object value) throws FailedDBOperationException {
-    return noSqlRecords.selectRecords(collectionName, valuesMapField, key, value);
+  public AbstractRecordCursor selectRecords(ColumnField valuesMapField, String key, Object value,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    return noSqlRecords.selectRecords(collectionName, valuesMapField, key, value, fields);
   }
 
   @Override
-  public AbstractRecordCursor selectRecordsWithin(ColumnField valuesMapField, String key, String value) throws FailedDBOperationException {
-    return noSqlRecords.selectRecordsWithin(collectionName, valuesMapField, key, value);
+  public AbstractRecordCursor selectRecordsWithin(ColumnField valuesMapField, String key, String value,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    return noSqlRecords.selectRecordsWithin(collectionName, valuesMapField, key, value, fields);
   }
 
   @Override
-  public AbstractRecordCursor selectRecordsNear(ColumnField valuesMapField, String key, String value, Double maxDistance) throws FailedDBOperationException {
-    return noSqlRecords.selectRecordsNear(collectionName, valuesMapField, key, value, maxDistance);
+  public AbstractRecordCursor selectRecordsNear(ColumnField valuesMapField, String key, String value, Double maxDistance,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    return noSqlRecords.selectRecordsNear(collectionName, valuesMapField, key, value, maxDistance, fields);
   }
 
   @Override
-  public AbstractRecordCursor selectRecordsQuery(ColumnField valuesMapField, String query) throws FailedDBOperationException {
-    return noSqlRecords.selectRecordsQuery(collectionName, valuesMapField, query);
+  public AbstractRecordCursor selectRecordsQuery(ColumnField valuesMapField, String query,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    return noSqlRecords.selectRecordsQuery(collectionName, valuesMapField, query, fields);
   }
 
   @Override
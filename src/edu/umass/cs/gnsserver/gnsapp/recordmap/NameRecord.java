@@ -36,8 +36,10 @@ import edu.umass.cs.utils.Util;
 import org.json.JSONException;
 import org.json.JSONObject;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.logging.Level;
 
 /**
@@ -381,6 +383,29 @@ public class NameRecord implements Comparable<NameRecord>, Summarizable {
             userFieldList(returnType, userFieldNames)));
   }
 
+  /**
+   * Load several name records from the backing database in one round trip
+   * and retrieve certain fields as well.
+   *
+   * @param recordMap
+   * @param names
+   * @param returnType - the format which the returned data should be in
+   * @param userFieldNames - strings which name the user fields to return
+   * @return a map from name to NameRecord which leaves out the names that don't exist
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public static Map<String, NameRecord> getNameRecordsMultiUserFields(BasicRecordMap recordMap,
+          Collection<String> names, ColumnFieldType returnType, String... userFieldNames)
+          throws FailedDBOperationException {
+    Map<String, NameRecord> result = new HashMap<>();
+    for (Map.Entry<String, HashMap<ColumnField, Object>> entry
+            : recordMap.lookupUserFieldsMultiple(names, NameRecord.NAME, NameRecord.VALUES_MAP,
+                    userFieldList(returnType, userFieldNames)).entrySet()) {
+      result.put(entry.getKey(), new NameRecord(recordMap, entry.getValue()));
+    }
+    return result;
+  }
+
   private static ArrayList<ColumnField> userFieldList(ColumnFieldType returnType, String... fieldNames) {
     ArrayList<ColumnField> result = new ArrayList<>();
     for (String fieldName : fieldNames) {
@@ -434,7 +459,23 @@ public class NameRecord implements Comparable<NameRecord>, Summarizable {
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
    */
   public static AbstractRecordCursor selectRecords(BasicRecordMap recordMap, String key, Object value) throws FailedDBOperationException {
-    return recordMap.selectRecords(NameRecord.VALUES_MAP, key, value);
+    return selectRecords(recordMap, key, value, null);
+  }
+
+  /**
+   * Same as {@link #selectRecords(BasicRecordMap, String, Object)} but only the given fields
+   * are returned for each record.
+   *
+   * @param recordMap
+   * @param key
+   * @param value
+   * @param fields the fields to return, or null for all of them
+   * @return an {@link AbstractRecordCursor}
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public static AbstractRecordCursor selectRecords(BasicRecordMap recordMap, String key, Object value,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    return recordMap.selectRecords(NameRecord.VALUES_MAP, key, value, fields);
   }
 
   /**
@@ -448,7 +489,23 @@ public class NameRecord implements Comparable<NameRecord>, Summarizable {
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
    */
   public static AbstractRecordCursor selectRecordsWithin(BasicRecordMap recordMap, String key, String value) throws FailedDBOperationException {
-    return recordMap.selectRecordsWithin(NameRecord.VALUES_MAP, key, value);
+    return selectRecordsWithin(recordMap, key, value, null);
+  }
+
+  /**
+   * Same as {@link #selectRecordsWithin(BasicRecordMap, String, String)} but only the given fields
+   * are returned for each record.
+   *
+   * @param recordMap
+   * @param key
+   * @param value - a string that looks like this: [[LONG_UL, LAT_UL],[LONG_BR, LAT_BR]]
+   * @param fields the fields to return, or null for all of them
+   * @return an {@link AbstractRecordCursor}
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public static AbstractRecordCursor selectRecordsWithin(BasicRecordMap recordMap, String key, String value,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    return recordMap.selectRecordsWithin(NameRecord.VALUES_MAP, key, value, fields);
   }
 
   /**
@@ -463,7 +520,24 @@ public class NameRecord implements Comparable<NameRecord>, Summarizable {
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
    */
   public static AbstractRecordCursor selectRecordsNear(BasicRecordMap recordMap, String key, String value, Double maxDistance) throws FailedDBOperationException {
-    return recordMap.selectRecordsNear(NameRecord.VALUES_MAP, key, value, maxDistance);
+    return selectRecordsNear(recordMap, key, value, maxDistance, null);
+  }
+
+  /**
+   * Same as {@link #selectRecordsNear(BasicRecordMap, String, String, Double)} but only the given fields
+   * are returned for each record.
+   *
+   * @param recordMap
+   * @param key
+   * @param value - a string that looks like this: [LONG, LAT]
+   * @param maxDistance - the distance in meters
+   * @param fields the fields to return, or null for all of them
+   * @return an {@link AbstractRecordCursor}
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public static AbstractRecordCursor selectRecordsNear(BasicRecordMap recordMap, String key, String value, Double maxDistance,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    return recordMap.selectRecordsNear(NameRecord.VALUES_MAP, key, value, maxDistance, fields);
   }
 
   /**
@@ -475,7 +549,22 @@ public class NameRecord implements Comparable<NameRecord>, Summarizable {
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
    */
   public static AbstractRecordCursor selectRecordsQuery(BasicRecordMap recordMap, String query) throws FailedDBOperationException {
-    return recordMap.selectRecordsQuery(NameRecord.VALUES_MAP, query);
+    return selectRecordsQuery(recordMap, query, null);
+  }
+
+  /**
+   * Same as {@link #selectRecordsQuery(BasicRecordMap, String)} but only the given fields
+   * are returned for each record.
+   *
+   * @param recordMap
+   * @param query
+   * @param fields the fields to return, or null for all of them
+   * @return an {@link AbstractRecordCursor}
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  public static AbstractRecordCursor selectRecordsQuery(BasicRecordMap recordMap, String query,
+          ArrayList<ColumnField> fields) throws FailedDBOperationException {
+    return recordMap.selectRecordsQuery(NameRecord.VALUES_MAP, query, fields);
   }
 
   /**
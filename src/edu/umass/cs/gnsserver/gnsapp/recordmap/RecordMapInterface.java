@@ -23,12 +23,16 @@ package edu.umass.cs.gnsserver.gnsapp.recordmap;
 import edu.umass.cs.gnsserver.database.AbstractRecordCursor;
 import edu.umass.cs.gnsserver.database.ColumnField;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.AclIndex;
 import edu.umass.cs.gnsserver.utils.ValuesMap;
 import org.json.JSONObject;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  *
@@ -77,6 +81,21 @@ public interface RecordMapInterface {
           ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys)
           throws RecordNotFoundException, FailedDBOperationException;
 
+  /**
+   * Does a {@link #lookupUserFields} for several records in one database round trip.
+   * Records that don't exist are left out of the result.
+   *
+   * @param names - the names of the records
+   * @param nameField - the field that contains the name of the record
+   * @param valuesMapField - the field that contains all the user fields
+   * @param valuesMapKeys - the user fields to return
+   * @return a map from the name of each record found to its {@link ColumnField} to objects map
+   * @throws FailedDBOperationException
+   */
+  public Map<String, HashMap<ColumnField, Object>> lookupUserFieldsMultiple(Collection<String> names,
+          ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys)
+          throws FailedDBOperationException;
+
   /**
    * Remove a name record from the database.
    *
@@ -94,6 +113,32 @@ public interface RecordMapInterface {
    */
   public boolean containsName(String name) throws FailedDBOperationException;
 
+  /**
+   * Returns false if the record is known not to have the active code field,
+   * so that it doesn't need to be looked up.
+   *
+   * @param name
+   * @param codeField {@link edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode#ON_READ}
+   * or {@link edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode#ON_WRITE}
+   * @return false if the record doesn't have the code field
+   * @throws FailedDBOperationException
+   */
+  public boolean mayHaveActiveCode(String name, String codeField) throws FailedDBOperationException;
+
+  /**
+   * Returns the index of an ACL of a record. Indexes are kept by the record map
+   * until the record is written.
+   *
+   * @param name
+   * @param aclField the ACL metadata key
+   * @return the index
+   * @throws FailedDBOperationException
+   * @throws FieldNotFoundException if the ACL doesn't exist
+   * @throws RecordNotFoundException
+   */
+  public AclIndex lookupAclIndex(String name, String aclField)
+          throws FailedDBOperationException, FieldNotFoundException, RecordNotFoundException;
+
 //   /**
 //   *
 //   * @param name  - the name of the record
@@ -153,11 +198,12 @@ public interface RecordMapInterface {
    * @param valuesMapField - the field in the row that contains the *user* fields
    * @param key
    * @param value
+   * @param fields the fields returned for each record, or null for all of them
    * @return an {@link AbstractRecordCursor}
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
    */
   public abstract AbstractRecordCursor selectRecords(ColumnField valuesMapField,
-          String key, Object value) throws FailedDBOperationException;
+          String key, Object value, ArrayList<ColumnField> fields) throws FailedDBOperationException;
 
   /**
    * If key is a GeoSpatial field return all fields that are within value which is a bounding box specified
@@ -166,11 +212,12 @@ public interface RecordMapInterface {
    * @param valuesMapField - the field in the row that contains the *user* fields
    * @param key
    * @param value - a string that looks like this [[LONG_UL, LAT_UL],[LONG_BR, LAT_BR]]
+   * @param fields the fields returned for each record, or null for all of them
    * @return an {@link AbstractRecordCursor}
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
    */
   public abstract AbstractRecordCursor selectRecordsWithin(ColumnField valuesMapField,
-          String key, String value) throws FailedDBOperationException;
+          String key, String value, ArrayList<ColumnField> fields) throws FailedDBOperationException;
 
   /**
    * If key is a GeoSpatial field return all fields that are near value which is a point specified
@@ -180,21 +227,23 @@ public interface RecordMapInterface {
    * @param key
    * @param value - a string that looks like this [LONG, LAT]
    * @param maxDistance - the distance in meters
+   * @param fields the fields returned for each record, or null for all of them
    * @return an {@link AbstractRecordCursor}
    * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
    */
   public abstract AbstractRecordCursor selectRecordsNear(ColumnField valuesMapField,
-          String key, String value, Double maxDistance) throws FailedDBOperationException;
+          String key, String value, Double maxDistance, ArrayList<ColumnField> fields) throws FailedDBOperationException;
 
   /**
    * Return all the fields that match the query.
    *
    * @param valuesMapField
    * @param query
+   * @param fields the fields returned for each record, or null for all of them
    * @return {@link AbstractRecordCursor}
    * @throws FailedDBOperationException
    */
   public abstract AbstractRecordCursor selectRecordsQuery(ColumnField valuesMapField,
-          String query) throws FailedDBOperationException;
+          String query, ArrayList<ColumnField> fields) throws FailedDBOperationException;
 
 }
@@ -40,7 +40,16 @@ import java.net.URI;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import edu.umass.cs.gnscommon.ResponseCode;
 import static edu.umass.cs.gnsserver.httpserver.Defs.QUERYPREFIX;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
@@ -65,10 +74,19 @@ import org.apache.commons.lang.time.DurationFormatUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gigapaxos.interfaces.Callback;
 import java.io.UnsupportedEncodingException;
 
 /**
+ * Serves GNS commands over HTTP.
  *
+ * With {@link GNSConfig.GNSC#HTTP_SERVER_ASYNC} set the request threads only parse
+ * requests. Locally handled commands run on a bounded pool of workers and
+ * other commands are sent out with the asynchronous GNS client, so no thread
+ * waits on them. At most {@link GNSConfig.GNSC#HTTP_SERVER_MAX_OUTSTANDING} commands
+ * are in progress at once and requests beyond that are answered with a 503
+ * right away. Responses carry a Content-Length so connections can be kept alive
+ * and an HTTP status that follows the {@link ResponseCode} of the command.
  *
  * @author westy
  */
@@ -90,6 +108,11 @@ public class GNSHttpServer {
    */
   protected final ClientRequestHandlerInterface requestHandler;
   private final Date serverStartDate = new Date();
+  private final boolean async = Config.getGlobalBoolean(GNSC.HTTP_SERVER_ASYNC);
+  // only used in async mode
+  private ExecutorService workers = null;
+  private ScheduledExecutorService timer = null;
+  private Semaphore outstanding = null;
 
   private final static Logger LOGGER = Logger.getLogger(GNSHttpServer.class.getName());
 
@@ -108,6 +131,15 @@ public class GNSHttpServer {
         LOGGER.log(Level.SEVERE, "Unable to start GNS client:" + e);
       }
     }
+    if (async) {
+      int maxOutstanding = Config.getGlobalInt(GNSC.HTTP_SERVER_MAX_OUTSTANDING);
+      int threads = Config.getGlobalInt(GNSC.HTTP_SERVER_WORKER_THREADS);
+      // the permits already bound the queue, this is so it can never grow without limit
+      this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<Runnable>(maxOutstanding), new ThreadPoolExecutor.AbortPolicy());
+      this.timer = Executors.newSingleThreadScheduledExecutor();
+      this.outstanding = new Semaphore(maxOutstanding);
+    }
     runServer(port);
   }
 
@@ -135,6 +167,36 @@ public class GNSHttpServer {
     if (httpServer != null) {
       httpServer.stop(0);
     }
+    shutdownExecutors();
+  }
+
+  /**
+   * Stops the threads used in async mode.
+   */
+  protected void shutdownExecutors() {
+    if (workers != null) {
+      workers.shutdown();
+    }
+    if (timer != null) {
+      timer.shutdown();
+    }
+  }
+
+  /**
+   * Adds our handlers and executor to a server that is about to be started.
+   *
+   * @param server
+   */
+  protected void configureServer(HttpServer server) {
+    server.createContext("/", new EchoHttpHandler());
+    if (async) {
+      server.createContext("/" + GNS_PATH, new AsyncHttpHandler());
+      // The request threads only parse requests so they don't need to be many
+      server.setExecutor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
+    } else {
+      server.createContext("/" + GNS_PATH, new DefaultHttpHandler());
+      server.setExecutor(Executors.newCachedThreadPool());
+    }
   }
 
   /**
@@ -148,9 +210,7 @@ public class GNSHttpServer {
       InetSocketAddress addr = new InetSocketAddress(port);
       httpServer = HttpServer.create(addr, 0);
 
-      httpServer.createContext("/", new EchoHttpHandler());
-      httpServer.createContext("/" + GNS_PATH, new DefaultHttpHandler());
-      httpServer.setExecutor(Executors.newCachedThreadPool());
+      configureServer(httpServer);
       httpServer.start();
       // Need to do this for the places where we expose the insecure http service to the user
       requestHandler.setHttpServerPort(port);
@@ -181,11 +241,6 @@ public class GNSHttpServer {
         if (requestMethod.equalsIgnoreCase("GET")) {
           Headers requestHeaders = exchange.getRequestHeaders();
           String host = requestHeaders.getFirst("Host");
-          Headers responseHeaders = exchange.getResponseHeaders();
-          responseHeaders.set("Content-Type", "text/plain");
-          exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
-
-          OutputStream responseBody = exchange.getResponseBody();
 
           URI uri = exchange.getRequestURI();
           LOGGER.log(Level.FINE,
@@ -204,22 +259,263 @@ public class GNSHttpServer {
                     + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString() + " Don't understand " + commandName + " " + query);
           }
           LOGGER.log(Level.FINER, "Response: " + response);
-          // FIXME: This totally ignores the error code.
-          responseBody.write(response.getReturnValue().getBytes());
-          responseBody.close();
+          sendResponse(exchange, response);
+        } else {
+          sendResponse(exchange, HttpURLConnection.HTTP_BAD_METHOD, GNSProtocol.BAD_RESPONSE.toString()
+                  + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString() + " Only GET is supported");
         }
       } catch (Exception e) {
         LOGGER.log(Level.SEVERE, "Error: " + e);
         e.printStackTrace();
-        try {
-          String response = GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.QUERY_PROCESSING_ERROR.toString() + " " + e;
-          OutputStream responseBody = exchange.getResponseBody();
-          responseBody.write(response.getBytes());
-          responseBody.close();
-        } catch (Exception f) {
-          // at this point screw it
+        sendResponse(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR, GNSProtocol.BAD_RESPONSE.toString()
+                + " " + GNSProtocol.QUERY_PROCESSING_ERROR.toString() + " " + e);
+      }
+    }
+  }
+
+  /**
+   * Completes an exchange exactly once, whichever of the command finishing or
+   * the timeout comes first. The permit is given back when the command is
+   * finished, which for a command running on a worker can be after the timeout.
+   */
+  private class PendingExchange {
+
+    private final HttpExchange exchange;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final AtomicBoolean released = new AtomicBoolean();
+    private ScheduledFuture<?> timeout;
+    // true while a worker may be running the command
+    private volatile boolean onWorker = false;
+
+    private PendingExchange(HttpExchange exchange) {
+      this.exchange = exchange;
+    }
+
+    private void complete(CommandResponse response) {
+      if (done.compareAndSet(false, true)) {
+        if (timeout != null) {
+          timeout.cancel(false);
+        }
+        LOGGER.log(Level.FINER, "Response: {0}", response);
+        sendResponse(exchange, response);
+      }
+    }
+
+    private void busy() {
+      if (done.compareAndSet(false, true)) {
+        if (timeout != null) {
+          timeout.cancel(false);
         }
+        sendBusy(exchange);
+      }
+    }
+
+    private void timedOut() {
+      complete(new CommandResponse(ResponseCode.TIMEOUT, GNSProtocol.BAD_RESPONSE.toString()
+              + " " + GNSProtocol.TIMEOUT.toString() + " Command did not complete in time"));
+      // a remote command holds nothing here, but a worker keeps its permit until it is done
+      if (!onWorker) {
+        release();
+      }
+    }
+
+    private void release() {
+      if (released.compareAndSet(false, true)) {
+        outstanding.release();
+      }
+    }
+
+    private void finish(CommandResponse response) {
+      complete(response);
+      release();
+    }
+  }
+
+  /**
+   * The handler used in async mode. Parses the request on the request thread
+   * and completes the exchange when the command is done.
+   */
+  protected class AsyncHttpHandler implements HttpHandler {
+
+    /**
+     *
+     * @param exchange
+     */
+    @Override
+    public void handle(HttpExchange exchange) {
+      if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+        sendResponse(exchange, HttpURLConnection.HTTP_BAD_METHOD, GNSProtocol.BAD_RESPONSE.toString()
+                + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString() + " Only GET is supported");
+        return;
+      }
+      if (!outstanding.tryAcquire()) {
+        sendBusy(exchange);
+        return;
+      }
+      final PendingExchange pending = new PendingExchange(exchange);
+      pending.timeout = timer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          pending.timedOut();
+        }
+      }, Config.getGlobalInt(GNSC.HTTP_SERVER_REQUEST_TIMEOUT), TimeUnit.MILLISECONDS);
+      try {
+        URI uri = exchange.getRequestURI();
+        LOGGER.log(Level.FINE,
+                "HTTP SERVER REQUEST FROM {0}: {1}", new Object[]{exchange.getRemoteAddress().getHostName(), uri.toString()});
+        String query = uri.getQuery() != null ? uri.getQuery() : "";
+        String commandName = uri.getPath().replaceFirst("/" + GNS_PATH + "/", "");
+        if (commandName.isEmpty()) {
+          pending.finish(new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED, GNSProtocol.BAD_RESPONSE.toString()
+                  + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString() + " Don't understand " + commandName + " " + query));
+          return;
+        }
+        LOGGER.log(Level.FINE, "Action: {0} Query:{1}", new Object[]{commandName, query});
+        processQueryAsync(commandName, query, pending);
+      } catch (RuntimeException e) {
+        LOGGER.log(Level.SEVERE, "Error: {0}", e);
+        pending.finish(new CommandResponse(ResponseCode.QUERY_PROCESSING_ERROR, GNSProtocol.BAD_RESPONSE.toString()
+                + " " + GNSProtocol.QUERY_PROCESSING_ERROR.toString() + " " + e));
+      }
+    }
+  }
+
+  /**
+   * Does what {@link #processQuery} does without waiting for the command.
+   */
+  private void processQueryAsync(final String commandName, final String queryString,
+          final PendingExchange pending) {
+    try {
+      final CommandType commandType = CommandType.getCommandForHttp(commandName);
+      if (commandType == null) {
+        pending.finish(notUnderstood(commandName, queryString));
+        return;
       }
+      final JSONObject jsonCommand = parseQuery(commandType, queryString);
+      if (client == null || commandType.isLocallyHandled()) {
+        pending.onWorker = true;
+        workers.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              pending.finish(executeLocally(commandName, commandType, jsonCommand, queryString));
+            } catch (JSONException | RuntimeException e) {
+              pending.finish(new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " "
+                      + GNSProtocol.UNSPECIFIED_ERROR.toString() + " " + e.toString()));
+            } finally {
+              pending.release();
+            }
+          }
+        });
+      } else {
+        LOGGER.log(Level.FINE, "Sending command out to a remote server: {0}", jsonCommand);
+        client.execute(createGNSCommandFromJSONObject(jsonCommand), new Callback<CommandPacket, CommandPacket>() {
+          @Override
+          public CommandPacket processResponse(CommandPacket response) {
+            pending.finish(remoteResponse(response, commandType, jsonCommand));
+            return response;
+          }
+        });
+      }
+    } catch (RejectedExecutionException e) {
+      pending.busy();
+      pending.release();
+    } catch (IOException | ClientException e) {
+      pending.finish(new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " "
+              + GNSProtocol.UNSPECIFIED_ERROR.toString() + " " + e.toString()));
+    } catch (JSONException e) {
+      pending.finish(new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " "
+              + GNSProtocol.UNSPECIFIED_ERROR.toString() + " " + e.toString()));
+    }
+  }
+
+  private static CommandResponse remoteResponse(CommandPacket response, CommandType commandType,
+          JSONObject jsonCommand) {
+    try {
+      ResponseCode code = response.getResultCode();
+      if (code != null && code.isExceptionOrError()) {
+        String message = response.getResultString();
+        return new CommandResponse(code, message != null && message.startsWith(GNSProtocol.BAD_RESPONSE.toString())
+                ? message : GNSProtocol.BAD_RESPONSE.toString() + " " + code.getProtocolCode() + " " + message);
+      }
+      return new CommandResponse(ResponseCode.NO_ERROR,
+              specialCaseSingleFieldRead(response.getResultString(), commandType, jsonCommand));
+    } catch (ClientException e) {
+      return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " "
+              + GNSProtocol.UNSPECIFIED_ERROR.toString() + " " + e.toString());
+    }
+  }
+
+  private static final String BUSY_RESPONSE = GNSProtocol.BAD_RESPONSE.toString() + " "
+          + GNSProtocol.UNSPECIFIED_ERROR.toString() + " Server busy, try again later";
+
+  private static void sendBusy(HttpExchange exchange) {
+    exchange.getResponseHeaders().set("Retry-After", "1");
+    sendResponse(exchange, HttpURLConnection.HTTP_UNAVAILABLE, BUSY_RESPONSE);
+  }
+
+  private static void sendResponse(HttpExchange exchange, CommandResponse response) {
+    sendResponse(exchange, getHttpStatus(response.getExceptionOrErrorCode()), response.getReturnValue());
+  }
+
+  /**
+   * Sends the whole body with a Content-Length and closes the exchange
+   * which leaves the connection open for the next request.
+   */
+  private static void sendResponse(HttpExchange exchange, int status, String body) {
+    try {
+      byte[] bytes = body != null ? body.getBytes() : new byte[0];
+      exchange.getResponseHeaders().set("Content-Type", "text/plain");
+      exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+      if (bytes.length > 0) {
+        OutputStream responseBody = exchange.getResponseBody();
+        responseBody.write(bytes);
+        responseBody.flush();
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "Problem sending HTTP response: {0}", e);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Maps the response code of a command to an HTTP status.
+   *
+   * @param code
+   * @return the HTTP status
+   */
+  static int getHttpStatus(ResponseCode code) {
+    if (code == null || !code.isExceptionOrError()) {
+      return HttpURLConnection.HTTP_OK;
+    }
+    switch (code) {
+      case SIGNATURE_ERROR:
+      case ACCESS_ERROR:
+      case VERIFICATION_ERROR:
+        return HttpURLConnection.HTTP_FORBIDDEN;
+      case BAD_GUID_ERROR:
+      case BAD_ACCESSOR_ERROR:
+      case BAD_ACCOUNT_ERROR:
+      case BAD_ALIAS_EXCEPTION:
+      case FIELD_NOT_FOUND_ERROR:
+      case FIELD_NOT_FOUND_EXCEPTION:
+      case NONEXISTENT_NAME_EXCEPTION:
+        return HttpURLConnection.HTTP_NOT_FOUND;
+      case DUPLICATE_ID_EXCEPTION:
+      case DUPLICATE_FIELD_EXCEPTION:
+      case DUPLICATE_GUID_EXCEPTION:
+      case DUPLICATE_NAME_EXCEPTION:
+      case ALREADY_VERIFIED_EXCEPTION:
+        return HttpURLConnection.HTTP_CONFLICT;
+      case OPERATION_NOT_SUPPORTED:
+      case JSON_PARSE_ERROR:
+      case BAD_ACL_TYPE_ERROR:
+        return HttpURLConnection.HTTP_BAD_REQUEST;
+      case TIMEOUT:
+        return HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+      default:
+        return HttpURLConnection.HTTP_INTERNAL_ERROR;
     }
   }
 
@@ -235,52 +531,19 @@ public class GNSHttpServer {
       // Note that the commandName is not part of the queryString string here so
       // it doesn't end up in the jsonCommand. Also see below where we put the 
       // command integer into the jsonCommand.
-      JSONObject jsonCommand = Util.parseURIQueryStringIntoJSONObject(queryString);
-      // If the signature exists it is Base64 encoded so decode it now.
-      if (jsonCommand.has(GNSProtocol.SIGNATURE.toString())) {
-        jsonCommand.put(GNSProtocol.SIGNATURE.toString(),
-                new String(Base64.decode(jsonCommand.getString(GNSProtocol.SIGNATURE.toString())),
-                        GNSProtocol.CHARSET.toString()));
-      }
       // getCommandForHttp allows for "dump" as well as "Dump"
       CommandType commandType = CommandType.getCommandForHttp(commandName);
       if (commandType == null) {
-        return new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED,
-                GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
-                + " Sorry, don't understand " + commandName + QUERYPREFIX + queryString);
+        return notUnderstood(commandName, queryString);
       }
-      // The client currently just uses the command name (which is not part of the
-      // query string above) so we need to stuff 
-      // in the Command integer for the signature check and execution.
-      jsonCommand.put(GNSProtocol.COMMAND_INT.toString(), commandType.getInt());
-      // Optionally does some sanity checking on the message if that was enabled at the client.
-      // This makes necessary changes to the jsonCommand so don't remove this call
-      // unless you know what you're doing and also change the code in the HTTP client.
-      sanityCheckMessage(jsonCommand);
+      JSONObject jsonCommand = parseQuery(commandType, queryString);
       // Hair below is to handle some commands locally (creates, delets, selects, admin)
       // and the rest by invoking the GNS client and sending them out.
       // Client will be null if GNSC.DISABLE_MULTI_SERVER_HTTP (see above)
       // is true (or there was a problem).
       if (client == null || commandType.isLocallyHandled()) {
         // EXECUTE IT LOCALLY
-        AbstractCommand command;
-        try {
-          command = commandModule.lookupCommand(commandType);
-          // Do some work to get the signature and message into the command for
-          // signature checking that happens later on. 
-          // This only happens for local execution because remote handling (in the 
-          // other side of the if) already does this.
-          processSignature(jsonCommand);
-          if (command != null) {
-            return CommandHandler.executeCommand(command, jsonCommand, requestHandler);
-          }
-          LOGGER.log(Level.FINE, "lookupCommand returned null for {0}", commandName);
-        } catch (IllegalArgumentException e) {
-          LOGGER.log(Level.FINE, "lookupCommand failed for {0}", commandName);
-        }
-        return new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED,
-                GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
-                + " Sorry, don't understand " + commandName + QUERYPREFIX + queryString);
+        return executeLocally(commandName, commandType, jsonCommand, queryString);
       } else {
         // Send the command remotely using a client
         try {
@@ -291,7 +554,11 @@ public class GNSHttpServer {
                   // There is similar code to this other places.
                   specialCaseSingleFieldRead(commandResponsePacket.getResultString(),
                           commandType, jsonCommand));
-        } catch (IOException | ClientException e) {
+        } catch (ClientException e) {
+          // Keep the code so that it shows up in the HTTP status
+          return new CommandResponse(e.getCode() != null ? e.getCode() : ResponseCode.UNSPECIFIED_ERROR,
+                  GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.UNSPECIFIED_ERROR.toString() + " " + e.toString());
+        } catch (IOException e) {
           return new CommandResponse(ResponseCode.UNSPECIFIED_ERROR, GNSProtocol.BAD_RESPONSE.toString() + " "
                   + GNSProtocol.UNSPECIFIED_ERROR.toString() + " " + e.toString());
 //      } catch (ClientException e) {
@@ -306,6 +573,59 @@ public class GNSHttpServer {
     }
   }
 
+  /**
+   * Converts the URI query string of a command into the JSON Object format that
+   * is used by the CommandModule class.
+   */
+  private static JSONObject parseQuery(CommandType commandType, String queryString)
+          throws JSONException, UnsupportedEncodingException {
+    // Note that the commandName is not part of the queryString string here so
+    // it doesn't end up in the jsonCommand. Also see below where we put the 
+    // command integer into the jsonCommand.
+    JSONObject jsonCommand = Util.parseURIQueryStringIntoJSONObject(queryString);
+    // If the signature exists it is Base64 encoded so decode it now.
+    if (jsonCommand.has(GNSProtocol.SIGNATURE.toString())) {
+      jsonCommand.put(GNSProtocol.SIGNATURE.toString(),
+              new String(Base64.decode(jsonCommand.getString(GNSProtocol.SIGNATURE.toString())),
+                      GNSProtocol.CHARSET.toString()));
+    }
+    // The client currently just uses the command name (which is not part of the
+    // query string above) so we need to stuff 
+    // in the Command integer for the signature check and execution.
+    jsonCommand.put(GNSProtocol.COMMAND_INT.toString(), commandType.getInt());
+    // Optionally does some sanity checking on the message if that was enabled at the client.
+    // This makes necessary changes to the jsonCommand so don't remove this call
+    // unless you know what you're doing and also change the code in the HTTP client.
+    sanityCheckMessage(jsonCommand);
+    return jsonCommand;
+  }
+
+  private CommandResponse executeLocally(String commandName, CommandType commandType,
+          JSONObject jsonCommand, String queryString) throws JSONException {
+    AbstractCommand command;
+    try {
+      command = commandModule.lookupCommand(commandType);
+      // Do some work to get the signature and message into the command for
+      // signature checking that happens later on. 
+      // This only happens for local execution because remote handling
+      // already does this.
+      processSignature(jsonCommand);
+      if (command != null) {
+        return CommandHandler.executeCommand(command, jsonCommand, requestHandler);
+      }
+      LOGGER.log(Level.FINE, "lookupCommand returned null for {0}", commandName);
+    } catch (IllegalArgumentException e) {
+      LOGGER.log(Level.FINE, "lookupCommand failed for {0}", commandName);
+    }
+    return notUnderstood(commandName, queryString);
+  }
+
+  private static CommandResponse notUnderstood(String commandName, String queryString) {
+    return new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED,
+            GNSProtocol.BAD_RESPONSE.toString() + " " + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
+            + " Sorry, don't understand " + commandName + QUERYPREFIX + queryString);
+  }
+
   private static void sanityCheckMessage(JSONObject jsonCommand) throws JSONException,
           UnsupportedEncodingException {
     if (jsonCommand.has("originalMessageBase64")) {
@@ -42,6 +42,8 @@ import org.json.JSONObject;
 public class CommandRetransmitter implements SchedulableProtocolTask<InetSocketAddress, PacketType, String> {
 
   private final long RESTART_PERIOD = 10000;
+  // never retransmit faster than this no matter how fast the replica has been
+  private final long MIN_RESTART_PERIOD = 500;
 
   private final long requestId;
   private final RequestHandlerInterface handler;
@@ -49,6 +51,7 @@ public class CommandRetransmitter implements SchedulableProtocolTask<InetSocketA
   private final String key;
   private final Set<InetSocketAddress> actives;
   private final Set<InetSocketAddress> activesAlreadyContacted = new HashSet<>();
+  private final long period;
 
   /**
    * The logger.
@@ -70,7 +73,10 @@ public class CommandRetransmitter implements SchedulableProtocolTask<InetSocketA
     this.handler = handler;
     this.actives = actives;
     this.key = this.refreshKey();
-    LOG.log(Level.FINE, "CommandSender starting: {0}", key);
+    // wait about as long as the slowest responses from the closest replica take
+    this.period = handler.getReplicaLatencies().getTimeout(handler.getClosestReplica(actives),
+            MIN_RESTART_PERIOD, RESTART_PERIOD);
+    LOG.log(Level.FINE, "CommandSender starting: {0} period {1}", new Object[]{key, period});
   }
 
   /**
@@ -105,6 +111,12 @@ public class CommandRetransmitter implements SchedulableProtocolTask<InetSocketA
    */
   @Override
   public GenericMessagingTask<InetSocketAddress, ?>[] start() {
+    LNSRequestInfo requestInfo = handler.getRequestInfo(requestId);
+    // the replica it was sent to last didn't answer in time
+    if (requestInfo != null && requestInfo.getReplica() != null) {
+      handler.getReplicaLatencies().addTimeout(requestInfo.getReplica(),
+              System.currentTimeMillis() - requestInfo.getReplicaSendTime());
+    }
     InetSocketAddress address = handler.getClosestReplica(actives, activesAlreadyContacted);
     // Remove these so the stamper will put new ones in so the packet will find it's way back here.
     json.remove(MessageNIOTransport.SNDR_IP_FIELD);
@@ -112,6 +124,9 @@ public class CommandRetransmitter implements SchedulableProtocolTask<InetSocketA
     LOG.log(Level.FINE, 
             "{0} Sending to {1} {2}", new Object[]{this.refreshKey(), address, json});
     activesAlreadyContacted.add(address);
+    if (requestInfo != null) {
+      requestInfo.setReplica(address);
+    }
     GenericMessagingTask<InetSocketAddress, ?> mtasks[] = new GenericMessagingTask<>(address, json).toArray();
     return mtasks;
   }
@@ -162,6 +177,6 @@ public class CommandRetransmitter implements SchedulableProtocolTask<InetSocketA
    */
   @Override
   public long getPeriod() {
-    return RESTART_PERIOD;
+    return period;
   }
 }
@@ -22,9 +22,12 @@ package edu.umass.cs.gnsserver.localnameserver;
 import edu.umass.cs.gigapaxos.interfaces.NearestServerSelector;
 import edu.umass.cs.gigapaxos.interfaces.Request;
 import edu.umass.cs.gigapaxos.interfaces.RequestCallback;
+import edu.umass.cs.gnscommon.ResponseCode;
 import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnscommon.packets.CommandPacket;
 import edu.umass.cs.gnscommon.packets.ResponsePacket;
+import edu.umass.cs.gnsserver.gnsapp.packet.LNSCacheInvalidatePacket;
+import edu.umass.cs.gnsserver.gnsapp.packet.LNSProbePacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.Packet;
 import edu.umass.cs.nio.AbstractJSONPacketDemultiplexer;
 import edu.umass.cs.nio.MessageNIOTransport;
@@ -70,6 +73,8 @@ public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemult
     register(ReconfigurationPacket.PacketType.REQUEST_ACTIVE_REPLICAS);
     register(Packet.PacketType.COMMAND);
     register(Packet.PacketType.COMMAND_RETURN_VALUE);
+    register(Packet.PacketType.LNS_CACHE_INVALIDATE);
+    register(Packet.PacketType.LNS_PROBE_RESPONSE);
   }
 
   private static final boolean USE_NEW_LNS_COMMAND_HANDLER = true; //false;
@@ -108,6 +113,12 @@ public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemult
           case COMMAND_RETURN_VALUE:
             handleCommandReturnValuePacket(json);
             break;
+          case LNS_CACHE_INVALIDATE:
+            handleCacheInvalidate(json);
+            break;
+          case LNS_PROBE_RESPONSE:
+            handler.handleProbeResponse(new LNSProbePacket(json));
+            break;
           default:
             isPacketTypeFound = false;
             break;
@@ -143,13 +154,27 @@ public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemult
     }
   };
 
-  private NearestServerSelector redirector = new NearestServerSelector() {
+  /**
+   * Returns a selector that picks the closest replica for the request and
+   * remembers which one it picked so the response time can be attributed to it.
+   */
+  private NearestServerSelector getRedirector(final LNSRequestInfo requestInfo) {
+    return new NearestServerSelector() {
 
-    @Override
-    public InetSocketAddress getNearest(Set<InetSocketAddress> servers) {
-      return (handler).getClosestReplica(servers);
-    }
-  };
+      @Override
+      public InetSocketAddress getNearest(Set<InetSocketAddress> servers) {
+        // being sent again because the replica it went to last didn't answer in time
+        if (requestInfo.getReplica() != null) {
+          handler.getReplicaLatencies().addTimeout(requestInfo.getReplica(),
+                  System.currentTimeMillis() - requestInfo.getReplicaSendTime());
+        }
+        InetSocketAddress closest = handler.getClosestReplica(servers);
+        handler.getReplicaLatencies().noteReplicas(requestInfo.getServiceName(), servers);
+        requestInfo.setReplica(closest);
+        return closest;
+      }
+    };
+  }
 
   /**
    * Handles a command packet that has come in from a client.
@@ -163,8 +188,23 @@ public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemult
           IOException {
 
     CommandPacket packet = new CommandPacket(json);
+    LNSValueCache valueCache = handler.getValueCache();
+    LNSValueCache.Key cacheKey = valueCache != null ? LNSValueCache.getKey(packet) : null;
+    if (cacheKey != null) {
+      String value = valueCache.get(cacheKey);
+      if (value != null) {
+        GNSConfig.getLogger().log(Level.FINE,
+                "{0} answering {1} from the value cache", new Object[]{this, cacheKey});
+        handler.sendToClient(header.sndr, new ResponsePacket(packet.getServiceName(),
+                packet.getRequestID(), ResponseCode.NO_ERROR, value).toJSONObject());
+        return;
+      }
+    }
     LNSRequestInfo requestInfo = new LNSRequestInfo(packet.getRequestID(),
             packet, header.sndr);
+    if (cacheKey != null) {
+      requestInfo.setValueCacheKey(cacheKey, valueCache.getVersion(cacheKey.getGuid()));
+    }
     GNSConfig.getLogger().log(Level.INFO,
             "{0} inserting outgoing request {1} with header {2}",
             new Object[]{this, json,  header});
@@ -177,7 +217,7 @@ public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemult
 //            || requestInfo.getCommandName().equals(GNSCommandProtocol.SELECT)) {
       this.asyncLNSClient.sendRequestAnycast(packet, callback);
     } else {
-      this.asyncLNSClient.sendRequest(packet, callback, redirector);
+      this.asyncLNSClient.sendRequest(packet, callback, getRedirector(requestInfo));
     }
   }
   
@@ -281,16 +321,20 @@ public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemult
         GNSConfig.getLogger().log(Level.INFO, "{0} about to remove {1}",
                 new Object[]{this, id + ""});
         handler.removeRequestInfo(id);
-        // update cache - if the service name isn't missing (invalid)
-        // and if it is a READ command
-        // FIXME: THIS ISN'T GOING TO WORK WITHOUT MORE INFO ABOUT THE
-        // REQUEST
-        if (!CommandPacket.BOGUS_SERVICE_NAME.equals(serviceName)
-                && sentInfo.getCommandType().isRead()
-                //&& sentInfo.getCommandName().equals(GNSCommandProtocol.READ)
-                && returnPacket != null) {
-          handler.updateCacheEntry(serviceName,
-                  returnPacket.getReturnValue());
+        // a passive sample of the round trip to the replica it went to, unless
+        // it was sent again since the response could be for the earlier send
+        if (sentInfo.getReplica() != null && !sentInfo.wasResent()) {
+          handler.getReplicaLatencies().addSample(sentInfo.getReplica(),
+                  System.currentTimeMillis() - sentInfo.getReplicaSendTime());
+        }
+        // update the value cache if this was a read it can hold
+        if (sentInfo.getValueCacheKey() != null
+                && returnPacket != null
+                && returnPacket.getErrorCode() == ResponseCode.NO_ERROR
+                && handler.getValueCache() != null
+                && handler.canCacheValue(serviceName, sentInfo.getStartTime())) {
+          handler.getValueCache().put(sentInfo.getValueCacheKey(),
+                  returnPacket.getReturnValue(), sentInfo.getValueCacheVersion());
         }
         // send the response back
         GNSConfig.getLogger()
@@ -322,6 +366,13 @@ public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemult
     return this.getClass().getSimpleName();
   }
 
+  private void handleCacheInvalidate(JSONObject json) throws JSONException {
+    LNSCacheInvalidatePacket packet = new LNSCacheInvalidatePacket(json);
+    if (handler.getValueCache() != null) {
+      handler.getValueCache().invalidate(packet.getGuid(), packet.getFields(), packet.getUpdateTime());
+    }
+  }
+
   private void handleRequestActives(JSONObject json) {
     GNSConfig.getLogger().log(Level.FINE,
             ")))))))))))))))))))))))))))) REQUEST ACTIVES RECEIVED: {0}", json.toString());
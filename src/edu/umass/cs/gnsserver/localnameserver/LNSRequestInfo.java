@@ -59,6 +59,15 @@ public class LNSRequestInfo {
   
   private final InetSocketAddress sender;
 
+  // set if the response can go into the value cache
+  private LNSValueCache.Key valueCacheKey = null;
+  private long valueCacheVersion = -1;
+
+  // the replica the request was last sent to and when
+  private InetSocketAddress replica = null;
+  private long replicaSendTime = -1;
+  private int sends = 0;
+
   /**
    *
    * @param lnsReqId
@@ -180,6 +189,70 @@ public class LNSRequestInfo {
     this.success = success;
   }
 
+  /**
+   * Notes that the response to this request can be put in the value cache.
+   *
+   * @param key
+   * @param version the version of the guid when the request was sent
+   */
+  public synchronized void setValueCacheKey(LNSValueCache.Key key, long version) {
+    this.valueCacheKey = key;
+    this.valueCacheVersion = version;
+  }
+
+  /**
+   *
+   * @return the value cache key or null if the response can't be cached
+   */
+  public synchronized LNSValueCache.Key getValueCacheKey() {
+    return valueCacheKey;
+  }
+
+  /**
+   *
+   * @return the version of the guid when the request was sent
+   */
+  public synchronized long getValueCacheVersion() {
+    return valueCacheVersion;
+  }
+
+  /**
+   * Notes that the request is being sent to the replica.
+   *
+   * @param replica
+   */
+  public synchronized void setReplica(InetSocketAddress replica) {
+    this.replica = replica;
+    this.replicaSendTime = System.currentTimeMillis();
+    this.sends++;
+  }
+
+  /**
+   *
+   * @return the replica the request was last sent to or null if not known
+   */
+  public synchronized InetSocketAddress getReplica() {
+    return replica;
+  }
+
+  /**
+   *
+   * @return the time the request was last sent to a replica
+   */
+  public synchronized long getReplicaSendTime() {
+    return replicaSendTime;
+  }
+
+  /**
+   * Returns true if the request was sent more than once, in which case we
+   * can't tell which send a response is for (Karn's rule).
+   *
+   * @return true if the request was sent more than once
+   */
+  public synchronized boolean wasResent() {
+    return sends > 1;
+  }
+
   @Override
   public String toString() {
     return this.getCommandType().name() + ":" + this.getServiceName() + ":" + this.lnsReqID;
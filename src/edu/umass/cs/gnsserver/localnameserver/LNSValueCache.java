@@ -0,0 +1,417 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.localnameserver;
+
+import edu.umass.cs.gnscommon.CommandType;
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gnscommon.packets.PacketUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+import org.json.JSONObject;
+
+/**
+ * Caches the results of field reads at the LocalNameServer.
+ *
+ * Values are keyed by guid, field, reader and the type of read and the cache is
+ * bounded by the total size of the values. Active replicas tell the LNS when a
+ * guid it caches is updated (see {@link edu.umass.cs.gnsserver.gnsapp.LNSCacheSubscriptions})
+ * and every value also times out so a lost invalidation can't keep it around forever.
+ *
+ * A read that is sent to a replica notes the version of its guid with {@link #getVersion}.
+ * Invalidating a guid bumps its version, so a response to a read that was
+ * in flight during an invalidation is not cached.
+ *
+ * Only unsigned reads of a single field that don't ask for coordination are cached,
+ * since the LNS can't check a signature itself.
+ *
+ * @author westy
+ */
+public class LNSValueCache {
+
+  /**
+   * Identifies a cached read.
+   */
+  public static final class Key {
+
+    private final String guid;
+    private final String field;
+    private final String reader;
+    private final CommandType commandType;
+
+    /**
+     * @param guid
+     * @param field
+     * @param reader
+     * @param commandType
+     */
+    public Key(String guid, String field, String reader, CommandType commandType) {
+      this.guid = guid;
+      this.field = field;
+      this.reader = reader;
+      this.commandType = commandType;
+    }
+
+    /**
+     * @return the guid
+     */
+    public String getGuid() {
+      return guid;
+    }
+
+    /**
+     * @return the field
+     */
+    public String getField() {
+      return field;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return guid.equals(other.guid) && field.equals(other.field)
+              && reader.equals(other.reader) && commandType == other.commandType;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = guid.hashCode();
+      result = 31 * result + field.hashCode();
+      result = 31 * result + reader.hashCode();
+      result = 31 * result + commandType.hashCode();
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return guid + "/" + field + "/" + reader + "/" + commandType;
+    }
+  }
+
+  // rough per entry overhead of the key, the cache entry and the index
+  private static final int ENTRY_OVERHEAD = 200;
+  private static final int VERSION_STRIPES = 4096;
+  private static final String INTERNAL_PREFIX = GNSProtocol.INTERNAL_PREFIX.toString();
+  private static final String ENTIRE_RECORD = GNSProtocol.ENTIRE_RECORD.toString();
+
+  private final Cache<Key, String> cache;
+  // guid -> the keys cached for that guid so invalidations don't have to scan the cache.
+  // It can hold keys whose values are gone, that's harmless and they go away with the guid.
+  private final Cache<String, Set<Key>> keysByGuid;
+  // bumped every time a guid is invalidated, guids share slots
+  private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+  private final AtomicLong invalidatedValues = new AtomicLong();
+  private final AtomicLong invalidationLagTotal = new AtomicLong();
+  private final AtomicLong invalidationLagMax = new AtomicLong();
+
+  /**
+   * @param maximumBytes the maximum total size of the cached values
+   * @param ttl how long in milleseconds a value stays in the cache
+   */
+  public LNSValueCache(long maximumBytes, long ttl) {
+    this.cache = CacheBuilder.newBuilder()
+            .concurrencyLevel(16)
+            .maximumWeight(maximumBytes)
+            .weigher(new Weigher<Key, String>() {
+              @Override
+              public int weigh(Key key, String value) {
+                // chars are two bytes
+                return ENTRY_OVERHEAD + 2 * (value.length() + key.guid.length()
+                        + key.field.length() + key.reader.length());
+              }
+            })
+            .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+            .removalListener(new RemovalListener<Key, String>() {
+              @Override
+              public void onRemoval(RemovalNotification<Key, String> notification) {
+                if (notification.wasEvicted()) {
+                  evictions.incrementAndGet();
+                }
+              }
+            })
+            .build();
+    // values live at most ttl after they were put so a guid nobody puts or
+    // invalidates for ttl has nothing left in the cache
+    this.keysByGuid = CacheBuilder.newBuilder()
+            .concurrencyLevel(16)
+            .expireAfterAccess(ttl, TimeUnit.MILLISECONDS)
+            .build();
+  }
+
+  /**
+   * Returns the cache key for a command or null if the result of the
+   * command can't be cached.
+   *
+   * @param packet
+   * @return the key or null
+   */
+  public static Key getKey(CommandPacket packet) {
+    CommandType commandType = packet.getCommandType();
+    if (!commandType.isRead() || packet.needsCoordination()) {
+      return null;
+    }
+    JSONObject command = PacketUtils.getCommand(packet);
+    if (command == null || command.has(GNSProtocol.SIGNATURE.toString())) {
+      return null;
+    }
+    String guid = command.optString(GNSProtocol.GUID.toString(), null);
+    String field = command.optString(GNSProtocol.FIELD.toString(), null);
+    if (guid == null || field == null) {
+      return null;
+    }
+    return new Key(guid, field, command.optString(GNSProtocol.READER.toString(), ""), commandType);
+  }
+
+  private int versionSlot(String guid) {
+    return (guid.hashCode() & Integer.MAX_VALUE) % VERSION_STRIPES;
+  }
+
+  /**
+   * Returns the current version of the guid. Pass it to {@link #put} with the
+   * response to a read sent now.
+   *
+   * @param guid
+   * @return the version
+   */
+  public long getVersion(String guid) {
+    return versions.get(versionSlot(guid));
+  }
+
+  /**
+   * Returns the cached value or null.
+   *
+   * @param key
+   * @return the value or null
+   */
+  public String get(Key key) {
+    String value = cache.getIfPresent(key);
+    if (value != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    return value;
+  }
+
+  /**
+   * Caches the value unless the guid was invalidated since version was read.
+   *
+   * @param key
+   * @param value
+   * @param version the result of {@link #getVersion} when the read was sent
+   * @return true if the value was cached
+   */
+  public boolean put(Key key, String value, long version) {
+    int slot = versionSlot(key.guid);
+    if (versions.get(slot) != version) {
+      return false;
+    }
+    cache.put(key, value);
+    try {
+      keysByGuid.get(key.guid, new Callable<Set<Key>>() {
+        @Override
+        public Set<Key> call() {
+          return Collections.newSetFromMap(new ConcurrentHashMap<Key, Boolean>());
+        }
+      }).add(key);
+    } catch (ExecutionException e) {
+      // can't happen, the loader doesn't throw
+      cache.invalidate(key);
+      return false;
+    }
+    // An invalidation that came in before the key was in the index might have missed it.
+    // Invalidations bump the version before they look at the index so checking it here is enough.
+    if (versions.get(slot) != version) {
+      cache.invalidate(key);
+      return false;
+    }
+    return true;
+  }
+
+  // true if a change to updated changes what a read of field returns
+  private static boolean affects(String updated, String field) {
+    return updated.startsWith(INTERNAL_PREFIX) || field.equals(ENTIRE_RECORD)
+            || field.equals(updated) || field.startsWith(updated + ".")
+            || updated.startsWith(field + ".");
+  }
+
+  /**
+   * Removes the cached values of guid that an update of fields could have changed.
+   *
+   * @param guid
+   * @param fields the updated fields or null if the whole record changed
+   * @param updateTime when the update happened or 0 if unknown
+   */
+  public void invalidate(String guid, Collection<String> fields, long updateTime) {
+    // first so that responses to reads in flight aren't cached
+    versions.incrementAndGet(versionSlot(guid));
+    invalidations.incrementAndGet();
+    if (updateTime > 0) {
+      long lag = Math.max(0, System.currentTimeMillis() - updateTime);
+      invalidationLagTotal.addAndGet(lag);
+      long max;
+      while (lag > (max = invalidationLagMax.get())
+              && !invalidationLagMax.compareAndSet(max, lag)) {
+      }
+    }
+    Set<Key> keys = keysByGuid.getIfPresent(guid);
+    if (keys == null) {
+      return;
+    }
+    List<Key> toRemove = new ArrayList<>();
+    for (Key key : keys) {
+      if (fields == null) {
+        toRemove.add(key);
+      } else {
+        for (String field : fields) {
+          if (affects(field, key.field)) {
+            toRemove.add(key);
+            break;
+          }
+        }
+      }
+    }
+    // leave the keys in the index, a put that raced with us may have just added one of them
+    LocalNameServer.LOGGER.log(Level.FINE, "Invalidating {0} for update of {1}/{2}",
+            new Object[]{toRemove, guid, fields});
+    invalidatedValues.addAndGet(toRemove.size());
+    cache.invalidateAll(toRemove);
+  }
+
+  /**
+   * Returns true if there are cached values for guid.
+   *
+   * @param guid
+   * @return true if there are cached values for guid
+   */
+  public boolean containsGuid(String guid) {
+    return keysByGuid.getIfPresent(guid) != null;
+  }
+
+  /**
+   * Removes everything.
+   */
+  public void invalidateAll() {
+    for (int i = 0; i < VERSION_STRIPES; i++) {
+      versions.incrementAndGet(i);
+    }
+    cache.invalidateAll();
+    keysByGuid.invalidateAll();
+  }
+
+  /**
+   * @return the number of reads answered from the cache
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of reads not answered from the cache
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return the fraction of reads answered from the cache
+   */
+  public double getHitRate() {
+    long total = hits.get() + misses.get();
+    return total == 0 ? 0.0 : (double) hits.get() / total;
+  }
+
+  /**
+   * @return the number of values removed because of size or age
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * @return the number of invalidations received
+   */
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  /**
+   * @return the average time in milleseconds between an update and its invalidation
+   */
+  public double getAverageInvalidationLag() {
+    long count = invalidations.get();
+    return count == 0 ? 0.0 : (double) invalidationLagTotal.get() / count;
+  }
+
+  /**
+   * @return the longest time in milleseconds between an update and its invalidation
+   */
+  public long getMaxInvalidationLag() {
+    return invalidationLagMax.get();
+  }
+
+  /**
+   * @return the number of values in the cache
+   */
+  public long size() {
+    return cache.size();
+  }
+
+  /**
+   * Returns a one line summary of the counters.
+   *
+   * @return the stats
+   */
+  public String getStats() {
+    return String.format("size=%d hits=%d misses=%d hitRate=%.3f evictions=%d invalidations=%d "
+            + "invalidatedValues=%d invalidationLagAvg=%.1fms invalidationLagMax=%dms",
+            size(), getHits(), getMisses(), getHitRate(), getEvictions(), getInvalidations(),
+            invalidatedValues.get(), getAverageInvalidationLag(), getMaxInvalidationLag());
+  }
+}
@@ -25,8 +25,14 @@ import edu.umass.cs.gnsserver.localnameserver.nodeconfig.LNSConsistentReconfigur
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 
+import edu.umass.cs.gnsserver.gnsapp.packet.LNSCacheSubscribePacket;
+import edu.umass.cs.gnsserver.gnsapp.packet.LNSProbePacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.Packet;
+import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnsserver.utils.Shutdownable;
 import edu.umass.cs.gnsclient.client.GNSClientConfig;
 import edu.umass.cs.gnscommon.utils.NetworkUtils;
@@ -49,12 +55,19 @@ import edu.umass.cs.reconfiguration.reconfigurationpackets.ReconfigurationPacket
 import edu.umass.cs.reconfiguration.reconfigurationutils.RequestParseException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import edu.umass.cs.utils.Config;
@@ -94,6 +107,14 @@ public class LocalNameServer implements RequestHandlerInterface, Shutdownable {
           = new ConcurrentHashMap<>(10, 0.75f, 3);
 
   private final Cache<String, CacheEntry> cache;
+  private final LNSValueCache valueCache;
+  // guid -> when we last asked its active replicas to send us invalidations
+  private final Cache<String, Long> valueCacheSubscriptions;
+  private final Random random = new Random();
+  private final ReplicaLatencies latencies = new ReplicaLatencies();
+  // probe id -> the probe, probes that get no answer are dropped after a while
+  private final Cache<Long, Probe> outstandingProbes;
+  private ScheduledExecutorService prober = null;
   private JSONMessenger<InetSocketAddress> messenger;
   // FIXME: Eventually need separate servers for ssl and clear
   //private JSONMessenger<InetSocketAddress> sslServer;
@@ -143,6 +164,26 @@ public class LocalNameServer implements RequestHandlerInterface, Shutdownable {
     //LNSPacketDemultiplexer<String> sslDemultiplexer = new LNSPacketDemultiplexer<>(this, asyncClient);
 
     this.cache = CacheBuilder.newBuilder().concurrencyLevel(5).maximumSize(1000).build();
+    this.valueCache = Config.getGlobalBoolean(GNSConfig.GNSC.ENABLE_LNS_VALUE_CACHE)
+            ? new LNSValueCache(Config.getGlobalInt(GNSConfig.GNSC.LNS_VALUE_CACHE_SIZE),
+                    Config.getGlobalInt(GNSConfig.GNSC.LNS_VALUE_CACHE_TTL))
+            : null;
+    // same lifetime as the subscription at the active replicas
+    this.valueCacheSubscriptions = CacheBuilder.newBuilder().concurrencyLevel(5)
+            .expireAfterWrite(Config.getGlobalInt(GNSConfig.GNSC.LNS_CACHE_SUBSCRIPTION_TTL), TimeUnit.MILLISECONDS)
+            .build();
+    this.outstandingProbes = CacheBuilder.newBuilder().concurrencyLevel(5)
+            .expireAfterWrite(PROBE_TIMEOUT, TimeUnit.MILLISECONDS)
+            .removalListener(new RemovalListener<Long, Probe>() {
+              @Override
+              public void onRemoval(RemovalNotification<Long, Probe> notification) {
+                // a replica that doesn't answer probes mustn't keep looking close
+                if (notification.getCause() == RemovalCause.EXPIRED) {
+                  latencies.addTimeout(notification.getValue().replica, PROBE_TIMEOUT);
+                }
+              }
+            })
+            .build();
     try {
       JSONNIOTransport<InetSocketAddress> gnsNiot = new JSONNIOTransport<>(
               address, crNodeConfig, demultiplexer, sslMode);
@@ -154,6 +195,7 @@ public class LocalNameServer implements RequestHandlerInterface, Shutdownable {
       return;
     }
     LOGGER.log(Level.INFO, "Started LNS listener on {0}", address);
+    startProbing();
   }
 
   /**
@@ -161,6 +203,13 @@ public class LocalNameServer implements RequestHandlerInterface, Shutdownable {
    */
   @Override
   public void shutdown() {
+    if (valueCache != null) {
+      LOGGER.log(Level.INFO, "Value cache: {0}", valueCache.getStats());
+    }
+    if (prober != null) {
+      prober.shutdownNow();
+    }
+    LOGGER.log(Level.INFO, "Replica latencies: {0}", latencies);
     messenger.stop();
     demultiplexer.stop();
     protocolExecutor.stop();
@@ -375,22 +424,104 @@ edu.umass.cs.gnsserver.localnameserver.LocalNameServer
       return null;
     }
 
-    long lowestLatency = Long.MAX_VALUE;
-    InetSocketAddress serverAddress = null;
-    for (InetSocketAddress serverId : serverIds) {
-      if (excludeServers != null && excludeServers.contains(serverId)) {
-        continue;
+    // the measured latencies first
+    InetSocketAddress serverAddress = latencies.getClosest(serverIds, excludeServers);
+    if (serverAddress == null) {
+      // then any configured ones
+      long lowestLatency = Long.MAX_VALUE;
+      for (InetSocketAddress serverId : serverIds) {
+        if (excludeServers != null && excludeServers.contains(serverId)) {
+          continue;
+        }
+        long pingLatency = nodeConfig.getPingLatency(serverId);
+        if (pingLatency != LNSNodeConfig.INVALID_PING_LATENCY && pingLatency < lowestLatency) {
+          lowestLatency = pingLatency;
+          serverAddress = serverId;
+        }
+      }
+    }
+    if (serverAddress == null) {
+      // nothing known about any of them, a sample from this one will be
+      List<InetSocketAddress> candidates = new ArrayList<>();
+      for (InetSocketAddress serverId : serverIds) {
+        if (excludeServers == null || !excludeServers.contains(serverId)) {
+          candidates.add(serverId);
+        }
       }
-      long pingLatency = nodeConfig.getPingLatency(serverId);
-      if (pingLatency != LNSNodeConfig.INVALID_PING_LATENCY && pingLatency < lowestLatency) {
-        lowestLatency = pingLatency;
-        serverAddress = serverId;
+      if (!candidates.isEmpty()) {
+        serverAddress = candidates.get(random.nextInt(candidates.size()));
       }
     }
     LOGGER.log(Level.FINE, "Closest server is {0}", serverAddress);
     return serverAddress;
   }
 
+  @Override
+  public ReplicaLatencies getReplicaLatencies() {
+    return latencies;
+  }
+
+  // Probes that take longer than this count as taking this long
+  private static final long PROBE_TIMEOUT = 30000;
+
+  private static class Probe {
+
+    private final InetSocketAddress replica;
+    private final long sendTime = System.currentTimeMillis();
+
+    Probe(InetSocketAddress replica) {
+      this.replica = replica;
+    }
+  }
+
+  private void startProbing() {
+    long interval = Config.getGlobalInt(GNSConfig.GNSC.LNS_PROBE_INTERVAL);
+    if (interval <= 0) {
+      return;
+    }
+    // The prober only sends, the responses are handled by the demultiplexer
+    prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, LocalNameServer.class.getSimpleName() + "Prober");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    prober.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        sendProbes();
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Sends a probe to every replica we have sent requests to.
+   */
+  void sendProbes() {
+    for (Entry<InetSocketAddress, String> target : latencies.getProbeTargets().entrySet()) {
+      long id = random.nextLong();
+      outstandingProbes.put(id, new Probe(target.getKey()));
+      try {
+        messenger.sendToAddress(target.getKey(),
+                new LNSProbePacket(id, target.getValue()).toJSONObject());
+      } catch (JSONException | IOException e) {
+        outstandingProbes.invalidate(id);
+        LOGGER.log(Level.FINE, "Unable to probe {0}: {1}", new Object[]{target.getKey(), e});
+      }
+    }
+  }
+
+  @Override
+  public void handleProbeResponse(LNSProbePacket response) {
+    Probe probe = outstandingProbes.getIfPresent(response.getRequestID());
+    if (probe != null) {
+      outstandingProbes.invalidate(response.getRequestID());
+      latencies.addSample(probe.replica, System.currentTimeMillis() - probe.sendTime);
+    }
+  }
+
   /**
    * Updates the value in the cache.
    *
@@ -462,12 +593,51 @@ edu.umass.cs.gnsserver.localnameserver.LocalNameServer
     }
   }
 
+  @Override
+  public LNSValueCache getValueCache() {
+    return valueCache;
+  }
+
+  @Override
+  public boolean canCacheValue(String name, long requestTime) {
+    Long subscribed = valueCacheSubscriptions.getIfPresent(name);
+    long now = System.currentTimeMillis();
+    if (subscribed == null
+            || now - subscribed > Config.getGlobalInt(GNSConfig.GNSC.LNS_CACHE_SUBSCRIPTION_TTL) / 2) {
+      // subscribe again before the replicas forget about us
+      valueCacheSubscriptions.put(name, now);
+      subscribeToInvalidations(name);
+    }
+    // replicas only know about us once the subscription gets there, we assume
+    // that it got there before any read sent after it
+    return subscribed != null && requestTime > subscribed;
+  }
+
+  private void subscribeToInvalidations(String name) {
+    Set<InetSocketAddress> actives = getActivesIfValid(name);
+    if (actives == null) {
+      actives = getReplicatedActives(name);
+    }
+    try {
+      JSONObject json = new LNSCacheSubscribePacket(random.nextLong(), name).toJSONObject();
+      for (InetSocketAddress active : actives) {
+        messenger.sendToAddress(active, json);
+      }
+    } catch (JSONException | IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to subscribe to invalidations for {0}: {1}",
+              new Object[]{name, e});
+    }
+  }
+
   /**
    * Clears the cache.
    */
   @Override
   public void invalidateCache() {
     cache.invalidateAll();
+    if (valueCache != null) {
+      valueCache.invalidateAll();
+    }
   }
 
   /**
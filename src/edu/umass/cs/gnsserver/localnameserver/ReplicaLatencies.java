@@ -0,0 +1,212 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.localnameserver;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The round trip times the LocalNameServer has measured to each active replica,
+ * both from the requests it forwards and from probes. This works the same way
+ * as the TCP retransmission timer (RFC 6298). Each replica keeps an EWMA of its
+ * samples and an EWMA of how far samples are from that average. The tail
+ * estimate is the average plus four deviations, which gives the retransmission
+ * timeout.
+ *
+ * A request or probe that isn't answered in time counts as a sample of at least
+ * the tail estimate, so a replica that stops answering stops being the closest
+ * even though nothing more is measured to it.
+ *
+ * It also remembers a name that each replica was a candidate for, because
+ * probes have to be about a name the replica has.
+ *
+ * @author westy
+ */
+public class ReplicaLatencies {
+
+  /**
+   * Returned when nothing has been measured for a replica.
+   */
+  public static final long NO_ESTIMATE = -1L;
+
+  // the usual TCP gains
+  private static final double ALPHA = 1.0 / 8;
+  private static final double BETA = 1.0 / 4;
+  private static final int K = 4;
+
+  private final ConcurrentMap<InetSocketAddress, Estimate> estimates = new ConcurrentHashMap<>();
+  private final ConcurrentMap<InetSocketAddress, String> probeNames = new ConcurrentHashMap<>();
+
+  private static class Estimate {
+
+    private double average;
+    private double deviation;
+    private long samples = 0;
+
+    synchronized void add(long rtt) {
+      if (samples == 0) {
+        average = rtt;
+        deviation = rtt / 2.0;
+      } else {
+        deviation = (1 - BETA) * deviation + BETA * Math.abs(average - rtt);
+        average = (1 - ALPHA) * average + ALPHA * rtt;
+      }
+      samples++;
+    }
+
+    synchronized long getAverage() {
+      return Math.round(average);
+    }
+
+    synchronized long getTail() {
+      return Math.round(average + K * deviation);
+    }
+  }
+
+  /**
+   * Adds a round trip time measured to a replica.
+   *
+   * @param replica
+   * @param rtt in milleseconds
+   */
+  public void addSample(InetSocketAddress replica, long rtt) {
+    if (replica == null || rtt < 0) {
+      return;
+    }
+    Estimate estimate = estimates.get(replica);
+    if (estimate == null) {
+      Estimate previous = estimates.putIfAbsent(replica, estimate = new Estimate());
+      if (previous != null) {
+        estimate = previous;
+      }
+    }
+    estimate.add(rtt);
+  }
+
+  /**
+   * Notes that a request or probe sent to the replica wasn't answered in time.
+   *
+   * @param replica
+   * @param waited how long we waited in milleseconds
+   */
+  public void addTimeout(InetSocketAddress replica, long waited) {
+    addSample(replica, Math.max(waited, getTailLatency(replica)));
+  }
+
+  /**
+   * Returns the average round trip time to the replica.
+   *
+   * @param replica
+   * @return the average in milleseconds or NO_ESTIMATE
+   */
+  public long getLatency(InetSocketAddress replica) {
+    Estimate estimate = replica != null ? estimates.get(replica) : null;
+    return estimate != null ? estimate.getAverage() : NO_ESTIMATE;
+  }
+
+  /**
+   * Returns the round trip time to the replica that few requests should take longer than.
+   *
+   * @param replica
+   * @return the tail estimate in milleseconds or NO_ESTIMATE
+   */
+  public long getTailLatency(InetSocketAddress replica) {
+    Estimate estimate = replica != null ? estimates.get(replica) : null;
+    return estimate != null ? estimate.getTail() : NO_ESTIMATE;
+  }
+
+  /**
+   * Returns how long to wait for a response from the replica before trying
+   * another one.
+   *
+   * @param replica
+   * @param min
+   * @param max also the timeout when there is no estimate
+   * @return the timeout in milleseconds
+   */
+  public long getTimeout(InetSocketAddress replica, long min, long max) {
+    long tail = getTailLatency(replica);
+    return tail == NO_ESTIMATE ? max : Math.min(max, Math.max(min, tail));
+  }
+
+  /**
+   * Returns the replica with the lowest average round trip time.
+   *
+   * @param replicas
+   * @param exclude replicas not to choose, can be null
+   * @return the replica or null if none of them have been measured
+   */
+  public InetSocketAddress getClosest(Set<InetSocketAddress> replicas, Set<InetSocketAddress> exclude) {
+    InetSocketAddress closest = null;
+    long lowest = Long.MAX_VALUE;
+    for (InetSocketAddress replica : replicas) {
+      if (exclude != null && exclude.contains(replica)) {
+        continue;
+      }
+      long latency = getLatency(replica);
+      if (latency != NO_ESTIMATE && latency < lowest) {
+        lowest = latency;
+        closest = replica;
+      }
+    }
+    return closest;
+  }
+
+  /**
+   * Notes that the replicas have the name, so that it can be used to probe them.
+   *
+   * @param name
+   * @param replicas
+   */
+  public void noteReplicas(String name, Set<InetSocketAddress> replicas) {
+    if (name == null) {
+      return;
+    }
+    for (InetSocketAddress replica : replicas) {
+      probeNames.put(replica, name);
+    }
+  }
+
+  /**
+   * Returns the replicas to probe along with a name each of them has.
+   *
+   * @return a map of replica to name
+   */
+  public Map<InetSocketAddress, String> getProbeTargets() {
+    return new HashMap<>(probeNames);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    for (Map.Entry<InetSocketAddress, Estimate> entry : estimates.entrySet()) {
+      if (result.length() > 0) {
+        result.append(", ");
+      }
+      result.append(entry.getKey()).append("=").append(entry.getValue().getAverage())
+              .append("/").append(entry.getValue().getTail()).append("ms");
+    }
+    return result.toString();
+  }
+}
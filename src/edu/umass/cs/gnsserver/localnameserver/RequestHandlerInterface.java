@@ -19,6 +19,7 @@
  */
 package edu.umass.cs.gnsserver.localnameserver;
 
+import edu.umass.cs.gnsserver.gnsapp.packet.LNSProbePacket;
 import edu.umass.cs.gnsserver.localnameserver.nodeconfig.LNSConsistentReconfigurableNodeConfig;
 import edu.umass.cs.nio.AbstractJSONPacketDemultiplexer;
 import edu.umass.cs.nio.nioutils.NIOHeader;
@@ -101,7 +102,21 @@ public interface RequestHandlerInterface {
    * @return an address
    */
   public InetSocketAddress getClosestReplica(Set<InetSocketAddress> serverIds, Set<InetSocketAddress> excludeServers);
-  
+
+  /**
+   * Returns the measured round trip times to the active replicas.
+   *
+   * @return the latencies
+   */
+  public ReplicaLatencies getReplicaLatencies();
+
+  /**
+   * Adds the round trip time of a probe to the replica latencies.
+   *
+   * @param response
+   */
+  public void handleProbeResponse(LNSProbePacket response);
+
   /**
    * Clears the cache.
    */
@@ -153,6 +168,24 @@ public interface RequestHandlerInterface {
    * @return a set of addresses
    */
   public Set<InetSocketAddress> getActivesIfValid(String name);
+
+  /**
+   * Returns the cache of field reads or null if there isn't one.
+   * 
+   * @return the value cache
+   */
+  public LNSValueCache getValueCache();
+
+  /**
+   * Returns true if the response to a read of name that was sent at requestTime
+   * can be put in the value cache, i.e., if the active replicas already knew to send
+   * us invalidations for name when the read was sent. Asks them to if they don't.
+   * 
+   * @param name
+   * @param requestTime
+   * @return true if the response can be cached
+   */
+  public boolean canCacheValue(String name, long requestTime);
   
   /**
    * Returns the protocol executor.
@@ -65,6 +65,14 @@ public class GNSConfig {
      * DiskMap is also enabled.
      */
     IN_MEMORY_DB(false),
+    /**
+     * If enabled, selects on DiskMapRecords merge a mongo query over the
+     * committed records with a scan of the records that are still only in
+     * the DiskMap instead of committing the whole DiskMap to mongo before
+     * every query. Queries using the general mongo query syntax still commit
+     * first if there are uncommitted records.
+     */
+    DISKMAP_MERGED_SELECT(true),
     /**
      * If enabled, the GNS will cache and return the same value for reads.
      *
@@ -143,6 +151,11 @@ public class GNSConfig {
      * interval ago) will be rejected by the server.
      */
     STALE_COMMAND_INTERVAL_IN_MINUTES(30),
+    /**
+     * The maximum number of decoded public keys cached for signature
+     * verification.
+     */
+    PUBLIC_KEY_CACHE_SIZE(10000),
     /**
      * The default port used by mongo. 27017 is the default mongo uses.
      */
@@ -157,6 +170,11 @@ public class GNSConfig {
      * The timeout for synchronous writes in Remote Query.
      */
     REPLICA_UPDATE_TIMEOUT(8000),
+    /**
+     * The number of updates to the groups field of members of a group
+     * that are sent at a time to the replicas of a set of members.
+     */
+    GROUP_MEMBER_UPDATE_WINDOW(64),
     /**
      * The timeout for synchronous queries to a reconfigurator in Remote
      * Query.
@@ -168,6 +186,18 @@ public class GNSConfig {
     /* FIXME: arun: need to determine this timeout systematically, not an ad
 		 * hoc constant. */
     SELECT_REQUEST_TIMEOUT(5000),
+    /**
+     * If enabled, select commands received from a client don't block the
+     * thread that executes them while waiting for the other servers. The
+     * response is sent to the client when the last server responds or when
+     * SELECT_REQUEST_TIMEOUT passes.
+     */
+    ENABLE_ASYNC_SELECT(false),
+    /**
+     * The maximum number of guids a server puts in one select response.
+     * Larger results are sent to the collecting server in several chunks.
+     */
+    SELECT_RESPONSE_CHUNK_SIZE(1000),
     //
     // NO SQL BACKING DATABASE
     //
@@ -271,6 +301,27 @@ public class GNSConfig {
      * The URL path used by the HTTP server.
      */
     HTTP_SERVER_GNS_URL_PATH("GNS"),
+    /**
+     * Set to true to have the HTTP server hand commands off to a bounded pool
+     * of workers (or send them to remote servers asynchronously) instead of
+     * running each one on its own request thread.
+     */
+    HTTP_SERVER_ASYNC(true),
+    /**
+     * The number of threads that execute locally handled HTTP commands when
+     * HTTP_SERVER_ASYNC is true.
+     */
+    HTTP_SERVER_WORKER_THREADS(32),
+    /**
+     * The maximum number of HTTP commands in progress when HTTP_SERVER_ASYNC
+     * is true. Requests beyond that are answered with a 503.
+     */
+    HTTP_SERVER_MAX_OUTSTANDING(256),
+    /**
+     * How long in milliseconds the HTTP server waits for a command to complete
+     * before answering with a timeout when HTTP_SERVER_ASYNC is true.
+     */
+    HTTP_SERVER_REQUEST_TIMEOUT(20000),
     //
     // LOCAL NAME SERVER SETUP
     //
@@ -279,6 +330,33 @@ public class GNSConfig {
      * LocalNameServer when the app starts.
      */
     LOCAL_NAME_SERVER_NODES(NONE),
+    /**
+     * If true the LocalNameServer answers unsigned field reads from its
+     * value cache. Active replicas push invalidations for cached fields, but
+     * one that is lost leaves a read up to LNS_VALUE_CACHE_TTL stale.
+     */
+    ENABLE_LNS_VALUE_CACHE(false),
+    /**
+     * The maximum total size in bytes of the values in the LNS value cache.
+     */
+    LNS_VALUE_CACHE_SIZE(64 * 1024 * 1024),
+    /**
+     * How long in milleseconds a value stays in the LNS value cache. This bounds
+     * staleness if an invalidation is lost.
+     */
+    LNS_VALUE_CACHE_TTL(60000),
+    /**
+     * How long in milleseconds an active replica keeps sending invalidations
+     * for a guid to a LocalNameServer after it last subscribed to the guid.
+     * The LNS subscribes again after half this time.
+     */
+    LNS_CACHE_SUBSCRIPTION_TTL(300000),
+    /**
+     * How often in milleseconds a LocalNameServer probes the active replicas
+     * it has sent requests to. This keeps its latency estimates current for
+     * replicas that it isn't sending requests to. 0 turns probing off.
+     */
+    LNS_PROBE_INTERVAL(10000),
     //
     // Domain Name Service
     //
@@ -302,6 +380,37 @@ public class GNSConfig {
      * requests to DNS and GNS servers.
      */
     DNS_ONLY(false),
+    /**
+     * The number of threads that turn incoming DNS packets into responses.
+     */
+    DNS_WORKER_THREADS(16),
+    /**
+     * The number of threads shared by all DNS queries for the parallel GNS
+     * and DNS lookups.
+     */
+    DNS_RESOLVER_THREADS(16),
+    /**
+     * The number of receive buffers kept for the DNS server. This also bounds the
+     * number of queries waiting for a worker; queries beyond that are dropped
+     * and left for the client to retry.
+     */
+    DNS_BUFFER_POOL_SIZE(256),
+    /**
+     * The maximum number of GNS answers cached by the DNS server keyed by
+     * name and type. Set to 0 to disable the cache.
+     */
+    DNS_ANSWER_CACHE_SIZE(10000),
+    /**
+     * How long in milliseconds GNS answers are cached by the DNS server.
+     * Matches the TTL of the records we hand out.
+     */
+    DNS_ANSWER_CACHE_TTL(60000),
+    /**
+     * Set to true to resolve the CNAME chain of a DNS query together with the
+     * NS and MX targets it points to using multi-record reads instead of one
+     * lookup per name.
+     */
+    DNS_BATCHED_RESOLUTION(true),
     //
     // Contect Name Service
     //
@@ -325,6 +434,19 @@ public class GNSConfig {
      *
      */
     USE_OLD_ACL_MODEL(false),
+    /**
+     * If true, ACL checks use an in memory guid to public key index of each ACL
+     * instead of hashing every public key in the ACL.
+     */
+    ENABLE_ACL_INDEX(true),
+    /**
+     * The number of guids whose ACL indexes are kept in memory.
+     */
+    ACL_INDEX_SIZE(10000),
+    /**
+     * The number of public key to guid mappings that are remembered.
+     */
+    PUBLIC_KEY_GUID_CACHE_SIZE(100000),
     /**
      * Temporary - The use of this will go away at some point.
      */
@@ -32,7 +32,6 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +39,8 @@ import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 import edu.umass.cs.msocket.common.CommonMethods;
 import edu.umass.cs.msocket.common.policies.BlackBoxWritingPolicy;
@@ -267,7 +268,7 @@ public class ConnectionInfo
 	this.serverController = serverController;
     obuffer = new OutBuffer();
     ibuffer = new InBufferOutOrder();
-    socketMap = new HashMap<Integer, SocketInfo>();
+    socketMap = new ConcurrentHashMap<Integer, SocketInfo>();
 
     try
     {
@@ -630,6 +631,21 @@ public class ConnectionInfo
     return getObuffer().getDataFromOutBuffer(startSeqNum, EndSeqNum);
   }
 
+  /**
+   * Writes the data between the sequence numbers to the channel as one data
+   * message, straight from the outbuffer.
+   * 
+   * @param channel
+   * @param startSeqNum
+   * @param EndSeqNum
+   * @return the number of data bytes written
+   * @throws IOException
+   */
+  public int writeDataFromOutBuffer(SocketChannel channel, long startSeqNum, long EndSeqNum) throws IOException
+  {
+    return getObuffer().writeDataMessage(channel, startSeqNum, EndSeqNum, getDataAckSeq());
+  }
+
   /**
    *
    * @param s
@@ -722,11 +738,12 @@ public class ConnectionInfo
    * @param buf
    * @param offset
    * @param length
-   * @return
+   * @return false if that would buffer more than
+   *         {@link OutBuffer#MAX_OUTBUFFER_SIZE} bytes, the caller waits for
+   *         acks and tries again
    */
   public boolean addOutBuffer(byte[] buf, int offset, int length)
   {
-    // TODO: modify this part to restrict outbuffer based on system's heap size
     return getObuffer().add(buf, offset, length);
   }
 
@@ -1064,44 +1081,37 @@ public class ConnectionInfo
     synchronized (getActiveSocketMonitor)
     {
       SocketInfo Obj = null;
-      Vector<SocketInfo> socketMapValues = new Vector<SocketInfo>();
-      socketMapValues.addAll(getAllSocketInfo());
+      // socketMap is concurrent so its values can be walked without a copy
+      Collection<SocketInfo> socketMapValues = getAllSocketInfo();
 
       switch (writePolicy)
       {
         case MULTIPATH_POLICY_RANDOM:
         {
-          Random generator = new Random();
-          Vector<SocketInfo> vect = new Vector<SocketInfo>();
-
-          int i = 0;
-          while (i < socketMapValues.size())
+          // randomly choosing the socket to send chunk, each active socket is
+          // kept with probability 1/(number of active sockets seen so far)
+          int numActive = 0;
+          for (SocketInfo value : socketMapValues)
           {
-            SocketInfo value = socketMapValues.get(i);
-
             if (value.getStatus()) // true means active
             {
-              vect.add(value);
+              numActive++;
+              if (ThreadLocalRandom.current().nextInt(numActive) == 0)
+              {
+                Obj = value;
+              }
             }
-            i++;
           }
-          if (vect.size() == 0) // denotes all sockets under migration
-            return null;
-
-          int index = generator.nextInt(vect.size());
-          Obj = vect.get(index); // randomly choosing the socket to send chunk
+          // null denotes all sockets under migration
           break;
         }
 
         case MULTIPATH_POLICY_OUTSTAND_RATIO:
         {
-          int i = 0;
           double minRatio = -1;
 
-          while (i < socketMapValues.size())
+          for (SocketInfo value : socketMapValues)
           {
-            SocketInfo value = socketMapValues.get(i);
-
             if (value.getStatus()) // true means active
             {
               MSocketLogger.getLogger().fine("Socket ID " + value.getSocketIdentifer() + " outstanding bytes "
@@ -1112,7 +1122,6 @@ public class ConnectionInfo
                 Obj = value;
               }
             }
-            i++;
           }
           break;
         }
@@ -1121,9 +1130,9 @@ public class ConnectionInfo
         {
           int i = 0;
           SocketInfo value = null;
-          while (i < socketMapValues.size())
+          for (SocketInfo next : socketMapValues)
           {
-            value = socketMapValues.get(i);
+            value = next;
             if (value.getStatus()) // true means active
             {
               if (i >= interfaceNumToUse) // return the running interface after
@@ -1134,7 +1143,7 @@ public class ConnectionInfo
             }
             i++;
           }
-          int Size = socketMapValues.size();
+          int Size = Math.max(1, socketMapValues.size());
           interfaceNumToUse++;
           interfaceNumToUse = interfaceNumToUse % Size;
           return value;
@@ -1789,17 +1798,7 @@ public class ConnectionInfo
 
     if (dataSendSeqNum > DataAck)
     {
-      byte[] buf = getDataFromOutBuffer(DataAck, dataSendSeqNum);
-
-      int arrayCopyOffset = 0;
-      DataMessage dm = new DataMessage(DataMessage.DATA_MESG, DataAck, getDataAckSeq(), buf.length, 0, buf,
-          arrayCopyOffset);
-      byte[] writebuf = dm.getBytes();
-      ByteBuffer bytebuf = ByteBuffer.allocate(writebuf.length);
-      bytebuf.put(writebuf);
-      bytebuf.flip();
-      while (bytebuf.hasRemaining())
-        Obj.getDataChannel().write(bytebuf);
+      writeDataFromOutBuffer(Obj.getDataChannel(), DataAck, dataSendSeqNum);
     }
     Obj.setneedToReqeustACK(false);
   }
@@ -1956,7 +1955,8 @@ public class ConnectionInfo
       MSocketLogger.getLogger().fine("storing " + nread + " in inbuffer");
 
       long inbiStart = System.currentTimeMillis();
-      InBufferStorageChunk InBObj = new InBufferStorageChunk(buf.array(), 0, socketObj.getChunkReadOffsetSeqNum(),
+      // buf was allocated for this read so the chunk can keep its array
+      InBufferStorageChunk InBObj = new InBufferStorageChunk(buf.array(), socketObj.getChunkReadOffsetSeqNum(),
           nread);
 
       addInBuffer(InBObj);
@@ -2081,7 +2081,9 @@ public class ConnectionInfo
 	      sizeRead = length;
 	    }
 
-	    ByteBuffer buf = ByteBuffer.allocate(sizeRead);
+	    // data that is next in order is read straight into the app buffer
+	    boolean readToApp = (ndirect > 0) && ibuffer.isNextData(socketObj.getChunkReadOffsetSeqNum());
+	    ByteBuffer buf = readToApp ? ByteBuffer.wrap(b, offset, sizeRead) : ByteBuffer.allocate(sizeRead);
 
 	    if (ndirect > 0)
 	    {
@@ -2219,7 +2221,19 @@ public class ConnectionInfo
 	    int bytesCopiedToApp = 0;
 	    if (nread > 0)
 	    {
-	      if (ibuffer.isDataInOrder(socketObj.getChunkReadOffsetSeqNum(), nread))
+	      if (readToApp && ibuffer.claimOrderedData(socketObj.getChunkReadOffsetSeqNum(), nread))
+	      {
+	        bytesCopiedToApp = nread;
+	        copiedToApp = true;
+	      }
+	      else if (readToApp)
+	      {
+	        // someone else delivered this data meanwhile, keep a copy in the
+	        // inbuffer in case it is still needed
+	        addInBuffer(new InBufferStorageChunk(b, offset, socketObj.getChunkReadOffsetSeqNum(), nread));
+	        copiedToApp = false;
+	      }
+	      else if (ibuffer.isDataInOrder(socketObj.getChunkReadOffsetSeqNum(), nread))
 	      {
 	        buf.flip();
 	        bytesCopiedToApp = ibuffer.copyOrderedDataToAppBuffer(buf.array(), 
@@ -2233,7 +2247,8 @@ public class ConnectionInfo
 	        buf.flip();
 
 	        long inbiStart = System.currentTimeMillis();
-	        InBufferStorageChunk InBObj = new InBufferStorageChunk(buf.array(), 0, 
+	        // buf was allocated for this read so the chunk can keep its array
+	        InBufferStorageChunk InBObj = new InBufferStorageChunk(buf.array(), 
 	        		socketObj.getChunkReadOffsetSeqNum(),
 	            nread);
 
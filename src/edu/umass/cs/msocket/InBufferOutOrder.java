@@ -22,7 +22,10 @@
 
 package edu.umass.cs.msocket;
 
-import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.umass.cs.msocket.logger.MSocketLogger;
 
@@ -30,6 +33,12 @@ import edu.umass.cs.msocket.logger.MSocketLogger;
 /**
  * This class implements the Inbuffer of the MSocket. Out of order data is read
  * from the input stream and stored in the inbuffer.
+ * <p>
+ * Chunks are kept in a concurrent skip list keyed by their start sequence
+ * number, so the receive threads of several flow paths can add chunks while
+ * the reader takes the in-order data out without a common lock. The reader
+ * advances dataReadSeq with compare and set, so a reader that loses a race
+ * returns nothing rather than the same bytes twice.
  * 
  * @author <a href="mailto:cecchet@cs.umass.edu">Emmanuel Cecchet</a>
  * @version 1.0
@@ -37,9 +46,12 @@ import edu.umass.cs.msocket.logger.MSocketLogger;
 public class InBufferOutOrder
 {
 
-  ArrayList<InBufferStorageChunk> rbuf               = null;
+  final ConcurrentSkipListMap<Long, InBufferStorageChunk> rbuf = new ConcurrentSkipListMap<Long, InBufferStorageChunk>();
 
-  long                            dataReadSeq        = 0;                                                 // assuming
+  // number of chunks in rbuf, the skip list size() is linear
+  private final AtomicInteger     numChunks          = new AtomicInteger();
+
+  final AtomicLong                dataReadSeq        = new AtomicLong(0);                                 // assuming
                                                                                                            // that
                                                                                                            // data
                                                                                                            // starts
@@ -47,7 +59,7 @@ public class InBufferOutOrder
                                                                                                            // 0
                                                                                                            // seq
                                                                                                            // num
-  long                            byteRecvInInbuffer = 0;                                                 // mainly
+  final AtomicLong                byteRecvInInbuffer = new AtomicLong(0);                                 // mainly
                                                                                                            // for
                                                                                                            // ideal
                                                                                                            // case
@@ -56,7 +68,6 @@ public class InBufferOutOrder
 
   InBufferOutOrder()
   {
-    rbuf = new ArrayList<InBufferStorageChunk>();
   }
 
   /**
@@ -64,13 +75,13 @@ public class InBufferOutOrder
    * @param Obj
    * @return
    */
-  public synchronized boolean putInBuffer(InBufferStorageChunk Obj)
+  public boolean putInBuffer(InBufferStorageChunk Obj)
   {
-    byteRecvInInbuffer += Obj.chunkSize; // may not be accurate if there are
-                                         // retransmissions due to migration or
-                                         // otherwise
+    byteRecvInInbuffer.addAndGet(Obj.chunkSize); // may not be accurate if there are
+                                                 // retransmissions due to migration or
+                                                 // otherwise
     
-    if( dataReadSeq >= (Obj.startSeqNum+Obj.chunkSize) )
+    if( dataReadSeq.get() >= (Obj.startSeqNum+Obj.chunkSize) )
 	{
 		return false;
 	}
@@ -95,27 +106,27 @@ public class InBufferOutOrder
    */
   public boolean isInBufferData()
   {
-    for (int i = 0; i < rbuf.size(); i++)
-    {
-      InBufferStorageChunk CurChunk = rbuf.get(i);
+    return chunkAt(dataReadSeq.get()) != null;
+  }
 
-      if ((dataReadSeq >= CurChunk.startSeqNum) && (dataReadSeq < (CurChunk.startSeqNum + CurChunk.chunkSize))) // required
-                                                                                                                // for
-                                                                                                                // considering
-                                                                                                                // holes
-                                                                                                                // ,FIXME:
-                                                                                                                // may
-                                                                                                                // not
-                                                                                                                // have
-                                                                                                                // checked
-                                                                                                                // for
-                                                                                                                // repeated
-                                                                                                                // data
+  /*
+   * Returns a chunk holding the byte with sequence number seq or null if that
+   * byte is in a hole. Retransmitted chunks may overlap so the chunk starting
+   * closest before seq may not be the only candidate.
+   */
+  private InBufferStorageChunk chunkAt(long seq)
+  {
+    Map.Entry<Long, InBufferStorageChunk> entry = rbuf.floorEntry(seq);
+    while (entry != null)
+    {
+      InBufferStorageChunk CurChunk = entry.getValue();
+      if (seq < (CurChunk.startSeqNum + CurChunk.chunkSize))
       {
-        return true;
+        return CurChunk;
       }
+      entry = rbuf.lowerEntry(entry.getKey());
     }
-    return false;
+    return null;
   }
 
   /**
@@ -125,48 +136,29 @@ public class InBufferOutOrder
    * @param length
    * @return
    */
-  public synchronized int getInBuffer(byte[] b, int offset, int length)
+  public int getInBuffer(byte[] b, int offset, int length)
   {
 
     int numread = 0;
 
-    if (rbuf.size() > 0)
-    {
-    }
-    for (int i = 0; i < rbuf.size(); i++)
+    while (numread < length)
     {
-      InBufferStorageChunk CurChunk = rbuf.get(i);
-      if ((dataReadSeq >= CurChunk.startSeqNum) && (dataReadSeq < (CurChunk.startSeqNum + CurChunk.chunkSize))) // required
-                                                                                                                // for
-                                                                                                                // considering
-                                                                                                                // holes
-                                                                                                                // ,FIXME:
-                                                                                                                // may
-                                                                                                                // not
-                                                                                                                // have
-                                                                                                                // checked
-                                                                                                                // for
-                                                                                                                // repeated
-                                                                                                                // data
+      long readSeq = dataReadSeq.get();
+      InBufferStorageChunk CurChunk = chunkAt(readSeq);
+      if (CurChunk == null)
       {
-        int srcPos = (int) Math.max(0, dataReadSeq - CurChunk.startSeqNum);
-        // FIXME: check for long to int conversion
-        int cpylen = CurChunk.chunkSize - srcPos;
-        int actlen = 0;
-        if ((numread + cpylen) > length)
-        {
-          actlen = length - numread;
-        }
-        else
-        {
-          actlen = cpylen;
-        }
-        System.arraycopy(CurChunk.chunkData, srcPos, b, offset+numread, actlen);
-        numread += actlen;
-        dataReadSeq += actlen;
-        if (numread >= length)
-          break;
+        break;
       }
+      int srcPos = (int) (readSeq - CurChunk.startSeqNum);
+      // FIXME: check for long to int conversion
+      int actlen = Math.min(CurChunk.chunkSize - srcPos, length - numread);
+      System.arraycopy(CurChunk.chunkData, srcPos, b, offset + numread, actlen);
+      if (!dataReadSeq.compareAndSet(readSeq, readSeq + actlen))
+      {
+        // another reader took these bytes
+        break;
+      }
+      numread += actlen;
     }
     freeInBuffer();
     return numread;
@@ -181,15 +173,45 @@ public class InBufferOutOrder
    * @param chunkLength
 	 * @return
 	 */
-	public synchronized boolean isDataInOrder(int chunckStartSeq, int chunkLength) {
+	public boolean isDataInOrder(int chunckStartSeq, int chunkLength) {
 		
+		long readSeq = dataReadSeq.get();
 		// if dataReadSeq is in between this chunk data, then it is in-order
-		if( ( dataReadSeq >= chunckStartSeq ) && ( dataReadSeq < (chunckStartSeq + chunkLength) ) )
+		if( ( readSeq >= chunckStartSeq ) && ( readSeq < (chunckStartSeq + chunkLength) ) )
 		{
 			return true;
 		}
 		return false;
 	}
+
+	/**
+	 * Checks if data starting at the given seq num is exactly the next data
+	 * the application reads, so it can be read straight into the app buffer.
+	 * 
+	 * @param chunkStartSeq
+	 * @return
+	 */
+	public boolean isNextData(long chunkStartSeq) {
+		return dataReadSeq.get() == chunkStartSeq;
+	}
+
+	/**
+	 * Hands data that was read straight into the app buffer to the application
+	 * by advancing the dataReadSeqNum.
+	 * 
+	 * @param chunkStartSeq
+	 * @param chunkLen
+	 * @return false if the data is no longer next, then it needs to be
+	 *         stored in the inbuffer instead
+	 */
+	public boolean claimOrderedData(long chunkStartSeq, int chunkLen) {
+		if (dataReadSeq.compareAndSet(chunkStartSeq, chunkStartSeq + chunkLen))
+		{
+			freeInBuffer();
+			return true;
+		}
+		return false;
+	}
 	
 	/**
 	 * Copy data read from stream to the app buffer. Also updates the dataReadSeqNum 
@@ -202,7 +224,7 @@ public class InBufferOutOrder
 	 * @param appLen
    * @return 
 	 */
-	public synchronized int copyOrderedDataToAppBuffer(byte[] readFromStream, int startSeqNum, 
+	public int copyOrderedDataToAppBuffer(byte[] readFromStream, int startSeqNum, 
 			int chunkLen, byte[] appBuffer, int offset, int appLen) 
 	{
 		if(chunkLen > 0)
@@ -211,14 +233,18 @@ public class InBufferOutOrder
 				" offset "+offset+" appLen "+appLen+" readFromStream[0] "+readFromStream[0]);
 		}
 		int actualCopied =0;
-		if( (dataReadSeq >= startSeqNum) && (dataReadSeq < (startSeqNum+chunkLen) ) ) 
+		long readSeq = dataReadSeq.get();
+		if( (readSeq >= startSeqNum) && (readSeq < (startSeqNum+chunkLen) ) ) 
 		{
-			int srcPos = (int)Math.max(0,dataReadSeq-startSeqNum);
+			int srcPos = (int)Math.max(0,readSeq-startSeqNum);
 			//FIXME: check for long to int conversion
 			int cpylen=chunkLen-srcPos;
-			actualCopied = cpylen;
 			System.arraycopy(readFromStream, srcPos, appBuffer, offset , cpylen );
-			dataReadSeq+=cpylen;
+			if (dataReadSeq.compareAndSet(readSeq, readSeq + cpylen))
+			{
+				actualCopied = cpylen;
+				freeInBuffer();
+			}
 		}
 		return actualCopied;
 	}
@@ -228,7 +254,7 @@ public class InBufferOutOrder
    * @return
    */
   public long getDataReadSeqNum() {
-		return dataReadSeq;
+		return dataReadSeq.get();
 	}
 	
 	/**
@@ -236,40 +262,46 @@ public class InBufferOutOrder
 	 * @return
 	 */
 	public long getInBufferSize() {
-		return rbuf.size();
+		return numChunks.get();
 	}
 
 	/**
-	 * Inserts chunk in in buffer in sorted order
+	 * Inserts chunk in in buffer in sorted order. A retransmitted chunk with
+	 * the same start replaces the stored one only if it is longer.
 	 * @param Obj
 	 */
 	private void insertSorted(InBufferStorageChunk Obj) 
 	{
-		int i=0;
-		// inserting from reverse, as it might require less iterations. 
-		// may eventually need to be replaces with heap
-		for(i=rbuf.size()-1; i>=0; i--) {
-			if( rbuf.get(i).startSeqNum < Obj.startSeqNum ) // may need to do overlap check also
+		while (true)
+		{
+			InBufferStorageChunk existing = rbuf.putIfAbsent(Obj.startSeqNum, Obj);
+			if (existing == null)
 			{
-				break;
+				numChunks.incrementAndGet();
+				return;
+			}
+			if (existing.chunkSize >= Obj.chunkSize || rbuf.replace(Obj.startSeqNum, existing, Obj))
+			{
+				return;
 			}
 		}
-		rbuf.add(i+1, Obj);
 	}
 
 	private void freeInBuffer()
 	{
-		while(rbuf.size() > 0) 
+		long readSeq = dataReadSeq.get();
+		Map.Entry<Long, InBufferStorageChunk> first;
+		while ((first = rbuf.firstEntry()) != null)
 		{
-			InBufferStorageChunk CurChunk = rbuf.get(0);
+			InBufferStorageChunk CurChunk = first.getValue();
 			
 			// required for considering holes ,FIXME: may not have checked for repeated data
-			if( (dataReadSeq >= (CurChunk.startSeqNum+CurChunk.chunkSize) ) ) 
+			if( (readSeq >= (CurChunk.startSeqNum+CurChunk.chunkSize) ) ) 
 			{
-				//remove the first element, as element slides left 
-				InBufferStorageChunk removed = rbuf.remove(0);
-				removed.chunkData = null;
-				removed = null;
+				if (rbuf.remove(first.getKey(), CurChunk))
+				{
+					numChunks.decrementAndGet();
+				}
 			} else
 			{
 				break;
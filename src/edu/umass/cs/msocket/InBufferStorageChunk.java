@@ -42,4 +42,15 @@ public class InBufferStorageChunk
     this.startSeqNum = startSeqNum;
     this.chunkSize = chunkSize;
   }
+
+  /**
+   * Keeps data as it is instead of copying it, for callers that allocated
+   * data for this chunk.
+   */
+  InBufferStorageChunk(byte[] data, long startSeqNum, int chunkSize)
+  {
+    chunkData = data;
+    this.startSeqNum = startSeqNum;
+    this.chunkSize = chunkSize;
+  }
 }
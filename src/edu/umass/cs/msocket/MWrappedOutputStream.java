@@ -23,6 +23,7 @@
 package edu.umass.cs.msocket;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 
@@ -46,6 +47,9 @@ public class MWrappedOutputStream extends OutputStream
    * Size of a write block
    */
   public static final int      WRITE_CHUNK_SIZE 	= 1000;
+
+  // how long a write waits for acks before reading the sockets again
+  private static final long    OUTBUFFER_WAIT   	= 100;
   
   private ConnectionInfo cinfo            			= null;
   private MultipathPolicy writePolicy				= MultipathPolicy.MULTIPATH_POLICY_ROUNDROBIN;
@@ -136,13 +140,50 @@ public class MWrappedOutputStream extends OutputStream
       throw new IOException("Don't write after closing the socket");
     if (cinfo.getMSocketState() == MSocketConstants.CLOSED)
       throw new IOException(" socket already closed");
+    if (offset < 0 || length < 0 || offset + length > b.length)
+      throw new IndexOutOfBoundsException();
+    if (length > OutBuffer.MAX_OUTBUFFER_SIZE)
+    {
+      // each part has to fit in the outbuffer on its own
+      for (int done = 0; done < length; done += OutBuffer.MAX_OUTBUFFER_SIZE)
+        write(b, offset + done, Math.min(OutBuffer.MAX_OUTBUFFER_SIZE, length - done), MesgType);
+      return;
+    }
 
     cinfo.setState(ConnectionInfo.READ_WRITE, true);
 
     if (length != 0)
     {
       {
-        cinfo.addOutBuffer(b, offset, length); // first write to outbuffer
+        // first write to outbuffer, bytes that can't be retransmitted are not
+        // sent. If too many bytes are unacked wait for acks to free space,
+        // reading the sockets so acks are seen even if the app isn't reading.
+        while (!cinfo.addOutBuffer(b, offset, length))
+        {
+          try
+          {
+            cinfo.multiSocketRead();
+          }
+          catch (IOException e)
+          {
+            cinfo.setState(ConnectionInfo.ALL_READY, true);
+            throw e;
+          }
+          if (cinfo.getOutBufferSize() + length <= OutBuffer.MAX_OUTBUFFER_SIZE)
+            continue;
+          cinfo.setState(ConnectionInfo.ALL_READY, true);
+          try
+          {
+            cinfo.getObuffer().awaitSpace(length, OUTBUFFER_WAIT);
+          }
+          catch (InterruptedException e)
+          {
+            throw new InterruptedIOException("interrupted waiting for outbuffer space");
+          }
+          if (cinfo.getMSocketState() == MSocketConstants.CLOSED)
+            throw new IOException(" socket already closed");
+          cinfo.setState(ConnectionInfo.READ_WRITE, true);
+        }
         MSocketLogger.getLogger().fine("write " + b[0]);
       }
     }
@@ -22,14 +22,22 @@
 
 package edu.umass.cs.msocket;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.nio.channels.GatheringByteChannel;
 
 import edu.umass.cs.msocket.logger.MSocketLogger;
 
 /**
  * This class implements the Output buffer of MSocket. Data is stored in the
  * outbput buffer, before it is sent out to the other side.
+ * <p>
+ * Unacked data is kept in a direct ByteBuffer used as a ring. The byte with
+ * sequence number s is at (head + s - dataStartSeq) modulo the capacity, so
+ * acks free space right away and retransmissions are served from slices of
+ * the ring without copying. The ring doubles when a write doesn't fit, up to
+ * MAX_OUTBUFFER_SIZE bytes of direct memory, and writes that would buffer more
+ * than that are refused until acks free enough space, see {@link #awaitSpace}.
  * 
  * @author aditya
  */
@@ -38,11 +46,19 @@ public class OutBuffer
 {
 
   /**
-   *
+   * Largest number of unacked bytes buffered and so the largest ring.
    */
   public static final int MAX_OUTBUFFER_SIZE = 30000000;                                   // 30MB
 
-  ArrayList<byte[]>       sbuf               = null;
+  /**
+   * Capacity of a new ring, it grows by doubling.
+   */
+  public static final int INITIAL_CAPACITY   = 64 * 1024;
+
+  ByteBuffer              ring               = null;
+
+  // index in ring of the byte with sequence number dataStartSeq
+  int                     head               = 0;
 
   /*
    * Same as ConnectionInfo.dataSendSeq, this is the sequence number of the next
@@ -57,9 +73,9 @@ public class OutBuffer
   long                    dataBaseSeq        = 0;
 
   /*
-   * dataStartSeq is the sequence number of first byte in the buffer. It may be
-   * less than dataBaseSeq as dataStartSeq is advanced only when dataBaseSeq
-   * moves beyond the first whole buffer in the buffer list sbuf.
+   * dataStartSeq is the sequence number of first byte in the buffer. Acked
+   * bytes are freed right away in the ring, so it only differs from dataBaseSeq
+   * after releaseOutBuffer.
    */
   long                    dataStartSeq       = 0;
 
@@ -94,7 +110,43 @@ public class OutBuffer
 
   OutBuffer()
   {
-    sbuf = new ArrayList<byte[]>();
+    this(INITIAL_CAPACITY);
+  }
+
+  /**
+   * @param initialCapacity rounded up to a power of two, at most
+   *          MAX_OUTBUFFER_SIZE
+   */
+  public OutBuffer(int initialCapacity)
+  {
+    ring = ByteBuffer.allocateDirect(Math.min(Integer.highestOneBit(Math.max(initialCapacity - 1, 1)) << 1,
+        MAX_OUTBUFFER_SIZE));
+  }
+
+  private int indexOf(long seq)
+  {
+    return (int) ((head + (seq - dataStartSeq)) % ring.capacity());
+  }
+
+  /*
+   * Makes room for length more bytes, keeping the buffered ones in order from
+   * the start of the new ring. The caller checks that size + length is at most
+   * MAX_OUTBUFFER_SIZE.
+   */
+  private void ensureCapacity(int length)
+  {
+    int size = getOutbufferSize();
+    if (size + length <= ring.capacity())
+      return;
+    int capacity = ring.capacity();
+    while (capacity < size + length)
+      capacity <<= 1;
+    capacity = Math.min(capacity, MAX_OUTBUFFER_SIZE);
+    ByteBuffer larger = ByteBuffer.allocateDirect(capacity);
+    for (ByteBuffer slice : slices(dataStartSeq, dataSendSeq))
+      larger.put(slice);
+    ring = larger;
+    head = 0;
   }
 
   /**
@@ -108,18 +160,22 @@ public class OutBuffer
   {
     if (src.length < offset + length)
       return false;
-    // FIXME: may need to improve here
-    if ((getOutbufferSize() + length) > (java.lang.Runtime.getRuntime().maxMemory() / 2))
+    if ((long) getOutbufferSize() + length > MAX_OUTBUFFER_SIZE)
     {
-      MSocketLogger.getLogger().fine("Local write fail JVM Heap memeory threshold exceeded");
+      MSocketLogger.getLogger().fine("Local write fail outbuffer size threshold exceeded");
       return false;
     }
-    byte[] dst = null;
-
-    dst = new byte[length];
-
-    System.arraycopy(src, offset, dst, 0, length);
-    sbuf.add(dst);
+    ensureCapacity(length);
+    int index = indexOf(dataSendSeq);
+    int first = Math.min(length, ring.capacity() - index);
+    ring.clear();
+    ring.position(index);
+    ring.put(src, offset, first);
+    if (first < length)
+    {
+      ring.position(0);
+      ring.put(src, offset + first, length - first);
+    }
     dataSendSeq += length;
     return true;
   }
@@ -130,13 +186,7 @@ public class OutBuffer
    */
   public synchronized int getOutbufferSize()
   {
-    int i = 0;
-    int sizeinbytes = 0;
-    for (i = 0; i < sbuf.size(); i++)
-    {
-      sizeinbytes += sbuf.get(i).length;
-    }
-    return sizeinbytes;
+    return (int) (dataSendSeq - dataStartSeq);
   }
 
   /**
@@ -159,53 +209,48 @@ public class OutBuffer
     if (ack - dataBaseSeq <= 0 || ack - dataSendSeq > 0)
       return false;
     dataBaseSeq = ack;
-    while ((ack - dataStartSeq > 0) && sbuf.size() > 0)
-    {
-      byte[] b = sbuf.get(0);
-      if (ack - (dataStartSeq + b.length) >= 0)
-      {
-        sbuf.remove(0);
-        dataStartSeq += b.length;
-      }
-      else
-        break;
-    }
+    freeOutBuffer();
     return true;
   }
 
   /**
    *
    */
-  public void freeOutBuffer()
+  public synchronized void freeOutBuffer()
   {
-    long curStart = dataStartSeq;
-    int freeIndex = -1;
-    for (int i = 0; i < sbuf.size(); i++)
+    if (dataBaseSeq - dataStartSeq > 0)
     {
-      byte[] b = sbuf.get(i);
-      if (curStart + b.length - dataBaseSeq > 0)
-      {
-        freeIndex = i;
-        break;
-      }
-      curStart += b.length;
+      head = indexOf(dataBaseSeq);
+      dataStartSeq = dataBaseSeq;
+      notifyAll();
     }
-    dataStartSeq = curStart;
+  }
 
-    int i = 0;
-    while (i < freeIndex)
-    {
-      sbuf.remove(0); // remove the first element, as element slides left
-      i++;
-    }
+  /**
+   * Waits up to timeout milliseconds for acks to leave room for length more
+   * bytes.
+   * 
+   * @param length
+   * @param timeout
+   * @return true if length more bytes can be added
+   * @throws InterruptedException
+   */
+  public synchronized boolean awaitSpace(int length, long timeout) throws InterruptedException
+  {
+    if ((long) getOutbufferSize() + length > MAX_OUTBUFFER_SIZE)
+      wait(timeout);
+    return (long) getOutbufferSize() + length <= MAX_OUTBUFFER_SIZE;
   }
 
   /**
-   *
+   * Drops all buffered data. The ring is kept for later writes rather than
+   * allocating another direct buffer.
    */
   public synchronized void releaseOutBuffer()
   {
-    sbuf.clear();
+    head = 0;
+    dataStartSeq = dataSendSeq;
+    notifyAll();
   }
 
   /**
@@ -230,6 +275,45 @@ public class OutBuffer
     }
   }
 
+  /*
+   * Returns read only views of the ring holding the buffered bytes in
+   * [startSeqNum, endSeqNum), one view or two if the range wraps around.
+   */
+  private ByteBuffer[] slices(long startSeqNum, long endSeqNum)
+  {
+    long start = Math.max(startSeqNum, dataStartSeq);
+    long end = Math.min(endSeqNum, dataSendSeq);
+    if (end - start <= 0)
+      return new ByteBuffer[0];
+    int length = (int) (end - start);
+    int index = indexOf(start);
+    int first = Math.min(length, ring.capacity() - index);
+    ByteBuffer one = ring.asReadOnlyBuffer();
+    one.limit(index + first).position(index);
+    if (first == length)
+      return new ByteBuffer[]{one};
+    ByteBuffer two = ring.asReadOnlyBuffer();
+    two.limit(length - first).position(0);
+    return new ByteBuffer[]{one, two};
+  }
+
+  /*
+   * Copies [startSeqNum, endSeqNum) into a new array, bytes that are no longer
+   * buffered are left as zeros.
+   */
+  private byte[] copy(long startSeqNum, long endSeqNum)
+  {
+    byte[] result = new byte[(int) (endSeqNum - startSeqNum)];
+    int offset = (int) Math.max(0, dataStartSeq - startSeqNum);
+    for (ByteBuffer slice : slices(startSeqNum, endSeqNum))
+    {
+      int length = slice.remaining();
+      slice.get(result, offset, length);
+      offset += length;
+    }
+    return result;
+  }
+
   /**
    *
    * @return
@@ -238,21 +322,7 @@ public class OutBuffer
   {
     if (dataSendSeq - dataBaseSeq <= 0)
       return null;
-    ByteBuffer buf = ByteBuffer.wrap(new byte[(int) (dataSendSeq - dataBaseSeq)]);
-    long curStart = dataStartSeq;
-    for (int i = 0; i < sbuf.size(); i++)
-    {
-      byte[] b = sbuf.get(i);
-      if (curStart + b.length - dataBaseSeq > 0)
-      {
-        int srcPos = (int) Math.max(0, dataBaseSeq - curStart);
-        buf.put(b, srcPos, b.length - srcPos);
-      }
-      curStart += b.length;
-    }
-    if (buf.array().length == 0)
-      MSocketLogger.getLogger().fine("base=" + this.dataBaseSeq + "send=" + this.dataSendSeq);
-    return buf.array();
+    return copy(dataBaseSeq, dataSendSeq);
   }
 
   /**
@@ -265,33 +335,49 @@ public class OutBuffer
   {
     if (EndSeqNum - startSeqNum <= 0)
       return null;
-    ByteBuffer buf = ByteBuffer.wrap(new byte[(int) (EndSeqNum - startSeqNum)]);
-    long curStart = dataStartSeq;
+    return copy(startSeqNum, EndSeqNum);
+  }
 
-    for (int i = 0; i < sbuf.size(); i++)
+  /**
+   * Writes [startSeqNum, endSeqNum) to the channel as one DATA_MESG straight
+   * from the ring, without copying it into a byte array first. Blocks until
+   * everything is written, like the retransmission code did before.
+   * <p>
+   * The lock is not held while writing. An ack that arrives meanwhile lets
+   * new writes reuse the acked part of the ring, but the receiver discards
+   * bytes it has already acked so that does no harm.
+   * 
+   * @param channel
+   * @param startSeqNum
+   * @param endSeqNum
+   * @param ackSeq the ack to piggyback in the header
+   * @return the number of data bytes written
+   * @throws IOException
+   */
+  public int writeDataMessage(GatheringByteChannel channel, long startSeqNum, long endSeqNum, int ackSeq)
+      throws IOException
+  {
+    ByteBuffer[] data;
+    synchronized (this)
     {
-      byte[] b = sbuf.get(i);
-      if (curStart + b.length - startSeqNum > 0)
-      {
-        int srcPos = (int) Math.max(0, startSeqNum - curStart);
-        int copy = 0;
-        if (buf.remaining() > (b.length - srcPos))
-        {
-          copy = (b.length - srcPos);
-          buf.put(b, srcPos, copy);
-        }
-        else
-        {
-          copy = buf.remaining();
-          buf.put(b, srcPos, copy);
-          break;
-        }
-      }
-      curStart += b.length;
+      data = slices(startSeqNum, endSeqNum);
+      // don't leave a hole if the start has been freed already
+      if (data.length > 0 && startSeqNum < dataStartSeq)
+        startSeqNum = dataStartSeq;
     }
-    if (buf.array().length == 0)
-      MSocketLogger.getLogger().fine("base=" + startSeqNum + "send=" + EndSeqNum);
-    return buf.array();
+    int length = 0;
+    for (ByteBuffer slice : data)
+      length += slice.remaining();
+    if (length == 0)
+      return 0;
+    ByteBuffer[] srcs = new ByteBuffer[data.length + 1];
+    srcs[0] = ByteBuffer.wrap(new DataMessage(DataMessage.DATA_MESG, (int) startSeqNum, ackSeq, length, 0, null, 0)
+        .getBytes());
+    System.arraycopy(data, 0, srcs, 1, data.length);
+    ByteBuffer last = srcs[srcs.length - 1];
+    while (last.hasRemaining())
+      channel.write(srcs);
+    return length;
   }
 
   public String toString()
@@ -300,7 +386,7 @@ public class OutBuffer
     s += "dataSendSeq=" + dataSendSeq + ", ";
     s += "dataBaseSeq=" + dataBaseSeq + ", ";
     s += "dataStartSeq=" + dataStartSeq + ", ";
-    s += "numbufs=" + sbuf.size();
+    s += "capacity=" + ring.capacity();
     s += "]";
 
     return s;
@@ -110,23 +110,13 @@ public class ResendIfNeededThread implements Runnable
 
     if (tempDataSendSeqNum > dataAck)
     {
-      byte[] buf = cinfo.getDataFromOutBuffer(dataAck, tempDataSendSeqNum);
-
       // FIXME: change it to chunks
-      int arrayCopyOffset =0;
-      DataMessage dm = new DataMessage(DataMessage.DATA_MESG, dataAck, cinfo.getDataAckSeq(), buf.length, 0, buf, arrayCopyOffset);
-      byte[] writebuf = dm.getBytes();
-
       // exception of wite means that socket is undergoing migration, make it
       // not active, and transfer same data chunk over another available socket.
       // at receiving side, recevier will take care of redundantly received data
-      ByteBuffer writeByBuff = ByteBuffer.wrap(writebuf);
-      while (writeByBuff.hasRemaining())
-      {
-        Obj.getSocket().getChannel().write(writeByBuff);
-      }
+      int written = cinfo.writeDataFromOutBuffer(Obj.getSocket().getChannel(), dataAck, tempDataSendSeqNum);
 
-      Obj.updateSentBytes(buf.length);
+      Obj.updateSentBytes(written);
     }
     Obj.setneedToReqeustACK(false);
   }
@@ -26,20 +26,13 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
-import java.nio.ByteBuffer;
-import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.HashMap;
 
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.Vector;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import edu.umass.cs.msocket.SetupControlMessage;
 import edu.umass.cs.msocket.logger.MSocketLogger;
@@ -182,15 +175,10 @@ public class ProxyForwarder
                                                                                                                        // which
                                                                                                                        // get
                                                                                                                        // spliced
-  private Selector                          SpliceSelector         = null;
+  private final SpliceEngine                spliceEngine;
   private Timer                             localTimer             = null;
   private long                              localClock             = 0;
 
-  private int                               numBytesSpliced        = 0;
-
-  private Queue<RegisterQueueInfo>          registerQueue          = null;
-
-  private final ExecutorService             pool;
   private boolean                           runstatus              = true;
 
   /**
@@ -201,27 +189,34 @@ public class ProxyForwarder
    * @throws IOException
    */
   public ProxyForwarder(String ProxyName, int ProxyPort) throws SocketException, IOException
+  {
+    this(ProxyName, ProxyPort, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   *
+   * @param ProxyName
+   * @param ProxyPort
+   * @param numSpliceThreads number of selector threads splicing the channels
+   * @throws SocketException
+   * @throws IOException
+   */
+  public ProxyForwarder(String ProxyName, int ProxyPort, int numSpliceThreads) throws SocketException, IOException
   {
 	this.ProxyName = ProxyName;
     this.ProxyPort = ProxyPort;
     ProxyControlChannelMap = new HashMap<String, ProxyMSocket>();
     pServerSocket = new ProxyServerSocket(this.ProxyName, this.ProxyPort, this);
     SpliceMap = new HashMap<Integer, ProxyTCPSplicer>();
-    SpliceSelector = Selector.open();
+    spliceEngine = new SpliceEngine(numSpliceThreads);
 
     localTimer = new Timer();
     startLocalTimer();
 
-    registerQueue = new LinkedList<RegisterQueueInfo>();
-    pool = Executors.newCachedThreadPool();
-
     ProxyForwarderThread List_Thr = new ProxyForwarderThread(pServerSocket, LISTEN_THREAD, this);
     (new Thread(List_Thr)).start();
     System.out.println("Proxy listen thread started");
-
-    ProxyForwarderThread Splice_Thr = new ProxyForwarderThread(pServerSocket, SPLICING_THREAD, this);
-    (new Thread(Splice_Thr)).start();
-    System.out.println("Proxy splicing thread started");
+    System.out.println("Proxy splicing started with " + numSpliceThreads + " threads");
   }
 
   /**
@@ -253,7 +248,7 @@ public class ProxyForwarder
    */
   public Selector getSelector()
   {
-    return SpliceSelector;
+    return spliceEngine.getSelector();
   }
 
   /**
@@ -295,11 +290,9 @@ public class ProxyForwarder
 
           // register channel
           SocketChannel RegisteredChannel = Socket.getUnderlyingChannel();
-          RegisteredChannel.configureBlocking(false);
 
           MSocketLogger.getLogger().fine("Splice PUT before register");
-          RegisterQueueInfo regObj = new RegisterQueueInfo(Socket, RegisteredChannel);
-          registerQueueOperations(PUT, regObj);
+          spliceEngine.register(Obj.getProxyId(), ServerOrClient == ProxyTCPSplicer.SERVER_SIDE, RegisteredChannel);
 
           MSocketLogger.getLogger().fine("Splice PUT after register");
           return Obj.getProxyId();
@@ -313,11 +306,9 @@ public class ProxyForwarder
 
           // register channel
           SocketChannel RegisteredChannel = Socket.getUnderlyingChannel();
-          RegisteredChannel.configureBlocking(false);
 
           MSocketLogger.getLogger().fine("Splice PUT before register");
-          RegisterQueueInfo regObj = new RegisterQueueInfo(Socket, RegisteredChannel);
-          registerQueueOperations(PUT, regObj);
+          spliceEngine.register(Obj.getProxyId(), ServerOrClient == ProxyTCPSplicer.SERVER_SIDE, RegisteredChannel);
 
           return Obj.getProxyId();
         }
@@ -400,94 +391,6 @@ public class ProxyForwarder
             }
           }
         }
-        case ProxyForwarder.SPLICING_THREAD :
-        {
-          while (true)
-          {
-            try
-            {
-
-              // check for the queue, if there are any channels to register
-              while (((Integer) registerQueueOperations(SIZE, null) != 0))
-              {
-                RegisterQueueInfo regSocket = (RegisterQueueInfo) registerQueueOperations(GET, null);
-
-                SelectionKey SelecKey;
-                try
-                {
-                  SelecKey = regSocket.socketChannel.register(SpliceSelector, SelectionKey.OP_READ);
-                  SelecKey.attach(regSocket.Socket);
-                }
-                catch (Exception e)
-                {
-                  e.printStackTrace();
-                }
-              }
-
-              int readyChannels = 0;
-              try
-              {
-                readyChannels = PForwarderObj.getSelector().select(); // changing
-                                                                      // it to
-                                                                      // select(),
-                                                                      // makes
-                                                                      // it
-                                                                      // blocking,
-                                                                      // then it
-                                                                      // deadlocks
-                                                                      // with
-                                                                      // register()
-                // method on selector and select() method here
-              }
-              catch (Exception e)
-              {
-                e.printStackTrace();
-              }
-
-              if (readyChannels == 0)
-                continue;
-
-              Set<SelectionKey> selectedKeys = PForwarderObj.getSelector().selectedKeys();
-
-              Vector<SelectionKey> SelectKeyVector = new Vector<SelectionKey>();
-              SelectKeyVector.addAll(selectedKeys);
-
-              boolean exit = true;
-              do
-              {
-                exit = true;
-                for (int i = 0; i < SelectKeyVector.size(); i++)
-                {
-                  SelectionKey key = SelectKeyVector.get(i);
-                  if (key.isReadable())
-                  {
-                    // Acquiring lock here not inside the thread, as thread
-                    // scheduling may not be ensure TCP's sequential property
-                    // Two chunks of transmission from selectors may get out of
-                    // order with out locks here.
-                    ProxyMSocket ChannelObj = (ProxyMSocket) key.attachment();
-
-                    if (ChannelObj.grabLockOrgetBlocked(true)) // acqurie lock,
-                                                               // if it fails
-                                                               // then ignore
-                                                               // this channel
-                                                               // for now.
-                    {
-                      pool.execute(new Handler(key, PForwarderObj));
-                    }
-                  }
-                }
-              }
-              while (!exit);
-              selectedKeys.clear();
-            }
-            catch (Exception ex)
-            {
-              ex.printStackTrace();
-
-            }
-          }
-        }
       }
     }
   }
@@ -526,111 +429,17 @@ public class ProxyForwarder
             }
           }
         }
-        ProxyLoadStatistics.updateCurrentThroughput(numBytesSpliced);
+        ProxyLoadStatistics.updateCurrentThroughput((int) spliceEngine.getBytesSpliced());
       }
     }, TimerTick, TimerTick);
   }
 
-  private synchronized Object registerQueueOperations(int oper, RegisterQueueInfo registerObj)
-  {
-    switch (oper)
-    {
-      case GET :
-      {
-        return registerQueue.poll();
-      }
-      case PUT :
-      {
-        registerQueue.add(registerObj);
-        SpliceSelector.wakeup(); // wakeup method makes the blocking select call
-                                 // to return
-        // and check for the channels in the queue to register
-        break;
-      }
-      case SIZE :
-      {
-        return registerQueue.size();
-      }
-    }
-    return null;
-  }
-
   /**
    * Stop it.
    */
   public void StopAcceptPool()
   {
     runstatus = false;
-    pool.shutdownNow();
-  }
-
-  /**
-   * for implementing executor service
-   * 
-   * @author ayadav
-   */
-  private class Handler implements Runnable
-  {
-    private final SelectionKey   key;
-    private final ProxyForwarder pForwarderObj;
-
-    public Handler(SelectionKey key, ProxyForwarder pForwarderObj)
-    {
-      this.key = key;
-      this.pForwarderObj = pForwarderObj;
-    }
-
-    public void run()
-    {
-      // a channel is ready for reading
-      ProxyMSocket ChannelObj = (ProxyMSocket) key.attachment();
-      SocketChannel SourceChannel = ChannelObj.getUnderlyingChannel();
-      SocketChannel DestinationChannel = null;
-      try
-      {
-        int ServerOrClient = -1;
-        if (ChannelObj.getServerOrClient() == ProxyTCPSplicer.CLIENT_SIDE)
-        {
-          ServerOrClient = ProxyTCPSplicer.SERVER_SIDE;
-        }
-        else if (ChannelObj.getServerOrClient() == ProxyTCPSplicer.SERVER_SIDE)
-        {
-          ServerOrClient = ProxyTCPSplicer.CLIENT_SIDE;
-        }
-        DestinationChannel = ((ProxyMSocket) pForwarderObj.SpliceMapOperations(ChannelObj.getProxyId(), GET,
-            ServerOrClient, null)).getUnderlyingChannel();
-
-        int numread = 0;
-        ByteBuffer bytebuf = ByteBuffer.allocate(ChannelReadSize);
-        numread = SourceChannel.read(bytebuf);
-
-        if (numread > 0)
-        {
-          MSocketLogger.getLogger().fine("Splicer: Read from source channel " + numread + "src channel port "
-              + SourceChannel.socket().getPort() + " proxyId " + ChannelObj.getProxyId());
-          bytebuf.flip();
-          while (bytebuf.hasRemaining())
-          {
-            int numwrite = DestinationChannel.write(bytebuf);
-            if (numwrite > 0)
-              MSocketLogger.getLogger().fine("Splicer: Written into dest channel " + numwrite + " dest channel port "
-                  + DestinationChannel.socket().getPort());
-          }
-          numBytesSpliced += numread;
-        }
-
-      }
-      catch (Exception e)
-      {
-
-        MSocketLogger.getLogger().fine("Exception in splicing");
-        e.printStackTrace();
-        key.cancel();
-      }
-
-      // release lock here
-      ChannelObj.grabLockOrgetBlocked(false);
-    }
+    spliceEngine.shutdown();
   }
-  
-}
\ No newline at end of file
+}
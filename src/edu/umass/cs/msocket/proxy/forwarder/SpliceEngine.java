@@ -0,0 +1,367 @@
+/*******************************************************************************
+ *
+ * Mobility First - mSocket library
+ * Copyright (C) 2013, 2014 - University of Massachusetts Amherst
+ * Contact: arun@cs.umass.edu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ *
+ * Initial developer(s): Arun Venkataramani, Aditya Yadav, Emmanuel Cecchet.
+ * Contributor(s): ______________________.
+ *
+ *******************************************************************************/
+
+package edu.umass.cs.msocket.proxy.forwarder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.umass.cs.msocket.logger.MSocketLogger;
+
+/**
+ * Splices pairs of channels with a fixed number of selector threads. Each
+ * pair is handled by one selector thread, picked from its pair id, and that
+ * thread does all reads and writes for the pair itself so no locks or hand
+ * offs are needed and the bytes of a pair stay in order.
+ * <p>
+ * Data is read into a direct buffer from a small pool kept by each selector
+ * thread and written straight to the other channel of the pair. If the other
+ * channel can't take all of it the rest is kept for that channel and reading
+ * from the source stops until it has been written.
+ * 
+ * @version 1.0
+ */
+public class SpliceEngine
+{
+  /**
+   * Size of the direct buffers used for splicing.
+   */
+  public static final int      BUFFER_SIZE = 64 * 1024;
+
+  // buffers kept in each selector thread's pool
+  private static final int     POOL_SIZE   = 16;
+
+  private final Reactor[]      reactors;
+  private final AtomicLong     bytesSpliced = new AtomicLong();
+  private volatile boolean     running      = true;
+
+  /**
+   * Starts the selector threads.
+   * 
+   * @param numReactors number of selector threads
+   * @throws IOException
+   */
+  public SpliceEngine(int numReactors) throws IOException
+  {
+    reactors = new Reactor[Math.max(1, numReactors)];
+    for (int i = 0; i < reactors.length; i++)
+    {
+      reactors[i] = new Reactor();
+      Thread thread = new Thread(reactors[i], "SpliceReactor-" + i);
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  /**
+   * Adds one side of a pair. Splicing starts once both sides are there. If the
+   * side is already there, for instance after a flow path migrated, the new
+   * channel replaces the old one, which is closed. A channel that is closed or
+   * fails is dropped from its pair and the other side waits for a new one.
+   * 
+   * @param pairId
+   * @param serverSide which side of the pair the channel is
+   * @param channel
+   * @throws IOException
+   */
+  public void register(int pairId, boolean serverSide, SocketChannel channel) throws IOException
+  {
+    channel.configureBlocking(false);
+    Reactor reactor = reactors[(pairId & Integer.MAX_VALUE) % reactors.length];
+    reactor.registrations.add(new Endpoint(pairId, serverSide ? 1 : 0, channel));
+    reactor.selector.wakeup();
+  }
+
+  /**
+   * @return the number of bytes spliced so far
+   */
+  public long getBytesSpliced()
+  {
+    return bytesSpliced.get();
+  }
+
+  /**
+   * @return the selector of the first selector thread
+   */
+  public Selector getSelector()
+  {
+    return reactors[0].selector;
+  }
+
+  /**
+   * Stops the selector threads, the channels are left open.
+   */
+  public void shutdown()
+  {
+    running = false;
+    for (Reactor reactor : reactors)
+      reactor.selector.wakeup();
+  }
+
+  private static class Endpoint
+  {
+    final int           pairId;
+    final int           side;
+    final SocketChannel channel;
+    SelectionKey        key;
+    Endpoint            peer;
+    // read from this channel but not yet written to the peer
+    ByteBuffer          pending;
+
+    Endpoint(int pairId, int side, SocketChannel channel)
+    {
+      this.pairId = pairId;
+      this.side = side;
+      this.channel = channel;
+    }
+  }
+
+  private class Reactor implements Runnable
+  {
+    final Selector                        selector;
+    final ConcurrentLinkedQueue<Endpoint> registrations = new ConcurrentLinkedQueue<Endpoint>();
+    // only touched by this thread
+    final HashMap<Integer, Endpoint[]>    pairs         = new HashMap<Integer, Endpoint[]>();
+    final ArrayDeque<ByteBuffer>          pool          = new ArrayDeque<ByteBuffer>();
+
+    Reactor() throws IOException
+    {
+      selector = Selector.open();
+    }
+
+    public void run()
+    {
+      while (running)
+      {
+        try
+        {
+          selector.select();
+          registerPending();
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext())
+          {
+            SelectionKey key = keys.next();
+            keys.remove();
+            Endpoint endpoint = (Endpoint) key.attachment();
+            if (key.isValid() && key.isWritable())
+              flush(endpoint);
+            if (key.isValid() && key.isReadable())
+              splice(endpoint);
+          }
+        }
+        catch (Exception e)
+        {
+          MSocketLogger.getLogger().fine("Exception in splicing " + e);
+        }
+      }
+      try
+      {
+        selector.close();
+      }
+      catch (IOException e)
+      {
+        MSocketLogger.getLogger().fine("Problem closing selector " + e);
+      }
+    }
+
+    private void registerPending()
+    {
+      Endpoint endpoint;
+      while ((endpoint = registrations.poll()) != null)
+      {
+        Endpoint[] pair = pairs.get(endpoint.pairId);
+        if (pair == null)
+        {
+          pair = new Endpoint[2];
+          pairs.put(endpoint.pairId, pair);
+        }
+        if (pair[endpoint.side] != null)
+          close(pair[endpoint.side]);
+        try
+        {
+          endpoint.key = endpoint.channel.register(selector, 0, endpoint);
+        }
+        catch (IOException e)
+        {
+          MSocketLogger.getLogger().fine("Unable to register channel " + e);
+          continue;
+        }
+        pair[endpoint.side] = endpoint;
+        Endpoint other = pair[1 - endpoint.side];
+        if (other != null)
+        {
+          endpoint.peer = other;
+          other.peer = endpoint;
+          endpoint.key.interestOps(SelectionKey.OP_READ);
+          if (other.pending == null)
+            other.key.interestOps(SelectionKey.OP_READ);
+        }
+      }
+    }
+
+    private void splice(Endpoint src)
+    {
+      Endpoint dst = src.peer;
+      if (dst == null)
+      {
+        // wait for the other side
+        src.key.interestOps(0);
+        return;
+      }
+      ByteBuffer buf = acquire();
+      try
+      {
+        int numread = src.channel.read(buf);
+        if (numread < 0)
+        {
+          release(buf);
+          close(src);
+          return;
+        }
+        if (numread == 0)
+        {
+          release(buf);
+          return;
+        }
+        bytesSpliced.addAndGet(numread);
+      }
+      catch (IOException e)
+      {
+        release(buf);
+        close(src);
+        return;
+      }
+      buf.flip();
+      try
+      {
+        dst.channel.write(buf);
+      }
+      catch (IOException e)
+      {
+        release(buf);
+        close(dst);
+        return;
+      }
+      if (buf.hasRemaining())
+      {
+        src.pending = buf;
+        src.key.interestOps(0);
+        dst.key.interestOps(dst.key.interestOps() | SelectionKey.OP_WRITE);
+      }
+      else
+        release(buf);
+    }
+
+    private void flush(Endpoint dst)
+    {
+      Endpoint src = dst.peer;
+      if (src == null || src.pending == null)
+      {
+        dst.key.interestOps(dst.key.interestOps() & ~SelectionKey.OP_WRITE);
+        return;
+      }
+      try
+      {
+        dst.channel.write(src.pending);
+      }
+      catch (IOException e)
+      {
+        close(dst);
+        return;
+      }
+      if (!src.pending.hasRemaining())
+      {
+        release(src.pending);
+        src.pending = null;
+        dst.key.interestOps(dst.key.interestOps() & ~SelectionKey.OP_WRITE);
+        src.key.interestOps(SelectionKey.OP_READ);
+      }
+    }
+
+    private void closeChannel(Endpoint endpoint)
+    {
+      try
+      {
+        endpoint.channel.close();
+      }
+      catch (IOException e)
+      {
+        MSocketLogger.getLogger().fine("Problem closing channel " + e);
+      }
+    }
+
+    // closes the channel, its peer stays open and waits for a new channel for
+    // this side, e.g., after the flow path migrated
+    private void close(Endpoint endpoint)
+    {
+      endpoint.key.cancel();
+      closeChannel(endpoint);
+      if (endpoint.pending != null)
+      {
+        release(endpoint.pending);
+        endpoint.pending = null;
+      }
+      Endpoint[] pair = pairs.get(endpoint.pairId);
+      if (pair != null && pair[endpoint.side] == endpoint)
+      {
+        pair[endpoint.side] = null;
+        if (pair[1 - endpoint.side] == null)
+          pairs.remove(endpoint.pairId);
+      }
+      Endpoint peer = endpoint.peer;
+      if (peer != null && peer.peer == endpoint)
+      {
+        peer.peer = null;
+        if (peer.pending != null)
+        {
+          release(peer.pending);
+          peer.pending = null;
+        }
+        if (peer.key.isValid())
+          peer.key.interestOps(0);
+      }
+    }
+
+    private ByteBuffer acquire()
+    {
+      ByteBuffer buf = pool.poll();
+      if (buf == null)
+        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+      buf.clear();
+      return buf;
+    }
+
+    private void release(ByteBuffer buf)
+    {
+      if (pool.size() < POOL_SIZE)
+        pool.push(buf);
+    }
+  }
+}
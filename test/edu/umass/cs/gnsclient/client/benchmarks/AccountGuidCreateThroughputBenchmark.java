@@ -0,0 +1,136 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsclient.client.benchmarks;
+
+import edu.umass.cs.gnsclient.client.GNSClientCommands;
+import edu.umass.cs.gnsclient.client.util.GuidEntry;
+import edu.umass.cs.gnsclient.client.util.GuidUtils;
+import edu.umass.cs.gnscommon.utils.RandomString;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.*;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Measures account and guid creation throughput as the number of concurrent
+ * creates grows. Every create does several server to server lookups and
+ * reconfigurator requests through RemoteQuery, which used to hold a server
+ * thread for each of those round trips.
+ *
+ * The number of creates per level and the largest concurrency level
+ * can be set with -DnumCreates and -DmaxConcurrency.
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class AccountGuidCreateThroughputBenchmark {
+
+  private static GNSClientCommands client = null;
+  private static GuidEntry masterGuid;
+
+  private static final int NUM_CREATES = Integer.getInteger("numCreates", 100);
+  private static final int MAX_CONCURRENCY = Integer.getInteger("maxConcurrency", 32);
+
+  private static final ConcurrentLinkedQueue<GuidEntry> accounts = new ConcurrentLinkedQueue<>();
+  private static final ConcurrentLinkedQueue<GuidEntry> guids = new ConcurrentLinkedQueue<>();
+
+  /**
+   *
+   */
+  public AccountGuidCreateThroughputBenchmark() {
+    if (client == null) {
+      try {
+        client = new GNSClientCommands();
+      } catch (IOException e) {
+        fail("Exception creating client: " + e);
+      }
+      try {
+        masterGuid = GuidUtils.lookupOrCreateAccountGuid(client,
+                ThroughputSweep.getAccountAlias(), ThroughputSweep.getPassword(), true);
+      } catch (Exception e) {
+        fail("Exception while creating account guid: " + e);
+      }
+    }
+  }
+
+  private static ThroughputSweep.Check<GuidEntry> collect(final ConcurrentLinkedQueue<GuidEntry> created) {
+    return new ThroughputSweep.Check<GuidEntry>() {
+      @Override
+      public String check(List<GuidEntry> results) {
+        for (GuidEntry entry : results) {
+          assertNotNull(entry);
+          created.add(entry);
+        }
+        return "";
+      }
+    };
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_1_GuidCreateThroughput() {
+    ThroughputSweep.sweep("guid create", NUM_CREATES, MAX_CONCURRENCY, new Callable<GuidEntry>() {
+      @Override
+      public GuidEntry call() throws Exception {
+        return client.guidCreate(masterGuid, "createThroughput" + RandomString.randomString(12));
+      }
+    }, collect(guids));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_2_AccountCreateThroughput() {
+    ThroughputSweep.sweep("account create", NUM_CREATES, MAX_CONCURRENCY, new Callable<GuidEntry>() {
+      @Override
+      public GuidEntry call() throws Exception {
+        return GuidUtils.lookupOrCreateAccountGuid(client,
+                "createThroughput" + RandomString.randomString(12) + "@gns.name",
+                ThroughputSweep.getPassword(), true);
+      }
+    }, collect(accounts));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_3_Cleanup() {
+    try {
+      for (GuidEntry guid : guids) {
+        client.guidRemove(masterGuid, guid.getGuid());
+      }
+      for (GuidEntry account : accounts) {
+        client.accountGuidRemove(account);
+      }
+    } catch (Exception e) {
+      fail("Exception while removing guids: " + e);
+    }
+  }
+}
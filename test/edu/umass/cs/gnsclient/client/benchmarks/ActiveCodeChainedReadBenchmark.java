@@ -0,0 +1,136 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package edu.umass.cs.gnsclient.client.benchmarks;
+
+import edu.umass.cs.gnsclient.client.GNSClientCommands;
+import edu.umass.cs.gnsclient.client.util.GuidEntry;
+import edu.umass.cs.gnsclient.client.util.GuidUtils;
+import edu.umass.cs.gnscommon.utils.RandomString;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode;
+import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Measures reads of a guid whose read active code reads the next guid in a
+ * chain, whose active code reads the next one and so on, see
+ * scripts/activeCode/chainEnd.js. Each read returns the guid at the end of the
+ * chain, so every hop has to have run. With a single server all the guids are on
+ * the same server, so each hop in the chain is a read of a local guid
+ * by active code.
+ *
+ * Needs active code enabled on the server.
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ActiveCodeChainedReadBenchmark {
+
+  private static final String CODE_FILE = "scripts/activeCode/chainEnd.js";
+  private static final String NEXT_GUID = "nextGuid";
+  // each hop takes one off the TTL of the chain
+  private static final int CHAIN_LENGTH = InternalRequestHeader.DEFAULT_TTL - 1;
+  private static final int WARMUP = 100;
+  private static final int READS = 1000;
+  private static GNSClientCommands client;
+  private static GuidEntry masterGuid;
+  private static GuidEntry[] chain;
+
+  /**
+   *
+   */
+  public ActiveCodeChainedReadBenchmark() {
+    if (client == null) {
+      try {
+        client = new GNSClientCommands();
+      } catch (IOException e) {
+        fail("Exception creating client: " + e);
+      }
+      try {
+        masterGuid = GuidUtils.lookupOrCreateAccountGuid(client,
+                ThroughputSweep.getAccountAlias(), ThroughputSweep.getPassword(), true);
+      } catch (Exception e) {
+        fail("Exception when we were not expecting it: " + e);
+      }
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_CreateChain() {
+    try {
+      String code = new String(Files.readAllBytes(Paths.get(CODE_FILE)));
+      chain = new GuidEntry[CHAIN_LENGTH];
+      for (int i = 0; i < CHAIN_LENGTH; i++) {
+        chain[i] = client.guidCreate(masterGuid, "chain" + RandomString.randomString(6));
+      }
+      for (int i = 0; i < CHAIN_LENGTH; i++) {
+        client.fieldUpdate(chain[i].getGuid(), NEXT_GUID,
+                i < CHAIN_LENGTH - 1 ? chain[i + 1].getGuid() : "", chain[i]);
+        client.activeCodeSet(chain[i].getGuid(), ActiveCode.READ_ACTION, code, chain[i]);
+      }
+    } catch (Exception e) {
+      fail("Exception when we were not expecting it: " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_ChainedReads() {
+    try {
+      String end = chain[CHAIN_LENGTH - 1].getGuid();
+      for (int i = 0; i < WARMUP; i++) {
+        assertEquals(end, client.fieldRead(chain[0].getGuid(), NEXT_GUID, chain[0]));
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < READS; i++) {
+        assertEquals(end, client.fieldRead(chain[0].getGuid(), NEXT_GUID, chain[0]));
+      }
+      long elapsed = System.nanoTime() - start;
+      System.out.println(String.format("%d reads through a chain of %d guids: %.3fms/read, %.1f reads/s",
+              READS, CHAIN_LENGTH, elapsed / 1000000.0 / READS, READS * 1000000000.0 / elapsed));
+    } catch (Exception e) {
+      fail("Exception when we were not expecting it: " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_RemoveChain() {
+    try {
+      for (GuidEntry entry : chain) {
+        client.guidRemove(masterGuid, entry.getGuid());
+      }
+    } catch (Exception e) {
+      fail("Exception when we were not expecting it: " + e);
+    }
+  }
+}
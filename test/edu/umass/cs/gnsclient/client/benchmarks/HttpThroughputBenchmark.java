@@ -0,0 +1,137 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsclient.client.benchmarks;
+
+import edu.umass.cs.gnsclient.client.http.HttpClient;
+import edu.umass.cs.gnsclient.client.util.GuidEntry;
+import edu.umass.cs.gnsclient.client.util.GuidUtils;
+import edu.umass.cs.gnscommon.utils.RandomString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Measures field read throughput through the HTTP server as the number of
+ * concurrent requests grows. Reads that fail, for instance because the server
+ * answered 503 when it had too many requests outstanding, are counted as rejected.
+ *
+ * The server defaults to 127.0.0.1:8080 and can be set with -DhttpHost and -DhttpPort.
+ * The reads per level and the largest concurrency level can be set with
+ * -DnumReads and -DmaxConcurrency.
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class HttpThroughputBenchmark {
+
+  private static final String FIELD = "httpThroughputField";
+  private static HttpClient client = null;
+  private static GuidEntry masterGuid;
+  private static GuidEntry entry;
+  private static String value;
+
+  private static final int NUM_READS = Integer.getInteger("numReads", 2000);
+  private static final int MAX_CONCURRENCY = Integer.getInteger("maxConcurrency", 256);
+
+  /**
+   *
+   */
+  public HttpThroughputBenchmark() {
+    if (client == null) {
+      client = new HttpClient(System.getProperty("httpHost", "127.0.0.1"),
+              Integer.getInteger("httpPort", 8080));
+      try {
+        masterGuid = GuidUtils.lookupOrCreateAccountGuid(client,
+                ThroughputSweep.getAccountAlias(), ThroughputSweep.getPassword(), true);
+      } catch (Exception e) {
+        fail("Exception while creating account guid: " + e);
+      }
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_1_CreateGuid() {
+    value = RandomString.randomString(12);
+    try {
+      entry = client.guidCreate(masterGuid, "httpThroughput" + RandomString.randomString(6));
+      client.fieldUpdate(entry, FIELD, value);
+      assertEquals(value, client.fieldRead(entry, FIELD));
+    } catch (Exception e) {
+      fail("Exception creating guid: " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_2_ReadThroughput() {
+    ThroughputSweep.sweep("read", NUM_READS, MAX_CONCURRENCY, new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        long start = System.nanoTime();
+        try {
+          if (!value.equals(client.fieldRead(entry, FIELD))) {
+            return -1L;
+          }
+        } catch (Exception e) {
+          return -1L;
+        }
+        return System.nanoTime() - start;
+      }
+    }, new ThroughputSweep.Check<Long>() {
+      @Override
+      public String check(List<Long> results) {
+        List<Long> latencies = new ArrayList<>();
+        for (Long latency : results) {
+          if (latency >= 0) {
+            latencies.add(latency);
+          }
+        }
+        assertFalse(latencies.isEmpty());
+        Collections.sort(latencies);
+        return String.format("p99=%.1fms rejected=%d",
+                latencies.get((int) (latencies.size() * 0.99)) / 1e6, results.size() - latencies.size());
+      }
+    });
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_3_Cleanup() {
+    try {
+      client.guidRemove(masterGuid, entry.getGuid());
+    } catch (Exception e) {
+      fail("Exception while removing guid: " + e);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsclient.client.benchmarks;
+
+import edu.umass.cs.gnsclient.client.GNSClientCommands;
+import edu.umass.cs.gnsclient.client.util.GuidEntry;
+import edu.umass.cs.gnsclient.client.util.GuidUtils;
+import edu.umass.cs.gnscommon.utils.RandomString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.json.JSONArray;
+
+import static org.junit.Assert.*;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Measures select throughput as the number of concurrent select queries grows.
+ * Selects used to serialize on one monitor at the coordinating server so
+ * throughput was flat no matter how many were outstanding.
+ *
+ * The number of guids, selects per level and the largest concurrency level
+ * can be set with -DnumGuids, -DnumSelects and -DmaxConcurrency.
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SelectThroughputBenchmark {
+
+  private static final String FIELD = "selectThroughputField";
+  private static GNSClientCommands client = null;
+  private static GuidEntry masterGuid;
+  private static String value;
+  private static final List<GuidEntry> guids = new ArrayList<>();
+
+  private static final int NUM_GUIDS = Integer.getInteger("numGuids", 20);
+  private static final int NUM_SELECTS = Integer.getInteger("numSelects", 200);
+  private static final int MAX_CONCURRENCY = Integer.getInteger("maxConcurrency", 32);
+
+  /**
+   *
+   */
+  public SelectThroughputBenchmark() {
+    if (client == null) {
+      try {
+        client = new GNSClientCommands();
+      } catch (IOException e) {
+        fail("Exception creating client: " + e);
+      }
+      try {
+        masterGuid = GuidUtils.lookupOrCreateAccountGuid(client,
+                ThroughputSweep.getAccountAlias(), ThroughputSweep.getPassword(), true);
+      } catch (Exception e) {
+        fail("Exception while creating account guid: " + e);
+      }
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_1_CreateGuids() {
+    value = RandomString.randomString(12);
+    try {
+      for (int i = 0; i < NUM_GUIDS; i++) {
+        GuidEntry entry = client.guidCreate(masterGuid, "selectThroughput" + RandomString.randomString(6));
+        guids.add(entry);
+        client.fieldUpdate(entry, FIELD, value);
+      }
+    } catch (Exception e) {
+      fail("Exception creating guids: " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_2_SelectThroughput() {
+    ThroughputSweep.sweep("select", NUM_SELECTS, MAX_CONCURRENCY, new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        JSONArray result = client.select(FIELD, value);
+        return result.length();
+      }
+    }, new ThroughputSweep.Check<Integer>() {
+      @Override
+      public String check(List<Integer> results) {
+        for (Integer result : results) {
+          assertEquals(NUM_GUIDS, (int) result);
+        }
+        return "";
+      }
+    });
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_3_Cleanup() {
+    try {
+      for (GuidEntry guid : guids) {
+        client.guidRemove(masterGuid, guid.getGuid());
+      }
+      guids.clear();
+    } catch (Exception e) {
+      fail("Exception while removing guids: " + e);
+    }
+  }
+}
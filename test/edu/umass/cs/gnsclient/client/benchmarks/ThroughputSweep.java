@@ -0,0 +1,114 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsclient.client.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs an operation against a server at concurrency levels 1, 2, 4, ... up to
+ * a maximum and prints the throughput at each level. Used by the benchmarks in
+ * this package, which are not run by any of the test targets. Run one with
+ * ant runtest -Dtest=SelectThroughputBenchmark for instance.
+ *
+ * The account alias and password default to test@cgns.name and password and
+ * can be set with -Dalias and -Dpassword.
+ *
+ */
+public class ThroughputSweep {
+
+  /**
+   * Checks the results of one concurrency level.
+   *
+   * @param <T>
+   */
+  public interface Check<T> {
+
+    /**
+     * Asserts that the results are right.
+     *
+     * @param results
+     * @return anything else to print for this level, can be empty
+     */
+    public String check(List<T> results);
+  }
+
+  /**
+   * Returns the alias of the account the benchmarks use.
+   *
+   * @return the alias
+   */
+  public static String getAccountAlias() {
+    String alias = System.getProperty("alias");
+    return alias != null && !alias.isEmpty() ? alias : "test@cgns.name";
+  }
+
+  /**
+   * Returns the password of the account the benchmarks use.
+   *
+   * @return the password
+   */
+  public static String getPassword() {
+    String password = System.getProperty("password");
+    return password != null && !password.isEmpty() ? password : "password";
+  }
+
+  /**
+   * Runs count operations at each concurrency level and prints the throughput.
+   *
+   * @param <T>
+   * @param what the name of the operation
+   * @param count operations per level
+   * @param maxConcurrency
+   * @param operation
+   * @param check
+   */
+  public static <T> void sweep(String what, int count, int maxConcurrency,
+          Callable<T> operation, Check<T> check) {
+    for (int concurrency = 1; concurrency <= maxConcurrency; concurrency *= 2) {
+      ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+      List<Callable<T>> operations = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        operations.add(operation);
+      }
+      try {
+        long start = System.currentTimeMillis();
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : executor.invokeAll(operations)) {
+          results.add(future.get());
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        String extra = check.check(results);
+        System.out.println(String.format("%s concurrency=%d count=%d time=%dms throughput=%.1f/s %s",
+                what, concurrency, count, elapsed, count * 1000.0 / elapsed, extra));
+      } catch (Exception e) {
+        fail("Exception during " + what + ": " + e);
+      } finally {
+        executor.shutdown();
+      }
+    }
+  }
+}
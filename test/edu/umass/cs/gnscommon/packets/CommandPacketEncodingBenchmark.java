@@ -0,0 +1,148 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnscommon.packets;
+
+import edu.umass.cs.gnscommon.CommandType;
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.utils.RandomString;
+
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Compares the CommandPacket byte modes on a typical signed read. For each mode it
+ * reports the encoded size, the time to encode, the time to decode and route
+ * (read the service name and command type, which is all the LNS and the
+ * reconfigurator do) and the time to decode and read one field of the command.
+ *
+ * The number of iterations can be set with -Diterations.
+ *
+ */
+public class CommandPacketEncodingBenchmark {
+
+  private static final int ITERATIONS = Integer.getInteger("iterations", 100000);
+
+  private static JSONObject makeCommand() throws Exception {
+    JSONObject command = new JSONObject();
+    command.put(GNSProtocol.COMMAND_INT.toString(), CommandType.Read.getInt());
+    command.put(GNSProtocol.GUID.toString(), RandomString.randomString(40));
+    command.put(GNSProtocol.FIELD.toString(), "location");
+    command.put(GNSProtocol.READER.toString(), RandomString.randomString(40));
+    command.put(GNSProtocol.TIMESTAMP.toString(), "2016-05-01T12:00:00Z");
+    command.put(GNSProtocol.NONCE.toString(), RandomString.randomString(16));
+    command.put(GNSProtocol.SIGNATURE.toString(), RandomString.randomString(512));
+    return command;
+  }
+
+  private static CommandPacket decode(byte[] bytes, CommandPacket.ByteMode mode) throws Exception {
+    return mode == CommandPacket.ByteMode.ORG_JSON
+            ? new CommandPacket(new JSONObject(new String(bytes, "UTF-8")))
+            : new CommandPacket(bytes);
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01_RoundTrip() throws Exception {
+    JSONObject command = makeCommand();
+    command.put("someNumber", 12345678901L);
+    command.put("someDouble", 1.5);
+    command.put(GNSProtocol.FIELDS.toString(), new JSONArray().put("a").put("b"));
+    command.put(GNSProtocol.USER_JSON.toString(), new JSONObject().put("a.b", "c"));
+    CommandPacket packet = new CommandPacket(42, command);
+    byte[] bytes = packet.toBytes(CommandPacket.ByteMode.BINARY);
+    CommandPacket decoded = new CommandPacket(bytes);
+    assertEquals(42, decoded.getRequestID());
+    assertEquals(packet.getServiceName(), decoded.getServiceName());
+    assertEquals(CommandType.Read, decoded.getCommandType());
+    assertEquals(command.toString(), PacketUtils.getCommand(decoded).toString());
+    // undecoded packets are forwarded as is
+    CommandPacket forwarded = new CommandPacket(bytes);
+    assertArrayEquals(bytes, forwarded.toBytes(CommandPacket.ByteMode.BINARY));
+    // the encoding doesn't depend on the order of the keys
+    assertArrayEquals(BinaryCommand.encode(command),
+            BinaryCommand.encode(new JSONObject(command.toString())));
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_02_TruncatedBytesAreRejected() throws Exception {
+    byte[] bytes = new CommandPacket(1, makeCommand()).toBytes(CommandPacket.ByteMode.BINARY);
+    try {
+      new CommandPacket(Arrays.copyOf(bytes, bytes.length - 10));
+      fail("Truncated packet should not parse");
+    } catch (Exception e) {
+      // expected
+    }
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_03_CompareByteModes() throws Exception {
+    JSONObject command = makeCommand();
+    String field = GNSProtocol.FIELD.toString();
+    for (int round = 0; round < 2; round++) {
+      // the first round is the warm up
+      for (CommandPacket.ByteMode mode : CommandPacket.ByteMode.values()) {
+        CommandPacket packet = new CommandPacket(1, new JSONObject(command.toString()));
+        byte[] bytes = packet.toBytes(mode);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+          bytes = packet.toBytes(mode);
+        }
+        long encode = (System.nanoTime() - start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+          CommandPacket decoded = decode(bytes, mode);
+          assertNotNull(decoded.getServiceName());
+          assertNotNull(decoded.getCommandType());
+        }
+        long route = (System.nanoTime() - start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+          assertNotNull(PacketUtils.getCommand(decode(bytes, mode)).getString(field));
+        }
+        long read = (System.nanoTime() - start) / ITERATIONS;
+
+        if (round == 1) {
+          System.out.println(String.format("mode=%s bytes=%d encode=%dns/op decodeAndRoute=%dns/op decodeAndRead=%dns/op",
+                  mode, bytes.length, encode, route, read));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnscommon.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link FieldPath} and measures the bytes allocated per nested field read
+ * compared with the previous string splitting implementation of
+ * JSONDotNotation, which is reproduced below as the baseline.
+ *
+ * The number of reads can be set with -DnumReads.
+ *
+ */
+public class FieldPathTest {
+
+  private static final int NUM_READS = Integer.getInteger("numReads", 100000);
+  private static final String KEY = "flapjack.sally.right";
+
+  private static JSONObject makeJson() throws JSONException {
+    JSONObject json = new JSONObject();
+    json.put("name", "frank");
+    JSONObject subJson = new JSONObject();
+    subJson.put("sammy", "green");
+    JSONObject subsubJson = new JSONObject();
+    subsubJson.put("right", "seven");
+    subsubJson.put("left", "eight");
+    subJson.put("sally", subsubJson);
+    json.put("flapjack", subJson);
+    return json;
+  }
+
+  /**
+   *
+   * @throws JSONException
+   */
+  @Test
+  public void test_01_Get() throws JSONException {
+    JSONObject json = makeJson();
+    assertEquals("frank", FieldPath.get("name").get(json));
+    assertEquals("seven", FieldPath.get(KEY).get(json));
+    assertNull(FieldPath.get("flapjack.sally.up").get(json));
+    assertNull(FieldPath.get("flapjack.sammy.right").get(json));
+    assertNull(FieldPath.get("nothing.here").get(json));
+    assertTrue(FieldPath.get("flapjack.sally").isIn(json));
+    assertFalse(FieldPath.get("flapjack.sally.up").isIn(json));
+    assertSame(FieldPath.get(KEY), FieldPath.get(KEY));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_GetFromMap() {
+    Map<String, Object> inner = new HashMap<>();
+    inner.put("right", "seven");
+    Map<String, Object> map = new HashMap<>();
+    map.put("sally", inner);
+    assertEquals("seven", FieldPath.get("sally.right").get(map));
+    assertEquals("seven", FieldPath.get("sally.right").remove(map));
+    assertFalse(FieldPath.get("sally.right").isIn(map));
+  }
+
+  /**
+   *
+   * @throws JSONException
+   */
+  @Test
+  public void test_03_Put() throws JSONException {
+    JSONObject json = makeJson();
+    assertTrue(FieldPath.get(KEY).put(json, "crank"));
+    assertEquals("crank", json.getJSONObject("flapjack").getJSONObject("sally").getString("right"));
+    assertTrue(FieldPath.get("a.b.c").put(json, 1));
+    assertEquals(1, json.getJSONObject("a").getJSONObject("b").getInt("c"));
+    // name is a string so it can't hold a subfield
+    assertFalse(FieldPath.get("name.first").put(json, "frank"));
+    assertEquals("frank", json.getString("name"));
+  }
+
+  /**
+   *
+   * @throws JSONException
+   */
+  @Test
+  public void test_04_Remove() throws JSONException {
+    JSONObject json = makeJson();
+    assertEquals("seven", FieldPath.get(KEY).remove(json));
+    assertFalse(FieldPath.get(KEY).isIn(json));
+    assertEquals("eight", FieldPath.get("flapjack.sally.left").get(json));
+    assertNull(FieldPath.get(KEY).remove(json));
+    assertNull(FieldPath.get("nothing.here").remove(json));
+  }
+
+  // The previous implementation
+  private static Object baselineGet(String key, Object json) throws JSONException {
+    if (key.contains(".")) {
+      int indexOfDot = key.indexOf(".");
+      String subKey = key.substring(0, indexOfDot);
+      Object subJSON = ((JSONObject) json).get(subKey);
+      try {
+        return baselineGet(key.substring(indexOfDot + 1), subJSON);
+      } catch (JSONException e) {
+        throw new JSONException(subKey + "." + e.getMessage());
+      }
+    } else {
+      return ((JSONObject) json).get(key);
+    }
+  }
+
+  private static boolean baselineContains(String key, Object json) {
+    try {
+      return baselineGet(key, json) != null;
+    } catch (JSONException e) {
+      return false;
+    }
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   *
+   * @throws JSONException
+   */
+  @Test
+  public void test_05_AllocationPerRead() throws JSONException {
+    JSONObject json = makeJson();
+    String missing = "flapjack.sally.up";
+    // warm up
+    for (int i = 0; i < NUM_READS; i++) {
+      baselineContains(KEY, json);
+      baselineContains(missing, json);
+      FieldPath.get(KEY).isIn(json);
+      FieldPath.get(missing).isIn(json);
+    }
+    long start = allocatedBytes();
+    for (int i = 0; i < NUM_READS; i++) {
+      if (baselineContains(KEY, json)) {
+        baselineGet(KEY, json);
+      }
+      baselineContains(missing, json);
+    }
+    long baseline = (allocatedBytes() - start) / NUM_READS;
+    start = allocatedBytes();
+    for (int i = 0; i < NUM_READS; i++) {
+      FieldPath.get(KEY).get(json);
+      FieldPath.get(missing).get(json);
+    }
+    long current = (allocatedBytes() - start) / NUM_READS;
+    System.out.println(String.format("bytes per read of a present and a missing field: baseline=%dB fieldPath=%dB",
+            baseline, current));
+    assertTrue(current < baseline);
+  }
+}
@@ -124,5 +124,126 @@ public class ActiveClientThroughputTest {
 		client.shutdown();
 		
 	}
+	
+	/**
+	 * Runs the same requests against workers with 1, 2, 4, ... threads up to numThread
+	 * so the output shows how the throughput of a worker grows with its threads.
+	 * The requests spread over a few guids, the number of requests for each worker
+	 * can be set with -DnumRequests.
+	 * 
+	 * @throws JSONException
+	 * @throws ActiveException
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	@Test
+	public void test_workerThreadScaling() throws JSONException, ActiveException, InterruptedException, ExecutionException {
+		int numThread = 8;
+		if(System.getProperty("numThread")!=null){
+			numThread = Integer.parseInt(System.getProperty("numThread"));
+		}
+		int n = Integer.getInteger("numRequests", 100000);
+		
+		String field = "name";
+		String noop_code = "";
+		try {
+			noop_code = new String(Files.readAllBytes(Paths.get("./scripts/activeCode/noop.js")));
+		} catch (IOException e) {
+			e.printStackTrace();
+		} 
+		ValuesMap value = new ValuesMap();
+		value.put(field, "hello world!");
+		
+		for (int workerThreads=1; workerThreads<=numThread; workerThreads*=2){
+			ActiveNonBlockingClient client = new ActiveNonBlockingClient(null, "/tmp/client_scaling", "/tmp/server_scaling", 0, workerThreads, 1024);
+			Thread th = new Thread(client);
+			th.start();
+			
+			// warm up the contexts of every guid
+			for (int i=0; i<numThread; i++){
+				assertEquals(value.toString(), client.runCode(null, "guid"+i, field, noop_code, value, 0, 10000).toString());
+			}
+			
+			ExecutorService executor = new ThreadPoolExecutor(numThread, numThread, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+			List<Future<ValuesMap>> tasks = new ArrayList<Future<ValuesMap>>();
+			
+			long t1 = System.currentTimeMillis();
+			for (int i=0; i<n; i++){
+				tasks.add(executor.submit(new SimpleTask(client, "guid"+(i%numThread), field, noop_code, value, 0)));
+			}
+			for (Future<ValuesMap> future:tasks){
+				future.get();
+			}
+			long elapsed = Math.max(1, System.currentTimeMillis() - t1);
+			System.out.println("workerThreads="+workerThreads+" It takes "+elapsed+"ms, the average throughput is "+(n*1000.0/elapsed));
+			
+			executor.shutdown();
+			th.interrupt();
+			client.shutdown();
+		}
+	}
+	
+	private static double measureThroughput(ActiveNonBlockingClient client, int numThread, int n, String code, ValuesMap value) 
+			throws ActiveException, InterruptedException, ExecutionException {
+		Thread th = new Thread(client);
+		th.start();
+		
+		String field = "name";
+		// warm up
+		for (int i=0; i<1000; i++){
+			assertEquals(value.toString(), client.runCode(null, "guid", field, code, value, 0, 10000).toString());
+		}
+		
+		ExecutorService executor = new ThreadPoolExecutor(numThread, numThread, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+		List<Future<ValuesMap>> tasks = new ArrayList<Future<ValuesMap>>();
+		long t1 = System.currentTimeMillis();
+		for (int i=0; i<n; i++){
+			tasks.add(executor.submit(new SimpleTask(client, "guid", field, code, value, 0)));
+		}
+		for (Future<ValuesMap> future:tasks){
+			assertEquals(value.toString(), future.get().toString());
+		}
+		long elapsed = Math.max(1, System.currentTimeMillis() - t1);
+		
+		executor.shutdown();
+		th.interrupt();
+		client.shutdown();
+		return n*1000.0/elapsed;
+	}
+	
+	/**
+	 * Compares the throughput of workers reached through named pipes, UDP and
+	 * memory mapped files. The number of requests can be set with -DnumRequests.
+	 * 
+	 * @throws JSONException
+	 * @throws ActiveException
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	@Test
+	public void test_channelThroughput() throws JSONException, ActiveException, InterruptedException, ExecutionException {
+		int numThread = 8;
+		if(System.getProperty("numThread")!=null){
+			numThread = Integer.parseInt(System.getProperty("numThread"));
+		}
+		int n = Integer.getInteger("numRequests", 100000);
+		
+		String noop_code = "";
+		try {
+			noop_code = new String(Files.readAllBytes(Paths.get("./scripts/activeCode/noop.js")));
+		} catch (IOException e) {
+			e.printStackTrace();
+		} 
+		ValuesMap value = new ValuesMap();
+		value.put("name", "hello world!");
+		
+		double pipe = measureThroughput(new ActiveNonBlockingClient(null, "/tmp/client_channel", "/tmp/server_channel", 0, numThread, 1024, false), 
+				numThread, n, noop_code, value);
+		double udp = measureThroughput(new ActiveNonBlockingClient(null, 50100, 60100, 0, numThread), 
+				numThread, n, noop_code, value);
+		double mapped = measureThroughput(new ActiveNonBlockingClient(null, "/tmp/client_channel", "/tmp/server_channel", 0, numThread, 1024, true), 
+				numThread, n, noop_code, value);
+		System.out.println("pipe="+pipe+"/s udp="+udp+"/s mmap="+mapped+"/s");
+	}
 
 }
@@ -0,0 +1,126 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.database;
+
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.gnsserver.utils.ValuesMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONObject;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Updates different fields of one record from several threads while other
+ * threads read the whole record. Records are updated in place so none of the
+ * updates may be lost and readers must never see a record mid change.
+ *
+ * Needs the same mongo instance as NoSQLTest.
+ *
+ */
+public class DiskMapRecordsConcurrencyTest {
+
+  private static final String NODE = "testNode";
+  private static final String COLLECTION = "testCollection";
+  private static final String GUID = "concurrencyTestGuid";
+  private static final int WRITERS = 8;
+  private static final int READERS = 4;
+  private static final int UPDATES = 2000;
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01_ConcurrentFieldUpdates() throws Exception {
+    final NoSQLRecords instance = new DiskMapRecords(NODE);
+    JSONObject record = new JSONObject();
+    record.put(NameRecord.NAME.getName(), GUID);
+    record.put(NameRecord.VALUES_MAP.getName(), new ValuesMap());
+    try {
+      instance.removeEntireRecord(COLLECTION, GUID);
+    } catch (Exception e) {
+      // not there
+    }
+    instance.insert(COLLECTION, GUID, record);
+
+    ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int w = 0; w < WRITERS; w++) {
+      final String field = "field" + w;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          ArrayList<ColumnField> fields = new ArrayList<>(Arrays.asList(
+                  new ColumnField(field, ColumnFieldType.USER_JSON),
+                  new ColumnField("nested." + field, ColumnFieldType.USER_JSON)));
+          for (int i = 0; i < UPDATES; i++) {
+            instance.updateIndividualFields(COLLECTION, GUID, NameRecord.VALUES_MAP, fields,
+                    new ArrayList<Object>(Arrays.asList(i, new JSONObject().put("count", i))));
+          }
+          return null;
+        }
+      });
+    }
+    for (int r = 0; r < READERS; r++) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int i = 0; i < UPDATES; i++) {
+            JSONObject json = instance.lookupEntireRecord(COLLECTION, GUID)
+                    .getJSONObject(NameRecord.VALUES_MAP.getName());
+            // a field and its nested copy are written in the same update
+            for (int w = 0; w < WRITERS; w++) {
+              if (json.has("field" + w)) {
+                assertEquals(json.getInt("field" + w),
+                        json.getJSONObject("nested").getJSONObject("field" + w).getInt("count"));
+              }
+            }
+          }
+          return null;
+        }
+      });
+    }
+    try {
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    JSONObject json = instance.lookupEntireRecord(COLLECTION, GUID)
+            .getJSONObject(NameRecord.VALUES_MAP.getName());
+    for (int w = 0; w < WRITERS; w++) {
+      assertEquals(UPDATES - 1, json.getInt("field" + w));
+      assertEquals(UPDATES - 1, json.getJSONObject("nested").getJSONObject("field" + w).getInt("count"));
+    }
+    instance.removeEntireRecord(COLLECTION, GUID);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.database;
+
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.gnsserver.utils.ValuesMap;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.json.JSONObject;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Measures how many bytes are allocated by lookupSomeFields when reading one small
+ * field from records with 1 KB to 1 MB of other fields. Looking up a few fields
+ * should cost about the same no matter how big the rest of the record is.
+ *
+ * Needs the same mongo instance as NoSQLTest.
+ *
+ */
+public class LookupSomeFieldsAllocationTest {
+
+  private static final String NODE = "testNode";
+  private static final String COLLECTION = "testCollection";
+  private static final String SMALL_FIELD = "smallField";
+  private static final int[] SIZES = {1024, 16 * 1024, 256 * 1024, 1024 * 1024};
+  private static final int LOOKUPS = 100;
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  // an acl like subtree with lots of small entries adding up to size bytes
+  private static JSONObject makeBlob(int size) throws Exception {
+    JSONObject blob = new JSONObject();
+    StringBuilder entry = new StringBuilder();
+    for (int i = 0; i < 64; i++) {
+      entry.append('x');
+    }
+    for (int i = 0; i < size / 64; i++) {
+      blob.put("key" + i, entry.toString());
+    }
+    return blob;
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01_AllocationPerLookup() throws Exception {
+    NoSQLRecords instance = new DiskMapRecords(NODE);
+    ArrayList<ColumnField> fields = new ArrayList<>(Arrays.asList(
+            new ColumnField(SMALL_FIELD, ColumnFieldType.USER_JSON)));
+    long someFieldsLargest = 0;
+    long entireRecordLargest = 0;
+    for (int size : SIZES) {
+      String guid = "allocationTestGuid" + size;
+      JSONObject json = new JSONObject();
+      json.put(SMALL_FIELD, "some value");
+      json.put("blob", makeBlob(size));
+      JSONObject record = new JSONObject();
+      record.put(NameRecord.NAME.getName(), guid);
+      record.put(NameRecord.VALUES_MAP.getName(), new ValuesMap(json));
+      instance.insert(COLLECTION, guid, record);
+
+      // warm up
+      for (int i = 0; i < LOOKUPS; i++) {
+        instance.lookupSomeFields(COLLECTION, guid, NameRecord.NAME, NameRecord.VALUES_MAP, fields);
+        instance.lookupEntireRecord(COLLECTION, guid);
+      }
+      long start = allocatedBytes();
+      for (int i = 0; i < LOOKUPS; i++) {
+        assertEquals("some value", ((ValuesMap) instance.lookupSomeFields(COLLECTION, guid,
+                NameRecord.NAME, NameRecord.VALUES_MAP, fields).get(NameRecord.VALUES_MAP)).getString(SMALL_FIELD));
+      }
+      long someFields = (allocatedBytes() - start) / LOOKUPS;
+      start = allocatedBytes();
+      for (int i = 0; i < LOOKUPS; i++) {
+        instance.lookupEntireRecord(COLLECTION, guid);
+      }
+      long entireRecord = (allocatedBytes() - start) / LOOKUPS;
+      System.out.println(String.format("record=%dKB lookupSomeFields=%dB/op lookupEntireRecord=%dB/op",
+              size / 1024, someFields, entireRecord));
+      someFieldsLargest = someFields;
+      entireRecordLargest = entireRecord;
+      instance.removeEntireRecord(COLLECTION, guid);
+    }
+    assertTrue(someFieldsLargest * 10 < entireRecordLargest);
+  }
+}
@@ -373,4 +373,60 @@ public class NoSQLTest {
       fail("Problem during LookupEntireRecord: " + e);
     }
   }
+
+  private static String guid3 = "testGuid3";
+
+  /**
+   * Selects have to see records that haven't been committed to mongo yet.
+   */
+  @Test
+  public void test_40_SelectUncommittedRecord() {
+    try {
+      JSONObject json = new JSONObject();
+      json.put(field, "red");
+      NameRecord nameRecord = new NameRecord(recordMap, guid3, new ValuesMap(json));
+      instance.insert(collection, guid3, nameRecord.toJSONObject());
+      assertTrue(selectNames(field, "red").contains(guid3));
+    } catch (FailedDBOperationException | RecordExistsException | JSONException e) {
+      fail("Problem during select: " + e);
+    }
+  }
+
+  /**
+   * Selects must not return the stale committed copy of an updated record.
+   */
+  @Test
+  public void test_41_SelectUpdatedRecord() {
+    try {
+      instance.updateIndividualFields(collection, guid3, NameRecord.VALUES_MAP,
+              new ArrayList<>(Arrays.asList(new ColumnField(field, ColumnFieldType.USER_JSON))),
+              new ArrayList<>(Arrays.asList((Object) "blue")));
+      assertFalse(selectNames(field, "red").contains(guid3));
+      assertTrue(selectNames(field, "blue").contains(guid3));
+    } catch (FailedDBOperationException e) {
+      fail("Problem during select: " + e);
+    }
+  }
+
+  /**
+   * Selects must not return removed records.
+   */
+  @Test
+  public void test_42_SelectRemovedRecord() {
+    try {
+      instance.removeEntireRecord(collection, guid3);
+      assertFalse(selectNames(field, "blue").contains(guid3));
+    } catch (FailedDBOperationException e) {
+      fail("Problem during select: " + e);
+    }
+  }
+
+  private ArrayList<String> selectNames(String key, Object value) throws FailedDBOperationException {
+    ArrayList<String> names = new ArrayList<>();
+    AbstractRecordCursor cursor = instance.selectRecords(collection, NameRecord.VALUES_MAP, key, value, null);
+    while (cursor.hasNext()) {
+      names.add(cursor.nextJSONObject().optString(NameRecord.NAME.getName()));
+    }
+    return names;
+  }
 }
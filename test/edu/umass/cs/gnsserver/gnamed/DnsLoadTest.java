@@ -0,0 +1,205 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import edu.umass.cs.gnsclient.client.GNSClientCommands;
+import edu.umass.cs.gnsclient.client.util.GuidEntry;
+import edu.umass.cs.gnsclient.client.util.GuidUtils;
+import edu.umass.cs.gnscommon.utils.RandomString;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+import static org.junit.Assert.*;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * A load generator for the gnamed DNS front end. Reports queries per second and
+ * the 99th percentile latency, first for names the server hasn't answered yet
+ * and then for the same names again, which come out of its answer cache.
+ *
+ * Needs a server started with DNS_GNS_ONLY (or the default DNS fallback mode)
+ * listening on -DdnsHost and -DdnsPort. The number of names, the number of
+ * queries per client thread for the cached run and the number of client threads
+ * can be set with -DnumNames, -DqueriesPerThread and -Dthreads.
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class DnsLoadTest {
+
+  private static String accountAlias = "test@cgns.name"; // REPLACE THIS WITH YOUR ACCOUNT ALIAS
+  private static String password = "password";
+  private static final String ADDRESS = "10.0.0.1";
+  private static GNSClientCommands client = null;
+  private static GuidEntry masterGuid;
+  private static final List<String> names = new ArrayList<>();
+
+  private static final String DNS_HOST = System.getProperty("dnsHost", "127.0.0.1");
+  private static final int DNS_PORT = Integer.getInteger("dnsPort", 53);
+  private static final int NUM_NAMES = Integer.getInteger("numNames", 500);
+  private static final int QUERIES_PER_THREAD = Integer.getInteger("queriesPerThread", 2000);
+  private static final int THREADS = Integer.getInteger("threads", 16);
+
+  /**
+   *
+   */
+  public DnsLoadTest() {
+    if (client == null) {
+      try {
+        client = new GNSClientCommands();
+      } catch (IOException e) {
+        fail("Exception creating client: " + e);
+      }
+      if (System.getProperty("alias") != null
+              && !System.getProperty("alias").isEmpty()) {
+        accountAlias = System.getProperty("alias");
+      }
+      if (System.getProperty("password") != null
+              && !System.getProperty("password").isEmpty()) {
+        password = System.getProperty("password");
+      }
+      try {
+        masterGuid = GuidUtils.lookupOrCreateAccountGuid(client, accountAlias, password, true);
+      } catch (Exception e) {
+        fail("Exception while creating account guid: " + e);
+      }
+    }
+  }
+
+  // sends a query for name and returns the latency in nanoseconds
+  private static long query(DatagramSocket socket, String name, byte[] receiveBuffer) throws Exception {
+    Message query = Message.newQuery(Record.newRecord(new Name(name), Type.A, DClass.IN));
+    query.getHeader().setFlag(Flags.RD);
+    byte[] data = query.toWire();
+    long start = System.nanoTime();
+    socket.send(new DatagramPacket(data, data.length, InetAddress.getByName(DNS_HOST), DNS_PORT));
+    DatagramPacket packet = new DatagramPacket(receiveBuffer, receiveBuffer.length);
+    socket.receive(packet);
+    long latency = System.nanoTime() - start;
+    Message response = new Message(Arrays.copyOf(receiveBuffer, packet.getLength()));
+    assertEquals(query.getHeader().getID(), response.getHeader().getID());
+    assertEquals(Rcode.NOERROR, response.getHeader().getRcode());
+    return latency;
+  }
+
+  // runs threads clients each querying its share of names count times and prints qps and p99
+  private static void run(String label, final List<String> queryNames, final int count) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    List<Callable<long[]>> clients = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      final int offset = t;
+      clients.add(new Callable<long[]>() {
+        @Override
+        public long[] call() throws Exception {
+          long[] latencies = new long[count];
+          byte[] receiveBuffer = new byte[512];
+          try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(5000);
+            for (int i = 0; i < count; i++) {
+              latencies[i] = query(socket, queryNames.get((offset + i * THREADS) % queryNames.size()),
+                      receiveBuffer);
+            }
+          }
+          return latencies;
+        }
+      });
+    }
+    try {
+      long start = System.nanoTime();
+      List<Future<long[]>> futures = executor.invokeAll(clients);
+      long elapsed = System.nanoTime() - start;
+      long[] all = new long[THREADS * count];
+      int index = 0;
+      for (Future<long[]> future : futures) {
+        long[] latencies = future.get();
+        System.arraycopy(latencies, 0, all, index, latencies.length);
+        index += latencies.length;
+      }
+      Arrays.sort(all);
+      System.out.println(String.format("%s: queries=%d qps=%.0f p50=%.2fms p99=%.2fms",
+              label, all.length, all.length * 1e9 / elapsed,
+              all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_1_CreateNames() {
+    String suffix = RandomString.randomString(6);
+    try {
+      for (int i = 0; i < NUM_NAMES; i++) {
+        String name = "dnsload" + i + "-" + suffix + ".gns.";
+        GuidEntry entry = client.guidCreate(masterGuid, name);
+        client.fieldUpdate(entry, "A", ADDRESS);
+        names.add(name);
+      }
+    } catch (Exception e) {
+      fail("Exception creating names: " + e);
+    }
+  }
+
+  /**
+   * Each name is queried exactly once so every query goes to the GNS.
+   */
+  @Test
+  public void test_2_UncachedLookups() {
+    try {
+      run("uncached", names, Math.max(1, NUM_NAMES / THREADS));
+    } catch (Exception e) {
+      fail("Exception during lookups: " + e);
+    }
+  }
+
+  /**
+   * The same names again, now answered from the cache.
+   */
+  @Test
+  public void test_3_CachedLookups() {
+    try {
+      run("cached", names, QUERIES_PER_THREAD);
+    } catch (Exception e) {
+      fail("Exception during lookups: " + e);
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import edu.umass.cs.gnsserver.database.MongoRecords;
+import edu.umass.cs.gnsserver.database.NoSQLRecords;
+import static edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess.HRN_GUID;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.GNSRecordMap;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.gnsserver.utils.ValuesMap;
+
+import java.util.Arrays;
+
+import org.json.JSONObject;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compares the latency of resolving a multi-hop name with the batched resolution
+ * in NameResolution against the loop that looks up one name at a time.
+ *
+ * The test zone is www -> web -> lb -> host by CNAME with host having an A
+ * record and an MX record pointing at mail. That is five names the loop looks up
+ * one after the other.
+ *
+ * Uses MongoRecords so every lookup is a real database round trip, which needs a
+ * local mongo instance. The number of resolutions can be set with -Dresolutions.
+ *
+ */
+public class NameResolutionLatencyTest {
+
+  private static final String NODE = "testNode";
+  private static final String ZONE = ".zone.test.";
+  private static final String[] NAMES = {"www", "web", "lb", "host", "mail"};
+  private static final int RESOLUTIONS = Integer.getInteger("resolutions", 500);
+
+  private static NoSQLRecords instance;
+  private static GNSRecordMap<String> recordMap;
+
+  private static void addName(String name, JSONObject fields) throws Exception {
+    String guid = "guid-" + name;
+    JSONObject hrn = new JSONObject();
+    hrn.put(HRN_GUID, guid);
+    instance.insert(MongoRecords.DBNAMERECORD, name,
+            new NameRecord(recordMap, name, new ValuesMap(hrn)).toJSONObject());
+    instance.insert(MongoRecords.DBNAMERECORD, guid,
+            new NameRecord(recordMap, guid, new ValuesMap(fields)).toJSONObject());
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @BeforeClass
+  public static void setup() throws Exception {
+    instance = new MongoRecords(NODE);
+    recordMap = new GNSRecordMap<>(instance, MongoRecords.DBNAMERECORD);
+    for (int i = 0; i < 3; i++) {
+      addName(NAMES[i] + ZONE, new JSONObject().put("CNAME", NAMES[i + 1] + ZONE));
+    }
+    addName("host" + ZONE, new JSONObject().put("A", "10.0.0.1").put("MX", "mail" + ZONE));
+    addName("mail" + ZONE, new JSONObject().put("A", "10.0.0.2"));
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @AfterClass
+  public static void cleanup() throws Exception {
+    for (String name : NAMES) {
+      instance.removeEntireRecord(MongoRecords.DBNAMERECORD, name + ZONE);
+      instance.removeEntireRecord(MongoRecords.DBNAMERECORD, "guid-" + name + ZONE);
+    }
+  }
+
+  private static Message query() throws Exception {
+    return Message.newQuery(Record.newRecord(new Name("www" + ZONE), Type.A, DClass.IN));
+  }
+
+  // returns the mean latency in microseconds
+  private static double run(boolean batched) throws Exception {
+    long total = 0;
+    for (int i = 0; i < RESOLUTIONS; i++) {
+      Message query = query();
+      long start = System.nanoTime();
+      Message response = NameResolution.lookupGnsServer(query, recordMap, batched);
+      total += System.nanoTime() - start;
+      assertEquals(Rcode.NOERROR, response.getHeader().getRcode());
+    }
+    return total / 1000.0 / RESOLUTIONS;
+  }
+
+  /**
+   * Both ways of resolving give the same answer.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01_SameResponse() throws Exception {
+    Message loop = NameResolution.lookupGnsServer(query(), recordMap, false);
+    Message batched = NameResolution.lookupGnsServer(query(), recordMap, true);
+    for (int section : new int[]{Section.ANSWER, Section.AUTHORITY, Section.ADDITIONAL}) {
+      assertEquals(Arrays.asList(loop.getSectionArray(section)),
+              Arrays.asList(batched.getSectionArray(section)));
+    }
+    // three CNAMEs and the A record
+    assertEquals(4, batched.getSectionArray(Section.ANSWER).length);
+    assertEquals(1, batched.getSectionArray(Section.ADDITIONAL).length);
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_02_Latency() throws Exception {
+    // warm up
+    run(false);
+    run(true);
+    System.out.println(String.format("loop=%.0fus batched=%.0fus",
+            run(false), run(true)));
+  }
+}
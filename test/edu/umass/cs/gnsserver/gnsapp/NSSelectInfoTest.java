@@ -0,0 +1,75 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp;
+
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectGroupBehavior;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectOperation;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests the chunk and guid bookkeeping in NSSelectInfo.
+ *
+ */
+public class NSSelectInfoTest {
+
+  private static NSSelectInfo<String> makeInfo() {
+    return new NSSelectInfo<>(1, new HashSet<>(Arrays.asList("a", "b")), SelectOperation.EQUALS,
+            SelectGroupBehavior.NONE, null, 0, null);
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_SingleChunk() {
+    NSSelectInfo<String> info = makeInfo();
+    assertTrue(info.chunkReceived("a", 1));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_LastChunkArrivesFirst() {
+    NSSelectInfo<String> info = makeInfo();
+    assertFalse(info.chunkReceived("a", 3));
+    assertFalse(info.chunkReceived("a", -1));
+    assertFalse(info.chunkReceived("b", -1));
+    assertTrue(info.chunkReceived("a", -1));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_GuidsAreDeduplicated() {
+    NSSelectInfo<String> info = makeInfo();
+    assertTrue(info.addGuidIfNotSeenYet("guid1"));
+    assertFalse(info.addGuidIfNotSeenYet("guid1"));
+    assertTrue(info.addGuidIfNotSeenYet("guid2"));
+    assertEquals(new HashSet<>(Arrays.asList("guid1", "guid2")), info.getGuids());
+  }
+}
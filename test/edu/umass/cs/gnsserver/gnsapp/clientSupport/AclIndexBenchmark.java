@@ -0,0 +1,122 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientSupport;
+
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.SharedGuidUtils;
+import edu.umass.cs.gnscommon.utils.Base64;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Compares finding an accessor's public key in ACLs of 1 to 100k entries by
+ * hashing every key in the ACL, as {@link SharedGuidUtils#findPublicKeyForGuid}
+ * does, with looking it up in an {@link AclIndex}.
+ *
+ * The largest ACL can be set with -DmaxAclSize.
+ *
+ */
+public class AclIndexBenchmark {
+
+  private static final int MAX_ACL_SIZE = Integer.getInteger("maxAclSize", 100000);
+  // roughly the size of an encoded 2048 bit RSA public key
+  private static final int KEY_BYTES = 294;
+
+  private static List<String> makeKeys(int count) {
+    Random random = new Random(count);
+    List<String> keys = new ArrayList<>();
+    byte[] bytes = new byte[KEY_BYTES];
+    for (int i = 0; i < count; i++) {
+      random.nextBytes(bytes);
+      keys.add(Base64.encodeToString(bytes, false));
+    }
+    return keys;
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_Lookups() {
+    List<String> keys = makeKeys(3);
+    String guid0 = SharedGuidUtils.createGuidStringFromBase64PublicKey(keys.get(0));
+    String guid1 = SharedGuidUtils.createGuidStringFromBase64PublicKey(keys.get(1));
+    AclIndex acl = new AclIndex(Arrays.asList(keys.get(0), keys.get(2)));
+    assertEquals(keys.get(0), acl.getPublicKey(guid0));
+    assertNull(acl.getPublicKey(guid1));
+    assertTrue(acl.containsGuid(guid0));
+    assertFalse(acl.containsGuid(guid1));
+    assertTrue(acl.containsAnyGuid(new HashSet<>(Arrays.asList(guid1, guid0))));
+    assertFalse(acl.containsAnyGuid(new HashSet<>(Arrays.asList(guid1))));
+    assertFalse(acl.containsEveryone());
+    assertEquals(2, acl.getGuids().size());
+
+    AclIndex everyone = new AclIndex(Arrays.asList(GNSProtocol.EVERYONE.toString(), keys.get(1)));
+    assertTrue(everyone.containsEveryone());
+    assertEquals(keys.get(1), everyone.getPublicKey(guid1));
+    assertEquals(1, everyone.getGuids().size());
+    assertFalse(AclIndex.EMPTY.containsEveryone());
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_LookupTimeByAclSize() {
+    for (int size = 1; size <= MAX_ACL_SIZE; size *= 10) {
+      List<String> keys = makeKeys(size);
+      Set<String> publicKeys = new HashSet<>(keys);
+      // the worst case for the scan is an accessor that isn't in the ACL
+      String accessor = SharedGuidUtils.createGuidStringFromBase64PublicKey(makeKeys(size + 1).get(size));
+      String member = SharedGuidUtils.createGuidStringFromBase64PublicKey(keys.get(size / 2));
+
+      int scans = Math.max(3, 200000 / size);
+      long start = System.nanoTime();
+      for (int i = 0; i < scans; i++) {
+        assertNull(SharedGuidUtils.findPublicKeyForGuid(accessor, publicKeys));
+      }
+      long scan = (System.nanoTime() - start) / scans;
+
+      start = System.nanoTime();
+      AclIndex acl = new AclIndex(keys);
+      long build = System.nanoTime() - start;
+
+      int lookups = 1000000;
+      start = System.nanoTime();
+      for (int i = 0; i < lookups; i++) {
+        assertNull(acl.getPublicKey(accessor));
+        assertNotNull(acl.getPublicKey(member));
+      }
+      long lookup = (System.nanoTime() - start) / (2 * lookups);
+
+      System.out.println(String.format("aclSize=%d scan=%dns/op index=%dns/op indexBuild=%dus",
+              size, scan, lookup, build / 1000));
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientSupport;
+
+import edu.umass.cs.gnscommon.ResponseCode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * Compares updating the GROUPS field of groups of 10 to 100k members one
+ * member at a time, as GroupAccess used to, with the windowed fan-out of a
+ * {@link GroupMemberUpdater}. The replicas are simulated with a fixed delay
+ * before each update completes.
+ *
+ * The largest group can be set with -DmaxGroupSize.
+ *
+ */
+public class GroupMemberUpdaterBenchmark {
+
+  private static final int MAX_GROUP_SIZE = Integer.getInteger("maxGroupSize", 100000);
+  // one at a time is too slow past this
+  private static final int MAX_SEQUENTIAL_SIZE = 1000;
+  private static final int REPLICA_SETS = 5;
+  private static final int WINDOW = 64;
+  private static final long LATENCY = 2;
+  private static final long TIMEOUT = 1000;
+
+  private static final ScheduledExecutorService replicas = Executors.newScheduledThreadPool(4);
+
+  /**
+   *
+   */
+  @AfterClass
+  public static void tearDown() {
+    replicas.shutdownNow();
+  }
+
+  private static List<String> makeMembers(int count) {
+    List<String> members = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      members.add("member" + i);
+    }
+    return members;
+  }
+
+  private static GroupMemberUpdater.Replicas byHash(final int sets) {
+    return new GroupMemberUpdater.Replicas() {
+      @Override
+      public Object of(String member) {
+        return Math.abs(member.hashCode() % sets);
+      }
+    };
+  }
+
+  // completes every update after the latency, except the ones named in failing
+  private static GroupMemberUpdater.Sender delayed(final String failing, final String dropped,
+          final String throwing) {
+    return new GroupMemberUpdater.Sender() {
+      @Override
+      public void send(final String member, final GroupMemberUpdater.Completion completion)
+              throws Exception {
+        if (member.equals(throwing)) {
+          throw new IOException("can't send");
+        }
+        if (member.equals(dropped)) {
+          return;
+        }
+        replicas.schedule(new Runnable() {
+          @Override
+          public void run() {
+            completion.completed(member, member.equals(failing)
+                    ? ResponseCode.UPDATE_ERROR : ResponseCode.NO_ERROR);
+          }
+        }, LATENCY, TimeUnit.MILLISECONDS);
+      }
+    };
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_Failures() {
+    GroupMemberUpdater updater = new GroupMemberUpdater(byHash(REPLICA_SETS),
+            delayed("member3", "member5", "member7"), WINDOW, 500);
+    Map<String, ResponseCode> failures = updater.update(makeMembers(100));
+    assertEquals(3, failures.size());
+    assertEquals(ResponseCode.UPDATE_ERROR, failures.get("member3"));
+    assertEquals(ResponseCode.TIMEOUT, failures.get("member5"));
+    assertEquals(ResponseCode.UNSPECIFIED_ERROR, failures.get("member7"));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_GroupSizes() {
+    GroupMemberUpdater sequential = new GroupMemberUpdater(byHash(1),
+            delayed(null, null, null), 1, TIMEOUT);
+    GroupMemberUpdater fanout = new GroupMemberUpdater(byHash(REPLICA_SETS),
+            delayed(null, null, null), WINDOW, TIMEOUT);
+    for (int size = 10; size <= MAX_GROUP_SIZE; size *= 10) {
+      List<String> members = makeMembers(size);
+      String sequentialResult = "skipped";
+      if (size <= MAX_SEQUENTIAL_SIZE) {
+        long start = System.nanoTime();
+        assertTrue(sequential.update(members).isEmpty());
+        sequentialResult = String.format("%.1fms", (System.nanoTime() - start) / 1000000.0);
+      }
+      long start = System.nanoTime();
+      assertTrue(fanout.update(members).isEmpty());
+      System.out.println(String.format("%6d members: one at a time %s, fan-out %.1fms",
+              size, sequentialResult, (System.nanoTime() - start) / 1000000.0));
+    }
+  }
+}
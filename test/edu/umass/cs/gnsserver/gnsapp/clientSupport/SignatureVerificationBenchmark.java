@@ -0,0 +1,161 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientSupport;
+
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.utils.Base64;
+import edu.umass.cs.gnscommon.utils.ByteUtils;
+
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compares signature verification throughput of {@link NSAccessSupport#verifySignature}
+ * with the previous implementation, which decoded the public key on every call
+ * and verified under one global lock. The previous implementation is reproduced
+ * below as the baseline.
+ *
+ * The number of keys and verifications per thread can be set
+ * with -DnumKeys and -DverificationsPerThread.
+ *
+ */
+public class SignatureVerificationBenchmark {
+
+  private static final int NUM_KEYS = Integer.getInteger("numKeys", 16);
+  private static final int VERIFICATIONS_PER_THREAD = Integer.getInteger("verificationsPerThread", 2000);
+  private static final String MESSAGE = "{\"guid\":\"some guid\",\"field\":\"some field\"}";
+
+  private static String[] publicKeys;
+  private static String[] signatures;
+
+  /**
+   *
+   * @throws Exception
+   */
+  @BeforeClass
+  public static void setup() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance(GNSProtocol.RSA_ALGORITHM.toString());
+    generator.initialize(2048);
+    publicKeys = new String[NUM_KEYS];
+    signatures = new String[NUM_KEYS];
+    for (int i = 0; i < NUM_KEYS; i++) {
+      KeyPair keyPair = generator.generateKeyPair();
+      publicKeys[i] = Base64.encodeToString(keyPair.getPublic().getEncoded(), false);
+      Signature signer = Signature.getInstance(GNSProtocol.SIGNATURE_ALGORITHM.toString());
+      signer.initSign(keyPair.getPrivate());
+      signer.update(MESSAGE.getBytes("UTF-8"));
+      signatures[i] = ByteUtils.toHex(signer.sign());
+    }
+  }
+
+  private interface Verifier {
+
+    boolean verify(String publicKey, String signature, String message) throws Exception;
+  }
+
+  private static final Verifier CURRENT = new Verifier() {
+    @Override
+    public boolean verify(String publicKey, String signature, String message) throws Exception {
+      return NSAccessSupport.verifySignature(publicKey, signature, message);
+    }
+  };
+
+  private static final Verifier BASELINE = new Verifier() {
+    private final KeyFactory keyFactory = KeyFactory.getInstance(GNSProtocol.RSA_ALGORITHM.toString());
+    private final Signature signature = Signature.getInstance(GNSProtocol.SIGNATURE_ALGORITHM.toString());
+
+    @Override
+    public synchronized boolean verify(String publicKey, String sig, String message) throws Exception {
+      PublicKey key = keyFactory.generatePublic(new X509EncodedKeySpec(Base64.decode(publicKey)));
+      signature.initVerify(key);
+      signature.update(message.getBytes("UTF-8"));
+      return signature.verify(ByteUtils.hexStringToByteArray(sig));
+    }
+  };
+
+  private static double run(final Verifier verifier, int threads) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Callable<Boolean>> tasks = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final int offset = t;
+      tasks.add(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          for (int i = 0; i < VERIFICATIONS_PER_THREAD; i++) {
+            int k = (offset + i) % NUM_KEYS;
+            if (!verifier.verify(publicKeys[k], signatures[k], MESSAGE)) {
+              return false;
+            }
+          }
+          return true;
+        }
+      });
+    }
+    try {
+      long start = System.nanoTime();
+      for (Future<Boolean> future : executor.invokeAll(tasks)) {
+        assertTrue(future.get());
+      }
+      return threads * VERIFICATIONS_PER_THREAD * 1e9 / (System.nanoTime() - start);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01_VerificationThroughput() throws Exception {
+    // warm up
+    run(BASELINE, 1);
+    run(CURRENT, 1);
+    int cores = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1; threads <= 2 * cores; threads *= 2) {
+      System.out.println(String.format("threads=%d baseline=%.0f/s current=%.0f/s",
+              threads, run(BASELINE, threads), run(CURRENT, threads)));
+    }
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_02_BadSignatureFails() throws Exception {
+    assertFalse(NSAccessSupport.verifySignature(publicKeys[0], signatures[1], MESSAGE));
+  }
+}
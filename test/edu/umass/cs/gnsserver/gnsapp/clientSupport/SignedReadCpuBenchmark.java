@@ -0,0 +1,207 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientSupport;
+
+import edu.umass.cs.gnsclient.client.CommandUtils;
+import edu.umass.cs.gnscommon.CommandType;
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.packets.BinaryCommand;
+import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gnscommon.packets.PacketUtils;
+import edu.umass.cs.gnscommon.utils.Base64;
+import edu.umass.cs.gnscommon.utils.CanonicalJSON;
+import edu.umass.cs.gnscommon.utils.RandomString;
+import edu.umass.cs.gnsserver.gnsapp.packet.Packet;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import org.json.JSONObject;
+
+import static org.junit.Assert.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Measures the server CPU spent on a signed read before the command runs: decoding
+ * the packet, producing the message that was signed and verifying the signature.
+ * Commands signed over their canonical JSON form (sent as JSON, the default) are
+ * compared with commands signed over their binary encoding (sent in binary mode),
+ * where the message is cut out of the received bytes.
+ *
+ * The number of iterations can be set with -Diterations.
+ *
+ */
+public class SignedReadCpuBenchmark {
+
+  private static final int ITERATIONS = Integer.getInteger("iterations", 5000);
+  private static final String SIGNATURE = GNSProtocol.SIGNATURE.toString();
+  private static final String MESSAGE = GNSProtocol.SIGNATUREFULLMESSAGE.toString();
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private static KeyPair keyPair;
+  private static String publicKey;
+
+  /**
+   *
+   * @throws Exception
+   */
+  @BeforeClass
+  public static void setup() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance(GNSProtocol.RSA_ALGORITHM.toString());
+    generator.initialize(2048);
+    keyPair = generator.generateKeyPair();
+    publicKey = Base64.encodeToString(keyPair.getPublic().getEncoded(), false);
+  }
+
+  private static JSONObject makeRead() throws Exception {
+    String guid = RandomString.randomString(40);
+    JSONObject command = new JSONObject();
+    command.put(GNSProtocol.COMMAND_INT.toString(), CommandType.Read.getInt());
+    command.put(GNSProtocol.GUID.toString(), guid);
+    command.put(GNSProtocol.FIELD.toString(), "location");
+    command.put(GNSProtocol.READER.toString(), guid);
+    command.put(GNSProtocol.TIMESTAMP.toString(), "2016-05-01T12:00:00Z");
+    command.put(GNSProtocol.NONCE.toString(), RandomString.randomString(16));
+    return command;
+  }
+
+  private static byte[] jsonSignedRead() throws Exception {
+    JSONObject command = makeRead();
+    command.put(SIGNATURE, CommandUtils.signDigestOfMessage(keyPair.getPrivate(),
+            CanonicalJSON.getCanonicalForm(command)));
+    return new CommandPacket(1, command).toJSONObject().toString().getBytes("UTF-8");
+  }
+
+  private static byte[] binarySignedRead() throws Exception {
+    JSONObject command = makeRead();
+    command.put(GNSProtocol.SIGNED_BINARY.toString(), true);
+    command.put(SIGNATURE, CommandUtils.signDigestOfMessage(keyPair.getPrivate(),
+            BinaryCommand.getSignedMessage(command)));
+    byte[] inner = BinaryCommand.encode(command);
+    return ByteBuffer.allocate(Integer.BYTES + Long.BYTES + 2 + inner.length)
+            .putInt(Packet.PacketType.COMMAND.getInt()).putLong(1).put((byte) 0)
+            // binary byte mode
+            .put((byte) 5).put(inner).array();
+  }
+
+  // what CommandHandler does for a command signed over its canonical JSON
+  private static JSONObject prepareJSON(byte[] bytes) throws Exception {
+    JSONObject command = PacketUtils.getCommand(new CommandPacket(new JSONObject(new String(bytes, "UTF-8"))));
+    CommandUtils.addMessageWithoutSignatureToJSON(command);
+    return command;
+  }
+
+  // what CommandHandler does for a command signed over its binary encoding
+  private static JSONObject prepareBinary(byte[] bytes) throws Exception {
+    return PacketUtils.getCommand(new CommandPacket(bytes));
+  }
+
+  // what the commands do
+  private static boolean verify(JSONObject command) throws Exception {
+    return NSAccessSupport.verifySignature(publicKey, command.getString(SIGNATURE),
+            PacketUtils.getSignedMessage(command));
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01_BothFormsVerify() throws Exception {
+    assertTrue(verify(prepareJSON(jsonSignedRead())));
+    byte[] bytes = binarySignedRead();
+    assertTrue(verify(prepareBinary(bytes)));
+    // a command that went through JSON on the way, e.g., at the LNS, still verifies
+    JSONObject command = PacketUtils.getCommand(new CommandPacket(bytes));
+    assertTrue(verify(new JSONObject(command.toString())));
+    assertFalse(command.has(MESSAGE));
+    // and a changed command doesn't
+    JSONObject changed = new JSONObject(command.toString());
+    changed.put(GNSProtocol.FIELD.toString(), "otherField");
+    assertFalse(verify(changed));
+  }
+
+  /**
+   * Numbers are encoded as whatever they turn into after a trip through JSON text.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01a_NumbersEncodeTheSameAfterJSON() throws Exception {
+    JSONObject command = makeRead();
+    command.put(GNSProtocol.N.toString(), 1.0);
+    command.put(GNSProtocol.INTERVAL.toString(), 3L);
+    command.put(GNSProtocol.VALUE.toString(), 2.5f);
+    command.put(GNSProtocol.REQUEST_TTL.toString(), 1L << 40);
+    JSONObject roundTripped = new JSONObject(command.toString());
+    assertArrayEquals(BinaryCommand.encode(command), BinaryCommand.encode(roundTripped));
+    assertArrayEquals(BinaryCommand.encode(roundTripped),
+            BinaryCommand.encode(new BinaryCommand(ByteBuffer.wrap(BinaryCommand.encode(roundTripped))).toJSONObject()));
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_02_ServerCpuPerSignedRead() throws Exception {
+    byte[][] json = new byte[ITERATIONS][];
+    byte[][] binary = new byte[ITERATIONS][];
+    for (int i = 0; i < ITERATIONS; i++) {
+      json[i] = jsonSignedRead();
+      binary[i] = binarySignedRead();
+    }
+    for (int round = 0; round < 2; round++) {
+      // the first round is the warm up
+      long start = THREADS.getCurrentThreadCpuTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        prepareJSON(json[i]);
+      }
+      long jsonPrepare = (THREADS.getCurrentThreadCpuTime() - start) / ITERATIONS;
+      start = THREADS.getCurrentThreadCpuTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        assertTrue(verify(prepareJSON(json[i])));
+      }
+      long jsonTotal = (THREADS.getCurrentThreadCpuTime() - start) / ITERATIONS;
+
+      start = THREADS.getCurrentThreadCpuTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        prepareBinary(binary[i]);
+      }
+      long binaryPrepare = (THREADS.getCurrentThreadCpuTime() - start) / ITERATIONS;
+      start = THREADS.getCurrentThreadCpuTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        assertTrue(verify(prepareBinary(binary[i])));
+      }
+      long binaryTotal = (THREADS.getCurrentThreadCpuTime() - start) / ITERATIONS;
+      if (round == 1) {
+        System.out.println(String.format("canonical JSON: decode+message=%dns verify total=%dns bytes=%d",
+                jsonPrepare, jsonTotal, json[0].length));
+        System.out.println(String.format("binary:         decode+message=%dns verify total=%dns bytes=%d",
+                binaryPrepare, binaryTotal, binary[0].length));
+      }
+    }
+  }
+}
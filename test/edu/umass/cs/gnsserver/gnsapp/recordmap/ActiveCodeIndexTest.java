@@ -0,0 +1,173 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.recordmap;
+
+import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnsserver.database.ColumnField;
+import edu.umass.cs.gnsserver.database.ColumnFieldType;
+import edu.umass.cs.gnsserver.database.DiskMapRecords;
+import edu.umass.cs.gnsserver.database.NoSQLRecords;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode;
+import edu.umass.cs.gnsserver.utils.ValuesMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.json.JSONObject;
+
+import static org.junit.Assert.*;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Checks that the active code index of a record map follows writes and is
+ * built from the records already in the database, and compares the time of
+ * updates that look up the write code field of the record first, as every
+ * update used to, with updates that check the index first.
+ *
+ * Needs the same mongo instance as NoSQLTest.
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ActiveCodeIndexTest {
+
+  private static final String NODE = "testNode";
+  private static final String COLLECTION = "activeCodeIndexTestCollection";
+  private static final String FIELD = "someField";
+  private static final int GUIDS = 100;
+  private static final int WRITES = 10000;
+
+  private static JSONObject makeRecord(String guid, ValuesMap valuesMap) throws Exception {
+    JSONObject record = new JSONObject();
+    record.put(NameRecord.NAME.getName(), guid);
+    record.put(NameRecord.VALUES_MAP.getName(), valuesMap);
+    return record;
+  }
+
+  private static ValuesMap makeValues(String key, String value) throws Exception {
+    JSONObject json = new JSONObject();
+    json.put(key, value);
+    return new ValuesMap(json);
+  }
+
+  private static ArrayList<ColumnField> fields(String... names) {
+    ArrayList<ColumnField> fields = new ArrayList<>();
+    for (String name : names) {
+      fields.add(new ColumnField(name, ColumnFieldType.USER_JSON));
+    }
+    return fields;
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01_IndexFollowsWrites() throws Exception {
+    GNSRecordMap<String> recordMap = new GNSRecordMap<>(new DiskMapRecords(NODE), COLLECTION);
+    recordMap.startActiveCodeIndex();
+    recordMap.awaitActiveCodeIndex();
+    String guid = "activeCodeIndexGuid";
+    recordMap.addRecord(makeRecord(guid, makeValues(FIELD, "some value")));
+    assertFalse(recordMap.mayHaveActiveCode(guid, ActiveCode.ON_WRITE));
+
+    // what SetCode does
+    recordMap.updateIndividualFields(guid, fields(ActiveCode.ON_WRITE),
+            new ArrayList<Object>(Arrays.asList("function run(value, field, querier){ return value; }")));
+    assertTrue(recordMap.mayHaveActiveCode(guid, ActiveCode.ON_WRITE));
+    assertFalse(recordMap.mayHaveActiveCode(guid, ActiveCode.ON_READ));
+
+    recordMap.removeMapKeys(guid, NameRecord.VALUES_MAP, fields(ActiveCode.ON_WRITE));
+    assertFalse(recordMap.mayHaveActiveCode(guid, ActiveCode.ON_WRITE));
+
+    // what restore does for an existing record
+    recordMap.updateEntireValuesMap(guid, makeValues(ActiveCode.ON_READ, "code"));
+    assertTrue(recordMap.mayHaveActiveCode(guid, ActiveCode.ON_READ));
+
+    recordMap.removeRecord(guid);
+    assertFalse(recordMap.mayHaveActiveCode(guid, ActiveCode.ON_READ));
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_02_IndexBuiltFromExistingRecords() throws Exception {
+    NoSQLRecords records = new DiskMapRecords(NODE);
+    String guid = "activeCodeIndexExistingGuid";
+    records.insert(COLLECTION, guid, makeRecord(guid, makeValues(ActiveCode.ON_WRITE, "code")));
+    GNSRecordMap<String> recordMap = new GNSRecordMap<>(records, COLLECTION);
+    recordMap.startActiveCodeIndex();
+    recordMap.awaitActiveCodeIndex();
+    assertTrue(recordMap.mayHaveActiveCode(guid, ActiveCode.ON_WRITE));
+    assertFalse(recordMap.mayHaveActiveCode(guid, ActiveCode.ON_READ));
+    recordMap.removeRecord(guid);
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_03_WriteThroughput() throws Exception {
+    GNSRecordMap<String> recordMap = new GNSRecordMap<>(new DiskMapRecords(NODE), COLLECTION);
+    recordMap.startActiveCodeIndex();
+    recordMap.awaitActiveCodeIndex();
+    String[] guids = new String[GUIDS];
+    for (int i = 0; i < GUIDS; i++) {
+      guids[i] = "activeCodeIndexWriteGuid" + i;
+      recordMap.addRecord(makeRecord(guids[i], makeValues(FIELD, "some value")));
+    }
+    // warm up
+    runWrites(recordMap, guids, false, WRITES / 10);
+    runWrites(recordMap, guids, true, WRITES / 10);
+
+    long start = System.nanoTime();
+    runWrites(recordMap, guids, false, WRITES);
+    long lookup = System.nanoTime() - start;
+    start = System.nanoTime();
+    runWrites(recordMap, guids, true, WRITES);
+    long index = System.nanoTime() - start;
+    System.out.println(String.format("code lookup on every write: %.0f writes/s, index check first: %.0f writes/s",
+            WRITES * 1000000000.0 / lookup, WRITES * 1000000000.0 / index));
+    for (String guid : guids) {
+      recordMap.removeRecord(guid);
+    }
+  }
+
+  // the part of an update that NSUpdateSupport does with the database
+  private static void runWrites(GNSRecordMap<String> recordMap, String[] guids, boolean useIndex, int writes)
+          throws Exception {
+    for (int i = 0; i < writes; i++) {
+      String guid = guids[i % guids.length];
+      if (!useIndex || recordMap.mayHaveActiveCode(guid, ActiveCode.ON_WRITE)) {
+        try {
+          NameRecord.getNameRecordMultiUserFields(recordMap, guid, ColumnFieldType.USER_JSON, ActiveCode.ON_WRITE);
+        } catch (RecordNotFoundException e) {
+          fail("Record not found: " + guid);
+        }
+      }
+      recordMap.updateIndividualFields(guid, fields(FIELD), new ArrayList<Object>(Arrays.asList("value" + i)));
+    }
+  }
+}
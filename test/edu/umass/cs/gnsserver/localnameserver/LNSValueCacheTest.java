@@ -0,0 +1,193 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.localnameserver;
+
+import edu.umass.cs.gnscommon.CommandType;
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.packets.CommandPacket;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.json.JSONObject;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests the LNS value cache and measures how many reads it takes off the
+ * active replicas for a Zipfian read workload with some updates mixed in.
+ *
+ * The number of guids, reads and the fraction of updates can be set with
+ * -DnumGuids, -DnumReads and -DupdateFraction.
+ *
+ */
+public class LNSValueCacheTest {
+
+  private static final int NUM_GUIDS = Integer.getInteger("numGuids", 100000);
+  private static final int NUM_READS = Integer.getInteger("numReads", 1000000);
+  private static final double UPDATE_FRACTION = Double.parseDouble(System.getProperty("updateFraction", "0.01"));
+  private static final double ZIPF_EXPONENT = 0.99;
+  private static final long TTL = 60000;
+
+  private static LNSValueCache.Key key(String guid, String field) {
+    return new LNSValueCache.Key(guid, field, "", CommandType.ReadUnsigned);
+  }
+
+  private static CommandPacket read(CommandType type, String guid, String field, boolean signed) throws Exception {
+    JSONObject command = new JSONObject();
+    command.put(GNSProtocol.COMMAND_INT.toString(), type.getInt());
+    command.put(GNSProtocol.GUID.toString(), guid);
+    command.put(GNSProtocol.FIELD.toString(), field);
+    if (signed) {
+      command.put(GNSProtocol.SIGNATURE.toString(), "abcd");
+    }
+    return new CommandPacket(1, command);
+  }
+
+  /**
+   *
+   * @throws Exception
+   */
+  @Test
+  public void test_01_OnlyUnsignedSingleFieldReadsAreCached() throws Exception {
+    assertEquals(key("guid", "field"), LNSValueCache.getKey(read(CommandType.ReadUnsigned, "guid", "field", false)));
+    assertNull(LNSValueCache.getKey(read(CommandType.Read, "guid", "field", true)));
+    assertNull(LNSValueCache.getKey(read(CommandType.ReplaceUserJSONUnsigned, "guid", "field", false)));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_InvalidateRemovesRelatedFields() {
+    LNSValueCache cache = new LNSValueCache(1024 * 1024, TTL);
+    long version = cache.getVersion("guid");
+    for (String field : Arrays.asList("a", "a.b", "a.b.c", "ab", "other", GNSProtocol.ENTIRE_RECORD.toString())) {
+      assertTrue(cache.put(key("guid", field), "value", version));
+    }
+    cache.invalidate("guid", Arrays.asList("a.b"), 0);
+    assertNull(cache.get(key("guid", "a")));
+    assertNull(cache.get(key("guid", "a.b")));
+    assertNull(cache.get(key("guid", "a.b.c")));
+    assertNull(cache.get(key("guid", GNSProtocol.ENTIRE_RECORD.toString())));
+    assertEquals("value", cache.get(key("guid", "ab")));
+    assertEquals("value", cache.get(key("guid", "other")));
+    // acl changes affect everything
+    cache.invalidate("guid", Arrays.asList(GNSProtocol.INTERNAL_PREFIX.toString() + "ACL"), 0);
+    assertNull(cache.get(key("guid", "other")));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_ResponseToReadInFlightDuringInvalidationIsNotCached() {
+    LNSValueCache cache = new LNSValueCache(1024 * 1024, TTL);
+    long version = cache.getVersion("guid");
+    cache.invalidate("guid", null, System.currentTimeMillis());
+    assertFalse(cache.put(key("guid", "field"), "old value", version));
+    assertNull(cache.get(key("guid", "field")));
+    assertTrue(cache.put(key("guid", "field"), "new value", cache.getVersion("guid")));
+    assertEquals("new value", cache.get(key("guid", "field")));
+    assertEquals(1, cache.getInvalidations());
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_SizeIsBoundedInBytes() {
+    LNSValueCache cache = new LNSValueCache(1024 * 1024, TTL);
+    char[] chars = new char[10 * 1024];
+    Arrays.fill(chars, 'x');
+    String value = new String(chars);
+    for (int i = 0; i < 1000; i++) {
+      cache.put(key("guid" + i, "field"), value, cache.getVersion("guid" + i));
+    }
+    // 20KB per value
+    assertTrue(cache.size() <= 1024 * 1024 / (2 * value.length()));
+    assertTrue(cache.getEvictions() > 0);
+  }
+
+  // cumulative probabilities of a Zipf distribution over NUM_GUIDS ranks
+  private static double[] zipfCdf() {
+    double[] cdf = new double[NUM_GUIDS];
+    double sum = 0;
+    for (int i = 0; i < NUM_GUIDS; i++) {
+      sum += 1.0 / Math.pow(i + 1, ZIPF_EXPONENT);
+      cdf[i] = sum;
+    }
+    for (int i = 0; i < NUM_GUIDS; i++) {
+      cdf[i] /= sum;
+    }
+    return cdf;
+  }
+
+  private static int nextZipf(double[] cdf, Random random) {
+    int index = Arrays.binarySearch(cdf, random.nextDouble());
+    return index >= 0 ? index : Math.min(-index - 1, cdf.length - 1);
+  }
+
+  /**
+   * Every miss is a read the active replicas have to do. Updates invalidate
+   * the guid and bump its version like an invalidation from a replica would.
+   */
+  @Test
+  public void test_05_ZipfianOffload() {
+    double[] cdf = zipfCdf();
+    String value = "{\"field\":\"a typical value of a typical size\"}";
+    double largestOffload = 0;
+    for (long size = 64 * 1024; size <= 64 * 1024 * 1024; size *= 8) {
+      LNSValueCache cache = new LNSValueCache(size, TTL);
+      Random random = new Random(0);
+      long updates = 0;
+      long stale = 0;
+      // the version each guid was last written at, to check we never read stale data
+      int[] written = new int[NUM_GUIDS];
+      long start = System.nanoTime();
+      for (int i = 0; i < NUM_READS; i++) {
+        int guid = nextZipf(cdf, random);
+        String name = "guid" + guid;
+        if (random.nextDouble() < UPDATE_FRACTION) {
+          updates++;
+          written[guid]++;
+          cache.invalidate(name, Arrays.asList("field"), System.currentTimeMillis());
+          continue;
+        }
+        LNSValueCache.Key key = key(name, "field");
+        String cached = cache.get(key);
+        if (cached == null) {
+          cache.put(key, written[guid] + value, cache.getVersion(name));
+        } else if (!cached.equals(written[guid] + value)) {
+          stale++;
+        }
+      }
+      long elapsed = System.nanoTime() - start;
+      System.out.println(String.format("cacheSize=%dKB reads=%d updates=%d offload=%.1f%% %.0fns/op %s",
+              size / 1024, NUM_READS - updates, updates, 100 * cache.getHitRate(),
+              (double) elapsed / NUM_READS, cache.getStats()));
+      assertEquals(0, stale);
+      largestOffload = cache.getHitRate();
+    }
+    assertTrue(largestOffload > 0.5);
+  }
+}
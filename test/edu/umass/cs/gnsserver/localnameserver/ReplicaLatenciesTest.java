@@ -0,0 +1,156 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.localnameserver;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests the replica latency estimates and shows requests moving to the
+ * fastest replica. Three replicas are simulated with injected delays and
+ * some jitter. Requests go to the closest replica and their round trip
+ * times are added as samples, and every so often all replicas are probed
+ * the way the LNS does. Halfway through the fast replica becomes slow.
+ *
+ * The number of requests per phase and the probe interval (in requests)
+ * can be set with -DnumRequests and -DprobeInterval.
+ *
+ */
+public class ReplicaLatenciesTest {
+
+  private static final int NUM_REQUESTS = Integer.getInteger("numRequests", 10000);
+  private static final int PROBE_INTERVAL = Integer.getInteger("probeInterval", 100);
+
+  private static final InetSocketAddress[] REPLICAS = {
+    new InetSocketAddress("127.0.0.1", 24403),
+    new InetSocketAddress("127.0.0.1", 24404),
+    new InetSocketAddress("127.0.0.1", 24405)};
+
+  private final Random random = new Random(42);
+
+  private long rtt(long[] delays, int replica) {
+    return delays[replica] + random.nextInt((int) (delays[replica] / 4) + 1);
+  }
+
+  private int[] run(ReplicaLatencies latencies, long[] delays) {
+    Set<InetSocketAddress> replicas = new HashSet<>(Arrays.asList(REPLICAS));
+    int[] counts = new int[REPLICAS.length];
+    for (int i = 0; i < NUM_REQUESTS; i++) {
+      InetSocketAddress closest = latencies.getClosest(replicas, null);
+      int replica = closest != null ? Arrays.asList(REPLICAS).indexOf(closest)
+              : random.nextInt(REPLICAS.length);
+      counts[replica]++;
+      latencies.addSample(REPLICAS[replica], rtt(delays, replica));
+      if (i % PROBE_INTERVAL == 0) {
+        for (int j = 0; j < REPLICAS.length; j++) {
+          latencies.addSample(REPLICAS[j], rtt(delays, j));
+        }
+      }
+    }
+    System.out.println(String.format("delays=%s shares=%.3f/%.3f/%.3f estimates: %s",
+            Arrays.toString(delays),
+            counts[0] / (double) NUM_REQUESTS, counts[1] / (double) NUM_REQUESTS,
+            counts[2] / (double) NUM_REQUESTS, latencies));
+    return counts;
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_Estimates() {
+    ReplicaLatencies latencies = new ReplicaLatencies();
+    assertEquals(ReplicaLatencies.NO_ESTIMATE, latencies.getLatency(REPLICAS[0]));
+    assertEquals(ReplicaLatencies.NO_ESTIMATE, latencies.getTailLatency(null));
+    assertNull(latencies.getClosest(new HashSet<>(Arrays.asList(REPLICAS)), null));
+    for (int i = 0; i < 100; i++) {
+      latencies.addSample(REPLICAS[0], 100);
+    }
+    assertEquals(100, latencies.getLatency(REPLICAS[0]));
+    assertTrue(latencies.getTailLatency(REPLICAS[0]) >= 100);
+    latencies.addSample(REPLICAS[1], 50);
+    assertEquals(REPLICAS[1], latencies.getClosest(new HashSet<>(Arrays.asList(REPLICAS)), null));
+    assertEquals(REPLICAS[0], latencies.getClosest(new HashSet<>(Arrays.asList(REPLICAS)),
+            Collections.singleton(REPLICAS[1])));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_TimeoutBounds() {
+    ReplicaLatencies latencies = new ReplicaLatencies();
+    assertEquals(10000, latencies.getTimeout(REPLICAS[0], 500, 10000));
+    assertEquals(10000, latencies.getTimeout(null, 500, 10000));
+    latencies.addSample(REPLICAS[0], 1);
+    assertEquals(500, latencies.getTimeout(REPLICAS[0], 500, 10000));
+    latencies.addSample(REPLICAS[1], 60000);
+    assertEquals(10000, latencies.getTimeout(REPLICAS[1], 500, 10000));
+    for (int i = 0; i < 100; i++) {
+      latencies.addSample(REPLICAS[2], 1000 + (i % 2) * 200);
+    }
+    long timeout = latencies.getTimeout(REPLICAS[2], 500, 10000);
+    assertTrue("timeout " + timeout, timeout > 1100 && timeout < 2000);
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_RequestsMoveToTheFastReplica() {
+    ReplicaLatencies latencies = new ReplicaLatencies();
+    int[] counts = run(latencies, new long[]{20, 60, 100});
+    assertTrue(counts[0] > NUM_REQUESTS * 0.9);
+    // the fast one gets slow
+    counts = run(latencies, new long[]{200, 60, 100});
+    assertTrue(counts[1] > NUM_REQUESTS * 0.9);
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_UnansweredReplicaIsNotClosest() {
+    ReplicaLatencies latencies = new ReplicaLatencies();
+    Set<InetSocketAddress> replicas = new HashSet<>(Arrays.asList(REPLICAS));
+    for (int i = 0; i < 100; i++) {
+      latencies.addSample(REPLICAS[0], 20);
+      latencies.addSample(REPLICAS[1], 60);
+      latencies.addSample(REPLICAS[2], 100);
+    }
+    assertEquals(REPLICAS[0], latencies.getClosest(replicas, null));
+    // it stops answering, each timeout counts at least as much as its tail estimate
+    long tail = latencies.getTailLatency(REPLICAS[0]);
+    latencies.addTimeout(REPLICAS[0], 0);
+    assertTrue(latencies.getTailLatency(REPLICAS[0]) >= tail);
+    for (int i = 0; i < 10; i++) {
+      latencies.addTimeout(REPLICAS[0], latencies.getTimeout(REPLICAS[0], 50, 10000));
+    }
+    assertEquals(REPLICAS[1], latencies.getClosest(replicas, null));
+  }
+}
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ *
+ * Mobility First - mSocket library
+ * Copyright (C) 2013, 2014 - University of Massachusetts Amherst
+ * Contact: arun@cs.umass.edu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ *
+ * Initial developer(s): Arun Venkataramani, Aditya Yadav, Emmanuel Cecchet.
+ * Contributor(s): ______________________.
+ *
+ *******************************************************************************/
+
+package edu.umass.cs.msocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Measures how fast the inbuffer reassembles a stream that arrives over
+ * several flow paths with reordering and retransmissions injected. Each path
+ * is a thread that puts its chunks in shuffled windows and sends some of them
+ * twice, while one reader takes the in-order data out. The previous
+ * InBufferOutOrder, which did all of this under one monitor, is reproduced
+ * below as the baseline.
+ * <p>
+ * The amount of data can be set with -DtotalMB.
+ * 
+ * @version 1.0
+ */
+public class InBufferReorderingBenchmark
+{
+  private static final int    TOTAL       = Integer.getInteger("totalMB", 128) * 1024 * 1024;
+  private static final int    CHUNK_SIZE  = 16 * 1024;
+  private static final int    WINDOW      = 8;
+  private static final double DUPLICATES  = 0.05;
+  private static final byte[] SOURCE      = new byte[1024 * 1024 + 7];
+
+  static
+  {
+    new Random(1).nextBytes(SOURCE);
+  }
+
+  private interface Reassembly
+  {
+    void put(InBufferStorageChunk chunk);
+
+    int get(byte[] b, int offset, int length);
+  }
+
+  private static byte[] chunkData(long start, int length)
+  {
+    byte[] data = new byte[length];
+    int from = (int) (start % SOURCE.length);
+    int first = Math.min(length, SOURCE.length - from);
+    System.arraycopy(SOURCE, from, data, 0, first);
+    System.arraycopy(SOURCE, 0, data, first, length - first);
+    return data;
+  }
+
+  private static double run(final Reassembly buffer, final int paths) throws Exception
+  {
+    final int numChunks = TOTAL / CHUNK_SIZE;
+    List<Thread> producers = new ArrayList<Thread>();
+    for (int p = 0; p < paths; p++)
+    {
+      final int path = p;
+      producers.add(new Thread("path " + p)
+      {
+        public void run()
+        {
+          Random random = new Random(path);
+          List<Integer> window = new ArrayList<Integer>();
+          for (int c = path; c < numChunks; c += paths)
+          {
+            window.add(c);
+            if (window.size() == WINDOW || c + paths >= numChunks)
+            {
+              Collections.shuffle(window, random);
+              for (int chunk : window)
+              {
+                long start = (long) chunk * CHUNK_SIZE;
+                buffer.put(new InBufferStorageChunk(chunkData(start, CHUNK_SIZE), start, CHUNK_SIZE));
+                if (random.nextDouble() < DUPLICATES)
+                  buffer.put(new InBufferStorageChunk(chunkData(start, CHUNK_SIZE), start, CHUNK_SIZE));
+              }
+              window.clear();
+            }
+          }
+        }
+      });
+    }
+    byte[] app = new byte[64 * 1024];
+    long start = System.nanoTime();
+    for (Thread producer : producers)
+      producer.start();
+    long read = 0;
+    while (read < (long) numChunks * CHUNK_SIZE)
+    {
+      int n = buffer.get(app, 0, app.length);
+      if (n == 0)
+      {
+        Thread.yield();
+        continue;
+      }
+      if (!Arrays.equals(Arrays.copyOf(app, n), chunkData(read, n)))
+        fail("Reassembled data differs after " + read);
+      read += n;
+    }
+    double mbPerSec = read * 1000.0 / (System.nanoTime() - start);
+    for (Thread producer : producers)
+      producer.join();
+    assertEquals((long) numChunks * CHUNK_SIZE, read);
+    return mbPerSec;
+  }
+
+  private static Reassembly current()
+  {
+    final InBufferOutOrder ibuffer = new InBufferOutOrder();
+    return new Reassembly()
+    {
+      public void put(InBufferStorageChunk chunk)
+      {
+        ibuffer.putInBuffer(chunk);
+      }
+
+      public int get(byte[] b, int offset, int length)
+      {
+        return ibuffer.getInBuffer(b, offset, length);
+      }
+    };
+  }
+
+  private static Reassembly baseline()
+  {
+    final BaselineInBuffer ibuffer = new BaselineInBuffer();
+    return new Reassembly()
+    {
+      public void put(InBufferStorageChunk chunk)
+      {
+        ibuffer.putInBuffer(chunk);
+      }
+
+      public int get(byte[] b, int offset, int length)
+      {
+        return ibuffer.getInBuffer(b, offset, length);
+      }
+    };
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void reassemblyThroughput() throws Exception
+  {
+    // warm up
+    run(baseline(), 2);
+    run(current(), 2);
+    for (int paths = 1; paths <= 4; paths *= 2)
+    {
+      System.out.println(String.format("paths=%d baseline=%.0fMB/s current=%.0fMB/s", paths,
+          run(baseline(), paths), run(current(), paths)));
+    }
+  }
+
+  /**
+   * The previous InBufferOutOrder.
+   */
+  private static class BaselineInBuffer
+  {
+    ArrayList<InBufferStorageChunk> rbuf        = new ArrayList<InBufferStorageChunk>();
+    long                            dataReadSeq = 0;
+
+    synchronized boolean putInBuffer(InBufferStorageChunk Obj)
+    {
+      if (dataReadSeq >= (Obj.startSeqNum + Obj.chunkSize))
+        return false;
+      int i = 0;
+      for (i = rbuf.size() - 1; i >= 0; i--)
+      {
+        if (rbuf.get(i).startSeqNum < Obj.startSeqNum)
+          break;
+      }
+      rbuf.add(i + 1, Obj);
+      return true;
+    }
+
+    synchronized int getInBuffer(byte[] b, int offset, int length)
+    {
+      int numread = 0;
+      for (int i = 0; i < rbuf.size(); i++)
+      {
+        InBufferStorageChunk CurChunk = rbuf.get(i);
+        if ((dataReadSeq >= CurChunk.startSeqNum) && (dataReadSeq < (CurChunk.startSeqNum + CurChunk.chunkSize)))
+        {
+          int srcPos = (int) Math.max(0, dataReadSeq - CurChunk.startSeqNum);
+          int actlen = Math.min(CurChunk.chunkSize - srcPos, length - numread);
+          System.arraycopy(CurChunk.chunkData, srcPos, b, offset + numread, actlen);
+          numread += actlen;
+          dataReadSeq += actlen;
+          if (numread >= length)
+            break;
+        }
+      }
+      while (rbuf.size() > 0 && dataReadSeq >= (rbuf.get(0).startSeqNum + rbuf.get(0).chunkSize))
+        rbuf.remove(0);
+      return numread;
+    }
+  }
+}
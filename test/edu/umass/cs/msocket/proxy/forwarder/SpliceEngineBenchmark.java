@@ -0,0 +1,403 @@
+/*******************************************************************************
+ *
+ * Mobility First - mSocket library
+ * Copyright (C) 2013, 2014 - University of Massachusetts Amherst
+ * Contact: arun@cs.umass.edu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ *
+ * Initial developer(s): Arun Venkataramani, Aditya Yadav, Emmanuel Cecchet.
+ * Contributor(s): ______________________.
+ *
+ *******************************************************************************/
+
+package edu.umass.cs.msocket.proxy.forwarder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Measures connections per second and MB/s through a proxy that splices each
+ * accepted client connection to an echo server. The splicing the
+ * ProxyForwarder did before, one selector thread handing every read to a
+ * cached thread pool with a freshly allocated buffer, is reproduced below as
+ * the baseline.
+ * <p>
+ * The number of client threads, connections per thread and MB per connection
+ * can be set with -Dclients, -DconnectionsPerClient and -DmbPerConnection.
+ * 
+ * @version 1.0
+ */
+public class SpliceEngineBenchmark
+{
+  private static final int CLIENTS                = Integer.getInteger("clients", 8);
+  private static final int CONNECTIONS_PER_CLIENT = Integer.getInteger("connectionsPerClient", 200);
+  private static final int MB_PER_CONNECTION      = Integer.getInteger("mbPerConnection", 16);
+  private static final int CHUNK_SIZE             = 256 * 1024;
+
+  private interface Splicer
+  {
+    void register(int pairId, boolean serverSide, SocketChannel channel) throws IOException;
+
+    void shutdown();
+  }
+
+  private static class EngineSplicer implements Splicer
+  {
+    private final SpliceEngine engine;
+
+    EngineSplicer() throws IOException
+    {
+      engine = new SpliceEngine(Runtime.getRuntime().availableProcessors());
+    }
+
+    public void register(int pairId, boolean serverSide, SocketChannel channel) throws IOException
+    {
+      engine.register(pairId, serverSide, channel);
+    }
+
+    public void shutdown()
+    {
+      engine.shutdown();
+    }
+  }
+
+  /**
+   * The previous splicing: a selector thread that stops selecting a channel
+   * while a pool thread reads it into a new buffer and writes it all out.
+   */
+  private static class BaselineSplicer implements Splicer, Runnable
+  {
+    private final Selector                             selector = Selector.open();
+    private final ConcurrentLinkedQueue<Object[]>      queue    = new ConcurrentLinkedQueue<Object[]>();
+    private final HashMap<Integer, SocketChannel[]>    pairs    = new HashMap<Integer, SocketChannel[]>();
+    private final ExecutorService                      pool     = Executors.newCachedThreadPool();
+    private volatile boolean                           running  = true;
+
+    BaselineSplicer() throws IOException
+    {
+      Thread thread = new Thread(this);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    public void register(int pairId, boolean serverSide, SocketChannel channel) throws IOException
+    {
+      channel.configureBlocking(false);
+      synchronized (pairs)
+      {
+        SocketChannel[] pair = pairs.get(pairId);
+        if (pair == null)
+        {
+          pair = new SocketChannel[2];
+          pairs.put(pairId, pair);
+        }
+        pair[serverSide ? 1 : 0] = channel;
+      }
+      queue.add(new Object[]{channel, new int[]{pairId, serverSide ? 1 : 0}});
+      selector.wakeup();
+    }
+
+    private SocketChannel peer(int[] id)
+    {
+      synchronized (pairs)
+      {
+        SocketChannel[] pair = pairs.get(id[0]);
+        return pair == null ? null : pair[1 - id[1]];
+      }
+    }
+
+    public void run()
+    {
+      while (running)
+      {
+        try
+        {
+          Object[] reg;
+          while ((reg = queue.poll()) != null)
+            ((SocketChannel) reg[0]).register(selector, SelectionKey.OP_READ, reg[1]);
+          if (selector.select() == 0)
+            continue;
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext())
+          {
+            final SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid() || !key.isReadable())
+              continue;
+            key.interestOps(0);
+            pool.execute(new Runnable()
+            {
+              public void run()
+              {
+                handle(key);
+              }
+            });
+          }
+        }
+        catch (Exception e)
+        {
+        }
+      }
+    }
+
+    private void handle(SelectionKey key)
+    {
+      SocketChannel src = (SocketChannel) key.channel();
+      SocketChannel dst = peer((int[]) key.attachment());
+      try
+      {
+        ByteBuffer buf = ByteBuffer.allocate(ProxyForwarder.ChannelReadSize);
+        int numread = src.read(buf);
+        if (numread < 0 || dst == null)
+        {
+          key.cancel();
+          src.close();
+          if (dst != null)
+            dst.close();
+          return;
+        }
+        buf.flip();
+        while (buf.hasRemaining())
+          dst.write(buf);
+        key.interestOps(SelectionKey.OP_READ);
+        selector.wakeup();
+      }
+      catch (Exception e)
+      {
+        key.cancel();
+        try
+        {
+          src.close();
+          if (dst != null)
+            dst.close();
+        }
+        catch (IOException e1)
+        {
+        }
+      }
+    }
+
+    public void shutdown()
+    {
+      running = false;
+      pool.shutdownNow();
+      selector.wakeup();
+    }
+  }
+
+  // echoes everything back, one thread per connection
+  private static ServerSocketChannel startEchoServer() throws IOException
+  {
+    final ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0), 1024);
+    Thread thread = new Thread()
+    {
+      public void run()
+      {
+        while (server.isOpen())
+        {
+          try
+          {
+            final Socket socket = server.accept().socket();
+            Thread echo = new Thread()
+            {
+              public void run()
+              {
+                byte[] buf = new byte[CHUNK_SIZE];
+                try
+                {
+                  InputStream in = socket.getInputStream();
+                  OutputStream out = socket.getOutputStream();
+                  int numread;
+                  while ((numread = in.read(buf)) > 0)
+                    out.write(buf, 0, numread);
+                  socket.close();
+                }
+                catch (IOException e)
+                {
+                }
+              }
+            };
+            echo.setDaemon(true);
+            echo.start();
+          }
+          catch (IOException e)
+          {
+          }
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+    return server;
+  }
+
+  // accepts clients, connects each one to the echo server and splices them
+  private static ServerSocketChannel startProxy(final Splicer splicer, final InetSocketAddress backend)
+      throws IOException
+  {
+    final ServerSocketChannel proxy = ServerSocketChannel.open();
+    proxy.socket().bind(new InetSocketAddress("127.0.0.1", 0), 1024);
+    final AtomicInteger pairIds = new AtomicInteger();
+    Thread thread = new Thread()
+    {
+      public void run()
+      {
+        while (proxy.isOpen())
+        {
+          try
+          {
+            SocketChannel client = proxy.accept();
+            SocketChannel server = SocketChannel.open(backend);
+            int pairId = pairIds.incrementAndGet();
+            // the server side goes first as the baseline drops data with no peer
+            splicer.register(pairId, true, server);
+            splicer.register(pairId, false, client);
+          }
+          catch (IOException e)
+          {
+          }
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+    return proxy;
+  }
+
+  private static double run(final InetSocketAddress proxy, final boolean bulk) throws Exception
+  {
+    ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+    List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+    for (int t = 0; t < CLIENTS; t++)
+    {
+      tasks.add(new Callable<Long>()
+      {
+        public Long call() throws Exception
+        {
+          return bulk ? bulk(proxy) : connections(proxy);
+        }
+      });
+    }
+    try
+    {
+      long start = System.nanoTime();
+      long total = 0;
+      for (Future<Long> future : executor.invokeAll(tasks))
+        total += future.get();
+      double seconds = (System.nanoTime() - start) / 1e9;
+      return bulk ? total / seconds / (1024 * 1024) : total / seconds;
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+
+  // connect, echo one byte and close
+  private static long connections(InetSocketAddress proxy) throws IOException
+  {
+    for (int i = 0; i < CONNECTIONS_PER_CLIENT; i++)
+    {
+      Socket socket = new Socket(proxy.getAddress(), proxy.getPort());
+      socket.setTcpNoDelay(true);
+      socket.getOutputStream().write(i);
+      assertEquals(i & 0xFF, socket.getInputStream().read());
+      socket.close();
+    }
+    return CONNECTIONS_PER_CLIENT;
+  }
+
+  // send chunks on one connection and read each one back
+  private static long bulk(InetSocketAddress proxy) throws IOException
+  {
+    byte[] chunk = new byte[CHUNK_SIZE];
+    new Random().nextBytes(chunk);
+    byte[] echoed = new byte[CHUNK_SIZE];
+    Socket socket = new Socket(proxy.getAddress(), proxy.getPort());
+    OutputStream out = socket.getOutputStream();
+    DataInputStream in = new DataInputStream(socket.getInputStream());
+    long total = (long) MB_PER_CONNECTION * 1024 * 1024;
+    for (long sent = 0; sent < total; sent += CHUNK_SIZE)
+    {
+      out.write(chunk);
+      in.readFully(echoed);
+    }
+    assertArrayEquals(chunk, echoed);
+    socket.close();
+    return 2 * total;
+  }
+
+  private static double[] measure(Splicer splicer, InetSocketAddress backend) throws Exception
+  {
+    ServerSocketChannel proxy = startProxy(splicer, backend);
+    try
+    {
+      InetSocketAddress address = (InetSocketAddress) proxy.socket().getLocalSocketAddress();
+      // warm up
+      run(address, false);
+      return new double[]{run(address, false), run(address, true)};
+    }
+    finally
+    {
+      proxy.close();
+      splicer.shutdown();
+    }
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void spliceThroughput() throws Exception
+  {
+    ServerSocketChannel echo = startEchoServer();
+    try
+    {
+      InetSocketAddress backend = (InetSocketAddress) echo.socket().getLocalSocketAddress();
+      double[] baseline = measure(new BaselineSplicer(), backend);
+      double[] engine = measure(new EngineSplicer(), backend);
+      System.out.println(String.format("clients=%d baseline=%.0f conn/s %.1f MB/s engine=%.0f conn/s %.1f MB/s",
+          CLIENTS, baseline[0], baseline[1], engine[0], engine[1]));
+    }
+    finally
+    {
+      echo.close();
+    }
+  }
+}
@@ -27,6 +27,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Random;
 
@@ -38,8 +41,10 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import edu.umass.cs.msocket.DataMessage;
 import edu.umass.cs.msocket.MServerSocket;
 import edu.umass.cs.msocket.MSocket;
+import edu.umass.cs.msocket.OutBuffer;
 
 /**
  * This class defines a MSocketReadWriteTests. We assume that the GNS is
@@ -146,6 +151,169 @@ public class MSocketReadWriteTests
     }
   }
 
+  /**
+   * Compares the ring OutBuffer with the previous list of arrays, which is
+   * reproduced below as the baseline. Writes 1 GB in 8 KB chunks, acks every
+   * chunk once 1 MB is outstanding and retransmits every 16th chunk to a
+   * channel that discards what it is given.
+   */
+  @Test
+  public void outBufferThroughput()
+  {
+    try
+    {
+      // warm up
+      runOutBuffer(true, 64);
+      runOutBuffer(false, 64);
+      long total = 1024L * 1024 * 1024;
+      double baseline = runOutBuffer(true, total / CHUNK_SIZE);
+      double ring = runOutBuffer(false, total / CHUNK_SIZE);
+      log.info(String.format("OutBuffer throughput: baseline=%.0fMB/s ring=%.0fMB/s", baseline, ring));
+    }
+    catch (IOException e)
+    {
+      log.error("outBufferThroughput test failed", e);
+      fail("outBufferThroughput test failed");
+    }
+  }
+
+  private static final int CHUNK_SIZE  = 8 * 1024;
+  private static final int OUTSTANDING = 1024 * 1024;
+
+  private double runOutBuffer(boolean baseline, long chunks) throws IOException
+  {
+    byte[] chunk = new byte[CHUNK_SIZE];
+    new Random().nextBytes(chunk);
+    DiscardingChannel channel = new DiscardingChannel();
+    BaselineOutBuffer list = new BaselineOutBuffer();
+    OutBuffer ring = new OutBuffer(OutBuffer.INITIAL_CAPACITY);
+    long sent = 0;
+    long start = System.nanoTime();
+    for (long i = 0; i < chunks; i++)
+    {
+      if (baseline)
+        list.add(chunk, 0, CHUNK_SIZE);
+      else
+        ring.add(chunk, 0, CHUNK_SIZE);
+      sent += CHUNK_SIZE;
+      if (i % 16 == 0)
+      {
+        if (baseline)
+        {
+          byte[] buf = list.getDataFromOutBuffer(sent - CHUNK_SIZE, sent);
+          channel.write(ByteBuffer.wrap(new DataMessage(DataMessage.DATA_MESG, (int) (sent - CHUNK_SIZE), 0,
+              buf.length, 0, buf, 0).getBytes()));
+        }
+        else
+          ring.writeDataMessage(channel, sent - CHUNK_SIZE, sent, 0);
+      }
+      if (sent > OUTSTANDING)
+      {
+        if (baseline)
+          list.ack(sent - OUTSTANDING);
+        else
+          ring.ack(sent - OUTSTANDING);
+      }
+    }
+    if (channel.written < chunks / 16 * CHUNK_SIZE)
+      fail("Retransmitted data is missing");
+    return sent * 1000.0 / (System.nanoTime() - start);
+  }
+
+  private static class DiscardingChannel implements GatheringByteChannel
+  {
+    long written = 0;
+
+    public int write(ByteBuffer src)
+    {
+      int length = src.remaining();
+      src.position(src.limit());
+      written += length;
+      return length;
+    }
+
+    public long write(ByteBuffer[] srcs, int offset, int length)
+    {
+      long total = 0;
+      for (int i = offset; i < offset + length; i++)
+        total += write(srcs[i]);
+      return total;
+    }
+
+    public long write(ByteBuffer[] srcs)
+    {
+      return write(srcs, 0, srcs.length);
+    }
+
+    public boolean isOpen()
+    {
+      return true;
+    }
+
+    public void close()
+    {
+    }
+  }
+
+  /**
+   * The previous OutBuffer implementation.
+   */
+  private static class BaselineOutBuffer
+  {
+    ArrayList<byte[]> sbuf         = new ArrayList<byte[]>();
+    long              dataSendSeq  = 0;
+    long              dataBaseSeq  = 0;
+    long              dataStartSeq = 0;
+
+    synchronized boolean add(byte[] src, int offset, int length)
+    {
+      byte[] dst = new byte[length];
+      System.arraycopy(src, offset, dst, 0, length);
+      sbuf.add(dst);
+      dataSendSeq += length;
+      return true;
+    }
+
+    synchronized boolean ack(long ack)
+    {
+      if (ack - dataBaseSeq <= 0 || ack - dataSendSeq > 0)
+        return false;
+      dataBaseSeq = ack;
+      while ((ack - dataStartSeq > 0) && sbuf.size() > 0)
+      {
+        byte[] b = sbuf.get(0);
+        if (ack - (dataStartSeq + b.length) >= 0)
+        {
+          sbuf.remove(0);
+          dataStartSeq += b.length;
+        }
+        else
+          break;
+      }
+      return true;
+    }
+
+    synchronized byte[] getDataFromOutBuffer(long startSeqNum, long EndSeqNum)
+    {
+      ByteBuffer buf = ByteBuffer.wrap(new byte[(int) (EndSeqNum - startSeqNum)]);
+      long curStart = dataStartSeq;
+      for (int i = 0; i < sbuf.size(); i++)
+      {
+        byte[] b = sbuf.get(i);
+        if (curStart + b.length - startSeqNum > 0)
+        {
+          int srcPos = (int) Math.max(0, startSeqNum - curStart);
+          int copy = Math.min(buf.remaining(), b.length - srcPos);
+          buf.put(b, srcPos, copy);
+          if (!buf.hasRemaining())
+            break;
+        }
+        curStart += b.length;
+      }
+      return buf.array();
+    }
+  }
+
   private void sleepFor(int ms)
   {
     try